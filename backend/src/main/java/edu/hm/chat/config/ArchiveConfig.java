@@ -0,0 +1,93 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the archival of old chat messages.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.archive")
+public class ArchiveConfig {
+
+    /**
+     * Whether the archival job is running.
+     */
+    private boolean enabled;
+
+    /**
+     * Path to write archive segment files to.
+     */
+    private String target;
+
+    /**
+     * Messages older than this are moved from the database into the archive.
+     */
+    private Duration maxAge = Duration.ofDays(30);
+
+    /**
+     * Maximum amount of messages written to a single segment file.
+     */
+    private int segmentSize = 10000;
+
+    /**
+     * Amount of messages compressed together in one block of a segment file.
+     */
+    private int blockSize = 64;
+
+    /**
+     * Maximum amount of chats whose segments are kept open (memory-mapped) at once.
+     */
+    private int maxOpenChats = 256;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getMaxOpenChats() {
+        return maxOpenChats;
+    }
+
+    public void setMaxOpenChats(int maxOpenChats) {
+        this.maxOpenChats = maxOpenChats;
+    }
+
+}
@@ -0,0 +1,80 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for uploads sent in chunks.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.res.chunked")
+public class ChunkedUploadConfig {
+
+    /**
+     * Size of every chunk but the last one in bytes.
+     */
+    private int chunkSize = 1024 * 1024;
+
+    /**
+     * Maximum size of a file uploaded in chunks in bytes.
+     */
+    private long maxFileSize = 512L * 1024 * 1024;
+
+    /**
+     * Time after the last received chunk until an incomplete upload is discarded.
+     */
+    private Duration sessionTimeout = Duration.ofHours(24);
+
+    /**
+     * Maximum amount of incomplete uploads per user.
+     */
+    private int maxSessionsPerUser = 4;
+
+    /**
+     * Amount of expired uploads discarded per batch.
+     */
+    private int cleanupBatchSize = 100;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public Duration getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(Duration sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public int getMaxSessionsPerUser() {
+        return maxSessionsPerUser;
+    }
+
+    public void setMaxSessionsPerUser(int maxSessionsPerUser) {
+        this.maxSessionsPerUser = maxSessionsPerUser;
+    }
+
+    public int getCleanupBatchSize() {
+        return cleanupBatchSize;
+    }
+
+    public void setCleanupBatchSize(int cleanupBatchSize) {
+        this.cleanupBatchSize = cleanupBatchSize;
+    }
+
+}
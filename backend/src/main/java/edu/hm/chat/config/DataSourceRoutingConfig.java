@@ -0,0 +1,116 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for routing read-only transactions to replica databases.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.datasource")
+public class DataSourceRoutingConfig {
+
+    /**
+     * Whether read-only transactions are routed to the replicas.
+     */
+    private boolean routingEnabled;
+
+    /**
+     * Replica databases to route read-only transactions to.
+     */
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * Interval in which the health of the replicas is checked.
+     */
+    private Duration healthCheckInterval = Duration.ofSeconds(10);
+
+    /**
+     * Time after a write in which reads of the same user are served by the primary.
+     */
+    private Duration readYourWritesWindow = Duration.ofSeconds(5);
+
+    public boolean isRoutingEnabled() {
+        return routingEnabled;
+    }
+
+    public void setRoutingEnabled(boolean routingEnabled) {
+        this.routingEnabled = routingEnabled;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Replica> replicas) {
+        this.replicas = replicas;
+    }
+
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public void setHealthCheckInterval(Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    public Duration getReadYourWritesWindow() {
+        return readYourWritesWindow;
+    }
+
+    public void setReadYourWritesWindow(Duration readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    /**
+     * Connection settings of a single replica.
+     * Username and password default to the ones of the primary database.
+     */
+    public static class Replica {
+
+        /**
+         * JDBC URL of the replica.
+         */
+        private String url;
+
+        /**
+         * Username to connect with.
+         */
+        private String username;
+
+        /**
+         * Password to connect with.
+         */
+        private String password;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package edu.hm.chat.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import edu.hm.chat.persistence.routing.ReadYourWritesGuard;
+import edu.hm.chat.persistence.routing.ReplicaRoutingDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the default data source with one routing read-only transactions to the configured replicas.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "edu.hm.chat.datasource", name = "routing-enabled", havingValue = "true")
+public class DataSourceRoutingConfiguration {
+
+    /**
+     * Pool of the primary database, configured like the default data source including {@code spring.datasource.hikari.*}.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties properties,
+            DataSourceRoutingConfig config,
+            ReadYourWritesGuard readYourWritesGuard
+    ) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < config.getReplicas().size(); i++) {
+            DataSourceRoutingConfig.Replica replicaConfig = config.getReplicas().get(i);
+
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + i);
+            replica.setJdbcUrl(replicaConfig.getUrl());
+            replica.setUsername(replicaConfig.getUsername() != null ? replicaConfig.getUsername() : properties.determineUsername());
+            replica.setPassword(replicaConfig.getPassword() != null ? replicaConfig.getPassword() : properties.determinePassword());
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, readYourWritesGuard, config.getHealthCheckInterval());
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+}
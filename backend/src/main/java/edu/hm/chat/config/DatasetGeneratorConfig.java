@@ -0,0 +1,160 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Configuration for the synthetic dataset generated with the {@code generator} profile.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.generator")
+public class DatasetGeneratorConfig {
+
+    /**
+     * Seed of the generated dataset, the same seed generates the same dataset.
+     */
+    private long seed = 42;
+
+    /**
+     * Amount of users to generate.
+     */
+    private int users = 10000;
+
+    /**
+     * Password of all generated users.
+     */
+    private String password = "password";
+
+    /**
+     * Amount of chats to generate.
+     */
+    private int chats = 2000;
+
+    /**
+     * Maximum amount of members of a chat.
+     */
+    private int maxChatSize = 500;
+
+    /**
+     * Shape of the Pareto distribution of chat sizes, lower values lead to more large chats.
+     */
+    private double chatSizeShape = 1.2;
+
+    /**
+     * Amount of messages to generate.
+     */
+    private int messages = 1000000;
+
+    /**
+     * End of the time span messages are spread across.
+     * Fixed by default, so generated timestamps are the same for every run.
+     */
+    private Instant end = Instant.parse("2021-01-01T00:00:00Z");
+
+    /**
+     * Time span before the end messages are spread across.
+     */
+    private Duration timeSpan = Duration.ofDays(180);
+
+    /**
+     * Amount of resource metadata entries to generate.
+     */
+    private int resources = 5000;
+
+    /**
+     * Node ID used for the generated message IDs, distinct from the nodes sending messages.
+     */
+    private int nodeId = 1023;
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public void setUsers(int users) {
+        this.users = users;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getChats() {
+        return chats;
+    }
+
+    public void setChats(int chats) {
+        this.chats = chats;
+    }
+
+    public int getMaxChatSize() {
+        return maxChatSize;
+    }
+
+    public void setMaxChatSize(int maxChatSize) {
+        this.maxChatSize = maxChatSize;
+    }
+
+    public double getChatSizeShape() {
+        return chatSizeShape;
+    }
+
+    public void setChatSizeShape(double chatSizeShape) {
+        this.chatSizeShape = chatSizeShape;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public void setMessages(int messages) {
+        this.messages = messages;
+    }
+
+    public Instant getEnd() {
+        return end;
+    }
+
+    public void setEnd(Instant end) {
+        this.end = end;
+    }
+
+    public Duration getTimeSpan() {
+        return timeSpan;
+    }
+
+    public void setTimeSpan(Duration timeSpan) {
+        this.timeSpan = timeSpan;
+    }
+
+    public int getResources() {
+        return resources;
+    }
+
+    public void setResources(int resources) {
+        this.resources = resources;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+}
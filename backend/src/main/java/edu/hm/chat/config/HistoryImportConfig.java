@@ -0,0 +1,65 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for bulk imports of chat histories.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.import")
+public class HistoryImportConfig {
+
+    /**
+     * NDJSON file to import on startup, the application exits once the import finished.
+     */
+    private String file;
+
+    /**
+     * Name of the import started from the command line, used to resume it. Defaults to the file name.
+     */
+    private String name;
+
+    /**
+     * Amount of input lines copied into the staging table per transaction.
+     */
+    private int stagingBatchSize = 50000;
+
+    /**
+     * Amount of staged lines merged into the message table per transaction.
+     */
+    private int mergeBatchSize = 20000;
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getStagingBatchSize() {
+        return stagingBatchSize;
+    }
+
+    public void setStagingBatchSize(int stagingBatchSize) {
+        this.stagingBatchSize = stagingBatchSize;
+    }
+
+    public int getMergeBatchSize() {
+        return mergeBatchSize;
+    }
+
+    public void setMergeBatchSize(int mergeBatchSize) {
+        this.mergeBatchSize = mergeBatchSize;
+    }
+
+}
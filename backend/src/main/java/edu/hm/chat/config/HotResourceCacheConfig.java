@@ -0,0 +1,67 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the off-heap cache of frequently downloaded small resources.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.res.hot-cache")
+public class HotResourceCacheConfig {
+
+    /**
+     * Whether small resources are cached.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum amount of bytes held by the cache outside of the heap.
+     */
+    private long capacity = 64 * 1024 * 1024;
+
+    /**
+     * Maximum size in bytes of a resource to be cached, larger ones are always sent from disk.
+     */
+    private int maxEntrySize = 256 * 1024;
+
+    /**
+     * Time after which a cached resource is reloaded, bounding how long a resource removed on another node is served.
+     */
+    private Duration timeToLive = Duration.ofMinutes(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+}
@@ -0,0 +1,93 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the local write-ahead journal of sent messages.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.journal")
+public class JournalConfig {
+
+    /**
+     * Whether sent messages are acknowledged once journaled and written to the database in the background.
+     */
+    private boolean enabled;
+
+    /**
+     * Path to write the journal files to.
+     */
+    private String target;
+
+    /**
+     * Size in bytes every journal file is preallocated with.
+     */
+    private int fileSize = 64 * 1024 * 1024;
+
+    /**
+     * Maximum time appended messages wait for the next batched fsync.
+     */
+    private Duration syncInterval = Duration.ofMillis(5);
+
+    /**
+     * Maximum amount of messages written to the database per transaction.
+     */
+    private int replayBatchSize = 256;
+
+    /**
+     * Delay between writing the journaled messages to the database.
+     */
+    private Duration replayInterval = Duration.ofMillis(100);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public int getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(int fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    public void setSyncInterval(Duration syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    public int getReplayBatchSize() {
+        return replayBatchSize;
+    }
+
+    public void setReplayBatchSize(int replayBatchSize) {
+        this.replayBatchSize = replayBatchSize;
+    }
+
+    public Duration getReplayInterval() {
+        return replayInterval;
+    }
+
+    public void setReplayInterval(Duration replayInterval) {
+        this.replayInterval = replayInterval;
+    }
+
+}
@@ -0,0 +1,39 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for compressing the contents of stored messages.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.message-compression")
+public class MessageCompressionConfig {
+
+    /**
+     * Whether existing messages should be rewritten in the background to compress their content.
+     */
+    private boolean migrationEnabled = true;
+
+    /**
+     * Amount of messages rewritten per transaction by the migration.
+     */
+    private int batchSize = 500;
+
+    public boolean isMigrationEnabled() {
+        return migrationEnabled;
+    }
+
+    public void setMigrationEnabled(boolean migrationEnabled) {
+        this.migrationEnabled = migrationEnabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+}
@@ -0,0 +1,106 @@
+package edu.hm.chat.config;
+
+import edu.hm.chat.persistence.MessageTableUnavailableException;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the message store.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.message-store")
+public class MessageStoreConfig {
+
+    /**
+     * Type of the message store to use, either "jpa" or "log".
+     */
+    private String type = "jpa";
+
+    /**
+     * ID of this node, between 0 and 1023, used to generate message IDs unique across nodes.
+     */
+    private int nodeId;
+
+    /**
+     * Path to write the log segments of the log message store to.
+     */
+    private String target;
+
+    /**
+     * Size in bytes after which a log segment is sealed and a new one started.
+     */
+    private long segmentSize = 16 * 1024 * 1024;
+
+    /**
+     * Every how many records an entry is added to the sparse offset index of a log segment.
+     */
+    private int indexInterval = 64;
+
+    /**
+     * Maximum time appended records wait for the next batched fsync.
+     */
+    private Duration syncInterval = Duration.ofMillis(5);
+
+    /**
+     * Make sure the messages are kept in the database, for features reading or writing the message table directly.
+     *
+     * @param feature working on the message table, named in the error
+     * @throws MessageTableUnavailableException in case the log message store is in use
+     */
+    public void requireDatabase(String feature) {
+        if ("log".equals(type)) {
+            throw new MessageTableUnavailableException(feature);
+        }
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    public void setIndexInterval(int indexInterval) {
+        this.indexInterval = indexInterval;
+    }
+
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    public void setSyncInterval(Duration syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+}
@@ -0,0 +1,26 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for purging deleted chats and users in the background.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.purge")
+public class PurgeConfig {
+
+    /**
+     * Maximum amount of messages deleted per statement (and transaction).
+     */
+    private int chunkSize = 5000;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+}
@@ -3,6 +3,8 @@ package edu.hm.chat.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * Configuration for the resource upload.
  */
@@ -20,6 +22,76 @@ public class ResourceUploadConfig {
      */
     private int maxFilesPerUser;
 
+    /**
+     * Maximum total size in bytes of the files per user.
+     */
+    private long maxBytesPerUser = 100 * 1024 * 1024;
+
+    /**
+     * Maximum size of an uploaded file in bytes, enforced while the upload is streamed.
+     */
+    private long maxFileSize = 5 * 1024 * 1024;
+
+    /**
+     * Maximum size of a whole upload request in bytes, enforced while the upload is streamed.
+     */
+    private long maxRequestSize = 10 * 1024 * 1024;
+
+    /**
+     * Whether resources stored before deduplication should be moved into blobs in the background.
+     */
+    private boolean deduplicationEnabled = true;
+
+    /**
+     * Amount of resources deduplicated per batch.
+     */
+    private int deduplicationBatchSize = 100;
+
+    /**
+     * Whether blobs stored in the flat layout should be moved into the sharded layout in the background.
+     */
+    private boolean layoutMigrationEnabled = true;
+
+    /**
+     * Amount of blobs moved into the sharded layout per run of the migration.
+     */
+    private int layoutMigrationBatchSize = 1000;
+
+    /**
+     * Whether the per-user usage counters are recounted from the resources periodically.
+     */
+    private boolean usageReconciliationEnabled = true;
+
+    /**
+     * Width of the user ID ranges recounted per transaction.
+     */
+    private int usageReconciliationBatchSize = 1000;
+
+    /**
+     * Whether files and rows of the resource storage which lost their counterpart are swept periodically.
+     */
+    private boolean orphanSweepEnabled = true;
+
+    /**
+     * Amount of files and rows checked per batch of the sweep.
+     */
+    private int orphanSweepBatchSize = 1000;
+
+    /**
+     * Minimum age of a file or blob before it is considered orphaned, as uploads in progress lack their rows for a moment.
+     */
+    private Duration orphanGracePeriod = Duration.ofHours(1);
+
+    /**
+     * Time orphaned files are kept in quarantine before they are deleted.
+     */
+    private Duration quarantineRetention = Duration.ofDays(7);
+
+    /**
+     * Whether text-like content is stored compressed.
+     */
+    private boolean compressionEnabled = true;
+
     public String getUploadTarget() {
         return uploadTarget;
     }
@@ -36,4 +108,116 @@ public class ResourceUploadConfig {
         this.maxFilesPerUser = maxFilesPerUser;
     }
 
+    public long getMaxBytesPerUser() {
+        return maxBytesPerUser;
+    }
+
+    public void setMaxBytesPerUser(long maxBytesPerUser) {
+        this.maxBytesPerUser = maxBytesPerUser;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public long getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(long maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public boolean isDeduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    public void setDeduplicationEnabled(boolean deduplicationEnabled) {
+        this.deduplicationEnabled = deduplicationEnabled;
+    }
+
+    public int getDeduplicationBatchSize() {
+        return deduplicationBatchSize;
+    }
+
+    public void setDeduplicationBatchSize(int deduplicationBatchSize) {
+        this.deduplicationBatchSize = deduplicationBatchSize;
+    }
+
+    public boolean isLayoutMigrationEnabled() {
+        return layoutMigrationEnabled;
+    }
+
+    public void setLayoutMigrationEnabled(boolean layoutMigrationEnabled) {
+        this.layoutMigrationEnabled = layoutMigrationEnabled;
+    }
+
+    public int getLayoutMigrationBatchSize() {
+        return layoutMigrationBatchSize;
+    }
+
+    public void setLayoutMigrationBatchSize(int layoutMigrationBatchSize) {
+        this.layoutMigrationBatchSize = layoutMigrationBatchSize;
+    }
+
+    public boolean isUsageReconciliationEnabled() {
+        return usageReconciliationEnabled;
+    }
+
+    public void setUsageReconciliationEnabled(boolean usageReconciliationEnabled) {
+        this.usageReconciliationEnabled = usageReconciliationEnabled;
+    }
+
+    public int getUsageReconciliationBatchSize() {
+        return usageReconciliationBatchSize;
+    }
+
+    public void setUsageReconciliationBatchSize(int usageReconciliationBatchSize) {
+        this.usageReconciliationBatchSize = usageReconciliationBatchSize;
+    }
+
+    public boolean isOrphanSweepEnabled() {
+        return orphanSweepEnabled;
+    }
+
+    public void setOrphanSweepEnabled(boolean orphanSweepEnabled) {
+        this.orphanSweepEnabled = orphanSweepEnabled;
+    }
+
+    public int getOrphanSweepBatchSize() {
+        return orphanSweepBatchSize;
+    }
+
+    public void setOrphanSweepBatchSize(int orphanSweepBatchSize) {
+        this.orphanSweepBatchSize = orphanSweepBatchSize;
+    }
+
+    public Duration getOrphanGracePeriod() {
+        return orphanGracePeriod;
+    }
+
+    public void setOrphanGracePeriod(Duration orphanGracePeriod) {
+        this.orphanGracePeriod = orphanGracePeriod;
+    }
+
+    public Duration getQuarantineRetention() {
+        return quarantineRetention;
+    }
+
+    public void setQuarantineRetention(Duration quarantineRetention) {
+        this.quarantineRetention = quarantineRetention;
+    }
+
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
 }
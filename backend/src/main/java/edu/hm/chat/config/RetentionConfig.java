@@ -0,0 +1,54 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for expiring messages of chats with a retention.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.retention")
+public class RetentionConfig {
+
+    /**
+     * Whether messages of chats with a retention should expire.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Resolution of the expiry, messages expire at most this late.
+     */
+    private Duration tick = Duration.ofSeconds(1);
+
+    /**
+     * Maximum amount of messages removed per transaction.
+     */
+    private int batchSize = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getTick() {
+        return tick;
+    }
+
+    public void setTick(Duration tick) {
+        this.tick = tick;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+}
@@ -0,0 +1,106 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the streaming read path serving chat histories and chat listings.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.streaming-read")
+public class StreamingReadConfig {
+
+    /**
+     * Whether the streaming read path is enabled.
+     */
+    private boolean enabled;
+
+    /**
+     * Maximum amount of connections of the dedicated connection pool.
+     */
+    private int poolSize = 4;
+
+    /**
+     * Maximum time to wait for a connection of the dedicated pool.
+     */
+    private Duration connectionTimeout = Duration.ofSeconds(5);
+
+    /**
+     * Amount of rows fetched per query, the connection is returned to the pool between the pages.
+     */
+    private int pageSize = 256;
+
+    /**
+     * Maximum amount of responses streamed concurrently, further requests are rejected until one finished.
+     */
+    private int maxStreams = 256;
+
+    /**
+     * Maximum time a response may take to be streamed to the client.
+     */
+    private Duration streamTimeout = Duration.ofMinutes(5);
+
+    /**
+     * Maximum amount of messages streamed per request.
+     */
+    private int maxMessages = 5000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Duration getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(Duration connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    public Duration getStreamTimeout() {
+        return streamTimeout;
+    }
+
+    public void setStreamTimeout(Duration streamTimeout) {
+        this.streamTimeout = streamTimeout;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+}
@@ -0,0 +1,107 @@
+package edu.hm.chat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for the downscaled variants of uploaded images.
+ */
+@Component
+@ConfigurationProperties(prefix = "edu.hm.chat.thumbnail")
+public class ThumbnailConfig {
+
+    /**
+     * Whether variants are produced in the background after an image has been uploaded.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Maximum edge lengths in pixels of the produced variants, the values accepted by the size parameter of downloads.
+     */
+    private List<Integer> sizes = List.of(64, 256, 1024);
+
+    /**
+     * Amount of threads decoding and scaling images.
+     */
+    private int poolSize = 2;
+
+    /**
+     * Maximum amount of images waiting to be processed, further uploads get their variants lazily.
+     */
+    private int queueCapacity = 64;
+
+    /**
+     * Maximum amount of pixels of a decoded image, larger images are subsampled while decoding.
+     */
+    private long maxDecodedPixels = 16 * 1024 * 1024;
+
+    /**
+     * Quality of JPEG encoded variants between 0 and 1.
+     */
+    private float jpegQuality = 0.85f;
+
+    /**
+     * Maximum time a download waits for a variant which is produced lazily.
+     */
+    private Duration lazyTimeout = Duration.ofSeconds(10);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<Integer> getSizes() {
+        return sizes;
+    }
+
+    public void setSizes(List<Integer> sizes) {
+        this.sizes = sizes;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getMaxDecodedPixels() {
+        return maxDecodedPixels;
+    }
+
+    public void setMaxDecodedPixels(long maxDecodedPixels) {
+        this.maxDecodedPixels = maxDecodedPixels;
+    }
+
+    public float getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setJpegQuality(float jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    public Duration getLazyTimeout() {
+        return lazyTimeout;
+    }
+
+    public void setLazyTimeout(Duration lazyTimeout) {
+        this.lazyTimeout = lazyTimeout;
+    }
+
+}
@@ -36,6 +36,11 @@ public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer
     private static final String USER_DESTINATION_PREFIX = "/user";
     public static String USER_DESTINATION = "/queue/specific-user";
 
+    /**
+     * Destination of events about chats, like expired messages, below the user destination.
+     */
+    public static final String USER_EVENT_DESTINATION = USER_DESTINATION + "/events";
+
     @Autowired
     private StompUserService stompUserService;
 
@@ -1,24 +1,28 @@
 package edu.hm.chat.controller;
 
+import edu.hm.chat.persistence.MessageStore;
 import edu.hm.chat.persistence.dao.ChatRepository;
-import edu.hm.chat.persistence.dao.MessageRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
 import edu.hm.chat.persistence.model.Chat;
 import edu.hm.chat.persistence.model.Message;
 import edu.hm.chat.persistence.model.Role;
 import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.CacheEvictionService;
+import edu.hm.chat.service.ChatActivityService;
+import edu.hm.chat.service.ChatService;
+import edu.hm.chat.service.model.RecentChat;
 import edu.hm.chat.service.model.StompMessage;
+import edu.hm.chat.service.purge.PurgeService;
+import edu.hm.chat.service.retention.RetentionService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
-import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import javax.transaction.Transactional;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
@@ -28,6 +32,16 @@ import java.util.Optional;
 @RequestMapping("/api/chats")
 public class ChatController {
 
+	/**
+	 * Amount of messages delivered per page of the chat history.
+	 */
+	private static final int MESSAGE_PAGE_SIZE = 20;
+
+	/**
+	 * Maximum amount of chats listed as recent chats.
+	 */
+	private static final int MAX_RECENT_CHATS = 100;
+
 	@Autowired
 	private UserRepository userRepository;
 
@@ -35,11 +49,27 @@ public class ChatController {
 	private ChatRepository chatRepository;
 
 	@Autowired
-	private MessageRepository messageRepository;
+	private MessageStore messageStore;
+
+	@Autowired
+	private CacheEvictionService cacheEvictionService;
+
+	@Autowired
+	private PurgeService purgeService;
+
+	@Autowired
+	private ChatActivityService chatActivityService;
+
+	@Autowired
+	private ChatService chatService;
+
+	@Autowired
+	private RetentionService retentionService;
 
 
 	@PreAuthorize("hasAuthority('READ_CHAT')")
 	@GetMapping
+	@Transactional(readOnly = true)
 	public ResponseEntity<Iterable<Chat>> getAll(Principal principal) {
 		User currentUser = userRepository.findByEmail(principal.getName());
 		Iterable<Chat> chats = chatRepository.findAll();
@@ -52,8 +82,21 @@ public class ChatController {
 		return ResponseEntity.ok(containingChats);
 	}
 
+	@PreAuthorize("hasAuthority('READ_CHAT')")
+	@GetMapping("/recent")
+	@Transactional(readOnly = true)
+	public ResponseEntity<List<RecentChat>> getRecent(@RequestParam(defaultValue = "30") Integer limit, Principal principal) {
+		if (limit < 0) {
+			return ResponseEntity.badRequest().build();
+		}
+
+		User currentUser = userRepository.findByEmail(principal.getName());
+		return ResponseEntity.ok(chatActivityService.getRecent(currentUser, Math.min(limit, MAX_RECENT_CHATS)));
+	}
+
 	@PreAuthorize("hasAuthority('READ_CHAT')")
 	@GetMapping("/{id}")
+	@Transactional(readOnly = true)
 	public ResponseEntity<Chat> get(@PathVariable Long id, Principal principal) {
 		User currentUser = userRepository.findByEmail(principal.getName());
 		var chat = chatRepository.findById(id);
@@ -68,7 +111,7 @@ public class ChatController {
 
 	@PreAuthorize("hasAuthority('READ_CHAT')")
 	@GetMapping("/{id}/messages")
-	@Transactional
+	@Transactional(readOnly = true)
 	public ResponseEntity<List<StompMessage>> getChatMessages(@PathVariable Long id, @RequestParam Integer page, Principal principal) {
 		List<StompMessage> messages = new ArrayList<>();
 		Optional<Chat> currentChat = chatRepository.findById(id);
@@ -79,14 +122,15 @@ public class ChatController {
 		if (!currentChat.get().getMembers().contains(currentUser))
 			return ResponseEntity.badRequest().build();
 
-		Pageable pageable = PageRequest.of(page, 20, Sort.by("timestamp").descending());
-		for (Message message : messageRepository.findByChat(currentChat.get(), pageable)) {
-			messages.add(new StompMessage(message.getAuthor().getId().intValue(),
+		for (Message message : messageStore.findPage(currentChat.get(), page, MESSAGE_PAGE_SIZE)) {
+			StompMessage stompMessage = new StompMessage(message.getAuthor().getId().intValue(),
 					message.getTimestamp(),
 					message.getChat().getId().intValue(),
 					null,
 					message.getContent(),
-					message.getType()));
+					message.getType());
+			stompMessage.setId(message.getId());
+			messages.add(stompMessage);
 		}
 
 		messages.sort(new StompMessage.StompMessageSortingComparator());
@@ -95,6 +139,7 @@ public class ChatController {
 
 	@PreAuthorize("hasAuthority('READ_CHAT')")
 	@GetMapping("/for/{userId}")
+	@Transactional(readOnly = true)
 	public ResponseEntity<Iterable<Chat>> getForMember(@PathVariable Long userId, Principal principal) {
 		User currentUser = userRepository.findByEmail(principal.getName());
 		var user = userRepository.findById(userId);
@@ -111,6 +156,7 @@ public class ChatController {
 
 	@PreAuthorize("hasAuthority('READ_CHAT')")
 	@GetMapping("/find/{search}")
+	@Transactional(readOnly = true)
 	public ResponseEntity<Iterable<Chat>> find(@PathVariable String search, Principal principal) {
 		var result = new ArrayList<Chat>();
 		for (var chat : chatRepository.findAll()) {
@@ -143,6 +189,7 @@ public class ChatController {
 		chat.setOwner(currentUser);
 
 		Chat createdChat = chatRepository.save(chat);
+		chatActivityService.recordCreation(createdChat);
 		return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentRequest().path("/{id}")
 				.buildAndExpand(createdChat.getId()).toUri())
 				.build();
@@ -151,16 +198,23 @@ public class ChatController {
 	@PreAuthorize("hasAuthority('WRITE_CHAT')")
 	@PutMapping("/{id}")
 	public ResponseEntity<?> update(@PathVariable Long id, @RequestBody Chat chat, Principal principal) {
-		return chatRepository.findById(id).map((found) -> {
+		if (chat.getRetention() != null && chat.getRetention() <= 0) {
+			return ResponseEntity.badRequest().body("Retention must be positive");
+		}
+
+		return chatService.update(() -> chatRepository.findById(id).map((found) -> {
 			User currentUser = userRepository.findByEmail(principal.getName());
 			if (found.getOwner().getId().equals(currentUser.getId())) {
 				found.setName(chat.getName());
+				found.setRetention(chat.getRetention());
 				chatRepository.save(found);
+				cacheEvictionService.evictChat(id);
+				retentionService.schedule(found);
 				return ResponseEntity.noContent().build();
 			} else {
 			    return ResponseEntity.status(403).build();
             }
-		}).orElseGet(() -> ResponseEntity.notFound().build());
+		}).orElseGet(() -> ResponseEntity.notFound().build()));
 	}
 
 	@PreAuthorize("hasAuthority('WRITE_CHAT')")
@@ -179,23 +233,26 @@ public class ChatController {
 	 * @return response
 	 */
 	public ResponseEntity<?> deleteForUser(Long chatId, User user) {
-		return chatRepository.findById(chatId).map((chat) -> {
+		return chatService.update(() -> chatRepository.findById(chatId).map((chat) -> {
 			boolean isOwner = chat.getOwner().getId().equals(user.getId());
+			boolean isLastMember = chat.getMembers().stream().allMatch(user::equals);
 
-			chat.getMembers().remove(user);
-
-			if (chat.getMembers().isEmpty()) {
-				chatRepository.delete(chat);
+			if (isLastMember) {
+				// Members are removed when purging, the chat must not be modified before marking it deleted
+				purgeService.deleteChat(chat);
 			} else {
+				chat.getMembers().remove(user);
 				if (isOwner) {
-					chat.setOwner(chat.getMembers().get(0));
+					chat.setOwner(chat.getMembers().iterator().next());
 				}
 
 				chatRepository.save(chat);
+				chatActivityService.removeMember(chatId, user.getId());
+				cacheEvictionService.evictChat(chatId);
 			}
 
 			return ResponseEntity.ok().build();
-		}).orElseGet(() -> ResponseEntity.notFound().build());
+		}).orElseGet(() -> ResponseEntity.notFound().build()));
 	}
 
 	@PreAuthorize("hasAuthority('WRITE_CHAT')")
@@ -210,10 +267,15 @@ public class ChatController {
 		}
 
 		return chatRepository.findById(id).map((chat) -> {
-			chatRepository.delete(chat);
+			purgeService.deleteChat(chat);
 
 			return ResponseEntity.ok().build();
 		}).orElseGet(() -> ResponseEntity.notFound().build());
 	}
 
+	@ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+	public ResponseEntity<?> handleConflict(ObjectOptimisticLockingFailureException e) {
+		return ResponseEntity.status(HttpStatus.CONFLICT).body("The chat has been modified concurrently, please try again");
+	}
+
 }
@@ -3,6 +3,7 @@ package edu.hm.chat.controller;
 import edu.hm.chat.persistence.dao.RoleRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
 import edu.hm.chat.persistence.model.Role;
+import edu.hm.chat.service.CacheEvictionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -21,6 +22,9 @@ public class RoleController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CacheEvictionService cacheEvictionService;
+
     @PreAuthorize("hasAuthority('READ_ROLE')")
     @GetMapping
     public ResponseEntity<Iterable<Role>> getAll() {
@@ -45,6 +49,7 @@ public class RoleController {
             u.setRoles(roleList);
 
             userRepository.save(u);
+            cacheEvictionService.evictUser(userId);
             return ResponseEntity.ok().build();
         }).orElseGet(() -> ResponseEntity.notFound().build());
     }
@@ -0,0 +1,188 @@
+package edu.hm.chat.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.hm.chat.config.StreamingReadConfig;
+import edu.hm.chat.persistence.stream.RowSink;
+import edu.hm.chat.persistence.stream.StreamingReadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controller streaming chat histories and chat listings as newline delimited JSON.
+ * <p>
+ * Mounted on the same paths as the {@link ChatController}, it is selected by requesting
+ * {@value #APPLICATION_NDJSON}. Rows are fetched page by page from a dedicated connection pool and written
+ * by a bounded pool of streaming threads, the request thread is released while streaming.
+ * Requests beyond the configured amount of concurrent streams are rejected with {@code 503}, so clients
+ * reconnecting all at once back off instead of queueing behind slow readers.
+ * Chat histories include the archived messages, like the paged endpoint.
+ */
+@RestController
+@RequestMapping("/api/chats")
+@ConditionalOnProperty(prefix = "edu.hm.chat.streaming-read", name = "enabled", havingValue = "true")
+public class StreamingChatController {
+
+    /**
+     * Logger for the controller.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingChatController.class);
+
+    /**
+     * Media type of newline delimited JSON.
+     */
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /**
+     * Configuration of the streaming read path.
+     */
+    private final StreamingReadConfig config;
+
+    /**
+     * Repository streaming the rows.
+     */
+    private final StreamingReadRepository streamingReadRepository;
+
+    /**
+     * Mapper used to serialize the rows.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Executor writing the streamed responses, with one thread per concurrent stream at most.
+     */
+    private final ThreadPoolExecutor executor;
+
+    public StreamingChatController(
+            StreamingReadConfig config,
+            StreamingReadRepository streamingReadRepository,
+            ObjectMapper objectMapper
+    ) {
+        this.config = config;
+        this.streamingReadRepository = streamingReadRepository;
+        this.objectMapper = objectMapper;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                0,
+                config.getMaxStreams(),
+                60,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "streaming-read-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    @PreAuthorize("hasAuthority('READ_CHAT')")
+    @GetMapping(produces = APPLICATION_NDJSON)
+    public ResponseEntity<ResponseBodyEmitter> streamAll(Principal principal) {
+        Optional<Long> currentUserId = streamingReadRepository.findUserId(principal.getName());
+        if (currentUserId.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ndjson((sink) -> streamingReadRepository.streamChats(currentUserId.get(), sink::accept));
+    }
+
+    @PreAuthorize("hasAuthority('READ_CHAT')")
+    @GetMapping(value = "/{id}/messages", produces = APPLICATION_NDJSON)
+    public ResponseEntity<ResponseBodyEmitter> streamChatMessages(
+            @PathVariable Long id,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer limit,
+            Principal principal
+    ) {
+        Optional<Long> currentUserId = streamingReadRepository.findUserId(principal.getName());
+        if (currentUserId.isEmpty() || (limit != null && limit < 0)) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!streamingReadRepository.isMember(id, currentUserId.get())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        long until = before != null ? before : Long.MAX_VALUE;
+        int count = limit != null ? Math.min(limit, config.getMaxMessages()) : config.getMaxMessages();
+
+        return ndjson((sink) -> streamingReadRepository.streamMessages(id, until, count, sink::accept));
+    }
+
+    /**
+     * Stream the rows passed to the sink of the body as response, unless too many responses are streamed already.
+     */
+    private ResponseEntity<ResponseBodyEmitter> ndjson(StreamedBody body) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(config.getStreamTimeout().toMillis());
+        try {
+            executor.execute(() -> {
+                try {
+                    body.write(writer(emitter));
+                    emitter.complete();
+                } catch (IOException e) {
+                    LOGGER.debug("Streaming response has been aborted", e);
+                    emitter.completeWithError(e);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Could not stream response", e);
+                    emitter.completeWithError(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(emitter);
+    }
+
+    /**
+     * Create a sink sending every row as a line of JSON to the passed emitter.
+     */
+    private <T> RowSink<T> writer(ResponseBodyEmitter emitter) {
+        return (row) -> {
+            byte[] json = objectMapper.writeValueAsBytes(row);
+            byte[] line = Arrays.copyOf(json, json.length + 1);
+            line[json.length] = '\n';
+
+            emitter.send(line, MediaType.APPLICATION_OCTET_STREAM);
+        };
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Body of a streamed response, passing its rows to a sink.
+     */
+    @FunctionalInterface
+    private interface StreamedBody {
+
+        void write(RowSink<Object> sink) throws IOException;
+
+    }
+
+}
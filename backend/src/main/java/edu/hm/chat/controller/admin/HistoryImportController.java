@@ -0,0 +1,70 @@
+package edu.hm.chat.controller.admin;
+
+import edu.hm.chat.controller.StreamingChatController;
+import edu.hm.chat.persistence.MessageTableUnavailableException;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Role;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.importing.HistoryImportService;
+import edu.hm.chat.service.importing.ImportRunningException;
+import edu.hm.chat.service.model.ImportReport;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+
+/**
+ * Controller importing chat histories in bulk.
+ */
+@RestController
+@RequestMapping("/api/admin/import")
+public class HistoryImportController {
+
+    /**
+     * Repository dealing with users.
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Service importing the histories.
+     */
+    private final HistoryImportService historyImportService;
+
+    public HistoryImportController(UserRepository userRepository, HistoryImportService historyImportService) {
+        this.userRepository = userRepository;
+        this.historyImportService = historyImportService;
+    }
+
+    /**
+     * Import the newline delimited JSON request body.
+     * Sending the same input again under the same name resumes an interrupted import.
+     *
+     * @param name  of the import
+     * @param input request body to import
+     * @return report of the import
+     */
+    @PreAuthorize("hasAuthority('WRITE_USER') and hasAuthority('WRITE_CHAT')")
+    @PostMapping(value = "/{name}", consumes = StreamingChatController.APPLICATION_NDJSON)
+    public ResponseEntity<?> importHistory(@PathVariable String name, InputStream input, Principal principal) throws IOException {
+        User currentUser = userRepository.findByEmail(principal.getName());
+
+        // Only the administrator is able to import histories
+        boolean isAdmin = currentUser.getRoles().stream().map(Role::getName).anyMatch((rn) -> rn.equals("ROLE_ADMIN"));
+        if (!isAdmin) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only an administrator is able to import chat histories");
+        }
+
+        ImportReport report = historyImportService.importHistory(name, input);
+        return ResponseEntity.ok(report);
+    }
+
+    @ExceptionHandler({ImportRunningException.class, MessageTableUnavailableException.class})
+    public ResponseEntity<?> handleConflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+}
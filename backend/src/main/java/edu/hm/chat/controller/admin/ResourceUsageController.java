@@ -0,0 +1,83 @@
+package edu.hm.chat.controller.admin;
+
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.ResourceUsage;
+import edu.hm.chat.persistence.model.Role;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.ResourceUsageService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+
+/**
+ * Controller giving administrators insight into the usage of the resource storage.
+ */
+@RestController
+@RequestMapping("/api/admin/resource-usage")
+public class ResourceUsageController {
+
+    /**
+     * Maximum amount of users listed at once.
+     */
+    private static final int MAX_LIMIT = 1000;
+
+    /**
+     * Repository dealing with users.
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Service maintaining the usage.
+     */
+    private final ResourceUsageService resourceUsageService;
+
+    public ResourceUsageController(UserRepository userRepository, ResourceUsageService resourceUsageService) {
+        this.userRepository = userRepository;
+        this.resourceUsageService = resourceUsageService;
+    }
+
+    /**
+     * Get the users using the most bytes of the resource storage.
+     *
+     * @param limit maximum amount of users to get
+     * @return usages in descending order of their size
+     */
+    @PreAuthorize("hasAuthority('READ_RESOURCE_INFO')")
+    @GetMapping("/top")
+    public ResponseEntity<?> getTopConsumers(@RequestParam(defaultValue = "20") int limit, Principal principal) {
+        if (!isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only an administrator is able to see the usage of other users");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("The limit has to be between 1 and " + MAX_LIMIT);
+        }
+
+        return ResponseEntity.ok(resourceUsageService.getTopConsumers(limit));
+    }
+
+    /**
+     * Get the usage of a single user.
+     *
+     * @param userId of the user
+     * @return the usage
+     */
+    @PreAuthorize("hasAuthority('READ_RESOURCE_INFO')")
+    @GetMapping("/{userId}")
+    public ResponseEntity<?> getUsage(@PathVariable Long userId, Principal principal) {
+        if (!isAdmin(principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Only an administrator is able to see the usage of other users");
+        }
+
+        ResourceUsage usage = resourceUsageService.getUsage(userId);
+        return ResponseEntity.ok(usage);
+    }
+
+    private boolean isAdmin(Principal principal) {
+        User currentUser = userRepository.findByEmail(principal.getName());
+        return currentUser.getRoles().stream().map(Role::getName).anyMatch((rn) -> rn.equals("ROLE_ADMIN"));
+    }
+
+}
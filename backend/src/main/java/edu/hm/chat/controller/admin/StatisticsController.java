@@ -0,0 +1,129 @@
+package edu.hm.chat.controller.admin;
+
+import edu.hm.chat.service.journal.JournalReplayer;
+import edu.hm.chat.service.journal.MessageJournal;
+import edu.hm.chat.service.purge.PurgeService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Controller exposing runtime statistics for tuning.
+ */
+@RestController
+@RequestMapping("/api/statistics")
+public class StatisticsController {
+
+    /**
+     * Hibernate statistics.
+     */
+    private final Statistics statistics;
+
+    /**
+     * Service purging deleted chats and users.
+     */
+    private final PurgeService purgeService;
+
+    /**
+     * Local journal of sent messages, only available when enabled.
+     */
+    private final ObjectProvider<MessageJournal> messageJournal;
+
+    /**
+     * Service writing journaled messages to the database, only available when enabled.
+     */
+    private final ObjectProvider<JournalReplayer> journalReplayer;
+
+    public StatisticsController(
+            EntityManagerFactory entityManagerFactory,
+            PurgeService purgeService,
+            ObjectProvider<MessageJournal> messageJournal,
+            ObjectProvider<JournalReplayer> journalReplayer
+    ) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.purgeService = purgeService;
+        this.messageJournal = messageJournal;
+        this.journalReplayer = journalReplayer;
+    }
+
+    /**
+     * Get the statistics of the second-level and query cache regions.
+     *
+     * @return statistics per cache region
+     */
+    @PreAuthorize("hasAuthority('READ_USER')")
+    @GetMapping("/cache")
+    public ResponseEntity<Map<String, Map<String, Long>>> getCacheStatistics() {
+        Map<String, Map<String, Long>> result = new LinkedHashMap<>();
+
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(regionName);
+
+            Map<String, Long> regionResult = new LinkedHashMap<>();
+            regionResult.put("hits", region.getHitCount());
+            regionResult.put("misses", region.getMissCount());
+            regionResult.put("puts", region.getPutCount());
+            result.put(regionName, regionResult);
+        }
+
+        Map<String, Long> queryResult = new LinkedHashMap<>();
+        queryResult.put("hits", statistics.getQueryCacheHitCount());
+        queryResult.put("misses", statistics.getQueryCacheMissCount());
+        queryResult.put("puts", statistics.getQueryCachePutCount());
+        result.put("query", queryResult);
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Get the progress of purging deleted chats and users.
+     *
+     * @return running purges and the amount of completed ones
+     */
+    @PreAuthorize("hasAuthority('READ_USER')")
+    @GetMapping("/purges")
+    public ResponseEntity<Map<String, Object>> getPurgeStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("running", purgeService.getRunning());
+        result.put("completed", purgeService.getCompleted());
+
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * Get the statistics of the local message journal.
+     *
+     * @return appended and replayed records as well as the replay lag in bytes
+     */
+    @PreAuthorize("hasAuthority('READ_USER')")
+    @GetMapping("/journal")
+    public ResponseEntity<Map<String, Long>> getJournalStatistics() {
+        MessageJournal journal = messageJournal.getIfAvailable();
+        JournalReplayer replayer = journalReplayer.getIfAvailable();
+        if (journal == null || replayer == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("appended", journal.getAppendedCount());
+        result.put("replayed", replayer.getReplayedCount());
+        result.put("writePosition", journal.getWritePosition());
+        result.put("durablePosition", journal.getDurablePosition());
+        result.put("replayedPosition", replayer.getReplayedPosition());
+        result.put("lag", journal.getDurablePosition() - replayer.getReplayedPosition());
+        result.put("sizeOnDisk", journal.getSizeOnDisk());
+
+        return ResponseEntity.ok(result);
+    }
+
+}
@@ -0,0 +1,252 @@
+package edu.hm.chat.controller.res;
+
+import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.ResourceUsage;
+import edu.hm.chat.persistence.model.Role;
+import edu.hm.chat.persistence.model.UploadSession;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.ChunkedUploadService;
+import edu.hm.chat.service.ResourceUsageService;
+import edu.hm.chat.service.model.UploadStatus;
+import edu.hm.chat.service.thumbnail.ThumbnailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Principal;
+import java.util.Optional;
+
+/**
+ * Controller dealing with resumable uploads of large files, sent in chunks.
+ * <p>
+ * An upload is initiated with the size of the file, which is then sent in chunks of the announced chunk size.
+ * Chunks may be sent in parallel and in any order, failed chunks are simply sent again.
+ * The missing chunks of an interrupted upload can be looked up to resume it.
+ * Once all chunks have been received, completing the upload stores the file as resource.
+ */
+@RestController
+@RequestMapping("/api/resource/uploads")
+public class ChunkedUploadController {
+
+    /**
+     * Logger for the controller.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploadController.class);
+
+    /**
+     * Message sent when an upload would exceed the byte quota of the user.
+     */
+    private static final String QUOTA_EXCEEDED = "User exceeded maximum total size of uploads";
+
+    /**
+     * Service assembling the uploads.
+     */
+    private final ChunkedUploadService chunkedUploadService;
+
+    /**
+     * Repository dealing with users.
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Configuration for the upload.
+     */
+    private final ResourceUploadConfig config;
+
+    /**
+     * Service maintaining the per-user usage of the resource storage.
+     */
+    private final ResourceUsageService resourceUsageService;
+
+    /**
+     * Service producing downscaled variants of images.
+     */
+    private final ThumbnailService thumbnailService;
+
+    public ChunkedUploadController(
+            ChunkedUploadService chunkedUploadService,
+            UserRepository userRepository,
+            ResourceUploadConfig config,
+            ResourceUsageService resourceUsageService,
+            ThumbnailService thumbnailService
+    ) {
+        this.chunkedUploadService = chunkedUploadService;
+        this.userRepository = userRepository;
+        this.config = config;
+        this.resourceUsageService = resourceUsageService;
+        this.thumbnailService = thumbnailService;
+    }
+
+    /**
+     * Initiate an upload.
+     *
+     * @param name        original name of the file
+     * @param size        of the file in bytes
+     * @param contentType of the file, detected from the content if possible
+     * @param principal   who is initiating the request
+     * @return the state of the new upload, containing its ID and chunk size
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping
+    public ResponseEntity<?> initiate(
+            @RequestParam String name,
+            @RequestParam long size,
+            @RequestParam(required = false) String contentType,
+            Principal principal
+    ) {
+        User authenticatedUser = userRepository.findByEmail(principal.getName());
+
+        if (!isAdmin(authenticatedUser)) {
+            // Check whether the user is allowed to upload another file of that size
+            ResourceUsage usage = resourceUsageService.getUsage(authenticatedUser.getId());
+            if (usage.getFileCount() >= config.getMaxFilesPerUser()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body("User exceeded maximum file count for uploads");
+            }
+            if (usage.getTotalBytes() + size > config.getMaxBytesPerUser()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(QUOTA_EXCEEDED);
+            }
+        }
+
+        try {
+            UploadStatus status = chunkedUploadService.initiate(authenticatedUser, name, contentType, size);
+
+            return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/resource/uploads/{id}")
+                    .buildAndExpand(status.getId()).toUri())
+                    .body(status);
+        } catch (IOException e) {
+            LOGGER.error("Could not initiate upload", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Could not initiate upload");
+        }
+    }
+
+    /**
+     * Get the state of an upload, listing the chunks still missing.
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getStatus(@PathVariable String id, Principal principal) {
+        Optional<UploadSession> session = chunkedUploadService.find(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isOwner(session.get(), principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        return ResponseEntity.ok(chunkedUploadService.getStatus(session.get()));
+    }
+
+    /**
+     * Upload a chunk, sent as raw request body.
+     *
+     * @param id      of the upload
+     * @param index   of the chunk, starting at 0
+     * @param request containing the chunk
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<?> writeChunk(@PathVariable String id, @PathVariable int index, HttpServletRequest request, Principal principal) {
+        Optional<UploadSession> session = chunkedUploadService.find(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isOwner(session.get(), principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try (InputStream in = request.getInputStream()) {
+            chunkedUploadService.writeChunk(session.get(), index, in);
+
+            return ResponseEntity.noContent().build();
+        } catch (IOException e) {
+            LOGGER.error("Could not write chunk {} of upload {}", index, id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Could not write chunk");
+        }
+    }
+
+    /**
+     * Complete an upload whose chunks have all been received.
+     *
+     * @return response with the location of the new resource
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> complete(@PathVariable String id, Principal principal) {
+        Optional<UploadSession> session = chunkedUploadService.find(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        User authenticatedUser = userRepository.findByEmail(principal.getName());
+        if (!session.get().getOwnerId().equals(authenticatedUser.getId())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try {
+            Optional<ResourceInfo> info = chunkedUploadService.complete(session.get(), authenticatedUser, !isAdmin(authenticatedUser));
+            if (info.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(QUOTA_EXCEEDED);
+            }
+            thumbnailService.schedule(info.get());
+
+            return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/resource/{id}")
+                    .buildAndExpand(info.get().getResourceId()).toUri())
+                    .build();
+        } catch (IOException e) {
+            LOGGER.error("Could not complete upload {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Could not complete upload");
+        }
+    }
+
+    /**
+     * Abort an upload, discarding the chunks received so far.
+     */
+    @PreAuthorize("hasAuthority('UPLOAD_FILE')")
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abort(@PathVariable String id, Principal principal) {
+        Optional<UploadSession> session = chunkedUploadService.find(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!isOwner(session.get(), principal)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try {
+            chunkedUploadService.abort(session.get());
+
+            return ResponseEntity.ok().build();
+        } catch (IOException e) {
+            LOGGER.error("Could not abort upload {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Could not abort upload");
+        }
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<?> handleConflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<?> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private boolean isOwner(UploadSession session, Principal principal) {
+        return session.getOwnerId().equals(userRepository.findByEmail(principal.getName()).getId());
+    }
+
+    private static boolean isAdmin(User user) {
+        return user.getRoles().stream().map(Role::getName).anyMatch((rn) -> rn.equals("ROLE_ADMIN"));
+    }
+
+}
@@ -4,26 +4,41 @@ import edu.hm.chat.config.ResourceUploadConfig;
 import edu.hm.chat.persistence.dao.ResourceInfoRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
 import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.ResourceUsage;
+import edu.hm.chat.persistence.model.ResourceVariant;
 import edu.hm.chat.persistence.model.Role;
 import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.ContentSniffer;
+import edu.hm.chat.service.PendingImageGrants;
 import edu.hm.chat.service.ResourceStorageService;
+import edu.hm.chat.service.ResourceUsageService;
+import edu.hm.chat.service.cache.HotResourceCache;
+import edu.hm.chat.service.model.CachedResource;
+import edu.hm.chat.service.model.StoredBlob;
+import edu.hm.chat.service.thumbnail.ThumbnailService;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.FileUploadException;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
 import java.security.Principal;
-import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Controller dealing with the upload and retrieval of binary resources.
@@ -37,6 +52,16 @@ public class ResourceController {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(ResourceController.class);
 
+    /**
+     * Name of the multipart part holding the uploaded file.
+     */
+    private static final String FILE_FIELD = "file";
+
+    /**
+     * Message sent when an upload would exceed the byte quota of the user.
+     */
+    private static final String QUOTA_EXCEEDED = "User exceeded maximum total size of uploads";
+
     /**
      * Service used to store and retrieve resources.
      */
@@ -57,16 +82,44 @@ public class ResourceController {
      */
     private final ResourceUploadConfig config;
 
+    /**
+     * Service producing downscaled variants of images.
+     */
+    private final ThumbnailService thumbnailService;
+
+    /**
+     * Cache holding the content of frequently downloaded small resources.
+     */
+    private final HotResourceCache hotResourceCache;
+
+    /**
+     * Service maintaining the per-user usage of the resource storage.
+     */
+    private final ResourceUsageService resourceUsageService;
+
+    /**
+     * Permissions to view images of messages which have been journaled but not written to the database yet.
+     */
+    private final PendingImageGrants pendingImageGrants;
+
     public ResourceController(
             ResourceStorageService resourceStorageService,
             ResourceInfoRepository resourceInfoRepository,
             UserRepository userRepository,
-            ResourceUploadConfig config
+            ResourceUploadConfig config,
+            ThumbnailService thumbnailService,
+            HotResourceCache hotResourceCache,
+            ResourceUsageService resourceUsageService,
+            PendingImageGrants pendingImageGrants
     ) {
         this.resourceStorageService = resourceStorageService;
         this.resourceInfoRepository = resourceInfoRepository;
         this.userRepository = userRepository;
         this.config = config;
+        this.thumbnailService = thumbnailService;
+        this.hotResourceCache = hotResourceCache;
+        this.resourceUsageService = resourceUsageService;
+        this.pendingImageGrants = pendingImageGrants;
     }
 
     /**
@@ -74,6 +127,7 @@ public class ResourceController {
      */
     @PreAuthorize("hasAuthority('READ_RESOURCE_INFO')")
     @GetMapping
+    @Transactional(readOnly = true)
     public ResponseEntity<Iterable<ResourceInfo>> getAll(Principal principal) {
         User authenticatedUser = userRepository.findByEmail(principal.getName());
 
@@ -90,6 +144,7 @@ public class ResourceController {
      */
     @PreAuthorize("hasAuthority('READ_RESOURCE_INFO')")
     @GetMapping("/for/{userId}")
+    @Transactional(readOnly = true)
     public ResponseEntity<Iterable<ResourceInfo>> getForUser(@PathVariable Long userId, Principal principal) {
         User authenticatedUser = userRepository.findByEmail(principal.getName());
 
@@ -104,46 +159,87 @@ public class ResourceController {
     }
 
     /**
-     * Upload the passed file
+     * Upload the file passed in the "file" part of a multipart request.
+     * The request body is parsed incrementally and the file is streamed straight into the resource storage,
+     * without spooling it to a temporary file first. Size limits are enforced while streaming.
+     * Quotas are checked against the usage counter of the user, before and atomically with saving the resource.
      *
-     * @param file      to upload
+     * @param request   containing the multipart body
      * @param principal who is initiating the request
      * @return response
      */
     @PreAuthorize("hasAuthority('UPLOAD_FILE')")
     @PostMapping("/upload")
-    public ResponseEntity<String> upload(@RequestParam("file") MultipartFile file, Principal principal) {
+    public ResponseEntity<String> upload(HttpServletRequest request, Principal principal) {
         User authenticatedUser = userRepository.findByEmail(principal.getName());
 
         boolean isAdmin = authenticatedUser.getRoles().stream().map(Role::getName).anyMatch((rn) -> rn.equals("ROLE_ADMIN"));
+        long maxFileSize = config.getMaxFileSize();
         if (!isAdmin) {
             // Check whether the user is allowed to upload another file
-            int maxFileCount = config.getMaxFilesPerUser();
-
-            List<ResourceInfo> resourceInfos = resourceInfoRepository.findByOwnerId(authenticatedUser.getId());
-            if (resourceInfos.size() >= maxFileCount) {
+            ResourceUsage usage = resourceUsageService.getUsage(authenticatedUser.getId());
+            if (usage.getFileCount() >= config.getMaxFilesPerUser()) {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body("User exceeded maximum file count for uploads");
             }
-        }
 
-        try {
-            String contentType = file.getContentType();
-            long size = file.getSize();
-            String originalName = file.getOriginalFilename();
+            long remainingBytes = config.getMaxBytesPerUser() - usage.getTotalBytes();
+            if (remainingBytes <= 0) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(QUOTA_EXCEEDED);
+            }
+            maxFileSize = Math.min(maxFileSize, remainingBytes);
+        }
+        boolean limitedByQuota = maxFileSize < config.getMaxFileSize();
 
-            String fileName = resourceStorageService.store(file);
+        if (!ServletFileUpload.isMultipartContent(request)) {
+            return ResponseEntity.badRequest().body("Expected a multipart request");
+        }
 
-            ResourceInfo info = new ResourceInfo(fileName, authenticatedUser);
-            info.setContentType(contentType);
-            info.setOriginalName(originalName);
-            info.setSize(size);
-            info.setPublic(false);
+        ServletFileUpload upload = new ServletFileUpload();
+        upload.setFileSizeMax(maxFileSize);
+        upload.setSizeMax(config.getMaxRequestSize());
 
-            resourceInfoRepository.save(info);
+        try {
+            FileItemIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemStream item = items.next();
+                if (item.isFormField() || !item.getFieldName().equals(FILE_FIELD)) {
+                    continue; // Skipped while advancing to the next part
+                }
+
+                StoredBlob blob;
+                try (InputStream in = item.openStream()) {
+                    blob = resourceStorageService.store(in, item.getContentType());
+                }
+
+                String resourceId = UUID.randomUUID().toString();
+
+                ResourceInfo info = new ResourceInfo(resourceId, authenticatedUser);
+                info.setBlobHash(blob.getHash());
+                info.setContentEncoding(blob.getContentEncoding());
+                info.setContentType(ContentSniffer.resolveContentType(item.getContentType(), blob.getDetectedContentType()));
+                info.setOriginalName(item.getName());
+                info.setSize(blob.getSize());
+                info.setPublic(false);
+
+                if (!resourceUsageService.add(info, !isAdmin)) {
+                    resourceStorageService.release(blob.getHash());
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(QUOTA_EXCEEDED);
+                }
+                thumbnailService.schedule(info);
+
+                return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/resource/{id}")
+                        .buildAndExpand(resourceId).toUri())
+                        .build();
+            }
 
-            return ResponseEntity.created(ServletUriComponentsBuilder.fromCurrentContextPath().path("/api/resource/{id}")
-                    .buildAndExpand(fileName).toUri())
-                    .build();
+            return ResponseEntity.badRequest().body("Expected a file in the \"" + FILE_FIELD + "\" part");
+        } catch (FileUploadBase.FileUploadIOException | FileUploadBase.SizeLimitExceededException e) {
+            if (limitedByQuota && e.getCause() instanceof FileUploadBase.FileSizeLimitExceededException) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(QUOTA_EXCEEDED);
+            }
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("The uploaded file is too large");
+        } catch (FileUploadException e) {
+            return ResponseEntity.badRequest().body("Malformed multipart request");
         } catch (IOException e) {
             LOGGER.error("Could not upload file", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Could not upload file");
@@ -152,40 +248,100 @@ public class ResourceController {
 
     /**
      * Download a resource.
+     * Answers conditional requests with {@code 304} and range requests with partial content.
+     * Runs without a transaction, so no database connection is held while the content is transferred.
+     * Small resources are served from the {@link HotResourceCache}, public ones without touching the database.
      *
-     * @param id of the resource
-     * @return the file to download
+     * @param id   of the resource
+     * @param size maximum edge length in pixels of a downscaled variant of an image to download instead
      */
     @PreAuthorize("hasAuthority('DOWNLOAD_FILE')")
     @GetMapping("/{id}")
-    public ResponseEntity<?> download(@PathVariable String id, Principal principal) {
+    public void download(
+            @PathVariable String id,
+            @RequestParam(required = false) Integer size,
+            Principal principal,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) throws IOException {
+        if (size != null && !thumbnailService.isSupported(size)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Supported sizes are " + thumbnailService.getSupportedSizes());
+            return;
+        }
+
+        Optional<CachedResource> cached = hotResourceCache.get(id, size);
+        if (cached.isPresent()) {
+            if (!cached.get().isPublicResource() && !isVisible(id, principal)) {
+                response.sendError(HttpStatus.FORBIDDEN.value(), "The requesting user is not allowed to see the requested resource");
+                return;
+            }
+
+            send(new ResourceTransfer(cached.get().getContent(), cached.get().getETag(), cached.get().getLastModified(),
+                    cached.get().getContentType()).storedEncoding(cached.get().getContentEncoding(), null), id, request, response);
+            return;
+        }
+
+        long stamp = hotResourceCache.stamp();
+
         // Check if resource exists.
         Optional<ResourceInfo> resourceInfo = resourceInfoRepository.findById(id);
         if (resourceInfo.isEmpty()) {
-            return ResponseEntity.notFound().build();
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
         }
 
         ResourceInfo info = resourceInfo.get();
 
         // Check if user has permission to download the resource.
-        if (!info.getPublic()) {
-            User authenticatedUser = userRepository.findByEmail(principal.getName());
-            if (!info.getVisibleFor().contains(authenticatedUser)) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body("The requesting user is not allowed to see the requested resource");
-            }
+        if (!info.getPublic() && !isVisible(id, principal)) {
+            response.sendError(HttpStatus.FORBIDDEN.value(), "The requesting user is not allowed to see the requested resource");
+            return;
         }
 
-        try {
-            Resource resource = resourceStorageService.load(id);
+        Optional<ResourceVariant> variant = size != null ? thumbnailService.getVariant(info, size) : Optional.empty();
+
+        // Content behind a resource ID never changes, thus the ID identifies the representation
+        String eTag = variant.map(ResourceVariant::getBlobHash).orElse(info.getBlobHash() != null ? info.getBlobHash() : id);
+        String contentType = variant.map(ResourceVariant::getContentType).orElse(info.getContentType());
+        String contentEncoding = variant.isPresent() ? null : info.getContentEncoding();
+
+        // Originals served in place of a variant still being produced are not cached under the size,
+        // content not admitted to the cache is sent from its file rather than loaded into memory
+        boolean cacheable = (size == null || variant.isPresent())
+                && hotResourceCache.admits(id, size, variant.map(ResourceVariant::getSize).orElse(info.getSize()));
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(info.getContentType()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
+        ResourceTransfer transfer;
+        try {
+            Path file = variant.isPresent()
+                    ? resourceStorageService.locateBlob(variant.get().getBlobHash())
+                    : resourceStorageService.locate(info);
+
+            if (cacheable) {
+                CachedResource loaded = hotResourceCache.put(id, size, file, eTag, info.getTimestamp(), contentType,
+                        info.getPublic(), contentEncoding, stamp);
+                transfer = new ResourceTransfer(loaded.getContent(), eTag, info.getTimestamp(), contentType);
+            } else {
+                transfer = new ResourceTransfer(file, eTag, info.getTimestamp(), contentType);
+            }
+            transfer.storedEncoding(contentEncoding, variant.isPresent() ? null : info.getSize());
         } catch (IOException e) {
             LOGGER.error("Could not load file", e);
-            return ResponseEntity.notFound().build();
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
         }
+
+        send(transfer, id, request, response);
+    }
+
+    private boolean isVisible(String resourceId, Principal principal) {
+        User authenticatedUser = userRepository.findByEmail(principal.getName());
+        return pendingImageGrants.isVisibleFor(resourceId, authenticatedUser.getId())
+                || resourceInfoRepository.isVisibleFor(resourceId, authenticatedUser.getId());
+    }
+
+    private static void send(ResourceTransfer transfer, String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        transfer.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + "\"")
+                .send(request, response);
     }
 
     /**
@@ -217,7 +373,6 @@ public class ResourceController {
 
         try {
             resourceStorageService.remove(id);
-            resourceInfoRepository.deleteById(id);
 
             return ResponseEntity.ok().build();
         } catch (IOException e) {
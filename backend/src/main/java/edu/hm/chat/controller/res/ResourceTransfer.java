@@ -0,0 +1,477 @@
+package edu.hm.chat.controller.res;
+
+import edu.hm.chat.service.ResourceStorageService;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes stored files to HTTP responses.
+ * <p>
+ * Supports conditional requests against a strong ETag, as well as single and multiple byte ranges.
+ * Whole files and single ranges are handed to the container's sendfile support when available,
+ * so the content is transferred by the kernel without passing the JVM heap. Otherwise the content is
+ * transferred from a {@link FileChannel} to the response.
+ * <p>
+ * Content held in a direct buffer is written to the connector's output buffer as is,
+ * without being copied into a byte array on the heap first.
+ * <p>
+ * Content stored compressed is sent as is with a {@code Content-Encoding} to clients accepting the encoding,
+ * including ranges of the compressed representation, which has its own ETag. Other clients receive
+ * the content decoded while sending it, without ranges.
+ */
+class ResourceTransfer {
+
+    /**
+     * Request attribute set by Tomcat when the connector supports sendfile.
+     */
+    private static final String SENDFILE_SUPPORTED_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+
+    /**
+     * Request attribute holding the canonical path of the file to send.
+     */
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+
+    /**
+     * Request attribute holding the first byte of the file to send.
+     */
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+
+    /**
+     * Request attribute holding the byte after the last byte of the file to send.
+     */
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Smaller transfers are written directly, as sendfile does not pay off for them.
+     */
+    private static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    /**
+     * Files may be cached privately, revalidating them is cheap thanks to the ETag.
+     */
+    private static final String CACHE_CONTROL = "private, max-age=86400";
+
+    /**
+     * Size of the buffer used to decode compressed content.
+     */
+    private static final int DECODE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The file to transfer, {@code null} if transferring content held in memory.
+     */
+    private final Path file;
+
+    /**
+     * The content to transfer, {@code null} if transferring a file.
+     */
+    private final ByteBuffer content;
+
+    /**
+     * Strong entity tag of the file, without quotes.
+     */
+    private final String eTag;
+
+    /**
+     * Timestamp of the last modification of the content.
+     */
+    private final long lastModified;
+
+    /**
+     * Content type of the file.
+     */
+    private final String contentType;
+
+    /**
+     * Additional headers to send with every response.
+     */
+    private final HttpHeaders headers = new HttpHeaders();
+
+    /**
+     * Encoding the content is stored in, {@code null} if stored as is.
+     */
+    private String storedEncoding;
+
+    /**
+     * Length of the decoded content in bytes, {@code null} if unknown.
+     */
+    private Long decodedLength;
+
+    ResourceTransfer(Path file, String eTag, long lastModified, String contentType) {
+        this.file = file;
+        this.content = null;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+    }
+
+    ResourceTransfer(ByteBuffer content, String eTag, long lastModified, String contentType) {
+        this.file = null;
+        this.content = content;
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+    }
+
+    /**
+     * Add a header sent with every response.
+     */
+    ResourceTransfer header(String name, String value) {
+        headers.add(name, value);
+        return this;
+    }
+
+    /**
+     * Declare the content as stored compressed with gzip.
+     *
+     * @param encoding      the content is stored in, {@code null} if stored as is
+     * @param decodedLength length of the decoded content in bytes, {@code null} if unknown
+     */
+    ResourceTransfer storedEncoding(String encoding, Long decodedLength) {
+        if (encoding != null && !encoding.equals(ResourceStorageService.GZIP_ENCODING)) {
+            throw new IllegalArgumentException("Unsupported content encoding " + encoding);
+        }
+
+        this.storedEncoding = encoding;
+        this.decodedLength = decodedLength;
+        return this;
+    }
+
+    /**
+     * Write the file to the passed response, answering conditional and range requests.
+     *
+     * @param request  to answer
+     * @param response to write to
+     */
+    void send(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+
+        if (storedEncoding != null) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (!acceptsEncoding(request, storedEncoding)) {
+                sendDecoded(request, response);
+                return;
+            }
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        // The compressed representation differs byte by byte, thus it is identified by its own ETag
+        String quotedETag = "\"" + (storedEncoding != null ? eTag + "-" + storedEncoding : eTag) + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(quotedETag, lastModified)) {
+            return; // 304 or 412 has been set including the validators
+        }
+
+        if (storedEncoding != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, storedEncoding);
+        }
+
+        if (content != null) {
+            send(request, response, quotedETag, null, content.remaining());
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            send(request, response, quotedETag, channel, channel.size());
+        }
+    }
+
+    /**
+     * Send the content decoded while sending it, to clients not accepting the encoding it is stored in.
+     * Ranges are not served, as the decoded content would have to be decoded up to their start.
+     */
+    private void sendDecoded(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+
+        String quotedETag = "\"" + eTag + "\"";
+        if (new ServletWebRequest(request, response).checkNotModified(quotedETag, lastModified)) {
+            return;
+        }
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(contentType);
+        if (decodedLength != null) {
+            response.setContentLengthLong(decodedLength);
+        }
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        InputStream stored = content != null ? new BufferInputStream(content.duplicate()) : Files.newInputStream(file);
+        try (InputStream in = new GZIPInputStream(stored, DECODE_BUFFER_SIZE)) {
+            OutputStream out = response.getOutputStream();
+            in.transferTo(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Send the whole content or the requested ranges of it.
+     *
+     * @param channel to read the file from, {@code null} if transferring content held in memory
+     */
+    private void send(HttpServletRequest request, HttpServletResponse response, String quotedETag, FileChannel channel, long length) throws IOException {
+        List<HttpRange> ranges;
+        try {
+            ranges = isRangeApplicable(request, quotedETag) ? HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE)) : List.of();
+        } catch (IllegalArgumentException e) {
+            ranges = List.of(); // Malformed range headers are ignored
+        }
+
+        if (ranges.isEmpty()) {
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(contentType);
+            send(request, response, channel, 0, length);
+            return;
+        }
+
+        if (!isSatisfiable(ranges, length)) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return;
+        }
+
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(length);
+            long end = ranges.get(0).getRangeEnd(length);
+
+            response.setContentType(contentType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+            send(request, response, channel, start, end + 1);
+        } else {
+            sendMultipleRanges(request, response, channel, ranges, length);
+        }
+    }
+
+    /**
+     * Send a single part of the content, handing files to sendfile if possible.
+     */
+    private void send(HttpServletRequest request, HttpServletResponse response, FileChannel channel, long start, long end) throws IOException {
+        response.setContentLengthLong(end - start);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        if (channel != null && end - start >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, start);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, end);
+            return; // Transferred by the container once the request has been handled
+        }
+
+        OutputStream out = openOutput(response);
+        transfer(channel, start, end, out);
+        out.flush();
+    }
+
+    private void sendMultipleRanges(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FileChannel channel,
+            List<HttpRange> ranges,
+            long length
+    ) throws IOException {
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+
+        byte[][] partHeaders = new byte[ranges.size()][];
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            long start = ranges.get(i).getRangeStart(length);
+            long end = ranges.get(i).getRangeEnd(length);
+
+            partHeaders[i] = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            contentLength += partHeaders[i].length + end + 1 - start;
+        }
+        byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
+
+        response.setContentLengthLong(contentLength);
+        if (HttpMethod.HEAD.matches(request.getMethod())) {
+            return;
+        }
+
+        OutputStream out = openOutput(response);
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders[i]);
+            transfer(channel, ranges.get(i).getRangeStart(length), ranges.get(i).getRangeEnd(length) + 1, out);
+        }
+        out.write(closingBoundary);
+        out.flush();
+    }
+
+    /**
+     * Open the stream to write the content to.
+     * Content held in memory is written to the connector's own stream, which accepts buffers. The headers are
+     * committed through the wrapping responses first, so filters reacting on the commit still see it.
+     */
+    private OutputStream openOutput(HttpServletResponse response) throws IOException {
+        if (content == null) {
+            return response.getOutputStream();
+        }
+
+        response.flushBuffer();
+
+        ServletResponse unwrapped = response;
+        while (unwrapped instanceof ServletResponseWrapper) {
+            unwrapped = ((ServletResponseWrapper) unwrapped).getResponse();
+        }
+        return unwrapped.getOutputStream();
+    }
+
+    private void transfer(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+        if (channel != null) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            return;
+        }
+
+        ByteBuffer part = content.duplicate();
+        part.limit(part.position() + (int) end).position(part.position() + (int) start);
+        if (out instanceof CoyoteOutputStream) {
+            ((CoyoteOutputStream) out).write(part); // Copied from native memory into the output buffer
+        } else {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (part.hasRemaining()) {
+                target.write(part);
+            }
+        }
+    }
+
+    /**
+     * Check whether a range request should be answered with partial content.
+     * Ranges only apply to the entity identified by the {@code If-Range} header, if passed.
+     */
+    private boolean isRangeApplicable(HttpServletRequest request, String quotedETag) {
+        if (request.getHeader(HttpHeaders.RANGE) == null) {
+            return false;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        } else if (ifRange.startsWith("\"")) {
+            return ifRange.equals(quotedETag);
+        }
+
+        long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return ifRangeDate != -1 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+
+    /**
+     * Check whether the client accepts the passed content encoding, by its name or a wildcard with a non-zero quality.
+     */
+    private static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        Enumeration<String> values = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+        if (values == null) {
+            return false;
+        }
+
+        boolean acceptedByWildcard = false;
+        while (values.hasMoreElements()) {
+            for (String coding : values.nextElement().split(",")) {
+                String[] parameters = coding.split(";");
+                String name = parameters[0].trim();
+
+                double quality = 1;
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(parameter.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+
+                if (name.equalsIgnoreCase(encoding) || name.equalsIgnoreCase("x-" + encoding)) {
+                    return quality > 0;
+                } else if (name.equals("*")) {
+                    acceptedByWildcard = quality > 0;
+                }
+            }
+        }
+
+        return acceptedByWildcard;
+    }
+
+    /**
+     * Check whether all ranges are satisfiable and do not request more than the file size in total.
+     */
+    private static boolean isSatisfiable(List<HttpRange> ranges, long length) {
+        long total = 0;
+        for (HttpRange range : ranges) {
+            if (length == 0 || range.getRangeStart(length) >= length) {
+                return false;
+            }
+            total += range.getRangeEnd(length) + 1 - range.getRangeStart(length);
+        }
+
+        return total <= length;
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * Stream reading the content held in a buffer.
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+    }
+
+}
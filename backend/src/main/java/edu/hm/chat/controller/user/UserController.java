@@ -1,19 +1,19 @@
 package edu.hm.chat.controller.user;
 
-import edu.hm.chat.controller.ChatController;
-import edu.hm.chat.persistence.dao.ChatRepository;
 import edu.hm.chat.persistence.dao.UserDetailsRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
-import edu.hm.chat.persistence.model.Chat;
 import edu.hm.chat.persistence.model.User;
 import edu.hm.chat.persistence.model.UserDetails;
+import edu.hm.chat.service.CacheEvictionService;
 import edu.hm.chat.service.ResourceStorageService;
+import edu.hm.chat.service.purge.PurgeService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
@@ -47,38 +47,44 @@ public class UserController {
     private ResourceStorageService resourceStorageService;
 
     @Autowired
-    private ChatRepository chatRepository;
+    private PurgeService purgeService;
 
     @Autowired
-    private ChatController chatController;
+    private CacheEvictionService cacheEvictionService;
 
     @PreAuthorize("hasAuthority('READ_USER')")
     @GetMapping
+    @Transactional(readOnly = true)
     public ResponseEntity<Iterable<User>> getAll() {
-        return ResponseEntity.ok(userRepository.findAll());
+        return ResponseEntity.ok(userRepository.findByDeletedFalse());
     }
 
     @PreAuthorize("hasAuthority('READ_USER')")
     @GetMapping("/{id}")
+    @Transactional(readOnly = true)
     public ResponseEntity<User> get(@PathVariable Long id) {
         return userRepository.findById(id)
+                .filter((user) -> !user.isDeleted())
                 .map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     @PreAuthorize("hasAuthority('READ_USER')")
     @PostMapping("/batch")
+    @Transactional(readOnly = true)
     public ResponseEntity<List<User>> getBatch(@RequestBody List<Long> userIds) {
         return ResponseEntity.ok(StreamSupport
                 .stream(userRepository.findAllById(userIds).spliterator(), false)
+                .filter((user) -> !user.isDeleted())
                 .collect(Collectors.toList()));
     }
 
     @PreAuthorize("hasAuthority('READ_USER')")
     @GetMapping("/find/{search}")
+    @Transactional(readOnly = true)
     public ResponseEntity<Iterable<User>> find(@PathVariable String search) {
         var result = new ArrayList<User>();
-        for (var user : userRepository.findAll()) {
+        for (var user : userRepository.findByDeletedFalse()) {
             String name = String.format("%s %s", user.getFirstName(), user.getLastName());
             if (name.contains(search)) {
                 result.add(user);
@@ -89,6 +95,7 @@ public class UserController {
     }
 
     @GetMapping("/me")
+    @Transactional(readOnly = true)
     public ResponseEntity<User> getMe(Principal principal) {
         return Optional.ofNullable(userRepository.findByEmail(principal.getName()))
                 .map(ResponseEntity::ok)
@@ -108,6 +115,7 @@ public class UserController {
 
     @PreAuthorize("hasAuthority('WRITE_USER')")
     @PutMapping("/{id}")
+    @Transactional
     public ResponseEntity<?> update(@PathVariable Long id, @RequestBody User user) {
         return userRepository.findById(id).map((u) -> {
             if (user.getPassword() != null) {
@@ -117,6 +125,7 @@ public class UserController {
             }
 
             userRepository.save(user);
+            cacheEvictionService.evictUser(id);
             return ResponseEntity.noContent().build();
         }).orElseGet(() -> ResponseEntity.notFound().build());
     }
@@ -131,7 +140,7 @@ public class UserController {
             return ResponseEntity.badRequest().build();
         }
 
-        return userRepository.findById(id).map((u) -> {
+        return userRepository.findById(id).filter((u) -> !u.isDeleted()).map((u) -> {
             Optional<UserDetails> details = userDetailsRepository.findById(u.getId());
             if (details.isPresent()) {
                 String imageID = details.get().getImageId();
@@ -144,17 +153,11 @@ public class UserController {
                 }
 
                 userDetailsRepository.deleteById(u.getId()); // Remove details as well
+                cacheEvictionService.evictUserDetails(u.getId());
             }
 
-            List<Chat> referencedInChats = chatRepository.findByMembersContaining(u);
-            if (referencedInChats != null && referencedInChats.size() > 0) {
-                // Remove user to delete from referenced chats
-                for (var chat : referencedInChats) {
-                    chatController.deleteForUser(chat.getId(), u);
-                }
-            }
-
-            userRepository.delete(u);
+            // Remove user from referenced chats, messages are purged in the background
+            purgeService.deleteUser(u);
 
             return ResponseEntity.ok().build();
         }).orElseGet(() -> ResponseEntity.notFound().build());
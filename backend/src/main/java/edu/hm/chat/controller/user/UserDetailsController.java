@@ -5,12 +5,15 @@ import edu.hm.chat.persistence.dao.UserDetailsRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
 import edu.hm.chat.persistence.model.User;
 import edu.hm.chat.persistence.model.UserDetails;
+import edu.hm.chat.service.CacheEvictionService;
 import edu.hm.chat.service.ResourceStorageService;
+import edu.hm.chat.service.cache.HotResourceCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.IOException;
@@ -52,16 +55,30 @@ public class UserDetailsController {
      */
     private final ResourceInfoRepository resourceInfoRepository;
 
+    /**
+     * Service evicting changed details from the cache.
+     */
+    private final CacheEvictionService cacheEvictionService;
+
+    /**
+     * Cache holding the content of frequently downloaded small resources, such as user images.
+     */
+    private final HotResourceCache hotResourceCache;
+
     public UserDetailsController(
             UserDetailsRepository userDetailsRepository,
             UserRepository userRepository,
             ResourceStorageService resourceStorageService,
-            ResourceInfoRepository resourceInfoRepository
+            ResourceInfoRepository resourceInfoRepository,
+            CacheEvictionService cacheEvictionService,
+            HotResourceCache hotResourceCache
     ) {
         this.userDetailsRepository = userDetailsRepository;
         this.userRepository = userRepository;
         this.resourceStorageService = resourceStorageService;
         this.resourceInfoRepository = resourceInfoRepository;
+        this.cacheEvictionService = cacheEvictionService;
+        this.hotResourceCache = hotResourceCache;
     }
 
     /**
@@ -72,6 +89,7 @@ public class UserDetailsController {
      */
     @PreAuthorize("hasAuthority('READ_USER_DETAILS')")
     @GetMapping("/{userId}")
+    @Transactional(readOnly = true)
     public ResponseEntity<UserDetails> get(@PathVariable Long userId) {
         return userDetailsRepository.findById(userId)
                 .map(ResponseEntity::ok)
@@ -86,6 +104,7 @@ public class UserDetailsController {
      */
     @PreAuthorize("hasAuthority('READ_USER_DETAILS')")
     @PostMapping("/batch")
+    @Transactional(readOnly = true)
     public ResponseEntity<List<UserDetails>> getBatch(@RequestBody List<Long> userIds) {
         return ResponseEntity.ok(StreamSupport
                 .stream(userDetailsRepository.findAllById(userIds).spliterator(), false)
@@ -110,13 +129,8 @@ public class UserDetailsController {
             var old = oldDetails.get();
 
             if (old.getImageId() != null && !old.getImageId().equals(details.getImageId())) {
-                var optOldInfo = resourceInfoRepository.findById(old.getImageId());
-                if (optOldInfo.isPresent()) {
-                    resourceInfoRepository.deleteById(old.getImageId()); // Remove old image from resource storage
-                }
-
                 try {
-                    resourceStorageService.remove(old.getImageId());
+                    resourceStorageService.remove(old.getImageId()); // Remove old image from resource storage
                 } catch (IOException e) {
                     LOGGER.error("Could not remove old user image", e);
                 }
@@ -132,10 +146,14 @@ public class UserDetailsController {
                 var info = optResourceInfo.get();
                 info.setPublic(true);
                 resourceInfoRepository.save(info);
+                hotResourceCache.invalidate(info.getResourceId()); // Cached as private before
             }
         }
 
-        return ResponseEntity.ok(userDetailsRepository.save(details));
+        UserDetails saved = userDetailsRepository.save(details);
+        cacheEvictionService.evictUserDetails(saved.getUserId());
+
+        return ResponseEntity.ok(saved);
     }
 
 }
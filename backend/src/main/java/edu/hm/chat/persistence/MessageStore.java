@@ -0,0 +1,59 @@
+package edu.hm.chat.persistence;
+
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Storage for the messages of chats.
+ * Messages are append-only, they are never updated once stored.
+ * The implementation in use is selected by the {@code edu.hm.chat.message-store.type} property.
+ */
+public interface MessageStore {
+
+    /**
+     * Append the passed message to the history of its chat.
+     *
+     * @param message to store
+     * @return the stored message
+     */
+    Message save(Message message);
+
+    /**
+     * Find a page of the history of the passed chat.
+     *
+     * @param chat to get messages of
+     * @param page number of the page, counted from the newest messages
+     * @param size of a page
+     * @return the messages of the page, newest first
+     */
+    List<Message> findPage(Chat chat, int page, int size);
+
+    /**
+     * Get the timestamp of the oldest message of the passed chat.
+     *
+     * @param chatId of the chat
+     * @return oldest timestamp or empty if the chat has no messages
+     */
+    OptionalLong findOldestTimestamp(long chatId);
+
+    /**
+     * Remove the messages of the passed chat older than the passed timestamp, oldest first.
+     *
+     * @param chatId    of the chat to remove messages of
+     * @param before    timestamp before which messages are removed
+     * @param batchSize maximum amount of messages removed per transaction
+     * @return amount of removed messages
+     */
+    long expire(long chatId, long before, int batchSize);
+
+    /**
+     * Remove all messages of the passed chat.
+     *
+     * @param chatId of the chat to remove messages of
+     */
+    void deleteByChat(long chatId);
+
+}
@@ -0,0 +1,12 @@
+package edu.hm.chat.persistence;
+
+/**
+ * Thrown by features working on the message table directly, in case the messages are not kept in the database.
+ */
+public class MessageTableUnavailableException extends IllegalStateException {
+
+    public MessageTableUnavailableException(String feature) {
+        super(feature + " works on the message table and cannot be used with the log message store");
+    }
+
+}
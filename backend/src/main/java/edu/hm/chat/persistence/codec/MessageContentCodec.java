@@ -0,0 +1,89 @@
+package edu.hm.chat.persistence.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec compressing large message contents before they are stored.
+ * <p>
+ * Encoded layout: {@code [format marker][raw length][compressed bytes]}.
+ * The format marker allows switching the algorithm later without rewriting stored rows.
+ */
+public final class MessageContentCodec {
+
+    /**
+     * Format marker of LZ4 block compressed UTF-8 content.
+     */
+    public static final byte FORMAT_LZ4 = 1;
+
+    /**
+     * Size in bytes of the UTF-8 encoded content from which on it is compressed.
+     */
+    public static final int THRESHOLD = 512;
+
+    /**
+     * Contents are stored uncompressed unless compression saves at least this fraction of the size.
+     */
+    private static final double MIN_SAVINGS = 0.1;
+
+    /**
+     * Size of the header preceding the compressed bytes.
+     */
+    private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private MessageContentCodec() {
+    }
+
+    /**
+     * Encode the passed content.
+     *
+     * @param content to encode
+     * @return the encoded content or null in case the content should be stored as is
+     */
+    public static byte[] encode(String content) {
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < THRESHOLD) {
+            return null;
+        }
+
+        byte[] encoded = new byte[HEADER_SIZE + COMPRESSOR.maxCompressedLength(raw.length)];
+        int compressedLength = COMPRESSOR.compress(raw, 0, raw.length, encoded, HEADER_SIZE);
+        if (HEADER_SIZE + compressedLength > raw.length * (1 - MIN_SAVINGS)) {
+            return null;
+        }
+
+        ByteBuffer.wrap(encoded).put(FORMAT_LZ4).putInt(raw.length);
+
+        byte[] result = new byte[HEADER_SIZE + compressedLength];
+        System.arraycopy(encoded, 0, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Decode the passed encoded content.
+     *
+     * @param encoded content as returned by {@link #encode(String)}
+     * @return the content
+     */
+    public static String decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        byte format = buffer.get();
+        if (format != FORMAT_LZ4) {
+            throw new IllegalArgumentException(String.format("Unknown message content format %d", format));
+        }
+
+        byte[] raw = new byte[buffer.getInt()];
+        DECOMPRESSOR.decompress(encoded, HEADER_SIZE, raw, 0, raw.length);
+
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,173 @@
+package edu.hm.chat.persistence.copy;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Writer streaming rows into a table through {@code COPY ... FROM STDIN} in its text format.
+ * Rows are buffered and sent in chunks, so memory stays constant regardless of the amount of rows.
+ */
+public class CopyRowWriter {
+
+    /**
+     * Amount of characters buffered before they are sent to the database.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Operation the rows are sent to.
+     */
+    private final CopyIn copyIn;
+
+    /**
+     * Rows not yet sent to the database.
+     */
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+
+    /**
+     * Whether the next field is the first of its row.
+     */
+    private boolean firstField = true;
+
+    private CopyRowWriter(CopyIn copyIn) {
+        this.copyIn = copyIn;
+    }
+
+    /**
+     * Start copying rows with the passed connection.
+     *
+     * @param connection to copy with
+     * @param sql        {@code COPY ... FROM STDIN} statement
+     * @return writer for the rows
+     */
+    public static CopyRowWriter open(Connection connection, String sql) throws SQLException {
+        return new CopyRowWriter(connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql));
+    }
+
+    /**
+     * Append a text field, null is written as SQL null.
+     *
+     * @param value of the field
+     * @return this writer
+     */
+    public CopyRowWriter field(String value) {
+        separate();
+
+        if (value == null) {
+            buffer.append("\\N");
+            return this;
+        }
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Append a numeric field.
+     *
+     * @param value of the field
+     * @return this writer
+     */
+    public CopyRowWriter field(long value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Append a boolean field.
+     *
+     * @param value of the field
+     * @return this writer
+     */
+    public CopyRowWriter field(boolean value) {
+        separate();
+        buffer.append(value ? 't' : 'f');
+        return this;
+    }
+
+    /**
+     * Append a {@code bytea} field in hex format, null is written as SQL null.
+     *
+     * @param value of the field
+     * @return this writer
+     */
+    public CopyRowWriter field(byte[] value) {
+        separate();
+
+        if (value == null) {
+            buffer.append("\\N");
+            return this;
+        }
+
+        buffer.append("\\\\x");
+        for (byte b : value) {
+            buffer.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return this;
+    }
+
+    /**
+     * Finish the current row.
+     */
+    public void endRow() throws SQLException {
+        buffer.append('\n');
+        firstField = true;
+
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Send the remaining rows and complete the copy.
+     *
+     * @return amount of copied rows
+     */
+    public long finish() throws SQLException {
+        flush();
+        return copyIn.endCopy();
+    }
+
+    /**
+     * Abort the copy unless it has been completed.
+     */
+    public void cancel() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    private void separate() {
+        if (!firstField) {
+            buffer.append('\t');
+        }
+        firstField = false;
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+}
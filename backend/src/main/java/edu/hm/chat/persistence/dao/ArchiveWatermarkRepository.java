@@ -0,0 +1,10 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ArchiveWatermark;
+import org.springframework.data.repository.CrudRepository;
+
+/**
+ * Repository dealing with archive watermarks of chats.
+ */
+public interface ArchiveWatermarkRepository extends CrudRepository<ArchiveWatermark, Long> {
+}
@@ -0,0 +1,65 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ChatActivity;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repository dealing with the last activity of chats and the per-user recency index.
+ */
+public interface ChatActivityRepository extends CrudRepository<ChatActivity, Long> {
+
+    @Query(value = "select r.chat_id from chat_recency r " +
+            "join chat_members m on m.chat_id = r.chat_id and m.members_id = r.user_id " +
+            "where r.user_id = :userId order by r.last_activity desc limit :limit", nativeQuery = true)
+    List<Long> findRecentChatIds(@Param("userId") Long userId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "insert into chat_recency (user_id, chat_id, last_activity) " +
+            "select m.members_id, m.chat_id, :lastActivity from chat_members m where m.chat_id = :chatId " +
+            "on conflict (user_id, chat_id) do update set last_activity = excluded.last_activity " +
+            "where chat_recency.last_activity < excluded.last_activity", nativeQuery = true)
+    int upsertRecency(@Param("chatId") Long chatId, @Param("lastActivity") Long lastActivity);
+
+    @Modifying
+    @Query(value = "with backfilled as (insert into chat_activity (chat_id, last_activity, last_message_id, last_author_id, last_message_type, preview) " +
+            "select c.id, coalesce(m.timestamp, 0), m.id, m.author_id, m.type, case when m.type = 'TEXT' then left(m.content, " + ChatActivity.PREVIEW_LENGTH + ") end " +
+            "from chat c left join lateral (select * from message where chat_id = c.id order by timestamp desc, id desc limit 1) m on true " +
+            "where c.deleted = false and not exists (select 1 from chat_activity a where a.chat_id = c.id) " +
+            "returning chat_id, last_activity) " +
+            "insert into chat_recency (user_id, chat_id, last_activity) " +
+            "select m.members_id, b.chat_id, b.last_activity from backfilled b join chat_members m on m.chat_id = b.chat_id " +
+            "on conflict (user_id, chat_id) do nothing", nativeQuery = true)
+    int backfill();
+
+    /**
+     * Find the chats whose preview could not be backfilled in SQL, since their last message is a compressed text.
+     *
+     * @return rows of chat ID, last message ID and compressed content of the last message
+     */
+    @Query(value = "select a.chat_id, a.last_message_id, m.content_compressed from chat_activity a " +
+            "join message m on m.id = a.last_message_id " +
+            "where a.preview is null and a.last_message_type = 'TEXT' and m.content_compressed is not null", nativeQuery = true)
+    List<Object[]> findCompressedPreviews();
+
+    @Modifying
+    @Query(value = "update chat_activity set preview = :preview where chat_id = :chatId and last_message_id = :messageId", nativeQuery = true)
+    int updatePreview(@Param("chatId") Long chatId, @Param("messageId") Long messageId, @Param("preview") String preview);
+
+    @Modifying
+    @Query(value = "delete from chat_recency where chat_id = :chatId and user_id = :userId", nativeQuery = true)
+    int deleteRecency(@Param("chatId") Long chatId, @Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from chat_recency where chat_id = :chatId", nativeQuery = true)
+    int deleteRecencyByChat(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Query(value = "delete from chat_recency where user_id = :userId", nativeQuery = true)
+    int deleteRecencyByUser(@Param("userId") Long userId);
+
+}
@@ -2,15 +2,61 @@ package edu.hm.chat.persistence.dao;
 
 import edu.hm.chat.persistence.model.Chat;
 import edu.hm.chat.persistence.model.User;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
 public interface ChatRepository extends CrudRepository<Chat, Long> {
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     List<Chat> findByMembersContaining(User user);
 
     List<Chat> findByOwnerEquals(User user);
 
+    List<Chat> findByRetentionIsNotNull();
+
+    @Query(value = "select u.email from user_account u join chat_members m on m.members_id = u.id " +
+            "where m.chat_id = :chatId", nativeQuery = true)
+    List<String> findMemberEmails(@Param("chatId") Long chatId);
+
+    @Query(value = "select id from chat where deleted = true", nativeQuery = true)
+    List<Long> findDeletedIds();
+
+    @Modifying
+    @Query(value = "update chat set deleted = true, version = version + 1 where id = :chatId", nativeQuery = true)
+    int markDeleted(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Query(value = "update chat set deleted = true, version = version + 1 where id in (select chat_id from chat_members where members_id = :userId) " +
+            "and not exists (select 1 from chat_members m where m.chat_id = chat.id and m.members_id <> :userId)", nativeQuery = true)
+    int markDeletedWhereOnlyMember(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "update chat set owner_id = (select min(m.members_id) from chat_members m " +
+            "where m.chat_id = chat.id and m.members_id <> :userId), version = version + 1 where owner_id = :userId and deleted = false", nativeQuery = true)
+    int reassignOwner(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "update chat set version = version + 1 where id in (select chat_id from chat_members where members_id = :userId)",
+            nativeQuery = true)
+    int incrementVersionWhereMember(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from chat_members where members_id = :userId", nativeQuery = true)
+    int removeMember(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from chat_members where chat_id = :chatId", nativeQuery = true)
+    int deleteMembers(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Query(value = "delete from chat where id = :chatId", nativeQuery = true)
+    int deleteRow(@Param("chatId") Long chatId);
+
     @Override
     void delete(Chat chat);
 
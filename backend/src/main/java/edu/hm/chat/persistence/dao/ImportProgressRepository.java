@@ -0,0 +1,10 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ImportProgress;
+import org.springframework.data.repository.CrudRepository;
+
+/**
+ * Repository dealing with the progress of bulk history imports.
+ */
+public interface ImportProgressRepository extends CrudRepository<ImportProgress, String> {
+}
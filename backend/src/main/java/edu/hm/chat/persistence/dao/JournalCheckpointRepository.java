@@ -0,0 +1,10 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.JournalCheckpoint;
+import org.springframework.data.repository.CrudRepository;
+
+/**
+ * Repository dealing with replay checkpoints of local journals.
+ */
+public interface JournalCheckpointRepository extends CrudRepository<JournalCheckpoint, String> {
+}
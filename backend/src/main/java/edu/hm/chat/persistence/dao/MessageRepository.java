@@ -5,13 +5,46 @@ import edu.hm.chat.persistence.model.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MessageRepository extends PagingAndSortingRepository<Message, Long> {
     Page<Message> findByChat(Chat chat, Pageable pageable);
 
+    List<Message> findByChatAndTimestampLessThan(Chat chat, Long timestamp, Pageable pageable);
+
+    @Query("select m.chat.id from Message m group by m.chat.id having min(m.timestamp) < :before")
+    List<Long> findChatIdsWithMessagesBefore(@Param("before") Long before);
+
+    @Modifying
+    @Query("delete from Message m where m.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "delete from message where id in (select id from message where chat_id = :chatId limit :limit)", nativeQuery = true)
+    int deleteChunkByChat(@Param("chatId") Long chatId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "delete from message where id in (select id from message where author_id = :authorId limit :limit)", nativeQuery = true)
+    int deleteChunkByAuthor(@Param("authorId") Long authorId, @Param("limit") int limit);
+
+    @Query("select min(m.timestamp) from Message m where m.chat.id = :chatId")
+    Long findOldestTimestamp(@Param("chatId") Long chatId);
+
+    @Modifying
+    @Query(value = "delete from message where id in (select id from message where chat_id = :chatId and timestamp < :before " +
+            "order by timestamp limit :limit)", nativeQuery = true)
+    int deleteExpiredChunk(@Param("chatId") Long chatId, @Param("before") Long before, @Param("limit") int limit);
+
+    @Query(value = "select id from message where id > :after and content_compressed is null " +
+            "and octet_length(content) >= :threshold order by id limit :limit", nativeQuery = true)
+    List<Long> findUncompressedIds(@Param("after") long after, @Param("threshold") int threshold, @Param("limit") int limit);
+
     @Override
     void delete(Message message);
 }
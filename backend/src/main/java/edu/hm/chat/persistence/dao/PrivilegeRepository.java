@@ -1,10 +1,14 @@
 package edu.hm.chat.persistence.dao;
 
 import edu.hm.chat.persistence.model.Privilege;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
+
 public interface PrivilegeRepository extends CrudRepository<Privilege, Long> {
 
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     Privilege findByName(String name);
 
     @Override
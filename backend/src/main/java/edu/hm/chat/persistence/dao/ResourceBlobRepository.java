@@ -0,0 +1,87 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ResourceBlob;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository dealing with content-addressed resource blobs.
+ */
+public interface ResourceBlobRepository extends CrudRepository<ResourceBlob, String> {
+
+    /**
+     * Add a reference to the blob with the passed hash, creating the blob if it does not exist yet.
+     * The blob row stays locked until the end of the transaction.
+     */
+    @Modifying
+    @Query(value = "insert into resource_blob (hash, size, reference_count, acquired_at, content_encoding) " +
+            "values (:hash, :size, 1, :now, cast(:contentEncoding as varchar)) " +
+            "on conflict (hash) do update set reference_count = resource_blob.reference_count + 1, acquired_at = :now", nativeQuery = true)
+    int acquire(@Param("hash") String hash, @Param("size") long size, @Param("now") long now,
+                @Param("contentEncoding") String contentEncoding);
+
+    @Query(value = "select content_encoding from resource_blob where hash = :hash", nativeQuery = true)
+    String findContentEncoding(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = "update resource_blob set content_encoding = cast(:contentEncoding as varchar) where hash = :hash", nativeQuery = true)
+    int updateContentEncoding(@Param("hash") String hash, @Param("contentEncoding") String contentEncoding);
+
+    /**
+     * Insert an unreferenced placeholder for a blob without row. Until the end of the transaction, uploads of the
+     * content wait for it, so its file can be removed without racing them.
+     *
+     * @return 1 if the blob had no row
+     */
+    @Modifying
+    @Query(value = "insert into resource_blob (hash, size, reference_count) values (:hash, 0, 0) " +
+            "on conflict (hash) do nothing", nativeQuery = true)
+    int insertPlaceholder(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = "update resource_blob set reference_count = reference_count - 1 where hash = :hash", nativeQuery = true)
+    int release(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = "delete from resource_blob where hash = :hash and reference_count <= 0", nativeQuery = true)
+    int deleteUnreferenced(@Param("hash") String hash);
+
+    /**
+     * Find the blob with the passed hash, locking its row until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from ResourceBlob b where b.hash = :hash")
+    Optional<ResourceBlob> findForUpdate(@Param("hash") String hash);
+
+    /**
+     * Find the hashes of blobs following the passed hash in ascending order, used to walk all blobs in batches.
+     */
+    @Query(value = "select hash from resource_blob where hash > :after order by hash limit :limit", nativeQuery = true)
+    List<String> findHashesAfter(@Param("after") String after, @Param("limit") int limit);
+
+    /**
+     * Find the hashes of blobs in the passed range which are unreferenced or whose reference count differs from the amount
+     * of resources and variants referencing them, ignoring blobs acquired recently, as the referencing resource may not be saved yet.
+     */
+    @Query(value = "select b.hash from resource_blob b where b.hash > :after and b.hash <= :until " +
+            "and (b.acquired_at is null or b.acquired_at < :acquiredBefore) " +
+            "and (b.reference_count <= 0 or b.reference_count <> (select count(*) from resource_info i where i.blob_hash = b.hash) " +
+            "+ (select count(*) from resource_variant v where v.blob_hash = b.hash)) order by b.hash", nativeQuery = true)
+    List<String> findMiscounted(@Param("after") String after, @Param("until") String until, @Param("acquiredBefore") long acquiredBefore);
+
+    @Query(value = "select hash from resource_blob where hash in (:hashes)", nativeQuery = true)
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    @Query(value = "select (select count(*) from resource_info where blob_hash = :hash) " +
+            "+ (select count(*) from resource_variant where blob_hash = :hash)", nativeQuery = true)
+    long countReferences(@Param("hash") String hash);
+
+}
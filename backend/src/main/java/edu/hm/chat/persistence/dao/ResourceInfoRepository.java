@@ -1,9 +1,16 @@
 package edu.hm.chat.persistence.dao;
 
 import edu.hm.chat.persistence.model.ResourceInfo;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository dealing with resource infos.
@@ -12,4 +19,34 @@ public interface ResourceInfoRepository extends CrudRepository<ResourceInfo, Str
 
     List<ResourceInfo> findByOwnerId(Long ownerID);
 
+    /**
+     * Find the resource with the passed ID and lock it until the end of the transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select r from ResourceInfo r where r.resourceId = :resourceId")
+    Optional<ResourceInfo> findForUpdate(@Param("resourceId") String resourceId);
+
+    @Modifying
+    @Query(value = "update resource_info set width = :width, height = :height where resource_id = :resourceId", nativeQuery = true)
+    int updateDimensions(@Param("resourceId") String resourceId, @Param("width") int width, @Param("height") int height);
+
+    @Query(value = "select exists(select 1 from resource_info_visible_for " +
+            "where resource_info_resource_id = :resourceId and visible_for_id = :userId)", nativeQuery = true)
+    boolean isVisibleFor(@Param("resourceId") String resourceId, @Param("userId") Long userId);
+
+    @Query(value = "select * from resource_info where blob_hash is null and resource_id > :after " +
+            "order by resource_id limit :limit", nativeQuery = true)
+    List<ResourceInfo> findNotDeduplicated(@Param("after") String after, @Param("limit") int limit);
+
+    @Query(value = "select resource_id from resource_info where resource_id in (:resourceIds)", nativeQuery = true)
+    List<String> findExistingIds(@Param("resourceIds") Collection<String> resourceIds);
+
+    /**
+     * Find the IDs of resources following the passed ID whose blob does not exist, used to walk them in batches.
+     */
+    @Query(value = "select i.resource_id from resource_info i where i.resource_id > :after and i.blob_hash is not null " +
+            "and not exists (select 1 from resource_blob b where b.hash = i.blob_hash) " +
+            "order by i.resource_id limit :limit", nativeQuery = true)
+    List<String> findIdsWithoutBlob(@Param("after") String after, @Param("limit") int limit);
+
 }
@@ -0,0 +1,83 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ResourceUsage;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repository dealing with the per-user usage of the resource storage.
+ * All updates are relative, so concurrent uploads and removals of the same user do not overwrite each other.
+ */
+public interface ResourceUsageRepository extends CrudRepository<ResourceUsage, Long> {
+
+    /**
+     * Add to the usage of a user, creating the row if it does not exist yet.
+     * The row stays locked until the end of the transaction.
+     */
+    @Modifying
+    @Query(value = "insert into resource_usage (user_id, file_count, total_bytes) values (:userId, :files, :bytes) " +
+            "on conflict (user_id) do update set file_count = resource_usage.file_count + excluded.file_count, " +
+            "total_bytes = resource_usage.total_bytes + excluded.total_bytes", nativeQuery = true)
+    int add(@Param("userId") Long userId, @Param("files") long files, @Param("bytes") long bytes);
+
+    /**
+     * Add a file to the usage of a user unless that exceeds one of the passed limits.
+     * The row has to exist already and stays locked until the end of the transaction.
+     *
+     * @return 1 if the file has been added, 0 if a limit would be exceeded
+     */
+    @Modifying
+    @Query(value = "update resource_usage set file_count = file_count + 1, total_bytes = total_bytes + :bytes " +
+            "where user_id = :userId and file_count < :maxFiles and total_bytes + :bytes <= :maxBytes", nativeQuery = true)
+    int addWithinLimits(@Param("userId") Long userId, @Param("bytes") long bytes,
+                        @Param("maxFiles") long maxFiles, @Param("maxBytes") long maxBytes);
+
+    @Modifying
+    @Query(value = "insert into resource_usage (user_id, file_count, total_bytes) values (:userId, 0, 0) " +
+            "on conflict (user_id) do nothing", nativeQuery = true)
+    int createIfAbsent(@Param("userId") Long userId);
+
+    @Query(value = "select * from resource_usage order by total_bytes desc limit :limit", nativeQuery = true)
+    List<ResourceUsage> findTopConsumers(@Param("limit") int limit);
+
+    /**
+     * Get the highest ID of a user owning resources or having a usage row, bounding the reconciliation.
+     */
+    @Query(value = "select greatest((select max(owner_id) from resource_info), (select max(user_id) from resource_usage))", nativeQuery = true)
+    Long findMaxUserId();
+
+    /**
+     * Create the missing usage rows of users owning resources with an ID in the passed range.
+     */
+    @Modifying
+    @Query(value = "insert into resource_usage (user_id, file_count, total_bytes) " +
+            "select distinct owner_id, 0, 0 from resource_info where owner_id > :after and owner_id <= :until " +
+            "on conflict (user_id) do nothing", nativeQuery = true)
+    int createMissing(@Param("after") Long after, @Param("until") Long until);
+
+    /**
+     * Lock the usage rows of the users with an ID in the passed range until the end of the transaction,
+     * so no resource of them is added or removed while recounting.
+     */
+    @Query(value = "select user_id from resource_usage where user_id > :after and user_id <= :until " +
+            "order by user_id for update", nativeQuery = true)
+    List<Long> lock(@Param("after") Long after, @Param("until") Long until);
+
+    /**
+     * Recount the usage of the users with an ID in the passed range from their resources.
+     *
+     * @return amount of rows which have been off
+     */
+    @Modifying
+    @Query(value = "update resource_usage u set file_count = c.file_count, total_bytes = c.total_bytes " +
+            "from (select o.user_id, count(r.resource_id) as file_count, coalesce(sum(r.size), 0) as total_bytes " +
+            "from resource_usage o left join resource_info r on r.owner_id = o.user_id " +
+            "where o.user_id > :after and o.user_id <= :until group by o.user_id) c " +
+            "where u.user_id = c.user_id and (u.file_count <> c.file_count or u.total_bytes <> c.total_bytes)", nativeQuery = true)
+    int recount(@Param("after") Long after, @Param("until") Long until);
+
+}
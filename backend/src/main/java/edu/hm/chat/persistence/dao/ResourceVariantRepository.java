@@ -0,0 +1,22 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.ResourceVariant;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository dealing with downscaled variants of image resources.
+ */
+public interface ResourceVariantRepository extends CrudRepository<ResourceVariant, Long> {
+
+    @Query("select v from ResourceVariant v where v.resource.resourceId = :resourceId and v.dimension = :dimension")
+    Optional<ResourceVariant> findByResourceIdAndDimension(@Param("resourceId") String resourceId, @Param("dimension") int dimension);
+
+    @Query("select v from ResourceVariant v where v.resource.resourceId = :resourceId")
+    List<ResourceVariant> findByResourceId(@Param("resourceId") String resourceId);
+
+}
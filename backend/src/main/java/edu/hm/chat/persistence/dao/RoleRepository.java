@@ -1,10 +1,14 @@
 package edu.hm.chat.persistence.dao;
 
 import edu.hm.chat.persistence.model.Role;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 
+import javax.persistence.QueryHint;
+
 public interface RoleRepository extends CrudRepository<Role, Long> {
 
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     Role findByName(String name);
 
     @Override
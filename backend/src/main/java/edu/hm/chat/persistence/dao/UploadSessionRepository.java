@@ -0,0 +1,75 @@
+package edu.hm.chat.persistence.dao;
+
+import edu.hm.chat.persistence.model.UploadSession;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Repository dealing with uploads sent in chunks.
+ * The chunk bitmaps are only changed by single statements, so chunks written in parallel do not overwrite each other.
+ */
+public interface UploadSessionRepository extends CrudRepository<UploadSession, String> {
+
+    long countByOwnerId(Long ownerId);
+
+    /**
+     * Claim a chunk for writing, unless it has been received already, is being written or the upload is being completed.
+     *
+     * @return 1 if the chunk has been claimed
+     */
+    @Modifying
+    @Query(value = "update upload_session set claimed = set_bit(claimed, :index, 1) where id = :id and not completing " +
+            "and get_bit(received, :index) = 0 and get_bit(claimed, :index) = 0", nativeQuery = true)
+    int claimChunk(@Param("id") String id, @Param("index") int index);
+
+    @Modifying
+    @Query(value = "update upload_session set claimed = set_bit(claimed, :index, 0) where id = :id", nativeQuery = true)
+    int releaseChunk(@Param("id") String id, @Param("index") int index);
+
+    /**
+     * Mark a claimed chunk as received and extend the lifetime of the upload.
+     */
+    @Modifying
+    @Query(value = "update upload_session set received = set_bit(received, :index, 1), claimed = set_bit(claimed, :index, 0), " +
+            "expires_at = :expiresAt where id = :id", nativeQuery = true)
+    int markReceived(@Param("id") String id, @Param("index") int index, @Param("expiresAt") long expiresAt);
+
+    /**
+     * Stop accepting chunks to complete the upload.
+     *
+     * @return 1 if no other request completes the upload already
+     */
+    @Modifying
+    @Query(value = "update upload_session set completing = true where id = :id and not completing", nativeQuery = true)
+    int startCompletion(@Param("id") String id);
+
+    @Modifying
+    @Query(value = "update upload_session set completing = false where id = :id", nativeQuery = true)
+    int abortCompletion(@Param("id") String id);
+
+    @Query(value = "select id from upload_session where expires_at < :now order by expires_at limit :limit", nativeQuery = true)
+    List<String> findExpiredIds(@Param("now") long now, @Param("limit") int limit);
+
+    /**
+     * Delete an upload unless it is being completed.
+     *
+     * @return 1 if the upload has been deleted
+     */
+    @Modifying
+    @Query(value = "delete from upload_session where id = :id and not completing", nativeQuery = true)
+    int deleteUnlessCompleting(@Param("id") String id);
+
+    /**
+     * Delete an upload if it has expired, so uploads which received a chunk meanwhile are kept.
+     *
+     * @return 1 if the upload has been deleted
+     */
+    @Modifying
+    @Query(value = "delete from upload_session where id = :id and expires_at < :now and not completing", nativeQuery = true)
+    int deleteExpired(@Param("id") String id, @Param("now") long now);
+
+}
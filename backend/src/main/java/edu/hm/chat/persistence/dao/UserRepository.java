@@ -2,18 +2,44 @@ package edu.hm.chat.persistence.dao;
 
 import edu.hm.chat.persistence.model.Role;
 import edu.hm.chat.persistence.model.User;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.Collection;
 import java.util.List;
 
 public interface UserRepository extends CrudRepository<User, Long> {
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     User findByEmail(String email);
 
+    @QueryHints(@QueryHint(name = org.hibernate.annotations.QueryHints.CACHEABLE, value = "true"))
     List<User> findByRolesContaining(Role role);
 
+    List<User> findByDeletedFalse();
+
+    @Query(value = "select id from user_account where deleted = true", nativeQuery = true)
+    List<Long> findDeletedIds();
+
+    @Modifying
+    @Query(value = "update user_account set deleted = true where id = :userId", nativeQuery = true)
+    int markDeleted(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from users_roles where user_id = :userId", nativeQuery = true)
+    int deleteRoles(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from resource_info_visible_for where visible_for_id = :userId", nativeQuery = true)
+    int deleteResourceVisibility(@Param("userId") Long userId);
+
+    @Modifying
+    @Query(value = "delete from user_account where id = :userId", nativeQuery = true)
+    int deleteRow(@Param("userId") Long userId);
+
     @Override
     void delete(User user);
 
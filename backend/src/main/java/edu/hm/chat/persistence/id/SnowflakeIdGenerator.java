@@ -0,0 +1,48 @@
+package edu.hm.chat.persistence.id;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Hibernate identifier generator assigning {@link SnowflakeIds}, so inserts need no round trip to a sequence.
+ * The node ID is read from the {@value #NODE_ID_SETTING} setting and defaults to 0.
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator, Configurable {
+
+    /**
+     * Name of the generator to reference in mappings.
+     */
+    public static final String NAME = "snowflake";
+
+    /**
+     * Hibernate setting holding the node ID.
+     */
+    public static final String NODE_ID_SETTING = "edu.hm.chat.message-store.node-id";
+
+    /**
+     * Source of the IDs.
+     */
+    private SnowflakeIds ids;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Integer nodeId = serviceRegistry.getService(ConfigurationService.class)
+                .getSetting(NODE_ID_SETTING, value -> Integer.parseInt(value.toString()), 0);
+
+        ids = SnowflakeIds.forNode(nodeId);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return ids.next();
+    }
+
+}
@@ -0,0 +1,131 @@
+package edu.hm.chat.persistence.id;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Source of time-ordered 64-bit IDs, which can be generated on every node without coordination.
+ * <p>
+ * Layout: {@code [41 bit milliseconds since epoch][10 bit node ID][12 bit sequence]}.
+ * IDs of a node are strictly increasing: when the clock goes backwards or the sequence of a millisecond
+ * is exhausted, the logical clock moves ahead of the wall clock until it catches up again.
+ */
+public class SnowflakeIds {
+
+    /**
+     * Epoch of the IDs (2020-01-01T00:00:00Z).
+     */
+    public static final long EPOCH = 1577836800000L;
+
+    /**
+     * Amount of bits used for the node ID.
+     */
+    private static final int NODE_BITS = 10;
+
+    /**
+     * Amount of bits used for the sequence within a millisecond.
+     */
+    private static final int SEQUENCE_BITS = 12;
+
+    /**
+     * Maximum node ID.
+     */
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * Sources shared per node ID, so all generators of a node draw from the same sequence.
+     */
+    private static final Map<Integer, SnowflakeIds> NODES = new ConcurrentHashMap<>();
+
+    /**
+     * ID of the node, shifted to its position.
+     */
+    private final long node;
+
+    /**
+     * Logical time in milliseconds since the epoch of the last generated ID.
+     */
+    private long lastTime = -1;
+
+    /**
+     * Sequence of the last generated ID within its millisecond.
+     */
+    private long sequence;
+
+    private SnowflakeIds(int nodeId) {
+        this.node = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    /**
+     * Get the ID source of the passed node.
+     *
+     * @param nodeId of the node
+     * @return the ID source of the node
+     */
+    public static SnowflakeIds forNode(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException(String.format("Node ID must be between 0 and %d", MAX_NODE_ID));
+        }
+
+        return NODES.computeIfAbsent(nodeId, SnowflakeIds::new);
+    }
+
+    /**
+     * Get the timestamp in milliseconds the passed ID has been generated at.
+     *
+     * @param id to get timestamp of
+     * @return timestamp of the ID
+     */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    /**
+     * Compose the ID with the passed parts, for example to generate reproducible IDs for historic data.
+     *
+     * @param timestamp in milliseconds, not before the epoch
+     * @param nodeId    of the node
+     * @param sequence  within the millisecond
+     * @return the composed ID
+     */
+    public static long compose(long timestamp, int nodeId, long sequence) {
+        if (timestamp < EPOCH || nodeId < 0 || nodeId > MAX_NODE_ID || sequence < 0 || sequence > SEQUENCE_MASK) {
+            throw new IllegalArgumentException("ID parts out of range");
+        }
+
+        return ((timestamp - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | ((long) nodeId << SEQUENCE_BITS) | sequence;
+    }
+
+    /**
+     * Get the maximum sequence within a millisecond.
+     *
+     * @return the maximum sequence
+     */
+    public static long maxSequence() {
+        return SEQUENCE_MASK;
+    }
+
+    /**
+     * Generate the next ID.
+     *
+     * @return the next ID
+     */
+    public synchronized long next() {
+        long now = System.currentTimeMillis() - EPOCH;
+
+        if (now > lastTime) {
+            lastTime = now;
+            sequence = 0;
+        } else {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                lastTime++;
+            }
+        }
+
+        return (lastTime << (NODE_BITS + SEQUENCE_BITS)) | node | sequence;
+    }
+
+}
@@ -0,0 +1,105 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * Watermark left behind when messages of a chat have been moved into the archive.
+ * All messages of the chat with a timestamp lower or equal to the watermark are archived.
+ */
+@Entity
+public class ArchiveWatermark {
+
+    /**
+     * ID of the chat the watermark belongs to.
+     */
+    @Id
+    @Column(unique = true, nullable = false)
+    private Long chatId;
+
+    /**
+     * Timestamp of the newest archived message.
+     */
+    @Column(nullable = false)
+    private Long archivedUntil;
+
+    /**
+     * Amount of archived messages.
+     */
+    @Column(nullable = false)
+    private Long messageCount;
+
+    /**
+     * Amount of segment files written for the chat.
+     */
+    @Column(nullable = false)
+    private Integer segmentCount;
+
+    public ArchiveWatermark(Long chatId) {
+        this.chatId = chatId;
+        this.archivedUntil = 0L;
+        this.messageCount = 0L;
+        this.segmentCount = 0;
+    }
+
+    public ArchiveWatermark() {
+        // Default constructor
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(Long chatId) {
+        this.chatId = chatId;
+    }
+
+    public Long getArchivedUntil() {
+        return archivedUntil;
+    }
+
+    public void setArchivedUntil(Long archivedUntil) {
+        this.archivedUntil = archivedUntil;
+    }
+
+    public Long getMessageCount() {
+        return messageCount;
+    }
+
+    public void setMessageCount(Long messageCount) {
+        this.messageCount = messageCount;
+    }
+
+    public Integer getSegmentCount() {
+        return segmentCount;
+    }
+
+    public void setSegmentCount(Integer segmentCount) {
+        this.segmentCount = segmentCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ArchiveWatermark that = (ArchiveWatermark) o;
+
+        if (!Objects.equals(chatId, that.chatId)) return false;
+        if (!Objects.equals(archivedUntil, that.archivedUntil)) return false;
+        if (!Objects.equals(messageCount, that.messageCount)) return false;
+        return Objects.equals(segmentCount, that.segmentCount);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = chatId != null ? chatId.hashCode() : 0;
+        result = 31 * result + (archivedUntil != null ? archivedUntil.hashCode() : 0);
+        result = 31 * result + (messageCount != null ? messageCount.hashCode() : 0);
+        result = 31 * result + (segmentCount != null ? segmentCount.hashCode() : 0);
+        return result;
+    }
+
+}
@@ -1,13 +1,20 @@
 package edu.hm.chat.persistence.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.util.List;
+import java.util.Set;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Where(clause = "deleted = false")
 public class Chat {
     @Id
     @Column(unique = true, nullable = false)
@@ -21,13 +28,38 @@ public class Chat {
     @ManyToOne
     private User owner;
 
+    /**
+     * Members of the chat, mapped as set so membership changes are written as single join table rows.
+     */
     @ManyToMany
-    private List<User> members;
+    @OrderBy("id")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    private Set<User> members;
 
     @OneToMany(fetch = FetchType.LAZY, mappedBy = "chat", cascade = CascadeType.ALL)
     @JsonIgnore
     private List<Message> messages;
 
+    /**
+     * Version used for optimistic locking, incremented with every change of the chat or its members.
+     */
+    @Version
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "bigint not null default 0")
+    private Long version;
+
+    /**
+     * Time in milliseconds after which messages of the chat expire, null to keep them forever.
+     */
+    private Long retention;
+
+    /**
+     * Whether the chat has been deleted and is waiting for its messages to be purged.
+     */
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean deleted;
+
     public Chat() {
     }
 
@@ -62,11 +94,35 @@ public class Chat {
         this.owner = owner;
     }
 
-    public List<User> getMembers() {
+    public Set<User> getMembers() {
         return members;
     }
 
-    public void setMembers(List<User> members) {
+    public void setMembers(Set<User> members) {
         this.members = members;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Long retention) {
+        this.retention = retention;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
 }
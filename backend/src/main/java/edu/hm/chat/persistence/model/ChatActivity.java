@@ -0,0 +1,133 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * Denormalized last activity of a chat, describing its newest message.
+ */
+@Entity
+public class ChatActivity {
+
+    /**
+     * Maximum length of the preview of the last message.
+     */
+    public static final int PREVIEW_LENGTH = 100;
+
+    /**
+     * ID of the chat the activity belongs to.
+     */
+    @Id
+    @Column(unique = true, nullable = false)
+    private Long chatId;
+
+    /**
+     * Timestamp of the last activity, the newest message or the creation of the chat.
+     */
+    @Column(nullable = false)
+    private Long lastActivity;
+
+    /**
+     * ID of the newest message, null in case the chat has no messages yet.
+     */
+    private Long lastMessageId;
+
+    /**
+     * ID of the author of the newest message.
+     */
+    private Long lastAuthorId;
+
+    /**
+     * Type of the newest message.
+     */
+    @Enumerated(EnumType.STRING)
+    private MessageType lastMessageType;
+
+    /**
+     * Beginning of the content of the newest text message.
+     */
+    @Column(length = PREVIEW_LENGTH)
+    private String preview;
+
+    public ChatActivity() {
+        // Default constructor
+    }
+
+    public ChatActivity(Long chatId, Long lastActivity) {
+        this.chatId = chatId;
+        this.lastActivity = lastActivity;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(Long chatId) {
+        this.chatId = chatId;
+    }
+
+    public Long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void setLastActivity(Long lastActivity) {
+        this.lastActivity = lastActivity;
+    }
+
+    public Long getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(Long lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public Long getLastAuthorId() {
+        return lastAuthorId;
+    }
+
+    public void setLastAuthorId(Long lastAuthorId) {
+        this.lastAuthorId = lastAuthorId;
+    }
+
+    public MessageType getLastMessageType() {
+        return lastMessageType;
+    }
+
+    public void setLastMessageType(MessageType lastMessageType) {
+        this.lastMessageType = lastMessageType;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+
+    public void setPreview(String preview) {
+        this.preview = preview;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ChatActivity that = (ChatActivity) o;
+
+        if (!Objects.equals(chatId, that.chatId)) return false;
+        if (!Objects.equals(lastActivity, that.lastActivity)) return false;
+        return Objects.equals(lastMessageId, that.lastMessageId);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = chatId != null ? chatId.hashCode() : 0;
+        result = 31 * result + (lastActivity != null ? lastActivity.hashCode() : 0);
+        result = 31 * result + (lastMessageId != null ? lastMessageId.hashCode() : 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,88 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Entry of the per-user index of chats ordered by their last activity.
+ */
+@Entity
+@IdClass(ChatRecency.Key.class)
+@Table(indexes = @Index(columnList = "user_id, last_activity"))
+public class ChatRecency {
+
+    /**
+     * ID of the member the entry belongs to.
+     */
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * ID of the chat.
+     */
+    @Id
+    @Column(name = "chat_id", nullable = false)
+    private Long chatId;
+
+    /**
+     * Timestamp of the last activity in the chat.
+     */
+    @Column(name = "last_activity", nullable = false)
+    private Long lastActivity;
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(Long chatId) {
+        this.chatId = chatId;
+    }
+
+    public Long getLastActivity() {
+        return lastActivity;
+    }
+
+    public void setLastActivity(Long lastActivity) {
+        this.lastActivity = lastActivity;
+    }
+
+    /**
+     * Composite key of an entry.
+     */
+    public static class Key implements Serializable {
+
+        private Long userId;
+
+        private Long chatId;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            if (!Objects.equals(userId, key.userId)) return false;
+            return Objects.equals(chatId, key.chatId);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = userId != null ? userId.hashCode() : 0;
+            result = 31 * result + (chatId != null ? chatId.hashCode() : 0);
+            return result;
+        }
+
+    }
+
+}
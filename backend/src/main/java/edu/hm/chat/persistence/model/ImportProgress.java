@@ -0,0 +1,104 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * Progress of a bulk history import, used to resume it after an interruption.
+ */
+@Entity
+public class ImportProgress {
+
+    /**
+     * Name of the import.
+     */
+    @Id
+    @Column(unique = true, nullable = false)
+    private String name;
+
+    /**
+     * Amount of input lines processed while staging, including skipped ones.
+     */
+    @Column(nullable = false)
+    private Long stagedLines;
+
+    /**
+     * Amount of input lines skipped because they could not be parsed.
+     */
+    @Column(nullable = false)
+    private Long skippedLines;
+
+    /**
+     * Amount of messages merged into the message table.
+     */
+    @Column(nullable = false)
+    private Long mergedMessages;
+
+    public ImportProgress(String name) {
+        this.name = name;
+        this.stagedLines = 0L;
+        this.skippedLines = 0L;
+        this.mergedMessages = 0L;
+    }
+
+    public ImportProgress() {
+        // Default constructor
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getStagedLines() {
+        return stagedLines;
+    }
+
+    public void setStagedLines(Long stagedLines) {
+        this.stagedLines = stagedLines;
+    }
+
+    public Long getSkippedLines() {
+        return skippedLines;
+    }
+
+    public void setSkippedLines(Long skippedLines) {
+        this.skippedLines = skippedLines;
+    }
+
+    public Long getMergedMessages() {
+        return mergedMessages;
+    }
+
+    public void setMergedMessages(Long mergedMessages) {
+        this.mergedMessages = mergedMessages;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ImportProgress that = (ImportProgress) o;
+
+        if (!Objects.equals(name, that.name)) return false;
+        if (!Objects.equals(stagedLines, that.stagedLines)) return false;
+        if (!Objects.equals(skippedLines, that.skippedLines)) return false;
+        return Objects.equals(mergedMessages, that.mergedMessages);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + (stagedLines != null ? stagedLines.hashCode() : 0);
+        result = 31 * result + (skippedLines != null ? skippedLines.hashCode() : 0);
+        result = 31 * result + (mergedMessages != null ? mergedMessages.hashCode() : 0);
+        return result;
+    }
+
+}
@@ -0,0 +1,71 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * Position up to which the records of a local journal have been written to the database.
+ * Advanced in the same transaction as the replayed records.
+ */
+@Entity
+public class JournalCheckpoint {
+
+    /**
+     * Name of the journal the checkpoint belongs to.
+     */
+    @Id
+    @Column(unique = true, nullable = false)
+    private String name;
+
+    /**
+     * Journal position after the last replayed record.
+     */
+    @Column(nullable = false)
+    private Long position;
+
+    public JournalCheckpoint(String name, Long position) {
+        this.name = name;
+        this.position = position;
+    }
+
+    public JournalCheckpoint() {
+        // Default constructor
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Long getPosition() {
+        return position;
+    }
+
+    public void setPosition(Long position) {
+        this.position = position;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        JournalCheckpoint that = (JournalCheckpoint) o;
+
+        if (!Objects.equals(name, that.name)) return false;
+        return Objects.equals(position, that.position);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + (position != null ? position.hashCode() : 0);
+        return result;
+    }
+
+}
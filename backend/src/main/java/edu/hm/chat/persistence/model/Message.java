@@ -1,14 +1,23 @@
 package edu.hm.chat.persistence.model;
 
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.id.SnowflakeIdGenerator;
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.util.Objects;
 
 @Entity
+@Table(indexes = {
+        @Index(columnList = "chat_id, timestamp"),
+        @Index(columnList = "author_id")
+})
 public class Message {
     @Id
     @Column(unique = true, nullable = false)
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+    @GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "edu.hm.chat.persistence.id.SnowflakeIdGenerator")
     private Long id;
 
     @NotNull
@@ -18,10 +27,24 @@ public class Message {
     @NotNull
     private Long timestamp;
 
-    @NotNull
+    /**
+     * Content of the message, null in case it is stored compressed.
+     */
     @Column(length = 5000)
     private String content;
 
+    /**
+     * Content of the message encoded by the {@link MessageContentCodec}, null in case it is stored as is.
+     */
+    @Column(name = "content_compressed")
+    private byte[] compressedContent;
+
+    /**
+     * Decoded content, cached after the compressed content has been read once.
+     */
+    @Transient
+    private String decodedContent;
+
     @NotNull
     @Enumerated(EnumType.STRING)
     private MessageType type;
@@ -38,6 +61,8 @@ public class Message {
         this.author = from.author;
         this.timestamp = from.timestamp;
         this.content = from.content;
+        this.compressedContent = from.compressedContent;
+        this.decodedContent = from.decodedContent;
         this.chat = from.chat;
         this.type = from.type;
     }
@@ -67,11 +92,47 @@ public class Message {
     }
 
     public String getContent() {
-        return content;
+        if (content != null) {
+            return content;
+        }
+        if (decodedContent == null && compressedContent != null) {
+            decodedContent = MessageContentCodec.decode(compressedContent);
+        }
+
+        return decodedContent;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.compressedContent = null;
+        this.decodedContent = null;
+    }
+
+    /**
+     * Whether the content of the message is stored compressed.
+     *
+     * @return whether the content is compressed
+     */
+    public boolean isContentCompressed() {
+        return compressedContent != null;
+    }
+
+    /**
+     * Compress the content before it is written in case it is large enough.
+     */
+    @PrePersist
+    @PreUpdate
+    public void compressContent() {
+        if (content == null) {
+            return;
+        }
+
+        byte[] encoded = MessageContentCodec.encode(content);
+        if (encoded != null) {
+            decodedContent = content;
+            content = null;
+            compressedContent = encoded;
+        }
     }
 
     public Chat getChat() {
@@ -100,7 +161,7 @@ public class Message {
         if (!Objects.equals(id, message.id)) return false;
         if (!Objects.equals(author, message.author)) return false;
         if (!Objects.equals(timestamp, message.timestamp)) return false;
-        if (!Objects.equals(content, message.content)) return false;
+        if (!Objects.equals(getContent(), message.getContent())) return false;
         if (type != message.type) return false;
         return Objects.equals(chat, message.chat);
     }
@@ -110,7 +171,7 @@ public class Message {
         int result = id != null ? id.hashCode() : 0;
         result = 31 * result + (author != null ? author.hashCode() : 0);
         result = 31 * result + (timestamp != null ? timestamp.hashCode() : 0);
-        result = 31 * result + (content != null ? content.hashCode() : 0);
+        result = 31 * result + (getContent() != null ? getContent().hashCode() : 0);
         result = 31 * result + (type != null ? type.hashCode() : 0);
         result = 31 * result + (chat != null ? chat.hashCode() : 0);
         return result;
@@ -122,7 +183,7 @@ public class Message {
                 "id=" + id +
                 ", author=" + author +
                 ", timestamp=" + timestamp +
-                ", content='" + content + "'" +
+                ", content='" + getContent() + "'" +
                 ", chat='" + chat + "'" +
                 '}';
     }
@@ -0,0 +1,116 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import java.util.Objects;
+
+/**
+ * Content-addressed file shared by all resources with the same content.
+ * The file is only removed once the last resource referencing it has been removed.
+ */
+@Entity
+public class ResourceBlob {
+
+    /**
+     * Hex encoded SHA-256 hash of the content, used as file name of the blob.
+     */
+    @Id
+    @Column(unique = true, nullable = false, length = 64)
+    private String hash;
+
+    /**
+     * Size of the content in bytes.
+     */
+    @Column(nullable = false)
+    private Long size;
+
+    /**
+     * Amount of resources referencing the blob.
+     */
+    @Column(nullable = false)
+    private Long referenceCount;
+
+    /**
+     * Time a reference to the blob has been acquired last in milliseconds since the epoch,
+     * {@code null} for blobs last acquired before it has been tracked.
+     */
+    private Long acquiredAt;
+
+    /**
+     * Encoding the file of the blob is stored in, {@code null} if stored as is.
+     */
+    @Column(length = 16)
+    private String contentEncoding;
+
+    public ResourceBlob(String hash, Long size) {
+        this.hash = hash;
+        this.size = size;
+        this.referenceCount = 0L;
+    }
+
+    public ResourceBlob() {
+        // Default constructor
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public Long getReferenceCount() {
+        return referenceCount;
+    }
+
+    public void setReferenceCount(Long referenceCount) {
+        this.referenceCount = referenceCount;
+    }
+
+    public Long getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public void setAcquiredAt(Long acquiredAt) {
+        this.acquiredAt = acquiredAt;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ResourceBlob that = (ResourceBlob) o;
+
+        if (!Objects.equals(hash, that.hash)) return false;
+        if (!Objects.equals(size, that.size)) return false;
+        return Objects.equals(referenceCount, that.referenceCount);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hash != null ? hash.hashCode() : 0;
+        result = 31 * result + (size != null ? size.hashCode() : 0);
+        result = 31 * result + (referenceCount != null ? referenceCount.hashCode() : 0);
+        return result;
+    }
+
+}
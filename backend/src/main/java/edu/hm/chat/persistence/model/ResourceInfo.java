@@ -13,6 +13,7 @@ import java.util.Set;
  * Info for a resource.
  */
 @Entity
+@Table(indexes = {@Index(columnList = "ownerId"), @Index(columnList = "blobHash")})
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ResourceInfo {
 
@@ -67,6 +68,32 @@ public class ResourceInfo {
     @Column(nullable = false)
     private Long timestamp;
 
+    /**
+     * Hash of the blob holding the content, {@code null} for resources stored before deduplication.
+     */
+    @JsonIgnore
+    @Column(length = 64)
+    private String blobHash;
+
+    /**
+     * Encoding the content is stored in, taken over from its blob, {@code null} if stored as is.
+     */
+    @JsonIgnore
+    @Column(length = 16)
+    private String contentEncoding;
+
+    /**
+     * Width of an image resource in pixels, {@code 0} if the image could not be decoded
+     * and {@code null} if it has not been decoded yet.
+     */
+    private Integer width;
+
+    /**
+     * Height of an image resource in pixels, {@code 0} if the image could not be decoded
+     * and {@code null} if it has not been decoded yet.
+     */
+    private Integer height;
+
     public ResourceInfo(String resourceId, User owner) {
         this.resourceId = resourceId;
         this.ownerId = owner.getId();
@@ -142,6 +169,38 @@ public class ResourceInfo {
         this.timestamp = timestamp;
     }
 
+    public String getBlobHash() {
+        return blobHash;
+    }
+
+    public void setBlobHash(String blobHash) {
+        this.blobHash = blobHash;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -155,7 +214,8 @@ public class ResourceInfo {
         if (!Objects.equals(visibleFor, that.visibleFor)) return false;
         if (!Objects.equals(originalName, that.originalName)) return false;
         if (!Objects.equals(size, that.size)) return false;
-        return Objects.equals(contentType, that.contentType);
+        if (!Objects.equals(contentType, that.contentType)) return false;
+        return Objects.equals(blobHash, that.blobHash);
     }
 
     @Override
@@ -167,6 +227,7 @@ public class ResourceInfo {
         result = 31 * result + (originalName != null ? originalName.hashCode() : 0);
         result = 31 * result + (size != null ? size.hashCode() : 0);
         result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
+        result = 31 * result + (blobHash != null ? blobHash.hashCode() : 0);
         return result;
     }
 }
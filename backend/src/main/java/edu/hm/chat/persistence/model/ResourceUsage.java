@@ -0,0 +1,86 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * Amount of resources owned by a user and their total size, maintained together with the resource info.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "total_bytes"))
+public class ResourceUsage {
+
+    /**
+     * ID of the owner of the resources.
+     */
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * Amount of resources owned by the user.
+     */
+    @Column(name = "file_count", nullable = false)
+    private Long fileCount;
+
+    /**
+     * Total size in bytes of the resources owned by the user.
+     */
+    @Column(name = "total_bytes", nullable = false)
+    private Long totalBytes;
+
+    public ResourceUsage(Long userId, Long fileCount, Long totalBytes) {
+        this.userId = userId;
+        this.fileCount = fileCount;
+        this.totalBytes = totalBytes;
+    }
+
+    public ResourceUsage() {
+        // Default constructor
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(Long fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public Long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(Long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ResourceUsage that = (ResourceUsage) o;
+
+        if (!Objects.equals(userId, that.userId)) return false;
+        if (!Objects.equals(fileCount, that.fileCount)) return false;
+        return Objects.equals(totalBytes, that.totalBytes);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = userId != null ? userId.hashCode() : 0;
+        result = 31 * result + (fileCount != null ? fileCount.hashCode() : 0);
+        result = 31 * result + (totalBytes != null ? totalBytes.hashCode() : 0);
+        return result;
+    }
+
+}
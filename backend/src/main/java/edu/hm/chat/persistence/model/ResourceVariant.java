@@ -0,0 +1,126 @@
+package edu.hm.chat.persistence.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.*;
+import java.util.Objects;
+
+/**
+ * Downscaled variant of an image resource, stored as its own blob.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"resource_id", "dimension"}), indexes = @Index(columnList = "blobHash"))
+public class ResourceVariant {
+
+    /**
+     * ID of the variant.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    private Long id;
+
+    /**
+     * Resource the variant has been derived from.
+     */
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "resource_id")
+    @JsonIgnore
+    private ResourceInfo resource;
+
+    /**
+     * Maximum edge length of the variant in pixels.
+     */
+    @Column(nullable = false)
+    private Integer dimension;
+
+    /**
+     * Hash of the blob holding the variant.
+     */
+    @Column(nullable = false, length = 64)
+    private String blobHash;
+
+    /**
+     * Content type of the variant.
+     */
+    @Column(nullable = false)
+    private String contentType;
+
+    /**
+     * Size of the variant in bytes.
+     */
+    @Column(nullable = false)
+    private Long size;
+
+    public ResourceVariant(ResourceInfo resource, Integer dimension) {
+        this.resource = resource;
+        this.dimension = dimension;
+    }
+
+    public ResourceVariant() {
+        // Default constructor
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public ResourceInfo getResource() {
+        return resource;
+    }
+
+    public void setResource(ResourceInfo resource) {
+        this.resource = resource;
+    }
+
+    public Integer getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(Integer dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getBlobHash() {
+        return blobHash;
+    }
+
+    public void setBlobHash(String blobHash) {
+        this.blobHash = blobHash;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ResourceVariant that = (ResourceVariant) o;
+
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id != null ? id.hashCode() : 0;
+    }
+
+}
@@ -0,0 +1,210 @@
+package edu.hm.chat.persistence.model;
+
+import javax.persistence.*;
+
+/**
+ * Upload of a file sent in chunks, which may arrive in any order and in parallel.
+ * The received chunks are tracked in a bitmap, so a client can resume an interrupted upload.
+ */
+@Entity
+@Table(indexes = {
+        @Index(columnList = "ownerId"),
+        @Index(columnList = "expiresAt")
+})
+public class UploadSession {
+
+    /**
+     * ID of the upload.
+     */
+    @Id
+    @Column(unique = true, nullable = false)
+    private String id;
+
+    /**
+     * ID of the user uploading the file.
+     */
+    @Column(nullable = false)
+    private Long ownerId;
+
+    /**
+     * Original name of the file.
+     */
+    @Column(nullable = false, length = 1024)
+    private String originalName;
+
+    /**
+     * Content type declared by the client, {@code null} if not declared.
+     */
+    private String declaredContentType;
+
+    /**
+     * Size of the file in bytes.
+     */
+    @Column(nullable = false)
+    private Long size;
+
+    /**
+     * Size of every chunk but the last one in bytes.
+     */
+    @Column(nullable = false)
+    private Integer chunkSize;
+
+    /**
+     * Bitmap of the received chunks, bit {@code i % 8} of byte {@code i / 8} is set once chunk {@code i} has been written.
+     */
+    @Column(nullable = false)
+    private byte[] received;
+
+    /**
+     * Bitmap of the chunks currently being written, so a chunk is never written twice at once.
+     */
+    @Column(nullable = false)
+    private byte[] claimed;
+
+    /**
+     * Timestamp after which the upload is discarded if not completed.
+     */
+    @Column(nullable = false)
+    private Long expiresAt;
+
+    /**
+     * Whether the upload is being completed, no chunks are accepted anymore.
+     */
+    @Column(nullable = false)
+    private boolean completing;
+
+    public UploadSession(String id, Long ownerId, String originalName, String declaredContentType, long size, int chunkSize) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.originalName = originalName;
+        this.declaredContentType = declaredContentType;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.received = new byte[(getChunkCount() + 7) / 8];
+        this.claimed = new byte[received.length];
+    }
+
+    public UploadSession() {
+        // Default constructor
+    }
+
+    /**
+     * Get the amount of chunks the file is split into, at least one even for empty files.
+     *
+     * @return amount of chunks
+     */
+    public int getChunkCount() {
+        return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    /**
+     * Get the offset of a chunk in the file.
+     *
+     * @param index of the chunk
+     * @return offset in bytes
+     */
+    public long getChunkOffset(int index) {
+        return (long) index * chunkSize;
+    }
+
+    /**
+     * Get the size of a chunk, only the last one may be smaller than the chunk size.
+     *
+     * @param index of the chunk
+     * @return size in bytes
+     */
+    public long getChunkLength(int index) {
+        return Math.min(chunkSize, size - getChunkOffset(index));
+    }
+
+    /**
+     * Check whether a chunk has been received.
+     *
+     * @param index of the chunk
+     * @return whether the chunk has been written completely
+     */
+    public boolean isReceived(int index) {
+        return (received[index / 8] & (1 << (index % 8))) != 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(Long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    public void setOriginalName(String originalName) {
+        this.originalName = originalName;
+    }
+
+    public String getDeclaredContentType() {
+        return declaredContentType;
+    }
+
+    public void setDeclaredContentType(String declaredContentType) {
+        this.declaredContentType = declaredContentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public byte[] getReceived() {
+        return received;
+    }
+
+    public void setReceived(byte[] received) {
+        this.received = received;
+    }
+
+    public byte[] getClaimed() {
+        return claimed;
+    }
+
+    public void setClaimed(byte[] claimed) {
+        this.claimed = claimed;
+    }
+
+    public Long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isCompleting() {
+        return completing;
+    }
+
+    public void setCompleting(boolean completing) {
+        this.completing = completing;
+    }
+
+}
@@ -5,10 +5,15 @@ import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "user_account")
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class User {
@@ -36,6 +41,7 @@ public class User {
     private String password;
 
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(
             name = "users_roles",
             joinColumns = @JoinColumn(
@@ -47,6 +53,13 @@ public class User {
     )
     private List<Role> roles;
 
+    /**
+     * Whether the user has been deleted and is waiting for its messages to be purged.
+     */
+    @JsonIgnore
+    @Column(nullable = false, columnDefinition = "boolean not null default false")
+    private boolean deleted;
+
     public User() {
     }
 
@@ -107,6 +120,14 @@ public class User {
         this.roles = roles;
     }
 
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(final boolean deleted) {
+        this.deleted = deleted;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
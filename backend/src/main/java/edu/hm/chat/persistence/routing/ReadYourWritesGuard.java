@@ -0,0 +1,109 @@
+package edu.hm.chat.persistence.routing;
+
+import edu.hm.chat.config.DataSourceRoutingConfig;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Guard remembering which users have just written, so their following reads are served by the primary
+ * database instead of a replica which might not have caught up yet.
+ * <p>
+ * Requests modifying state are served by the primary altogether, as their reads usually decide what they write.
+ * This also covers reads running in the read-only transactions of the repositories before a write transaction began.
+ */
+@Component
+public class ReadYourWritesGuard {
+
+    /**
+     * HTTP methods of requests not modifying state.
+     */
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    /**
+     * Configuration for the routing.
+     */
+    private final DataSourceRoutingConfig config;
+
+    /**
+     * Timestamp of the last write per username.
+     */
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReadYourWritesGuard(DataSourceRoutingConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Remember that the currently authenticated user has written.
+     */
+    public void markWrite() {
+        String username = getCurrentUsername();
+        if (username != null) {
+            markWrite(username);
+        }
+    }
+
+    /**
+     * Remember that the passed user has written.
+     *
+     * @param username of the user who has written
+     */
+    public void markWrite(String username) {
+        if (config.isRoutingEnabled()) {
+            lastWrites.put(username, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Check whether reads of the currently authenticated user have to be served by the primary.
+     *
+     * @return whether to read from the primary
+     */
+    public boolean mustReadFromPrimary() {
+        if (isModifyingRequest()) {
+            return true;
+        }
+
+        String username = getCurrentUsername();
+        if (username == null) {
+            return false;
+        }
+
+        Long lastWrite = lastWrites.get(username);
+        return lastWrite != null && System.currentTimeMillis() - lastWrite < config.getReadYourWritesWindow().toMillis();
+    }
+
+    /**
+     * Forget writes older than the read-your-writes window.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void expire() {
+        long threshold = System.currentTimeMillis() - config.getReadYourWritesWindow().toMillis();
+        lastWrites.values().removeIf(timestamp -> timestamp < threshold);
+    }
+
+    private static boolean isModifyingRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+
+        String method = ((ServletRequestAttributes) attributes).getRequest().getMethod();
+        return !SAFE_METHODS.contains(method);
+    }
+
+    private static String getCurrentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : null;
+    }
+
+}
@@ -0,0 +1,198 @@
+package edu.hm.chat.persistence.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data source sending read-only transactions to healthy replicas in a round-robin fashion and everything else
+ * to the primary. Reads fall back to the primary when no replica is healthy or the user has just written.
+ * <p>
+ * Has to be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * so the connection is only fetched once the transaction has been marked read-only.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    /**
+     * Logger for the data source.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    /**
+     * Lookup key of the primary database.
+     */
+    private static final String PRIMARY = "primary";
+
+    /**
+     * Timeout in seconds for a replica to answer a health check.
+     */
+    private static final int HEALTH_CHECK_TIMEOUT = 2;
+
+    /**
+     * The primary database.
+     */
+    private final DataSource primary;
+
+    /**
+     * The replica databases.
+     */
+    private final List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * Guard deciding whether reads have to go to the primary after a write.
+     */
+    private final ReadYourWritesGuard readYourWritesGuard;
+
+    /**
+     * Counter used to pick replicas round-robin.
+     */
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * Executor checking the health of the replicas.
+     */
+    private final ScheduledExecutorService healthCheckExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplicaRoutingDataSource(
+            DataSource primary,
+            List<DataSource> replicaDataSources,
+            ReadYourWritesGuard readYourWritesGuard,
+            Duration healthCheckInterval
+    ) {
+        this.primary = primary;
+        this.readYourWritesGuard = readYourWritesGuard;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicaDataSources.get(i));
+            replicas.add(replica);
+            targets.put(replica.name, replica.dataSource);
+        }
+
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        long interval = healthCheckInterval.toMillis();
+        healthCheckExecutor.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Replica replica = determineReplica();
+        return replica != null ? replica.name : PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = determineReplica();
+        if (replica == null) {
+            return primary.getConnection();
+        }
+
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            LOGGER.warn("Could not connect to {}, falling back to the primary", replica.name, e);
+            replica.healthy = false;
+
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Determine the replica to use for the current transaction.
+     *
+     * @return the replica or {@code null} if the primary has to be used
+     */
+    private Replica determineReplica() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                readYourWritesGuard.markWrite();
+            }
+            return null;
+        }
+
+        if (readYourWritesGuard.mustReadFromPrimary()) {
+            return null;
+        }
+
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check the health of all replicas.
+     */
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(HEALTH_CHECK_TIMEOUT);
+            } catch (SQLException e) {
+                healthy = false;
+            }
+
+            if (healthy != replica.healthy) {
+                LOGGER.info("Replica {} is now {}", replica.name, healthy ? "healthy" : "unhealthy");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        healthCheckExecutor.shutdown();
+
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof Closeable) {
+                ((Closeable) replica.dataSource).close();
+            }
+        }
+        if (primary instanceof Closeable) {
+            ((Closeable) primary).close();
+        }
+    }
+
+    /**
+     * A replica database and its health.
+     */
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+    }
+
+}
@@ -0,0 +1,120 @@
+package edu.hm.chat.persistence.store;
+
+import edu.hm.chat.persistence.MessageStore;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.archive.ArchivedMessage;
+import edu.hm.chat.service.archive.MessageArchiveService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * Message store keeping the messages in the database, merged with the archived messages of a chat.
+ */
+@Component
+@ConditionalOnProperty(prefix = "edu.hm.chat.message-store", name = "type", havingValue = "jpa", matchIfMissing = true)
+public class JpaMessageStore implements MessageStore {
+
+    /**
+     * Repository dealing with messages.
+     */
+    private final MessageRepository messageRepository;
+
+    /**
+     * Service reading archived messages.
+     */
+    private final MessageArchiveService messageArchiveService;
+
+    /**
+     * Template used to expire every batch of messages in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    public JpaMessageStore(
+            MessageRepository messageRepository,
+            MessageArchiveService messageArchiveService,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.messageRepository = messageRepository;
+        this.messageArchiveService = messageArchiveService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public Message save(Message message) {
+        return messageRepository.save(message);
+    }
+
+    @Override
+    public List<Message> findPage(Chat chat, int page, int size) {
+        Pageable pageable = PageRequest.of(page, size, Sort.by("timestamp", "id").descending());
+        Page<Message> livePage = messageRepository.findByChat(chat, pageable);
+
+        List<Message> messages = new ArrayList<>(livePage.getContent());
+
+        // Archived messages are all older than the live ones, thus continue with them once the live rows are exhausted
+        int remaining = size - livePage.getNumberOfElements();
+        if (remaining > 0) {
+            long archiveOffset = Math.max(0, pageable.getOffset() - livePage.getTotalElements());
+            List<ArchivedMessage> archived = messageArchiveService.read(chat.getId(), archiveOffset, remaining);
+            for (int i = archived.size() - 1; i >= 0; i--) {
+                messages.add(toMessage(archived.get(i), chat));
+            }
+        }
+
+        return messages;
+    }
+
+    @Override
+    public OptionalLong findOldestTimestamp(long chatId) {
+        Long oldest = messageRepository.findOldestTimestamp(chatId);
+        return oldest != null ? OptionalLong.of(oldest) : OptionalLong.empty();
+    }
+
+    @Override
+    public long expire(long chatId, long before, int batchSize) {
+        long expired = 0;
+        int deleted;
+        do {
+            Integer result = transactionTemplate.execute(status -> messageRepository.deleteExpiredChunk(chatId, before, batchSize));
+            deleted = result != null ? result : 0;
+            expired += deleted;
+        } while (deleted >= batchSize);
+
+        return expired + messageArchiveService.expire(chatId, before);
+    }
+
+    @Override
+    public void deleteByChat(long chatId) {
+        // Live rows have been deleted in chunks by the purge of the chat already
+        messageArchiveService.removeArchive(chatId);
+    }
+
+    private static Message toMessage(ArchivedMessage archived, Chat chat) {
+        User author = new User();
+        author.setId(archived.getAuthorId());
+
+        Message message = new Message();
+        message.setId(archived.getId());
+        message.setAuthor(author);
+        message.setTimestamp(archived.getTimestamp());
+        message.setType(archived.getType());
+        message.setContent(archived.getContent());
+        message.setChat(chat);
+
+        return message;
+    }
+
+}
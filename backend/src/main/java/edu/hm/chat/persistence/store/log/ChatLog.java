@@ -0,0 +1,243 @@
+package edu.hm.chat.persistence.store.log;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of the messages of a single chat, split into segment files named after the ordinal
+ * of their first record.
+ */
+class ChatLog {
+
+    /**
+     * Extension of segment files.
+     */
+    private static final String SEGMENT_EXTENSION = ".log";
+
+    /**
+     * Directory containing the segments of the chat.
+     */
+    private final Path directory;
+
+    /**
+     * Size in bytes after which the active segment is sealed.
+     */
+    private final long segmentSize;
+
+    /**
+     * Every how many records an index entry is added.
+     */
+    private final int indexInterval;
+
+    /**
+     * Segments in ascending ordinal order, the last one is the active segment.
+     */
+    private final List<LogSegment> segments = new ArrayList<>();
+
+    /**
+     * Amount of records which have been forced to disk.
+     */
+    private long durableCount;
+
+    private ChatLog(Path directory, long segmentSize, int indexInterval) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Open the log in the passed directory, recovering the active segment if necessary.
+     */
+    static ChatLog open(Path directory, long segmentSize, int indexInterval) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SEGMENT_EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        ChatLog log = new ChatLog(directory, segmentSize, indexInterval);
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = file.getFileName().toString();
+            long baseOrdinal = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+
+            log.segments.add(LogSegment.open(file, baseOrdinal, indexInterval, i == files.size() - 1));
+        }
+
+        if (log.segments.isEmpty()) {
+            log.segments.add(LogSegment.create(log.segmentPath(0), 0, indexInterval));
+        }
+
+        log.durableCount = log.count();
+        return log;
+    }
+
+    /**
+     * Get the amount of records in the log.
+     *
+     * @return record count
+     */
+    synchronized long count() {
+        return active().getEndOrdinal();
+    }
+
+    /**
+     * Append a record to the log.
+     *
+     * @param record payload to append
+     * @return ordinal of the appended record
+     */
+    synchronized long append(byte[] record) throws IOException {
+        LogSegment active = active();
+        if (active.getSize() >= segmentSize) {
+            active.seal();
+            active = LogSegment.create(segmentPath(active.getEndOrdinal()), active.getEndOrdinal(), indexInterval);
+            segments.add(active);
+        }
+
+        long ordinal = active.getEndOrdinal();
+        active.append(record);
+
+        return ordinal;
+    }
+
+    /**
+     * Force all appended records to disk and wake up writers waiting for them.
+     */
+    void sync() throws IOException {
+        LogSegment active;
+        long target;
+        synchronized (this) {
+            active = active();
+            target = active.getEndOrdinal();
+        }
+
+        active.force();
+
+        synchronized (this) {
+            if (target > durableCount) {
+                durableCount = target;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait until the record with the passed ordinal has been forced to disk.
+     *
+     * @param ordinal to wait for
+     */
+    synchronized void awaitDurable(long ordinal) throws IOException {
+        try {
+            while (durableCount <= ordinal) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the log to be synced");
+        }
+    }
+
+    /**
+     * Read the records with the passed ordinals in ascending order.
+     *
+     * @param from     first ordinal (inclusive)
+     * @param to       last ordinal (exclusive)
+     * @param consumer to pass the records to
+     */
+    synchronized void read(long from, long to, Consumer<LogRecord> consumer) throws IOException {
+        for (LogSegment segment : segments) {
+            if (segment.getEndOrdinal() > from && segment.getBaseOrdinal() < to) {
+                segment.read(from, to, consumer);
+            }
+        }
+    }
+
+    /**
+     * Get the timestamp of the oldest record in the log.
+     *
+     * @return oldest timestamp or {@link Long#MAX_VALUE} if the log is empty
+     */
+    synchronized long oldestTimestamp() throws IOException {
+        long[] oldest = {Long.MAX_VALUE};
+        for (LogSegment segment : segments) {
+            if (segment.getEndOrdinal() > segment.getBaseOrdinal()) {
+                segment.read(segment.getBaseOrdinal(), segment.getBaseOrdinal() + 1, record -> oldest[0] = record.getTimestamp());
+                break;
+            }
+        }
+
+        return oldest[0];
+    }
+
+    /**
+     * Remove the sealed segments whose records are all older than the passed timestamp.
+     * The active segment is never removed.
+     *
+     * @param before timestamp before which records may be removed
+     * @return amount of removed records
+     */
+    synchronized long removeBefore(long before) throws IOException {
+        long removed = 0;
+        while (segments.size() > 1) {
+            LogSegment oldest = segments.get(0);
+
+            long[] newest = {Long.MAX_VALUE};
+            oldest.read(oldest.getEndOrdinal() - 1, oldest.getEndOrdinal(), record -> newest[0] = record.getTimestamp());
+            if (newest[0] >= before) {
+                break;
+            }
+
+            oldest.close();
+            Files.deleteIfExists(oldest.getPath());
+            segments.remove(0);
+            removed += oldest.getEndOrdinal() - oldest.getBaseOrdinal();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Close the log, forcing outstanding records to disk.
+     */
+    synchronized void close() throws IOException {
+        for (LogSegment segment : segments) {
+            segment.force();
+            segment.close();
+        }
+
+        durableCount = Long.MAX_VALUE; // Do not keep anybody waiting
+        notifyAll();
+    }
+
+    /**
+     * Close the log and remove all of its segments.
+     */
+    synchronized void delete() throws IOException {
+        close();
+        for (LogSegment segment : segments) {
+            Files.deleteIfExists(segment.getPath());
+        }
+        segments.clear();
+        Files.deleteIfExists(directory);
+    }
+
+    private LogSegment active() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private Path segmentPath(long baseOrdinal) {
+        return directory.resolve(String.format("%020d%s", baseOrdinal, SEGMENT_EXTENSION));
+    }
+
+}
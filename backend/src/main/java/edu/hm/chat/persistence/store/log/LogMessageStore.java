@@ -0,0 +1,222 @@
+package edu.hm.chat.persistence.store.log;
+
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.MessageStore;
+import edu.hm.chat.persistence.id.SnowflakeIds;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded append-only message store keeping one log per chat.
+ * <p>
+ * Writers append to the active segment of the chat log and then wait for the next batched fsync,
+ * which is issued for all logs written to in the meantime by a single background thread.
+ * Reads are served from memory-mapped segments using a sparse offset index.
+ */
+@Component
+@ConditionalOnProperty(prefix = "edu.hm.chat.message-store", name = "type", havingValue = "log")
+public class LogMessageStore implements MessageStore, DisposableBean {
+
+    /**
+     * Logger for the store.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogMessageStore.class);
+
+    /**
+     * Configuration for the store.
+     */
+    private final MessageStoreConfig config;
+
+    /**
+     * Source of the message IDs.
+     */
+    private final SnowflakeIds ids;
+
+    /**
+     * Opened chat logs per chat ID.
+     */
+    private final Map<Long, ChatLog> logs = new ConcurrentHashMap<>();
+
+    /**
+     * Logs appended to since the last fsync.
+     */
+    private final Set<ChatLog> dirtyLogs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Executor issuing the batched fsyncs.
+     */
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-log-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LogMessageStore(MessageStoreConfig config) {
+        this.config = config;
+        this.ids = SnowflakeIds.forNode(config.getNodeId());
+
+        long interval = config.getSyncInterval().toNanos();
+        syncExecutor.scheduleWithFixedDelay(this::syncDirtyLogs, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Message save(Message message) {
+        ChatLog log = getLog(message.getChat().getId());
+
+        try {
+            long id = ids.next();
+            long ordinal = log.append(new LogRecord(
+                    id,
+                    message.getAuthor().getId(),
+                    message.getTimestamp(),
+                    message.getType(),
+                    message.getContent()
+            ).encode());
+            message.setId(id);
+
+            dirtyLogs.add(log);
+            log.awaitDurable(ordinal);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return message;
+    }
+
+    @Override
+    public List<Message> findPage(Chat chat, int page, int size) {
+        ChatLog log = getLog(chat.getId());
+
+        long to = log.count() - (long) page * size;
+        long from = Math.max(0, to - size);
+        if (to <= 0) {
+            return List.of();
+        }
+
+        List<Message> messages = new ArrayList<>(size);
+        try {
+            log.read(from, to, record -> messages.add(toMessage(record, chat)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    @Override
+    public OptionalLong findOldestTimestamp(long chatId) {
+        try {
+            long oldest = getLog(chatId).oldestTimestamp();
+            return oldest != Long.MAX_VALUE ? OptionalLong.of(oldest) : OptionalLong.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Expire messages of the passed chat.
+     * Logs are append-only, thus whole segments are removed once all of their messages expired.
+     */
+    @Override
+    public long expire(long chatId, long before, int batchSize) {
+        try {
+            return getLog(chatId).removeBefore(before);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void deleteByChat(long chatId) {
+        ChatLog log = logs.remove(chatId);
+
+        try {
+            if (log == null) {
+                log = ChatLog.open(getChatDirectory(chatId), config.getSegmentSize(), config.getIndexInterval());
+            }
+
+            dirtyLogs.remove(log);
+            log.delete();
+        } catch (IOException e) {
+            LOGGER.error("Could not remove message log of chat {}", chatId, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        syncExecutor.shutdown();
+
+        for (ChatLog log : logs.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOGGER.error("Could not close message log", e);
+            }
+        }
+    }
+
+    private void syncDirtyLogs() {
+        for (ChatLog log : dirtyLogs) {
+            dirtyLogs.remove(log);
+
+            try {
+                log.sync();
+            } catch (IOException e) {
+                LOGGER.error("Could not sync message log", e);
+                dirtyLogs.add(log); // Retry with the next batch
+            }
+        }
+    }
+
+    private ChatLog getLog(long chatId) {
+        return logs.computeIfAbsent(chatId, (id) -> {
+            try {
+                return ChatLog.open(getChatDirectory(id), config.getSegmentSize(), config.getIndexInterval());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private Path getChatDirectory(long chatId) {
+        return Paths.get(config.getTarget()).toAbsolutePath().normalize().resolve(Long.toString(chatId));
+    }
+
+    private static Message toMessage(LogRecord record, Chat chat) {
+        User author = new User();
+        author.setId(record.getAuthorId());
+
+        Message message = new Message();
+        message.setId(record.getId());
+        message.setAuthor(author);
+        message.setTimestamp(record.getTimestamp());
+        message.setType(record.getType());
+        message.setContent(record.getContent());
+        message.setChat(chat);
+
+        return message;
+    }
+
+}
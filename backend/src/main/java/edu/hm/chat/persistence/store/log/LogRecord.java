@@ -0,0 +1,94 @@
+package edu.hm.chat.persistence.store.log;
+
+import edu.hm.chat.persistence.model.MessageType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single message record of a chat log.
+ */
+class LogRecord {
+
+    private final long id;
+    private final long authorId;
+    private final long timestamp;
+    private final MessageType type;
+    private final String content;
+
+    LogRecord(long id, long authorId, long timestamp, MessageType type, String content) {
+        this.id = id;
+        this.authorId = authorId;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.content = content;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    long getAuthorId() {
+        return authorId;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    MessageType getType() {
+        return type;
+    }
+
+    String getContent() {
+        return content;
+    }
+
+    /**
+     * Encode the record to its payload representation.
+     *
+     * @return the encoded payload
+     */
+    byte[] encode() {
+        byte[] typeBytes = type.name().getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES + 2 * Integer.BYTES + typeBytes.length + contentBytes.length);
+        buffer.putLong(id);
+        buffer.putLong(authorId);
+        buffer.putLong(timestamp);
+        buffer.putInt(typeBytes.length);
+        buffer.put(typeBytes);
+        buffer.putInt(contentBytes.length);
+        buffer.put(contentBytes);
+
+        return buffer.array();
+    }
+
+    /**
+     * Decode a record from the passed payload.
+     *
+     * @param payload positioned at the start of the payload
+     * @return the decoded record
+     */
+    static LogRecord decode(ByteBuffer payload) {
+        long id = payload.getLong();
+        long authorId = payload.getLong();
+        long timestamp = payload.getLong();
+
+        byte[] typeBytes = new byte[payload.getInt()];
+        payload.get(typeBytes);
+
+        byte[] contentBytes = new byte[payload.getInt()];
+        payload.get(contentBytes);
+
+        return new LogRecord(
+                id,
+                authorId,
+                timestamp,
+                MessageType.valueOf(new String(typeBytes, StandardCharsets.UTF_8)),
+                new String(contentBytes, StandardCharsets.UTF_8)
+        );
+    }
+
+}
@@ -0,0 +1,274 @@
+package edu.hm.chat.persistence.store.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A segment file of a chat log.
+ * <p>
+ * Records are laid out as {@code [payload length][CRC32 of payload][payload]}.
+ * Every {@code indexInterval}-th record position is kept in a sparse in-memory index,
+ * which is rebuilt when opening the segment.
+ */
+class LogSegment {
+
+    /**
+     * Size of the header in front of every record payload.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Upper bound for a single record payload, larger lengths indicate a torn write.
+     */
+    private static final int MAX_PAYLOAD_SIZE = 1024 * 1024;
+
+    /**
+     * Ordinal of the first record in the segment.
+     */
+    private final long baseOrdinal;
+
+    /**
+     * Path of the segment file.
+     */
+    private final Path path;
+
+    /**
+     * Every how many records a position is added to the index.
+     */
+    private final int indexInterval;
+
+    /**
+     * Positions of every {@code indexInterval}-th record.
+     */
+    private final List<Long> index = new ArrayList<>();
+
+    /**
+     * Channel to append to, {@code null} once the segment has been sealed.
+     */
+    private FileChannel channel;
+
+    /**
+     * Valid size of the segment in bytes.
+     */
+    private long size;
+
+    /**
+     * Amount of records in the segment.
+     */
+    private int count;
+
+    /**
+     * Mapping of the segment used for reads.
+     */
+    private MappedByteBuffer mapped;
+
+    private LogSegment(long baseOrdinal, Path path, int indexInterval) {
+        this.baseOrdinal = baseOrdinal;
+        this.path = path;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Create a new, empty segment open for appending.
+     */
+    static LogSegment create(Path path, long baseOrdinal, int indexInterval) throws IOException {
+        LogSegment segment = new LogSegment(baseOrdinal, path, indexInterval);
+        segment.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        return segment;
+    }
+
+    /**
+     * Open an existing segment.
+     * The valid records are scanned to rebuild the index. For the active segment every record is verified
+     * and a torn tail left behind by a crash is truncated.
+     */
+    static LogSegment open(Path path, long baseOrdinal, int indexInterval, boolean active) throws IOException {
+        LogSegment segment = new LogSegment(baseOrdinal, path, indexInterval);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            segment.recover(buffer, active);
+        }
+
+        if (active) {
+            segment.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (segment.channel.size() > segment.size) {
+                segment.channel.truncate(segment.size);
+                segment.channel.force(true);
+            }
+        }
+
+        return segment;
+    }
+
+    private void recover(ByteBuffer buffer, boolean verify) {
+        CRC32 crc = new CRC32();
+
+        int position = 0;
+        while (buffer.limit() - position >= HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + Integer.BYTES);
+            if (length <= 0 || length > MAX_PAYLOAD_SIZE || buffer.limit() - position - HEADER_SIZE < length) {
+                break;
+            }
+
+            if (verify) {
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(position + HEADER_SIZE).limit(position + HEADER_SIZE + length);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+            }
+
+            if (count % indexInterval == 0) {
+                index.add((long) position);
+            }
+            count++;
+            position += HEADER_SIZE + length;
+        }
+
+        size = position;
+    }
+
+    long getBaseOrdinal() {
+        return baseOrdinal;
+    }
+
+    long getEndOrdinal() {
+        return baseOrdinal + count;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Append a record payload to the segment.
+     *
+     * @param payload to append
+     */
+    void append(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        buffer.flip();
+
+        long position = size;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        if (count % indexInterval == 0) {
+            index.add(size);
+        }
+        count++;
+        size = position;
+    }
+
+    /**
+     * Force appended records to disk.
+     */
+    void force() throws IOException {
+        FileChannel current = channel;
+        if (current == null) {
+            return; // Sealed segments have been forced when sealing
+        }
+
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // Sealed in the meantime, which forces the segment as well
+        }
+    }
+
+    /**
+     * Seal the segment, no more records may be appended afterwards.
+     */
+    void seal() throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Read the records with the passed ordinals.
+     *
+     * @param from     first ordinal (inclusive)
+     * @param to       last ordinal (exclusive)
+     * @param consumer to pass the records to
+     */
+    void read(long from, long to, Consumer<LogRecord> consumer) throws IOException {
+        int first = (int) Math.max(0, from - baseOrdinal);
+        int last = (int) Math.min(count, to - baseOrdinal);
+        if (first >= last) {
+            return;
+        }
+
+        ByteBuffer buffer = map().duplicate();
+
+        // Jump to the closest indexed record and skip forward from there
+        int ordinal = (first / indexInterval) * indexInterval;
+        int position = index.get(first / indexInterval).intValue();
+        while (ordinal < first) {
+            position += HEADER_SIZE + buffer.getInt(position);
+            ordinal++;
+        }
+
+        while (ordinal < last) {
+            int length = buffer.getInt(position);
+            buffer.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+            consumer.accept(LogRecord.decode(buffer));
+            buffer.limit(buffer.capacity());
+
+            position += HEADER_SIZE + length;
+            ordinal++;
+        }
+    }
+
+    /**
+     * Get a read-only mapping covering all valid records, remapping when the segment grew.
+     */
+    private MappedByteBuffer map() throws IOException {
+        if (mapped == null || mapped.capacity() < size) {
+            try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapped = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        return mapped;
+    }
+
+    /**
+     * Close the segment without sealing it.
+     */
+    void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        mapped = null;
+    }
+
+}
@@ -0,0 +1,21 @@
+package edu.hm.chat.persistence.stream;
+
+import java.io.IOException;
+
+/**
+ * Receiver of rows streamed from the database.
+ *
+ * @param <T> type of the mapped rows
+ */
+@FunctionalInterface
+public interface RowSink<T> {
+
+    /**
+     * Receive the next row.
+     *
+     * @param row the mapped row
+     * @throws IOException in case the row could not be passed on
+     */
+    void accept(T row) throws IOException;
+
+}
@@ -0,0 +1,244 @@
+package edu.hm.chat.persistence.stream;
+
+import com.zaxxer.hikari.HikariDataSource;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.config.StreamingReadConfig;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.service.archive.ArchivedMessage;
+import edu.hm.chat.service.archive.MessageArchiveService;
+import edu.hm.chat.service.model.ChatSummary;
+import edu.hm.chat.service.model.StompMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository streaming chat histories and chat listings row by row, without materializing entities.
+ * <p>
+ * Uses its own small connection pool, so a burst of history reads cannot starve the pool of the write path.
+ * Rows are read in pages using keyset queries, and a connection is only held while a page is fetched,
+ * never while the rows are passed on. Thus slow readers do not keep other readers from the pool.
+ * Chat histories continue with the archived messages, read from the segment files without a connection.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "edu.hm.chat.streaming-read", name = "enabled", havingValue = "true")
+public class StreamingReadRepository {
+
+    /**
+     * Query looking up the ID of an active user by email.
+     */
+    private static final String FIND_USER_ID = "select id from user_account where email = ? and deleted = false";
+
+    /**
+     * Query checking whether a user is a member of an active chat.
+     */
+    private static final String IS_MEMBER = "select count(*) from chat c join chat_members m on m.chat_id = c.id " +
+            "where c.id = ? and c.deleted = false and m.members_id = ?";
+
+    /**
+     * Query selecting a page of the messages of a chat preceding a position, newest first.
+     */
+    private static final String SELECT_MESSAGES = "select id, author_id, timestamp, chat_id, content, content_compressed, type from message " +
+            "where chat_id = ? and timestamp <= ? and (timestamp, id) < (?, ?) order by timestamp desc, id desc limit ?";
+
+    /**
+     * Query selecting a page of the active chats of a user following a chat ID, including all their members.
+     */
+    private static final String SELECT_CHATS = "select c.id, c.name, c.owner_id, array_agg(a.members_id) as member_ids " +
+            "from chat c join chat_members m on m.chat_id = c.id and m.members_id = ? " +
+            "join chat_members a on a.chat_id = c.id " +
+            "where c.deleted = false and c.id > ? group by c.id, c.name, c.owner_id order by c.id limit ?";
+
+    /**
+     * Dedicated pool of read-only connections.
+     */
+    private final HikariDataSource dataSource;
+
+    /**
+     * Template to run the queries with.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Amount of rows fetched per page.
+     */
+    private final int pageSize;
+
+    /**
+     * Service reading the archived messages, which exists since the messages are kept in the database.
+     */
+    private final MessageArchiveService messageArchiveService;
+
+    public StreamingReadRepository(
+            DataSourceProperties properties,
+            StreamingReadConfig config,
+            MessageStoreConfig messageStoreConfig,
+            MessageArchiveService messageArchiveService
+    ) {
+        messageStoreConfig.requireDatabase("Streaming reads (edu.hm.chat.streaming-read.enabled)");
+
+        this.dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        this.dataSource.setPoolName("streaming-read");
+        this.dataSource.setMaximumPoolSize(config.getPoolSize());
+        this.dataSource.setMinimumIdle(1);
+        this.dataSource.setConnectionTimeout(config.getConnectionTimeout().toMillis());
+        this.dataSource.setReadOnly(true);
+
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.pageSize = config.getPageSize();
+        this.messageArchiveService = messageArchiveService;
+    }
+
+    /**
+     * Find the ID of the active user with the passed email.
+     *
+     * @param email of the user
+     * @return ID of the user or empty if there is no such user
+     */
+    public Optional<Long> findUserId(String email) {
+        return jdbcTemplate.query(FIND_USER_ID, (rs) -> rs.next() ? Optional.of(rs.getLong(1)) : Optional.<Long>empty(), email);
+    }
+
+    /**
+     * Check whether the passed user is a member of the passed chat.
+     *
+     * @param chatId of the chat
+     * @param userId of the user
+     * @return whether the user is a member of the chat
+     */
+    public boolean isMember(long chatId, long userId) {
+        Long count = jdbcTemplate.queryForObject(IS_MEMBER, Long.class, chatId, userId);
+        return count != null && count > 0;
+    }
+
+    /**
+     * Stream the messages of the passed chat, newest first, continuing with its archived messages
+     * once the messages stored in the database are exhausted.
+     *
+     * @param chatId of the chat
+     * @param before only messages older than this timestamp are streamed
+     * @param limit  maximum amount of messages to stream
+     * @param sink   to pass the messages to
+     * @throws IOException in case the sink failed
+     */
+    public void streamMessages(long chatId, long before, int limit, RowSink<StompMessage> sink) throws IOException {
+        long timestamp = before;
+        long id = Long.MIN_VALUE; // Excludes all messages at the timestamp itself
+        int remaining = limit;
+        while (remaining > 0) {
+            int size = Math.min(remaining, pageSize);
+            List<StompMessage> page = jdbcTemplate.query(SELECT_MESSAGES, (rs, rowNum) -> {
+                StompMessage message = new StompMessage(
+                        (int) rs.getLong(2),
+                        rs.getLong(3),
+                        (int) rs.getLong(4),
+                        null,
+                        rs.getString(5) != null ? rs.getString(5) : MessageContentCodec.decode(rs.getBytes(6)),
+                        MessageType.valueOf(rs.getString(7))
+                );
+                message.setId(rs.getLong(1));
+                return message;
+            }, chatId, timestamp, timestamp, id, size);
+
+            for (StompMessage message : page) {
+                sink.accept(message);
+            }
+            remaining -= page.size();
+            if (page.size() < size) {
+                break;
+            }
+
+            StompMessage last = page.get(page.size() - 1);
+            timestamp = last.getTimestamp();
+            id = last.getId();
+        }
+
+        streamArchivedMessages(chatId, before, remaining, sink);
+    }
+
+    /**
+     * Stream the archived messages of the passed chat older than the passed timestamp, newest first.
+     * Archived messages are all older than the ones stored in the database.
+     */
+    private void streamArchivedMessages(long chatId, long before, int limit, RowSink<StompMessage> sink) throws IOException {
+        long offset = limit > 0 ? messageArchiveService.countSince(chatId, before) : 0;
+        int remaining = limit;
+        while (remaining > 0) {
+            int size = Math.min(remaining, pageSize);
+            List<ArchivedMessage> page = messageArchiveService.read(chatId, offset, size);
+
+            // Pages are read in ascending order
+            for (int i = page.size() - 1; i >= 0; i--) {
+                ArchivedMessage archived = page.get(i);
+                StompMessage message = new StompMessage(
+                        (int) archived.getAuthorId(),
+                        archived.getTimestamp(),
+                        (int) chatId,
+                        null,
+                        archived.getContent(),
+                        archived.getType()
+                );
+                message.setId(archived.getId());
+                sink.accept(message);
+            }
+            if (page.size() < size) {
+                return;
+            }
+
+            offset += page.size();
+            remaining -= page.size();
+        }
+    }
+
+    /**
+     * Stream the active chats the passed user is a member of.
+     *
+     * @param userId of the member
+     * @param sink   to pass the chats to
+     * @throws IOException in case the sink failed
+     */
+    public void streamChats(long userId, RowSink<ChatSummary> sink) throws IOException {
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<ChatSummary> page = jdbcTemplate.query(SELECT_CHATS, (rs, rowNum) -> new ChatSummary(
+                    rs.getLong(1),
+                    rs.getString(2),
+                    rs.getLong(3),
+                    toList(rs.getArray(4))
+            ), userId, after, pageSize);
+
+            for (ChatSummary chat : page) {
+                sink.accept(chat);
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+
+            after = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private static List<Long> toList(Array array) throws SQLException {
+        try {
+            return Arrays.asList((Long[]) array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        dataSource.close();
+    }
+
+}
@@ -0,0 +1,101 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.persistence.model.UserDetails;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Service evicting entries from the second-level cache on write paths.
+ * Evictions requested within a transaction are deferred until it has been committed,
+ * so concurrent readers cannot put the stale state back in between.
+ */
+@Service
+public class CacheEvictionService {
+
+    /**
+     * Role of the cached members collection of chats.
+     */
+    private static final String CHAT_MEMBERS_ROLE = Chat.class.getName() + ".members";
+
+    /**
+     * Role of the cached roles collection of users.
+     */
+    private static final String USER_ROLES_ROLE = User.class.getName() + ".roles";
+
+    /**
+     * The second-level cache.
+     */
+    private final Cache cache;
+
+    public CacheEvictionService(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    /**
+     * Evict a user including its roles and cached query results referring to users.
+     *
+     * @param userId of the user to evict
+     */
+    public void evictUser(Long userId) {
+        afterCommit(() -> {
+            cache.evictEntityData(User.class, userId);
+            cache.evictCollectionData(USER_ROLES_ROLE, userId);
+            cache.evictDefaultQueryRegion();
+        });
+    }
+
+    /**
+     * Evict a chat including its members.
+     *
+     * @param chatId of the chat to evict
+     */
+    public void evictChat(Long chatId) {
+        afterCommit(() -> {
+            cache.evictEntityData(Chat.class, chatId);
+            cache.evictCollectionData(CHAT_MEMBERS_ROLE, chatId);
+            cache.evictDefaultQueryRegion();
+        });
+    }
+
+    /**
+     * Evict all chats including their members, used after bulk updates.
+     */
+    public void evictChats() {
+        afterCommit(() -> {
+            cache.evictEntityData(Chat.class);
+            cache.evictCollectionData(CHAT_MEMBERS_ROLE);
+            cache.evictDefaultQueryRegion();
+        });
+    }
+
+    /**
+     * Evict the details of a user.
+     *
+     * @param userId of the user to evict the details of
+     */
+    public void evictUserDetails(Long userId) {
+        afterCommit(() -> cache.evictEntityData(UserDetails.class, userId));
+    }
+
+    private static void afterCommit(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eviction.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+        });
+    }
+
+}
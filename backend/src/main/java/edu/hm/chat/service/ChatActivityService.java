@@ -0,0 +1,249 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.dao.ChatActivityRepository;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.ChatActivity;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.model.RecentChat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Service maintaining the last activity of chats and the per-user index of chats ordered by recency.
+ * <p>
+ * Activity is collected in memory and written periodically, so a busy chat causes a single write
+ * per flush interval instead of one per message. Listings may thus lag behind by up to one interval.
+ * Changes of the chats themselves, like creating them or members leaving, are written right away.
+ */
+@Service
+public class ChatActivityService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatActivityService.class);
+
+    /**
+     * Repository dealing with chat activity.
+     */
+    private final ChatActivityRepository chatActivityRepository;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Template used to write pending activity in a transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Activity not written yet, by chat ID.
+     */
+    private final Map<Long, ChatActivity> pending = new ConcurrentHashMap<>();
+
+    public ChatActivityService(
+            ChatActivityRepository chatActivityRepository,
+            ChatRepository chatRepository,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.chatActivityRepository = chatActivityRepository;
+        this.chatRepository = chatRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Record the passed message as the newest activity of its chat.
+     *
+     * @param message that has been stored
+     */
+    public void recordMessage(Message message) {
+        ChatActivity activity = new ChatActivity(message.getChat().getId(), message.getTimestamp());
+        activity.setLastMessageId(message.getId());
+        activity.setLastAuthorId(message.getAuthor().getId());
+        activity.setLastMessageType(message.getType());
+        if (message.getType() == MessageType.TEXT && message.getContent() != null) {
+            activity.setPreview(preview(message.getContent()));
+        }
+
+        record(activity);
+    }
+
+    /**
+     * Record the creation of the passed chat, so it is listed right away before any message has been sent.
+     *
+     * @param chat that has been created
+     */
+    public void recordCreation(Chat chat) {
+        ChatActivity activity = new ChatActivity(chat.getId(), System.currentTimeMillis());
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!chatActivityRepository.existsById(chat.getId())) {
+                chatActivityRepository.save(activity);
+            }
+            chatActivityRepository.upsertRecency(chat.getId(), activity.getLastActivity());
+        });
+    }
+
+    /**
+     * Remove the passed chat from the recent chats of a member who left it.
+     *
+     * @param chatId of the chat
+     * @param userId of the former member
+     */
+    public void removeMember(long chatId, long userId) {
+        chatActivityRepository.deleteRecency(chatId, userId);
+    }
+
+    /**
+     * Add the activity of chats created before it has been tracked, once the application is ready.
+     * Chats without messages are listed after all others.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        Integer entries = transactionTemplate.execute(status -> {
+            int backfilled = chatActivityRepository.backfill();
+            fillCompressedPreviews();
+            return backfilled;
+        });
+        if (entries != null && entries > 0) {
+            LOGGER.info("Added {} entries of chats created before their activity has been tracked to the recent chats", entries);
+        }
+    }
+
+    /**
+     * Fill in the previews of chats whose activity has been written in SQL, but whose last message is a compressed
+     * text, which cannot be cut in SQL. Has to be called within a transaction.
+     */
+    public void fillCompressedPreviews() {
+        for (Object[] row : chatActivityRepository.findCompressedPreviews()) {
+            String content = MessageContentCodec.decode((byte[]) row[2]);
+            chatActivityRepository.updatePreview(((Number) row[0]).longValue(), ((Number) row[1]).longValue(), preview(content));
+        }
+    }
+
+    /**
+     * Cut the passed message content to the length of a preview.
+     */
+    private static String preview(String content) {
+        return content.length() > ChatActivity.PREVIEW_LENGTH ? content.substring(0, ChatActivity.PREVIEW_LENGTH) : content;
+    }
+
+    private void record(ChatActivity activity) {
+        pending.merge(activity.getChatId(), activity, (current, next) -> isNewer(next, current) ? next : current);
+    }
+
+    /**
+     * Get the chats of the passed user, most recently active first.
+     *
+     * @param user  to get chats of
+     * @param limit maximum amount of chats
+     * @return the recent chats
+     */
+    public List<RecentChat> getRecent(User user, int limit) {
+        List<Long> chatIds = chatActivityRepository.findRecentChatIds(user.getId(), limit);
+
+        Map<Long, Chat> chats = StreamSupport.stream(chatRepository.findAllById(chatIds).spliterator(), false)
+                .collect(Collectors.toMap(Chat::getId, Function.identity()));
+        Map<Long, ChatActivity> activities = StreamSupport.stream(chatActivityRepository.findAllById(chatIds).spliterator(), false)
+                .collect(Collectors.toMap(ChatActivity::getChatId, Function.identity()));
+
+        List<RecentChat> result = new ArrayList<>(chatIds.size());
+        for (Long chatId : chatIds) {
+            Chat chat = chats.get(chatId);
+            if (chat != null) {
+                result.add(new RecentChat(chat, activities.get(chatId)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove the activity of the passed chat.
+     *
+     * @param chatId of the chat
+     */
+    public void deleteChat(long chatId) {
+        pending.remove(chatId);
+        chatActivityRepository.deleteRecencyByChat(chatId);
+        if (chatActivityRepository.existsById(chatId)) {
+            chatActivityRepository.deleteById(chatId);
+        }
+    }
+
+    /**
+     * Remove the recency index of the passed user.
+     *
+     * @param userId of the user
+     */
+    public void deleteUser(long userId) {
+        chatActivityRepository.deleteRecencyByUser(userId);
+    }
+
+    /**
+     * Write all pending activity.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.chat-activity.flush-interval:PT1S}")
+    @PreDestroy
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<ChatActivity> batch = new ArrayList<>();
+        for (Long chatId : pending.keySet()) {
+            ChatActivity activity = pending.remove(chatId);
+            if (activity != null) {
+                batch.add(activity);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (ChatActivity activity : batch) {
+                if (!chatRepository.existsById(activity.getChatId())) {
+                    continue; // Chat has been deleted in the meantime
+                }
+
+                ChatActivity current = chatActivityRepository.findById(activity.getChatId()).orElse(null);
+                if (current == null || isNewer(activity, current)) {
+                    chatActivityRepository.save(activity);
+                }
+
+                chatActivityRepository.upsertRecency(activity.getChatId(), activity.getLastActivity());
+            }
+        });
+    }
+
+    private static boolean isNewer(ChatActivity activity, ChatActivity than) {
+        int result = activity.getLastActivity().compareTo(than.getLastActivity());
+        if (result != 0) {
+            return result > 0;
+        }
+        if (activity.getLastMessageId() == null || than.getLastMessageId() == null) {
+            return activity.getLastMessageId() != null;
+        }
+
+        return activity.getLastMessageId() > than.getLastMessageId();
+    }
+
+}
@@ -0,0 +1,87 @@
+package edu.hm.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Service applying updates of chats, which are guarded by optimistic locking.
+ * Updates conflicting with a concurrent one are retried a bounded amount of times with fresh state.
+ */
+@Service
+public class ChatService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatService.class);
+
+    /**
+     * Maximum amount of attempts to apply an update.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * Maximum backoff in milliseconds before the first retry, doubled with every further retry.
+     */
+    private static final int BACKOFF_MILLIS = 10;
+
+    /**
+     * Entity manager bound to the current request.
+     */
+    private final EntityManager entityManager;
+
+    /**
+     * Template running every attempt in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    public ChatService(EntityManager entityManager, PlatformTransactionManager transactionManager) {
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Apply the passed update in a transaction, retrying it on optimistic locking conflicts.
+     * The update has to load the entities it modifies itself, so a retry sees their current state.
+     *
+     * @param update to apply
+     * @param <T>    type of the result
+     * @return result of the update
+     * @throws ObjectOptimisticLockingFailureException in case the update still conflicted after the last attempt
+     */
+    public <T> T update(Supplier<T> update) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> update.get());
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+
+                LOGGER.debug("Retrying chat update after conflict (attempt {})", attempt);
+
+                // The request-scoped persistence context still holds the stale entities
+                entityManager.clear();
+                backoff(attempt);
+            }
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(BACKOFF_MILLIS << (attempt - 1)) + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying chat update", e);
+        }
+    }
+
+}
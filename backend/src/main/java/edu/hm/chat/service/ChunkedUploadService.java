@@ -0,0 +1,447 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.ChunkedUploadConfig;
+import edu.hm.chat.persistence.dao.UploadSessionRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.UploadSession;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.model.StoredBlob;
+import edu.hm.chat.service.model.UploadStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service assembling uploads sent in chunks, which may arrive in parallel and in any order.
+ * <p>
+ * Chunks are written at their position into a sparse file preallocated to the final size. The SHA-256 hash of
+ * the content is computed while the chunks arrive: the chunk continuing the hashed prefix is hashed while it is
+ * written, chunks received ahead of it are hashed from the page cache as soon as the gap has been closed.
+ * Thus completing an upload does not have to read the file again, unless chunks have been received by another
+ * node or before a restart, in which case the remainder is hashed from the file.
+ */
+@Service
+public class ChunkedUploadService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    /**
+     * Configuration for chunked uploads.
+     */
+    private final ChunkedUploadConfig config;
+
+    /**
+     * Repository dealing with the uploads.
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+
+    /**
+     * Service storing the assembled files.
+     */
+    private final ResourceStorageService resourceStorageService;
+
+    /**
+     * Service adding the completed uploads to the usage of their owners.
+     */
+    private final ResourceUsageService resourceUsageService;
+
+    /**
+     * Template used to change the state of uploads.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Hashes of the uploads received on this node so far, per upload ID.
+     */
+    private final Map<String, PartialHash> hashes = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(
+            ChunkedUploadConfig config,
+            UploadSessionRepository uploadSessionRepository,
+            ResourceStorageService resourceStorageService,
+            ResourceUsageService resourceUsageService,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.resourceStorageService = resourceStorageService;
+        this.resourceUsageService = resourceUsageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Start an upload sent in chunks.
+     *
+     * @param owner       uploading the file
+     * @param name        original name of the file
+     * @param contentType declared by the client, may be {@code null}
+     * @param size        of the file in bytes
+     * @return the state of the new upload
+     */
+    public UploadStatus initiate(User owner, String name, String contentType, long size) throws IOException {
+        if (size < 0 || size > config.getMaxFileSize()) {
+            throw new IllegalArgumentException("The size has to be between 0 and " + config.getMaxFileSize() + " bytes");
+        }
+        if (uploadSessionRepository.countByOwnerId(owner.getId()) >= config.getMaxSessionsPerUser()) {
+            throw new IllegalStateException("Too many incomplete uploads, complete or abort one first");
+        }
+
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), owner.getId(), name, contentType, size, config.getChunkSize());
+        session.setExpiresAt(nextExpiry());
+
+        resourceStorageService.createChunkedFile(session.getId(), size);
+        try {
+            uploadSessionRepository.save(session);
+        } catch (RuntimeException e) {
+            resourceStorageService.deleteChunkedFile(session.getId());
+            throw e;
+        }
+        hashes.put(session.getId(), new PartialHash());
+
+        return toStatus(session);
+    }
+
+    /**
+     * Find an upload.
+     *
+     * @param uploadId of the upload
+     * @return the upload or nothing if it does not exist (anymore)
+     */
+    public Optional<UploadSession> find(String uploadId) {
+        return uploadSessionRepository.findById(uploadId);
+    }
+
+    /**
+     * Get the state of an upload to resume it.
+     *
+     * @param session of the upload
+     * @return its state
+     */
+    public UploadStatus getStatus(UploadSession session) {
+        return toStatus(session);
+    }
+
+    /**
+     * Write a chunk of an upload.
+     *
+     * @param session of the upload
+     * @param index   of the chunk
+     * @param in      content of the chunk, exactly as long as the chunk
+     */
+    public void writeChunk(UploadSession session, int index, InputStream in) throws IOException {
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw new IllegalArgumentException("The chunk index has to be between 0 and " + (session.getChunkCount() - 1));
+        }
+        if (!Integer.valueOf(1).equals(transactionTemplate.execute(status -> uploadSessionRepository.claimChunk(session.getId(), index)))) {
+            throw new IllegalStateException("Chunk " + index + " has been received already or is being received");
+        }
+
+        long length = session.getChunkLength(index);
+        PartialHash hash = hashes.get(session.getId());
+        MessageDigest streamed = hash != null ? hash.claimStreamed(index) : null;
+
+        boolean received = false;
+        try {
+            long read = resourceStorageService.writeChunk(session.getId(), session.getChunkOffset(index), length, in, streamed);
+            if (read != length) {
+                throw new IllegalArgumentException("Chunk " + index + " has to be " + length + " bytes long");
+            }
+
+            transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.markReceived(session.getId(), index, nextExpiry()));
+            received = true;
+        } finally {
+            if (!received) {
+                transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.releaseChunk(session.getId(), index));
+            }
+            if (streamed != null) {
+                hash.finishStreamed(index, streamed, received);
+            } else if (hash != null && received) {
+                hash.addPending(index);
+            }
+        }
+
+        if (hash != null) {
+            catchUp(session, hash);
+        }
+    }
+
+    /**
+     * Hash the chunks received ahead of the hashed prefix as long as they continue it.
+     * They have just been written, so they are usually read from the page cache.
+     */
+    private void catchUp(UploadSession session, PartialHash hash) {
+        int index;
+        while ((index = hash.claimPending()) != -1) {
+            boolean hashed = false;
+            try {
+                resourceStorageService.digestChunk(session.getId(), session.getChunkOffset(index), session.getChunkLength(index), hash.digest);
+                hashed = true;
+            } catch (IOException e) {
+                LOGGER.warn("Could not hash chunk {} of upload {}, hashing the upload on completion", index, session.getId(), e);
+                hashes.remove(session.getId(), hash);
+            } finally {
+                hash.finishPending(index, hashed);
+            }
+        }
+    }
+
+    /**
+     * Complete an upload whose chunks have all been received, storing it as resource.
+     *
+     * @param session      of the upload
+     * @param owner        of the upload
+     * @param enforceQuota whether the resource is only stored if the owner stays within the quota
+     * @return the info of the new resource or nothing if the quota would be exceeded
+     */
+    public Optional<ResourceInfo> complete(UploadSession session, User owner, boolean enforceQuota) throws IOException {
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            if (!session.isReceived(i)) {
+                throw new IllegalStateException("Chunk " + i + " has not been received yet");
+            }
+        }
+        if (!Integer.valueOf(1).equals(transactionTemplate.execute(status -> uploadSessionRepository.startCompletion(session.getId())))) {
+            throw new IllegalStateException("The upload is being completed already");
+        }
+
+        StoredBlob blob;
+        try {
+            blob = resourceStorageService.storeChunkedFile(session.getId(), hash(session), session.getSize());
+        } catch (IOException | RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> uploadSessionRepository.abortCompletion(session.getId()));
+            throw e;
+        }
+
+        hashes.remove(session.getId());
+        uploadSessionRepository.deleteById(session.getId());
+
+        ResourceInfo info = new ResourceInfo(UUID.randomUUID().toString(), owner);
+        info.setBlobHash(blob.getHash());
+        info.setContentEncoding(blob.getContentEncoding());
+        info.setContentType(ContentSniffer.resolveContentType(session.getDeclaredContentType(), blob.getDetectedContentType()));
+        info.setOriginalName(session.getOriginalName());
+        info.setSize(blob.getSize());
+        info.setPublic(false);
+
+        if (!resourceUsageService.add(info, enforceQuota)) {
+            resourceStorageService.release(blob.getHash());
+            return Optional.empty();
+        }
+
+        return Optional.of(info);
+    }
+
+    /**
+     * Get the hash of a completely received upload, hashing the chunks not hashed while receiving them from the file.
+     */
+    private String hash(UploadSession session) throws IOException {
+        PartialHash hash = hashes.get(session.getId());
+        Optional<Map.Entry<MessageDigest, Integer>> prefix = hash != null ? hash.take() : Optional.empty();
+
+        MessageDigest digest = prefix.map(Map.Entry::getKey).orElseGet(ResourceStorageService::newDigest);
+        int next = prefix.map(Map.Entry::getValue).orElse(0);
+        if (next < session.getChunkCount()) {
+            // Chunks received by another node, before a restart or while hashing a previous chunk
+            LOGGER.debug("Hashing chunks {} to {} of upload {} from the file", next, session.getChunkCount() - 1, session.getId());
+            long offset = session.getChunkOffset(next);
+            resourceStorageService.digestChunk(session.getId(), offset, session.getSize() - offset, digest);
+        }
+
+        return ResourceStorageService.toHex(digest.digest());
+    }
+
+    /**
+     * Abort an upload, discarding the received chunks.
+     *
+     * @param session of the upload
+     */
+    public void abort(UploadSession session) throws IOException {
+        if (!Integer.valueOf(1).equals(transactionTemplate.execute(status -> uploadSessionRepository.deleteUnlessCompleting(session.getId())))) {
+            throw new IllegalStateException("The upload is being completed");
+        }
+
+        hashes.remove(session.getId());
+        resourceStorageService.deleteChunkedFile(session.getId());
+    }
+
+    /**
+     * Discard uploads which did not receive a chunk for longer than the session timeout.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.res.chunked.cleanup-interval:PT10M}")
+    public void discardExpired() {
+        long now = System.currentTimeMillis();
+
+        long discarded = 0;
+        List<String> batch;
+        do {
+            batch = uploadSessionRepository.findExpiredIds(now, config.getCleanupBatchSize());
+            for (String uploadId : batch) {
+                Integer deleted = transactionTemplate.execute(status -> uploadSessionRepository.deleteExpired(uploadId, now));
+                if (!Integer.valueOf(1).equals(deleted)) {
+                    continue; // Received a chunk in the meantime
+                }
+
+                hashes.remove(uploadId);
+                try {
+                    resourceStorageService.deleteChunkedFile(uploadId);
+                    discarded++;
+                } catch (IOException e) {
+                    LOGGER.error("Could not delete the file of expired upload {}", uploadId, e);
+                }
+            }
+        } while (batch.size() >= config.getCleanupBatchSize());
+
+        if (discarded > 0) {
+            LOGGER.info("Discarded {} expired uploads", discarded);
+        }
+    }
+
+    private long nextExpiry() {
+        return System.currentTimeMillis() + config.getSessionTimeout().toMillis();
+    }
+
+    private static UploadStatus toStatus(UploadSession session) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < session.getChunkCount(); i++) {
+            if (!session.isReceived(i)) {
+                missing.add(i);
+            }
+        }
+
+        return new UploadStatus(session.getId(), session.getSize(), session.getChunkSize(), session.getChunkCount(),
+                missing, session.getExpiresAt());
+    }
+
+    /**
+     * Hash of the prefix of an upload made up by the chunks received on this node without a gap.
+     * Only one chunk is hashed at a time, as hashing chunks concurrently would mix up the digest.
+     */
+    private static final class PartialHash {
+
+        /**
+         * Digest of the chunks before {@link #next}.
+         */
+        private MessageDigest digest = ResourceStorageService.newDigest();
+
+        /**
+         * Index of the next chunk to hash.
+         */
+        private int next;
+
+        /**
+         * Whether a chunk is being hashed.
+         */
+        private boolean busy;
+
+        /**
+         * Whether hashing a chunk from the file failed, leaving the digest unusable.
+         */
+        private boolean broken;
+
+        /**
+         * Chunks received ahead of {@link #next} which have not been hashed yet.
+         */
+        private final BitSet pending = new BitSet();
+
+        /**
+         * Claim a copy of the digest to hash the passed chunk while writing it, possible if it continues the hashed prefix.
+         *
+         * @return the copy or {@code null} if the chunk has to be hashed later
+         */
+        synchronized MessageDigest claimStreamed(int index) {
+            if (busy || broken || next != index) {
+                return null;
+            }
+
+            busy = true;
+            try {
+                return (MessageDigest) digest.clone(); // Original kept in case the chunk fails
+            } catch (CloneNotSupportedException e) {
+                busy = false;
+                return null;
+            }
+        }
+
+        /**
+         * Finish a chunk claimed by {@link #claimStreamed}.
+         *
+         * @param streamed digest updated with the chunk
+         * @param success  whether the chunk has been received completely
+         */
+        synchronized void finishStreamed(int index, MessageDigest streamed, boolean success) {
+            busy = false;
+            if (success) {
+                digest = streamed;
+                next = index + 1;
+            }
+        }
+
+        /**
+         * Remember a chunk received without hashing it.
+         */
+        synchronized void addPending(int index) {
+            pending.set(index);
+        }
+
+        /**
+         * Claim the chunk continuing the hashed prefix if it has been received already, to hash it from the file.
+         *
+         * @return its index or -1 if there is none
+         */
+        synchronized int claimPending() {
+            if (busy || broken || !pending.get(next)) {
+                return -1;
+            }
+
+            busy = true;
+            return next;
+        }
+
+        /**
+         * Finish a chunk claimed by {@link #claimPending}.
+         *
+         * @param success whether the chunk has been hashed completely
+         */
+        synchronized void finishPending(int index, boolean success) {
+            busy = false;
+            if (success) {
+                pending.clear(index);
+                next = index + 1;
+            } else {
+                broken = true;
+            }
+        }
+
+        /**
+         * Take the digest of the hashed prefix to complete the upload.
+         *
+         * @return the digest and the index of the next chunk to hash or nothing if unusable
+         */
+        synchronized Optional<Map.Entry<MessageDigest, Integer>> take() {
+            if (busy || broken) {
+                return Optional.empty();
+            }
+
+            broken = true; // Completed with this digest, must not be updated anymore
+            return Optional.of(Map.entry(digest, next));
+        }
+
+    }
+
+}
@@ -0,0 +1,123 @@
+package edu.hm.chat.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Detects the content type of common binary formats from their leading bytes.
+ * <p>
+ * Many formats share a container, like office documents and ZIP or HEIC images and MP4, so the detected type
+ * is mostly less specific than a declared one. It is thus only used to fill in a missing declared type
+ * and to reject content falsely claiming to be an image.
+ */
+public final class ContentSniffer {
+
+    /**
+     * Amount of leading bytes needed to detect all known formats.
+     */
+    static final int HEADER_SIZE = 12;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] JPEG = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+    private static final byte[] GIF87A = ascii("GIF87a");
+    private static final byte[] GIF89A = ascii("GIF89a");
+    private static final byte[] RIFF = ascii("RIFF");
+    private static final byte[] WEBP = ascii("WEBP");
+    private static final byte[] PDF = ascii("%PDF-");
+    private static final byte[] ZIP = {'P', 'K', 3, 4};
+    private static final byte[] GZIP = {0x1F, (byte) 0x8B};
+    private static final byte[] FTYP = ascii("ftyp");
+    private static final byte[] OGG = ascii("OggS");
+    private static final byte[] ID3 = ascii("ID3");
+
+    private static final String OCTET_STREAM = "application/octet-stream";
+
+    /**
+     * Type detected for the ISO base media file format, which is the container of MP4 videos.
+     */
+    private static final String ISO_MEDIA = "video/mp4";
+
+    /**
+     * Image types using the ISO base media file format as container.
+     */
+    private static final Set<String> ISO_MEDIA_IMAGES = Set.of(
+            "image/heic", "image/heic-sequence", "image/heif", "image/heif-sequence", "image/avif", "image/avif-sequence"
+    );
+
+    private ContentSniffer() {
+        // Utility class
+    }
+
+    /**
+     * Detect the content type of the passed leading bytes.
+     *
+     * @param header leading bytes of the content
+     * @param length amount of valid bytes in the header
+     * @return the detected content type or {@code null} if unknown
+     */
+    static String detect(byte[] header, int length) {
+        if (startsWith(header, length, 0, PNG)) {
+            return "image/png";
+        } else if (startsWith(header, length, 0, JPEG)) {
+            return "image/jpeg";
+        } else if (startsWith(header, length, 0, GIF87A) || startsWith(header, length, 0, GIF89A)) {
+            return "image/gif";
+        } else if (startsWith(header, length, 0, RIFF) && startsWith(header, length, 8, WEBP)) {
+            return "image/webp";
+        } else if (startsWith(header, length, 0, PDF)) {
+            return "application/pdf";
+        } else if (startsWith(header, length, 0, ZIP)) {
+            return "application/zip";
+        } else if (startsWith(header, length, 0, GZIP)) {
+            return "application/gzip";
+        } else if (startsWith(header, length, 4, FTYP)) {
+            return "video/mp4";
+        } else if (startsWith(header, length, 0, OGG)) {
+            return "application/ogg";
+        } else if (startsWith(header, length, 0, ID3)) {
+            return "audio/mpeg";
+        }
+
+        return null;
+    }
+
+    /**
+     * Resolve the content type to store for an upload.
+     * The declared type is kept unless it is missing or claims an image the content could not be detected as.
+     *
+     * @param declared content type declared by the client, may be {@code null}
+     * @param detected content type detected from the leading bytes, may be {@code null}
+     * @return the content type to store
+     */
+    public static String resolveContentType(String declared, String detected) {
+        String declaredType = declared == null ? "" : declared.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+        if (declaredType.isEmpty() || declaredType.equals(OCTET_STREAM)) {
+            return detected != null ? detected : OCTET_STREAM;
+        }
+        if (!declaredType.startsWith("image/")) {
+            return declared;
+        }
+
+        if (detected != null && detected.startsWith("image/")) {
+            return detected;
+        }
+        if (ISO_MEDIA.equals(detected) && ISO_MEDIA_IMAGES.contains(declaredType)) {
+            return declared;
+        }
+
+        // Content claiming an image type which could not be detected as such is not trusted
+        return detected != null ? detected : OCTET_STREAM;
+    }
+
+    private static boolean startsWith(byte[] header, int length, int offset, byte[] magic) {
+        return length >= offset + magic.length
+                && Arrays.equals(header, offset, offset + magic.length, magic, 0, magic.length);
+    }
+
+    private static byte[] ascii(String magic) {
+        return magic.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
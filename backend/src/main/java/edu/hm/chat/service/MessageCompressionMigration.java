@@ -0,0 +1,130 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.MessageCompressionConfig;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Migration rewriting messages stored before content compression has been introduced.
+ * Runs in small batches in the background, until no large uncompressed message is left.
+ */
+@Service
+public class MessageCompressionMigration {
+
+    /**
+     * Logger for the migration.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageCompressionMigration.class);
+
+    /**
+     * Configuration of the message compression.
+     */
+    private final MessageCompressionConfig config;
+
+    /**
+     * Repository dealing with messages.
+     */
+    private final MessageRepository messageRepository;
+
+    /**
+     * Template used to inspect the message table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Template used to rewrite every batch in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * ID of the last message checked by the migration.
+     */
+    private volatile long lastId;
+
+    /**
+     * Whether all messages have been migrated.
+     */
+    private volatile boolean finished;
+
+    public MessageCompressionMigration(
+            MessageCompressionConfig config,
+            MessageRepository messageRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Make sure the content column accepts compressed messages. Schema updates do not drop the not-null
+     * constraint of databases created before, this is done once by {@code db/message-content-nullable.sql}.
+     */
+    @PostConstruct
+    public void verifySchema() {
+        List<String> nullable = jdbcTemplate.queryForList("select is_nullable from information_schema.columns " +
+                "where table_schema = current_schema() and table_name = 'message' and column_name = 'content'", String.class);
+        if (nullable.contains("NO")) {
+            throw new IllegalStateException("The content of messages must be nullable to compress them, " +
+                    "apply the migration db/message-content-nullable.sql to the database first");
+        }
+    }
+
+    /**
+     * Compress the next batches of large uncompressed messages.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.message-compression.interval:PT1M}")
+    public void migrate() {
+        if (!config.isMigrationEnabled() || finished) {
+            return;
+        }
+
+        long migrated = 0;
+        List<Long> ids;
+        do {
+            long after = lastId;
+            ids = transactionTemplate.execute(status -> migrateBatch(after));
+            if (ids == null || ids.isEmpty()) {
+                break;
+            }
+
+            // Advanced once the batch has been committed only, so a rolled back batch is migrated again
+            lastId = Collections.max(ids);
+            migrated += ids.size();
+        } while (ids.size() >= config.getBatchSize());
+
+        finished = true;
+        if (migrated > 0) {
+            LOGGER.info("Compressed the content of {} messages", migrated);
+        }
+    }
+
+    /**
+     * Compress the next batch of large uncompressed messages following the passed ID.
+     *
+     * @return IDs of the checked messages
+     */
+    private List<Long> migrateBatch(long after) {
+        List<Long> ids = messageRepository.findUncompressedIds(after, MessageContentCodec.THRESHOLD, config.getBatchSize());
+        for (Message message : messageRepository.findAllById(ids)) {
+            message.compressContent();
+        }
+
+        return ids;
+    }
+
+}
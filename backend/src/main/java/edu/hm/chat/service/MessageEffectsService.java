@@ -0,0 +1,111 @@
+package edu.hm.chat.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.service.retention.RetentionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Service applying everything that follows from a stored message besides the message itself:
+ * the activity of its chat, the retention of its chat and the visibility of a sent image.
+ * <p>
+ * Has to be called within a transaction, either the one storing the message or the one replaying it from the journal.
+ */
+@Service
+public class MessageEffectsService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageEffectsService.class);
+
+    /**
+     * Mapper used to parse the content of image messages.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Service maintaining the recent activity of chats.
+     */
+    private final ChatActivityService chatActivityService;
+
+    /**
+     * Service deleting messages of chats with a retention.
+     */
+    private final RetentionService retentionService;
+
+    /**
+     * Repository dealing with resource infos.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    public MessageEffectsService(
+            ChatActivityService chatActivityService,
+            RetentionService retentionService,
+            ResourceInfoRepository resourceInfoRepository
+    ) {
+        this.chatActivityService = chatActivityService;
+        this.retentionService = retentionService;
+        this.resourceInfoRepository = resourceInfoRepository;
+    }
+
+    /**
+     * Apply the effects of the passed message, which has been stored.
+     *
+     * @param message that has been stored
+     */
+    public void apply(Message message) {
+        chatActivityService.recordMessage(message);
+        retentionService.track(message);
+
+        if (message.getType() == MessageType.IMAGE) {
+            shareImage(message);
+        }
+    }
+
+    /**
+     * Get the ID of the resource sent with the passed image message.
+     *
+     * @param message of type {@link MessageType#IMAGE}
+     * @return ID of the resource, or empty if the content could not be parsed
+     */
+    @SuppressWarnings("unchecked")
+    public static Optional<String> imageResourceId(Message message) {
+        try {
+            Map<String, String> map = (Map<String, String>) MAPPER.readValue(message.getContent(), Map.class);
+            return Optional.ofNullable(map.get("id"));
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Could not parse image message", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Allow all members of the chat to view the image sent with the passed message.
+     */
+    private void shareImage(Message message) {
+        Optional<String> resourceId = imageResourceId(message);
+        if (resourceId.isEmpty()) {
+            return;
+        }
+
+        var optInfo = resourceInfoRepository.findById(resourceId.get());
+        if (optInfo.isEmpty()) {
+            LOGGER.error("Sent image message without image");
+            return;
+        }
+
+        var info = optInfo.get();
+        info.getVisibleFor().addAll(message.getChat().getMembers());
+        resourceInfoRepository.save(info);
+    }
+
+}
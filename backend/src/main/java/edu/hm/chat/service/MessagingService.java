@@ -1,19 +1,18 @@
 package edu.hm.chat.service;
 
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.hm.chat.config.WebSocketConfiguration;
+import edu.hm.chat.persistence.MessageStore;
 import edu.hm.chat.persistence.dao.ChatRepository;
-import edu.hm.chat.persistence.dao.MessageRepository;
-import edu.hm.chat.persistence.dao.ResourceInfoRepository;
 import edu.hm.chat.persistence.dao.UserRepository;
 import edu.hm.chat.persistence.model.Chat;
 import edu.hm.chat.persistence.model.Message;
-import edu.hm.chat.persistence.model.MessageType;
 import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.persistence.routing.ReadYourWritesGuard;
+import edu.hm.chat.service.journal.MessageJournal;
 import edu.hm.chat.service.model.StompMessage;
 import edu.hm.chat.service.model.StompPrincipal;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,11 +20,13 @@ import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import javax.transaction.Transactional;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import java.security.Principal;
 import java.util.Date;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -51,13 +52,31 @@ public class MessagingService {
     private UserRepository userRepository;
 
     @Autowired
-    private MessageRepository messageRepository;
+    private MessageStore messageStore;
 
     @Autowired
     private ChatRepository chatRepository;
 
     @Autowired
-    private ResourceInfoRepository resourceInfoRepository;
+    private ReadYourWritesGuard readYourWritesGuard;
+
+    @Autowired
+    private MessageEffectsService messageEffectsService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private PendingImageGrants pendingImageGrants;
+
+    /**
+     * Journal acknowledging messages before they are written to the database, null when disabled.
+     */
+    @Autowired(required = false)
+    private MessageJournal messageJournal;
 
     /**
      * Handler for all messages which clients want to send.
@@ -66,7 +85,6 @@ public class MessagingService {
      * @param user is the stomp-session of the sender of the message
      */
     @MessageMapping("/message/sink")
-    @Transactional
     public void sendSpecific(@Payload StompMessage msg, Principal user) {
         LOGGER.info("Incoming message: " + msg);
         msg.setTimestamp(new Date().getTime());
@@ -75,24 +93,99 @@ public class MessagingService {
             LOGGER.error("Request did not contain ChatId.");
             return;
         }
-
-        Optional<Chat> chat = chatRepository.findById((long) msg.getChatId());
-        if (chat.isEmpty()) {
-            LOGGER.error("Chat not found - id {}", msg.getChatId());
+        if (msg.getAuthorId() == null) {
+            LOGGER.error("Request did not contain AuthorID.");
             return;
         }
 
-        if (msg.getChatId() == null) {
-            LOGGER.error("Request did not contain AuthorID.");
+        // While journaling, the sender waits for the fsync only, neither for nor while holding a database connection
+        Optional<Message> stored = messageJournal != null
+                ? journal(msg, user)
+                : new TransactionTemplate(transactionManager).execute(status -> store(msg, user));
+        if (stored.isEmpty()) {
             return;
         }
+
+        Message persistentMessage = stored.get();
+        msg.setId(persistentMessage.getId());
+        readYourWritesGuard.markWrite(persistentMessage.getAuthor().getEmail()); // STOMP sessions carry no security context
+
+        Set<StompPrincipal> mappings = stompUserService.getMappingsByUsernames(persistentMessage.getChat().getMembers()
+                .stream()
+                .map(User::getEmail)
+                .collect(Collectors.toList()));
+        LOGGER.info("User mapping {}, Size {}", mappings, mappings.size());
+        for (StompPrincipal destination : mappings) {
+            String targetUser = destination.getName();
+            LOGGER.info("Sending direct message to {}", targetUser);
+            webSocket.convertAndSendToUser(targetUser, WebSocketConfiguration.USER_DESTINATION, msg);
+        }
+    }
+
+    /**
+     * Store the passed message in the message store and apply its effects, within the current transaction.
+     */
+    private Optional<Message> store(StompMessage msg, Principal user) {
+        Optional<Chat> chat = chatRepository.findById((long) msg.getChatId());
+        if (chat.isEmpty()) {
+            LOGGER.error("Chat not found - id {}", msg.getChatId());
+            return Optional.empty();
+        }
         Optional<User> author = userRepository.findById((long) msg.getAuthorId());
         if (author.isEmpty()) {
             LOGGER.error("Author not found - id {}", msg.getAuthorId());
-            return;
+            return Optional.empty();
         }
+        Hibernate.initialize(chat.get().getMembers());
+
+        Message persistentMessage = toMessage(msg, chat.get(), author.get(), user);
+        messageStore.save(persistentMessage);
+        messageEffectsService.apply(persistentMessage);
+
+        return Optional.of(persistentMessage);
+    }
+
+    /**
+     * Append the passed message to the journal, its effects are applied once it has been replayed.
+     * Until then, the members of the chat are allowed to view a sent image by {@link PendingImageGrants}.
+     * The chat, its members and the author are resolved from the second-level cache, without a transaction.
+     */
+    private Optional<Message> journal(StompMessage msg, Principal user) {
+        Chat chat;
+        User author;
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            chat = entityManager.find(Chat.class, (long) msg.getChatId());
+            if (chat == null) {
+                LOGGER.error("Chat not found - id {}", msg.getChatId());
+                return Optional.empty();
+            }
+            author = entityManager.find(User.class, (long) msg.getAuthorId());
+            if (author == null) {
+                LOGGER.error("Author not found - id {}", msg.getAuthorId());
+                return Optional.empty();
+            }
+            Hibernate.initialize(chat.getMembers());
+        } finally {
+            entityManager.close();
+        }
+
+        // Recipients may open a sent image as soon as it is broadcast, before the message has been replayed
+        Message persistentMessage = toMessage(msg, chat, author, user);
+        persistentMessage.setId(messageJournal.nextId());
+        pendingImageGrants.add(persistentMessage);
+        try {
+            messageJournal.append(persistentMessage);
+        } catch (RuntimeException e) {
+            pendingImageGrants.remove(persistentMessage.getId());
+            throw e;
+        }
+
+        return Optional.of(persistentMessage);
+    }
 
-        Set<StompPrincipal> authorConnections = stompUserService.getMappings(author.get().getEmail());
+    private Message toMessage(StompMessage msg, Chat chat, User author, Principal user) {
+        Set<StompPrincipal> authorConnections = stompUserService.getMappings(author.getEmail());
         if (authorConnections.stream().noneMatch(
                 (principal -> principal.getName().equals(user.getName()))
         )) {
@@ -100,47 +193,12 @@ public class MessagingService {
         }
 
         Message persistentMessage = new Message();
-        persistentMessage.setAuthor(author.get());
+        persistentMessage.setAuthor(author);
         persistentMessage.setContent(msg.getContent());
         persistentMessage.setTimestamp(msg.getTimestamp());
-        persistentMessage.setChat(chat.get());
+        persistentMessage.setChat(chat);
         persistentMessage.setType(msg.getType());
-        messageRepository.save(persistentMessage);
-
-        if (msg.getType() == MessageType.IMAGE) {
-            ObjectMapper mapper = new ObjectMapper();
-
-            try {
-                Map<String, String> map = (Map<String, String>) mapper.readValue(msg.getContent(), Map.class);
-
-                // Set permissions to view the image to all chat participants
-                var optInfo = resourceInfoRepository.findById(map.get("id"));
-                if (optInfo.isEmpty()) {
-                    LOGGER.error("Sent image message without image");
-                } else {
-                    var info = optInfo.get();
-
-                    for (var member : chat.get().getMembers()) {
-                        info.getVisibleFor().add(member);
-                    }
-
-                    resourceInfoRepository.save(info);
-                }
-            } catch (JsonProcessingException e) {
-                LOGGER.error("Could not parse image message", e);
-            }
-        }
-
-        Set<StompPrincipal> mappings = stompUserService.getMappingsByUsernames(chat.get().getMembers()
-                .stream()
-                .map(User::getEmail)
-                .collect(Collectors.toList()));
-        LOGGER.info("User mapping {}, Size {}", mappings, mappings.size());
-        for (StompPrincipal destination : mappings) {
-            String targetUser = destination.getName();
-            LOGGER.info("Sending direct message to {}", targetUser);
-            webSocket.convertAndSendToUser(targetUser, WebSocketConfiguration.USER_DESTINATION, msg);
-        }
+        return persistentMessage;
     }
 
 }
@@ -0,0 +1,85 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Permissions to view images sent with journaled messages which have not been written to the database yet.
+ * <p>
+ * Journaled messages are delivered right away, while {@link MessageEffectsService} grants the chat members access to
+ * a sent image only once the message has been replayed. Until then the download permission check consults
+ * the grants kept here, so recipients can open the image even while the database lags behind.
+ */
+@Service
+public class PendingImageGrants {
+
+    /**
+     * Pending grants by the ID of the message they belong to.
+     */
+    private final Map<Long, Grant> grants = new ConcurrentHashMap<>();
+
+    /**
+     * Allow the members of the chat of the passed journaled message to view the image sent with it, if any.
+     *
+     * @param message which has been journaled, with the members of its chat loaded
+     */
+    public void add(Message message) {
+        if (message.getType() != MessageType.IMAGE) {
+            return;
+        }
+
+        Optional<String> resourceId = MessageEffectsService.imageResourceId(message);
+        if (resourceId.isPresent()) {
+            Set<Long> userIds = message.getChat().getMembers().stream().map(User::getId).collect(Collectors.toSet());
+            grants.put(message.getId(), new Grant(resourceId.get(), userIds));
+        }
+    }
+
+    /**
+     * Drop the grant of the passed message, once the message has been replayed.
+     *
+     * @param messageId of the replayed message
+     */
+    public void remove(long messageId) {
+        grants.remove(messageId);
+    }
+
+    /**
+     * Check whether a pending grant allows the passed user to view the passed resource.
+     *
+     * @param resourceId of the resource
+     * @param userId     of the user
+     * @return whether the user may view the resource
+     */
+    public boolean isVisibleFor(String resourceId, long userId) {
+        for (Grant grant : grants.values()) {
+            if (grant.resourceId.equals(resourceId) && grant.userIds.contains(userId)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static final class Grant {
+
+        final String resourceId;
+
+        final Set<Long> userIds;
+
+        Grant(String resourceId, Set<Long> userIds) {
+            this.resourceId = resourceId;
+            this.userIds = userIds;
+        }
+
+    }
+
+}
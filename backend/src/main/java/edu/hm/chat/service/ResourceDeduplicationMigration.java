@@ -0,0 +1,95 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Migration moving resources stored under their own ID before deduplication has been introduced into
+ * content-addressed blobs. Runs in batches in the background, duplicated files are removed in place.
+ */
+@Service
+public class ResourceDeduplicationMigration {
+
+    /**
+     * Logger for the migration.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceDeduplicationMigration.class);
+
+    /**
+     * Configuration for the upload.
+     */
+    private final ResourceUploadConfig config;
+
+    /**
+     * Repository dealing with resource info.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    /**
+     * Service used to move resources into blobs.
+     */
+    private final ResourceStorageService resourceStorageService;
+
+    /**
+     * ID of the last resource checked by the migration.
+     */
+    private volatile String lastId = "";
+
+    /**
+     * Whether all resources have been migrated.
+     */
+    private volatile boolean finished;
+
+    public ResourceDeduplicationMigration(
+            ResourceUploadConfig config,
+            ResourceInfoRepository resourceInfoRepository,
+            ResourceStorageService resourceStorageService
+    ) {
+        this.config = config;
+        this.resourceInfoRepository = resourceInfoRepository;
+        this.resourceStorageService = resourceStorageService;
+    }
+
+    /**
+     * Deduplicate the next batches of resources not yet stored as blobs.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.res.deduplication-interval:PT1M}")
+    public void migrate() {
+        if (!config.isDeduplicationEnabled() || finished) {
+            return;
+        }
+
+        long migrated = 0;
+        List<ResourceInfo> batch;
+        do {
+            batch = resourceInfoRepository.findNotDeduplicated(lastId, config.getDeduplicationBatchSize());
+            for (ResourceInfo info : batch) {
+                try {
+                    if (resourceStorageService.deduplicate(info)) {
+                        migrated++;
+                    } else {
+                        LOGGER.warn("File of resource {} is missing, skipping deduplication", info.getResourceId());
+                    }
+                } catch (IOException e) {
+                    LOGGER.error("Could not deduplicate resource {}", info.getResourceId(), e);
+                }
+
+                lastId = info.getResourceId();
+            }
+        } while (batch.size() >= config.getDeduplicationBatchSize());
+
+        finished = true;
+        if (migrated > 0) {
+            LOGGER.info("Moved {} resources into deduplicated blobs", migrated);
+        }
+    }
+
+}
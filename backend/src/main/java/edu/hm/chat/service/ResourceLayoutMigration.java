@@ -0,0 +1,127 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.ResourceBlobRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migration moving blob files stored in the flat upload target into the sharded layout.
+ * <p>
+ * Walks all blobs by hash in batches, one batch per run. Files are linked into their new place first and only removed
+ * from the flat layout in the next run, so downloads which located a file just before it has been moved still find it.
+ * Resources stored under their own ID are moved into blobs by the {@link ResourceDeduplicationMigration} instead.
+ */
+@Service
+public class ResourceLayoutMigration {
+
+    /**
+     * Logger for the migration.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceLayoutMigration.class);
+
+    /**
+     * Configuration for the upload.
+     */
+    private final ResourceUploadConfig config;
+
+    /**
+     * Repository dealing with resource blobs.
+     */
+    private final ResourceBlobRepository blobRepository;
+
+    /**
+     * Service used to move the blob files.
+     */
+    private final ResourceStorageService resourceStorageService;
+
+    /**
+     * Hash of the last blob checked by the migration.
+     */
+    private volatile String lastHash = "";
+
+    /**
+     * Hashes of the blobs linked into the sharded layout by the previous run, to remove from the flat layout.
+     */
+    private List<String> linked = List.of();
+
+    /**
+     * Amount of blobs moved so far.
+     */
+    private long migrated;
+
+    /**
+     * Whether a blob could not be moved during the current walk, which is then repeated.
+     */
+    private boolean failed;
+
+    public ResourceLayoutMigration(
+            ResourceUploadConfig config,
+            ResourceBlobRepository blobRepository,
+            ResourceStorageService resourceStorageService
+    ) {
+        this.config = config;
+        this.blobRepository = blobRepository;
+        this.resourceStorageService = resourceStorageService;
+    }
+
+    /**
+     * Move the next batch of blob files into the sharded layout.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.res.layout-migration-interval:PT10S}")
+    public synchronized void migrate() {
+        if (!config.isLayoutMigrationEnabled() || !resourceStorageService.isFlatLayoutPresent()) {
+            return;
+        }
+
+        for (String hash : linked) {
+            try {
+                resourceStorageService.removeFlatBlobFile(hash);
+            } catch (IOException e) {
+                LOGGER.error("Could not remove blob {} from the flat layout", hash, e);
+            }
+        }
+        linked = List.of();
+
+        List<String> batch = blobRepository.findHashesAfter(lastHash, config.getLayoutMigrationBatchSize());
+        if (batch.isEmpty()) {
+            if (failed) {
+                LOGGER.warn("Some blobs could not be moved into the sharded layout, retrying");
+                lastHash = "";
+                failed = false;
+                return;
+            }
+
+            try {
+                resourceStorageService.completeLayoutMigration();
+                LOGGER.info("Moved {} blobs into the sharded layout", migrated);
+            } catch (IOException e) {
+                LOGGER.error("Could not mark the sharded layout as complete", e);
+            }
+            return;
+        }
+
+        List<String> linkedNow = new ArrayList<>(batch.size());
+        for (String hash : batch) {
+            try {
+                if (resourceStorageService.linkToShardedLayout(hash)) {
+                    linkedNow.add(hash);
+                    migrated++;
+                }
+            } catch (IOException e) {
+                LOGGER.error("Could not move blob {} into the sharded layout", hash, e);
+                failed = true;
+            }
+
+            lastHash = hash;
+        }
+        linked = linkedNow;
+    }
+
+}
@@ -0,0 +1,396 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.ResourceBlobRepository;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Sweeper reconciling the files of the resource storage with the rows describing them.
+ * <p>
+ * Crashes between storing content and saving its resource leave blobs referenced by nothing, crashes while writing
+ * leave temporary files behind. The sweeper walks the sharded blob files in ascending order of their hashes, merging
+ * them with the blob rows read in the same order in batches, so files without a row and rows without a file are found
+ * in a single pass. Only one leaf directory and one batch of rows are held in memory at a time, however many files are stored.
+ * <p>
+ * Orphaned files are moved into quarantine first and only deleted after the quarantine retention, so a file
+ * quarantined by mistake can still be restored. Files and blobs younger than the grace period are left alone,
+ * as uploads in progress lack their rows for a moment. Resources whose blob does not exist cannot be repaired and are only reported.
+ */
+@Service
+public class ResourceOrphanSweeper {
+
+    /**
+     * Logger for the sweeper.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceOrphanSweeper.class);
+
+    /**
+     * Pattern of the names of blob files, the hex encoded SHA-256 hash of their content.
+     */
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Amount of leaf directories of the sharded layout.
+     */
+    private static final int SHARD_COUNT = 256 * 256;
+
+    /**
+     * Configuration for the upload.
+     */
+    private final ResourceUploadConfig config;
+
+    /**
+     * Repository dealing with resource blobs.
+     */
+    private final ResourceBlobRepository blobRepository;
+
+    /**
+     * Repository dealing with resource info.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    /**
+     * Repository dealing with uploads sent in chunks.
+     */
+    private final UploadSessionRepository uploadSessionRepository;
+
+    /**
+     * Service owning the files of the resource storage.
+     */
+    private final ResourceStorageService resourceStorageService;
+
+    public ResourceOrphanSweeper(
+            ResourceUploadConfig config,
+            ResourceBlobRepository blobRepository,
+            ResourceInfoRepository resourceInfoRepository,
+            UploadSessionRepository uploadSessionRepository,
+            ResourceStorageService resourceStorageService
+    ) {
+        this.config = config;
+        this.blobRepository = blobRepository;
+        this.resourceInfoRepository = resourceInfoRepository;
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.resourceStorageService = resourceStorageService;
+    }
+
+    /**
+     * Sweep the resource storage for orphaned files and rows.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.res.orphan-sweep-interval:PT24H}")
+    public synchronized void sweep() {
+        if (!config.isOrphanSweepEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Sweep sweep = new Sweep(now - config.getOrphanGracePeriod().toMillis());
+        try {
+            sweepUploadTarget(sweep);
+            sweepBlobs(sweep);
+            sweepResources(sweep);
+
+            sweep.purgedFiles = resourceStorageService.purgeQuarantine(now - config.getQuarantineRetention().toMillis());
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Could not finish sweeping the resource storage for orphans", e);
+        }
+
+        if (sweep.hasFindings()) {
+            LOGGER.info("Swept the resource storage: quarantined {} orphaned files, removed {} unreferenced blobs, " +
+                            "corrected {} reference counts, deleted {} temporary files and {} quarantined files, " +
+                            "found {} blobs without file and {} resources without blob",
+                    sweep.quarantinedFiles, sweep.removedBlobs, sweep.correctedBlobs, sweep.deletedTempFiles,
+                    sweep.purgedFiles, sweep.missingBlobFiles, sweep.missingBlobs);
+        }
+    }
+
+    /**
+     * Check the files directly in the upload target in batches: temporary files, files of chunked uploads,
+     * blob files not yet moved into the sharded layout and resources stored before deduplication.
+     */
+    private void sweepUploadTarget(Sweep sweep) throws IOException {
+        List<Path> batch = new ArrayList<>(config.getOrphanSweepBatchSize());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(resourceStorageService.getUploadTarget(), Files::isRegularFile)) {
+            for (Path file : files) {
+                if (file.getFileName().toString().equals(ResourceStorageService.LAYOUT_MARKER)) {
+                    continue;
+                }
+
+                batch.add(file);
+                if (batch.size() >= config.getOrphanSweepBatchSize()) {
+                    sweepUploadTargetBatch(batch, sweep);
+                    batch.clear();
+                }
+            }
+        }
+        sweepUploadTargetBatch(batch, sweep);
+    }
+
+    private void sweepUploadTargetBatch(List<Path> files, Sweep sweep) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        List<Path> resourceFiles = new ArrayList<>();
+        for (Path file : files) {
+            if (!sweep.isOld(file)) {
+                continue;
+            }
+
+            String name = file.getFileName().toString();
+            if (name.endsWith(ResourceStorageService.TEMP_SUFFIX)) {
+                // Left behind by an upload which crashed, the content is incomplete
+                if (Files.deleteIfExists(file)) {
+                    sweep.deletedTempFiles++;
+                }
+            } else if (name.endsWith(ResourceStorageService.CHUNKED_SUFFIX)) {
+                String uploadId = name.substring(0, name.length() - ResourceStorageService.CHUNKED_SUFFIX.length());
+                if (!uploadSessionRepository.existsById(uploadId)) {
+                    quarantine(file, sweep);
+                }
+            } else if (BLOB_NAME.matcher(name).matches()) {
+                hashes.add(name);
+            } else {
+                resourceFiles.add(file);
+            }
+        }
+
+        if (!hashes.isEmpty()) {
+            Set<String> existing = new HashSet<>(blobRepository.findExistingHashes(hashes));
+            for (String hash : hashes) {
+                if (!existing.contains(hash) && resourceStorageService.quarantineOrphanedBlobFile(hash)) {
+                    LOGGER.warn("Quarantined file of blob {} without row", hash);
+                    sweep.quarantinedFiles++;
+                }
+            }
+        }
+
+        if (!resourceFiles.isEmpty()) {
+            List<String> resourceIds = new ArrayList<>(resourceFiles.size());
+            for (Path file : resourceFiles) {
+                resourceIds.add(file.getFileName().toString());
+            }
+
+            Set<String> existing = new HashSet<>(resourceInfoRepository.findExistingIds(resourceIds));
+            for (Path file : resourceFiles) {
+                if (!existing.contains(file.getFileName().toString())) {
+                    quarantine(file, sweep);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the sharded blob files with the blob rows, both in ascending order of their hashes.
+     */
+    private void sweepBlobs(Sweep sweep) throws IOException {
+        ShardedBlobFiles files = new ShardedBlobFiles(sweep);
+        String file = files.hasNext() ? files.next() : null;
+
+        String after = "";
+        List<String> batch;
+        do {
+            batch = blobRepository.findHashesAfter(after, config.getOrphanSweepBatchSize());
+            for (String hash : batch) {
+                // Files sorting before the next row have no row
+                while (file != null && file.compareTo(hash) < 0) {
+                    quarantineBlobFileWithoutRow(file, sweep);
+                    file = files.hasNext() ? files.next() : null;
+                }
+
+                if (hash.equals(file)) {
+                    file = files.hasNext() ? files.next() : null;
+                } else if (!resourceStorageService.isBlobFilePresent(hash) && blobRepository.existsById(hash)) {
+                    LOGGER.error("File of blob {} does not exist, the content of the resources referencing it is lost", hash);
+                    sweep.missingBlobFiles++;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                String until = batch.get(batch.size() - 1);
+                for (String hash : blobRepository.findMiscounted(after, until, sweep.orphanedBefore)) {
+                    long references = resourceStorageService.correctReferences(hash, sweep.orphanedBefore);
+                    if (references == 0) {
+                        LOGGER.warn("Removed blob {} referenced by no resource", hash);
+                        sweep.removedBlobs++;
+                    } else if (references > 0) {
+                        LOGGER.warn("Corrected reference count of blob {} to {}", hash, references);
+                        sweep.correctedBlobs++;
+                    }
+                }
+                after = until;
+            }
+        } while (batch.size() >= config.getOrphanSweepBatchSize());
+
+        while (file != null) {
+            quarantineBlobFileWithoutRow(file, sweep);
+            file = files.hasNext() ? files.next() : null;
+        }
+    }
+
+    private void quarantineBlobFileWithoutRow(String hash, Sweep sweep) throws IOException {
+        if (sweep.isOld(resourceStorageService.getBlobFile(hash)) && resourceStorageService.quarantineOrphanedBlobFile(hash)) {
+            LOGGER.warn("Quarantined file of blob {} without row", hash);
+            sweep.quarantinedFiles++;
+        }
+    }
+
+    /**
+     * Report resources whose blob does not exist.
+     */
+    private void sweepResources(Sweep sweep) {
+        String after = "";
+        List<String> batch;
+        do {
+            batch = resourceInfoRepository.findIdsWithoutBlob(after, config.getOrphanSweepBatchSize());
+            for (String resourceId : batch) {
+                LOGGER.error("Blob of resource {} does not exist, its content is lost", resourceId);
+                sweep.missingBlobs++;
+            }
+
+            if (!batch.isEmpty()) {
+                after = batch.get(batch.size() - 1);
+            }
+        } while (batch.size() >= config.getOrphanSweepBatchSize());
+    }
+
+    private void quarantine(Path file, Sweep sweep) throws IOException {
+        LOGGER.warn("Quarantined orphaned file {}", file.getFileName());
+        resourceStorageService.quarantine(file);
+        sweep.quarantinedFiles++;
+    }
+
+    private static String shardName(int index) {
+        return String.format("%02x", index);
+    }
+
+    /**
+     * State of a single sweep.
+     */
+    private static final class Sweep {
+
+        /**
+         * Files and blobs changed after this time in milliseconds since the epoch are not considered orphaned.
+         */
+        final long orphanedBefore;
+
+        long quarantinedFiles;
+
+        long removedBlobs;
+
+        long correctedBlobs;
+
+        long deletedTempFiles;
+
+        long purgedFiles;
+
+        long missingBlobFiles;
+
+        long missingBlobs;
+
+        Sweep(long orphanedBefore) {
+            this.orphanedBefore = orphanedBefore;
+        }
+
+        boolean isOld(Path file) throws IOException {
+            try {
+                return Files.getLastModifiedTime(file).toMillis() < orphanedBefore;
+            } catch (NoSuchFileException e) {
+                return false; // Removed meanwhile
+            }
+        }
+
+        boolean hasFindings() {
+            return quarantinedFiles + removedBlobs + correctedBlobs + deletedTempFiles + purgedFiles
+                    + missingBlobFiles + missingBlobs > 0;
+        }
+
+    }
+
+    /**
+     * Hashes of the blob files in the sharded layout in ascending order.
+     * Leaf directories are listed one at a time, files in them which are not named like their blobs are quarantined on the way.
+     */
+    private final class ShardedBlobFiles implements Iterator<String> {
+
+        private final Sweep sweep;
+
+        /**
+         * Index of the leaf directory listed last, its first two hex digits in the high and the last two in the low byte.
+         */
+        private int shard = -1;
+
+        private Iterator<String> leaf = Collections.emptyIterator();
+
+        ShardedBlobFiles(Sweep sweep) {
+            this.sweep = sweep;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (!leaf.hasNext() && ++shard < SHARD_COUNT) {
+                    Path parent = resourceStorageService.getUploadTarget().resolve(shardName(shard >> 8));
+                    if (!Files.isDirectory(parent)) {
+                        shard |= 0xff; // Skip the whole first level directory
+                        continue;
+                    }
+
+                    leaf = list(parent.resolve(shardName(shard & 0xff)), shardName(shard >> 8) + shardName(shard & 0xff));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return leaf.hasNext();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            return leaf.next();
+        }
+
+        private Iterator<String> list(Path directory, String prefix) throws IOException {
+            if (!Files.isDirectory(directory)) {
+                return Collections.emptyIterator();
+            }
+
+            List<String> hashes = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (BLOB_NAME.matcher(name).matches() && name.startsWith(prefix)) {
+                        hashes.add(name);
+                    } else if (sweep.isOld(file)) {
+                        quarantine(file, sweep);
+                    }
+                }
+            }
+            Collections.sort(hashes);
+
+            return hashes.iterator();
+        }
+
+    }
+
+}
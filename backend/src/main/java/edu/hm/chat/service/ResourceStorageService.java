@@ -1,23 +1,63 @@
 package edu.hm.chat.service;
 
 import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.ResourceBlobRepository;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.ResourceUsageRepository;
+import edu.hm.chat.persistence.dao.ResourceVariantRepository;
+import edu.hm.chat.persistence.model.ResourceBlob;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.ResourceVariant;
+import edu.hm.chat.service.cache.HotResourceCache;
+import edu.hm.chat.service.model.StoredBlob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Service handing resource storage.
+ * <p>
+ * Contents are stored as blobs named by their SHA-256 hash, thus a file uploaded several times is only stored once.
+ * Blobs are reference-counted by the resources pointing to them and the blob row is locked while a reference
+ * is added or released, so a blob is never removed while another upload of the same content adopts it.
+ * <p>
+ * Blob files are fanned out into two levels of directories named by the first two pairs of hex digits of
+ * their hash, keeping every directory small. Blobs stored before are moved there by the {@link ResourceLayoutMigration},
+ * until it has finished files are looked up in the flat upload target as well.
+ * <p>
+ * Text-like content is stored compressed with gzip. Blobs are still named by the hash of their uncompressed content
+ * and record the encoding of their file, which resources referencing them take over to be served accordingly.
  */
 @Service
 public class ResourceStorageService {
@@ -27,13 +67,110 @@ public class ResourceStorageService {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(ResourceStorageService.class);
 
+    /**
+     * Suffix of files which are still being written.
+     */
+    static final String TEMP_SUFFIX = ".upload";
+
+    /**
+     * Suffix of files assembled from chunks sent in any order.
+     */
+    static final String CHUNKED_SUFFIX = ".chunked";
+
+    /**
+     * Size of the buffer used to write uploaded content.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Name of the file holding the version of the storage layout.
+     */
+    static final String LAYOUT_MARKER = "layout.version";
+
+    /**
+     * Content encoding of blobs stored compressed with gzip.
+     */
+    public static final String GZIP_ENCODING = "gzip";
+
+    /**
+     * Compressed content is only kept if it saves at least this share of the size,
+     * as it has to be decompressed for every client not accepting it.
+     */
+    private static final double MIN_COMPRESSION_SAVING = 0.1;
+
+    /**
+     * Subtypes of application content types which are text-like.
+     */
+    private static final Set<String> COMPRESSIBLE_APPLICATION_TYPES = Set.of(
+            "json", "xml", "javascript", "x-javascript", "ecmascript", "x-ndjson", "csv", "yaml", "x-yaml", "sql", "x-sh"
+    );
+
+    /**
+     * Name of the directory holding orphaned files until they are deleted.
+     */
+    static final String QUARANTINE_DIRECTORY = "quarantine";
+
+    /**
+     * Version of the layout sharding blob files into nested directories.
+     */
+    private static final int SHARDED_LAYOUT_VERSION = 2;
+
     /**
      * Configuration for the upload.
      */
     private final ResourceUploadConfig config;
 
-    public ResourceStorageService(ResourceUploadConfig config) {
+    /**
+     * Repository dealing with resource blobs.
+     */
+    private final ResourceBlobRepository blobRepository;
+
+    /**
+     * Repository dealing with resource info.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    /**
+     * Repository dealing with variants of image resources.
+     */
+    private final ResourceVariantRepository variantRepository;
+
+    /**
+     * Repository dealing with the per-user usage of the storage.
+     */
+    private final ResourceUsageRepository usageRepository;
+
+    /**
+     * Cache holding the content of frequently downloaded small resources.
+     */
+    private final HotResourceCache hotResourceCache;
+
+    /**
+     * Template used to change blob references together with the blob files.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Whether blob files may still be stored in the flat layout.
+     */
+    private volatile boolean flatLayoutPresent;
+
+    public ResourceStorageService(
+            ResourceUploadConfig config,
+            ResourceBlobRepository blobRepository,
+            ResourceInfoRepository resourceInfoRepository,
+            ResourceVariantRepository variantRepository,
+            ResourceUsageRepository usageRepository,
+            HotResourceCache hotResourceCache,
+            PlatformTransactionManager transactionManager
+    ) {
         this.config = config;
+        this.blobRepository = blobRepository;
+        this.resourceInfoRepository = resourceInfoRepository;
+        this.variantRepository = variantRepository;
+        this.usageRepository = usageRepository;
+        this.hotResourceCache = hotResourceCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
 
         initializeUploadTarget();
     }
@@ -44,65 +181,691 @@ public class ResourceStorageService {
     private void initializeUploadTarget() {
         try {
             Files.createDirectories(getUploadTarget());
+
+            flatLayoutPresent = readLayoutVersion() < SHARDED_LAYOUT_VERSION;
+            if (flatLayoutPresent && isUploadTargetEmpty()) {
+                completeLayoutMigration(); // Nothing to migrate
+            }
         } catch (Exception e) {
             LOGGER.error("An error occurred when trying to create the folder to upload resources to", e);
         }
     }
 
+    /**
+     * Read the version of the storage layout, files stored without a marker use the flat layout.
+     */
+    private int readLayoutVersion() throws IOException {
+        Path marker = getUploadTarget().resolve(LAYOUT_MARKER);
+        if (!Files.exists(marker)) {
+            return 1;
+        }
+
+        return Integer.parseInt(Files.readString(marker).trim());
+    }
+
+    private boolean isUploadTargetEmpty() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(getUploadTarget())) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
     /**
      * Get the upload target path.
      *
      * @return upload target path
      */
-    private Path getUploadTarget() {
+    Path getUploadTarget() {
         return Paths.get(config.getUploadTarget()).toAbsolutePath().normalize();
     }
 
     /**
-     * Store the passed file.
+     * Store the passed content as is and add a reference to the blob holding it.
      *
-     * @param file to store
-     * @return the new location of the file
+     * @param in content to store, read until its end
+     * @return the stored blob
+     * @see #store(InputStream, String)
      */
-    public String store(MultipartFile file) throws IOException {
-        UUID uuid = UUID.randomUUID(); // Generate UUID for the file to upload
-        String fileName = uuid.toString();
+    public StoredBlob store(InputStream in) throws IOException {
+        return store(in, null);
+    }
+
+    /**
+     * Store the passed content and add a reference to the blob holding it.
+     * The content is written to its final directory in a single pass, computing its hash, size and type on the way.
+     * Text-like content is compressed with gzip on the way, unless its leading bytes reveal a known binary format.
+     * The reference has to be released again by removing the resource pointing to the blob.
+     *
+     * @param in                  content to store, read until its end
+     * @param declaredContentType content type declared by the uploader, {@code null} if unknown
+     * @return the stored blob
+     */
+    public StoredBlob store(InputStream in, String declaredContentType) throws IOException {
+        Path tempFile = getUploadTarget().resolve(UUID.randomUUID() + TEMP_SUFFIX);
+
+        try {
+            MessageDigest digest = newDigest();
+            byte[] header = in.readNBytes(ContentSniffer.HEADER_SIZE);
+            String detectedContentType = ContentSniffer.detect(header, header.length);
+            boolean compress = config.isCompressionEnabled() && detectedContentType == null && isCompressible(declaredContentType);
+
+            digest.update(header);
+            long size = header.length;
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 OutputStream out = compress
+                         ? new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE)
+                         : Channels.newOutputStream(channel)) {
+                out.write(header);
+
+                byte[] bytes = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(bytes)) != -1) {
+                    digest.update(bytes, 0, read);
+                    size += read;
+                    out.write(bytes, 0, read);
+                }
+            }
+
+            String contentEncoding = null;
+            if (compress) {
+                if (Files.size(tempFile) <= size * (1 - MIN_COMPRESSION_SAVING)) {
+                    contentEncoding = GZIP_ENCODING;
+                } else {
+                    decompress(tempFile);
+                }
+            }
 
-        Path targetLocation = getUploadTarget().resolve(fileName);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            String hash = toHex(digest.digest());
+            contentEncoding = adopt(hash, size, tempFile, contentEncoding);
 
-        return fileName;
+            return new StoredBlob(hash, size, detectedContentType, contentEncoding);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
     }
 
     /**
-     * Load a resource with the passed file name.
+     * Check whether content of the passed type is text-like and thus worth compressing.
      *
-     * @param fileName to get resource for
-     * @return the loaded resource
+     * @param contentType to check, {@code null} if unknown
+     * @return whether the content should be compressed
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+
+        MediaType mediaType;
+        try {
+            mediaType = MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+
+        String subtype = mediaType.getSubtype();
+        return mediaType.getType().equals("text") || (mediaType.getType().equals("application")
+                && (COMPRESSIBLE_APPLICATION_TYPES.contains(subtype) || subtype.endsWith("+json") || subtype.endsWith("+xml")));
+    }
+
+    /**
+     * Replace the passed compressed file by its content as is, if compressing did not pay off.
      */
-    public Resource load(String fileName) throws IOException {
+    private void decompress(Path file) throws IOException {
+        Path plainFile = getUploadTarget().resolve(UUID.randomUUID() + TEMP_SUFFIX);
         try {
-            Path path = getUploadTarget().resolve(fileName).normalize();
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+                Files.copy(in, plainFile);
+            }
+            Files.move(plainFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(plainFile);
+        }
+    }
+
+    /**
+     * Create the file assembling an upload sent in chunks.
+     * The file is preallocated to its final size without allocating disk blocks, which are only allocated
+     * once chunks are written into it.
+     *
+     * @param uploadId of the upload
+     * @param size     of the file in bytes
+     */
+    public void createChunkedFile(String uploadId, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(getChunkedFile(uploadId),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE)) {
+            if (size > 0) {
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+        }
+    }
+
+    /**
+     * Write a chunk of an upload at its position in the assembled file.
+     * Stops reading once more than the expected length has been read.
+     *
+     * @param uploadId of the upload
+     * @param position of the chunk in the file
+     * @param length   expected length of the chunk
+     * @param in       content of the chunk
+     * @param digest   to update with the content while writing it, {@code null} for none
+     * @return the amount of bytes read, more than the expected length if the chunk is too long
+     */
+    public long writeChunk(String uploadId, long position, long length, InputStream in, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(getChunkedFile(uploadId), StandardOpenOption.WRITE)) {
+            byte[] bytes = new byte[(int) Math.min(BUFFER_SIZE, length + 1)];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+            long written = 0;
+            int read;
+            while (written <= length && (read = in.read(bytes, 0, (int) Math.min(bytes.length, length + 1 - written))) != -1) {
+                if (written + read > length) {
+                    return written + read; // Too long, the chunk is rejected
+                }
+                if (digest != null) {
+                    digest.update(bytes, 0, read);
+                }
+
+                buffer.clear().limit(read);
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, position + written);
+                }
+            }
+
+            return written;
+        }
+    }
+
+    /**
+     * Update the passed digest with a part of the file assembling an upload.
+     *
+     * @param uploadId of the upload
+     * @param position of the part
+     * @param length   of the part
+     * @param digest   to update
+     */
+    public void digestChunk(String uploadId, long position, long length, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(getChunkedFile(uploadId), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, Math.max(1, length)));
+
+            long end = position + length;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new EOFException("File of upload " + uploadId + " is shorter than expected");
+                }
 
-            Resource resource = new UrlResource(path.toUri());
-            if (resource.exists()) {
-                return resource;
-            } else {
-                throw new IOException("File with the passed file name does not exist");
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
             }
-        } catch (MalformedURLException ex) {
-            throw new IOException(ex);
         }
     }
 
     /**
-     * Remove the resource with the passed file name.
+     * Store the file assembled from the chunks of an upload as blob, adding a reference to it.
      *
-     * @param fileName to remove file for
+     * @param uploadId of the upload
+     * @param hash     of the assembled file
+     * @param size     of the assembled file
+     * @return the stored blob
      */
-    public void remove(String fileName) throws IOException {
-        Path path = getUploadTarget().resolve(fileName).normalize();
-        Files.deleteIfExists(path);
+    public StoredBlob storeChunkedFile(String uploadId, String hash, long size) throws IOException {
+        Path file = getChunkedFile(uploadId);
+
+        byte[] header = new byte[ContentSniffer.HEADER_SIZE];
+        int headerLength = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                headerLength = buffer.position();
+            }
+        }
+
+        // Kept if adopting fails, so completing the upload can be retried
+        String contentEncoding = adopt(hash, size, file, null);
+        Files.deleteIfExists(file);
+
+        return new StoredBlob(hash, size, ContentSniffer.detect(header, headerLength), contentEncoding);
+    }
+
+    /**
+     * Delete the file assembling an upload which has been discarded.
+     *
+     * @param uploadId of the upload
+     */
+    public void deleteChunkedFile(String uploadId) throws IOException {
+        Files.deleteIfExists(getChunkedFile(uploadId));
+    }
+
+    /**
+     * Move the content of a resource stored before deduplication into its blob.
+     *
+     * @param info of the resource to deduplicate
+     * @return whether the resource has been deduplicated
+     */
+    public boolean deduplicate(ResourceInfo info) throws IOException {
+        Path legacyFile = getLegacyFile(info.getResourceId());
+        if (!Files.exists(legacyFile)) {
+            return false;
+        }
+
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(legacyFile), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String hash = toHex(digest.digest());
+
+        try {
+            transactionTemplate.execute(status -> {
+                String contentEncoding = adoptInTransaction(hash, info.getSize(), legacyFile, null);
+
+                info.setBlobHash(hash);
+                info.setContentEncoding(contentEncoding);
+                return resourceInfoRepository.save(info);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Files.deleteIfExists(legacyFile); // Content is a duplicate of an existing blob
+        return true;
+    }
+
+    /**
+     * Add a reference to the blob with the passed hash, moving the passed file into place if the blob is missing.
+     *
+     * @return the encoding of the blob, which may differ from the encoding of the passed file if the blob existed already
+     */
+    private String adopt(String hash, long size, Path file, String contentEncoding) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> adoptInTransaction(hash, size, file, contentEncoding));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private String adoptInTransaction(String hash, long size, Path file, String contentEncoding) {
+        blobRepository.acquire(hash, size, System.currentTimeMillis(), contentEncoding);
+
+        if (findBlobFile(hash).isPresent()) {
+            return blobRepository.findContentEncoding(hash); // Stored before, possibly in another encoding
+        }
+
+        Path blobFile = getBlobFile(hash);
+        try {
+            Files.createDirectories(blobFile.getParent());
+            Files.move(file, blobFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        blobRepository.updateContentEncoding(hash, contentEncoding); // The row may have described a lost file
+
+        return contentEncoding;
+    }
+
+    /**
+     * Locate the file holding the content of the passed resource.
+     *
+     * @param info of the resource to locate
+     * @return path of the file holding the content
+     */
+    public Path locate(ResourceInfo info) throws IOException {
+        if (info.getBlobHash() != null) {
+            Optional<Path> blobFile = findBlobFile(info.getBlobHash());
+            if (blobFile.isPresent()) {
+                return blobFile.get();
+            }
+        }
+
+        // Not yet deduplicated
+        Path legacyFile = getLegacyFile(info.getResourceId());
+        if (!Files.exists(legacyFile)) {
+            throw new NoSuchFileException(legacyFile.toString(), null, "File of the resource does not exist");
+        }
+
+        return legacyFile;
+    }
+
+    /**
+     * Locate the file of the blob with the passed hash.
+     *
+     * @param hash of the blob to locate
+     * @return path of the blob file
+     */
+    public Path locateBlob(String hash) throws IOException {
+        return findBlobFile(hash).orElseThrow(() ->
+                new NoSuchFileException(getBlobFile(hash).toString(), null, "File of the blob does not exist"));
+    }
+
+    /**
+     * Find the file of the blob with the passed hash in the sharded layout or, while migrating, in the flat layout.
+     */
+    private Optional<Path> findBlobFile(String hash) {
+        Path blobFile = getBlobFile(hash);
+        if (Files.exists(blobFile)) {
+            return Optional.of(blobFile);
+        }
+
+        if (flatLayoutPresent) {
+            Path flatFile = getFlatBlobFile(hash);
+            if (Files.exists(flatFile)) {
+                return Optional.of(flatFile);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Remove the resource with the passed ID together with its info and variants, subtracting it from the usage of its owner.
+     * The blobs holding the content are only removed once no other resource references them anymore.
+     *
+     * @param resourceId of the resource to remove
+     * @return whether the resource existed
+     */
+    public boolean remove(String resourceId) throws IOException {
+        try {
+            Boolean removed = transactionTemplate.execute(status -> {
+                // Locked, so no variant can be added concurrently
+                Optional<ResourceInfo> info = resourceInfoRepository.findForUpdate(resourceId);
+                if (info.isEmpty()) {
+                    return false;
+                }
+
+                for (ResourceVariant variant : variantRepository.findByResourceId(resourceId)) {
+                    variantRepository.delete(variant);
+                    releaseInTransaction(variant.getBlobHash());
+                }
+                resourceInfoRepository.delete(info.get());
+                usageRepository.add(info.get().getOwnerId(), -1, -info.get().getSize());
+
+                String hash = info.get().getBlobHash();
+                if (hash == null) {
+                    try {
+                        Files.deleteIfExists(getLegacyFile(resourceId));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                } else {
+                    releaseInTransaction(hash);
+                }
+
+                return true;
+            });
+
+            return Boolean.TRUE.equals(removed);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            hotResourceCache.invalidate(resourceId); // Committed or rolled back by now
+        }
+    }
+
+    /**
+     * Release a reference to the blob with the passed hash, acquired by storing content which is not
+     * referenced by any resource after all.
+     *
+     * @param hash of the blob to release
+     */
+    public void release(String hash) throws IOException {
+        try {
+            transactionTemplate.executeWithoutResult(status -> releaseInTransaction(hash));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void releaseInTransaction(String hash) {
+        blobRepository.release(hash);
+        if (blobRepository.deleteUnreferenced(hash) > 0) {
+            try {
+                // Deleted while holding the row lock, concurrent uploads of the content wait for the commit
+                Files.deleteIfExists(getBlobFile(hash));
+                if (flatLayoutPresent) {
+                    Files.deleteIfExists(getFlatBlobFile(hash));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Check whether blob files may still be stored in the flat layout.
+     *
+     * @return whether the layout migration has not finished yet
+     */
+    public boolean isFlatLayoutPresent() {
+        return flatLayoutPresent;
+    }
+
+    /**
+     * Link the file of the blob with the passed hash from the flat into the sharded layout.
+     * The blob row is locked meanwhile, so the blob cannot be removed concurrently. The flat file is kept,
+     * as downloads may have located it already, and has to be removed by {@link #removeFlatBlobFile} later.
+     *
+     * @param hash of the blob to move
+     * @return whether the flat file still has to be removed
+     */
+    public boolean linkToShardedLayout(String hash) throws IOException {
+        try {
+            Boolean linked = transactionTemplate.execute(status -> {
+                Path flatFile = getFlatBlobFile(hash);
+                if (blobRepository.findForUpdate(hash).isEmpty() || !Files.exists(flatFile)) {
+                    return false; // Removed in the meantime or stored in the sharded layout already
+                }
+
+                Path blobFile = getBlobFile(hash);
+                try {
+                    Files.createDirectories(blobFile.getParent());
+                    Files.createLink(blobFile, flatFile);
+                    return true;
+                } catch (FileAlreadyExistsException e) {
+                    return true; // Uploaded again meanwhile, the flat file is a duplicate
+                } catch (UnsupportedOperationException e) {
+                    // Hard links are not supported by the file system, downloads may fail while the file is moved
+                    moveAtomically(flatFile, blobFile);
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            return Boolean.TRUE.equals(linked);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Remove the file of the blob with the passed hash from the flat layout, after it has been linked into the sharded one.
+     *
+     * @param hash of the blob
+     */
+    public void removeFlatBlobFile(String hash) throws IOException {
+        Files.deleteIfExists(getFlatBlobFile(hash));
+    }
+
+    /**
+     * Mark the storage as using the sharded layout only, once all blob files have been moved.
+     */
+    public void completeLayoutMigration() throws IOException {
+        Path marker = getUploadTarget().resolve(LAYOUT_MARKER);
+        Path tempMarker = getUploadTarget().resolve(LAYOUT_MARKER + TEMP_SUFFIX);
+        Files.writeString(tempMarker, String.valueOf(SHARDED_LAYOUT_VERSION));
+        Files.move(tempMarker, marker, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        flatLayoutPresent = false;
+    }
+
+    /**
+     * Check whether the file of the blob with the passed hash exists.
+     *
+     * @param hash of the blob
+     * @return whether the file exists in any layout
+     */
+    public boolean isBlobFilePresent(String hash) {
+        return findBlobFile(hash).isPresent();
+    }
+
+    /**
+     * Correct the reference count of the blob with the passed hash from the resources and variants referencing it.
+     * Blobs referenced by nothing are removed and their file is moved into quarantine.
+     * Blobs acquired after the passed time are skipped, as the resource referencing them may not be saved yet.
+     *
+     * @param hash           of the blob
+     * @param acquiredBefore time in milliseconds since the epoch the blob must have been acquired last before
+     * @return the corrected reference count or -1 if the blob has been skipped
+     */
+    public long correctReferences(String hash, long acquiredBefore) throws IOException {
+        try {
+            Long corrected = transactionTemplate.execute(status -> {
+                // Locked, so no reference can be acquired or released meanwhile
+                Optional<ResourceBlob> blob = blobRepository.findForUpdate(hash);
+                if (blob.isEmpty() || (blob.get().getAcquiredAt() != null && blob.get().getAcquiredAt() >= acquiredBefore)) {
+                    return -1L;
+                }
+
+                long references = blobRepository.countReferences(hash);
+                if (references > 0 && references == blob.get().getReferenceCount()) {
+                    return references;
+                }
+
+                if (references > 0) {
+                    blob.get().setReferenceCount(references);
+                } else {
+                    blobRepository.delete(blob.get());
+                    quarantineBlobFiles(hash);
+                }
+                return references;
+            });
+
+            return corrected != null ? corrected : -1;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Move the passed blob file into quarantine if there is no row for its blob.
+     * Uploads of the same content wait meanwhile, so they do not adopt the file while it is moved.
+     *
+     * @param hash of the blob named by the file
+     * @return whether the file has been quarantined
+     */
+    public boolean quarantineOrphanedBlobFile(String hash) throws IOException {
+        try {
+            Boolean quarantined = transactionTemplate.execute(status -> {
+                if (blobRepository.insertPlaceholder(hash) == 0) {
+                    return false; // Not orphaned
+                }
+
+                quarantineBlobFiles(hash);
+                blobRepository.deleteUnreferenced(hash);
+                return true;
+            });
+
+            return Boolean.TRUE.equals(quarantined);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void quarantineBlobFiles(String hash) {
+        try {
+            quarantine(getBlobFile(hash));
+            quarantine(getFlatBlobFile(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Move the passed file of the upload target into quarantine, where it is kept until {@link #purgeQuarantine}
+     * deletes it, so files quarantined by mistake can still be restored.
+     *
+     * @param file to quarantine, nothing is done if it does not exist
+     */
+    public void quarantine(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        Path quarantineDirectory = getUploadTarget().resolve(QUARANTINE_DIRECTORY);
+        Files.createDirectories(quarantineDirectory);
+
+        // Touched, so the retention is counted from now on
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        Files.move(file, quarantineDirectory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the files quarantined before the passed time.
+     *
+     * @param quarantinedBefore time in milliseconds since the epoch
+     * @return the amount of deleted files
+     */
+    public long purgeQuarantine(long quarantinedBefore) throws IOException {
+        Path quarantineDirectory = getUploadTarget().resolve(QUARANTINE_DIRECTORY);
+        if (!Files.isDirectory(quarantineDirectory)) {
+            return 0;
+        }
+
+        long deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(quarantineDirectory)) {
+            for (Path file : files) {
+                if (Files.getLastModifiedTime(file).toMillis() < quarantinedBefore && Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            }
+        }
+
+        return deleted;
+    }
+
+    private static void moveAtomically(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            try {
+                Files.deleteIfExists(source);
+            } catch (IOException deleteException) {
+                throw new UncheckedIOException(deleteException);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Get the file of the blob with the passed hash in the sharded layout, for example {@code ab/cd/abcd...}.
+     */
+    Path getBlobFile(String hash) {
+        return getUploadTarget().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Path getChunkedFile(String uploadId) {
+        return getUploadTarget().resolve(uploadId + CHUNKED_SUFFIX);
+    }
+
+    private Path getFlatBlobFile(String hash) {
+        return getUploadTarget().resolve(hash);
+    }
+
+    private Path getLegacyFile(String resourceId) {
+        return getUploadTarget().resolve(resourceId).normalize();
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    static String toHex(byte[] hash) {
+        return String.format("%0" + (hash.length * 2) + "x", new BigInteger(1, hash));
     }
 
 }
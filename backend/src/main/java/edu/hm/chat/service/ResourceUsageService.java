@@ -0,0 +1,143 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.ResourceUploadConfig;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.ResourceUsageRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.ResourceUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Service maintaining how many resources every user owns and how large they are in total.
+ * <p>
+ * The usage row of a user is updated in the same transaction as the resource info is inserted or deleted, so
+ * quotas can be checked by reading a single row. Counters which are off, for example for resources created in bulk,
+ * are corrected by a periodic reconciliation recounting them from the resource info.
+ */
+@Service
+public class ResourceUsageService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceUsageService.class);
+
+    /**
+     * Configuration for the upload.
+     */
+    private final ResourceUploadConfig config;
+
+    /**
+     * Repository dealing with the usage counters.
+     */
+    private final ResourceUsageRepository usageRepository;
+
+    /**
+     * Repository dealing with resource info.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    /**
+     * Template used to insert resources together with their usage.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    public ResourceUsageService(
+            ResourceUploadConfig config,
+            ResourceUsageRepository usageRepository,
+            ResourceInfoRepository resourceInfoRepository,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.usageRepository = usageRepository;
+        this.resourceInfoRepository = resourceInfoRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Get the usage of a user.
+     *
+     * @param userId of the user
+     * @return the usage, empty if the user does not own any resources
+     */
+    public ResourceUsage getUsage(Long userId) {
+        return usageRepository.findById(userId).orElseGet(() -> new ResourceUsage(userId, 0L, 0L));
+    }
+
+    /**
+     * Get the users using the most bytes of the resource storage.
+     *
+     * @param limit maximum amount of users to get
+     * @return usages in descending order of their size
+     */
+    public List<ResourceUsage> getTopConsumers(int limit) {
+        return usageRepository.findTopConsumers(limit);
+    }
+
+    /**
+     * Save the info of a new resource and add it to the usage of its owner.
+     *
+     * @param info         of the new resource
+     * @param enforceQuota whether the resource is only saved if the owner stays within the quota
+     * @return whether the resource has been saved
+     */
+    public boolean add(ResourceInfo info, boolean enforceQuota) {
+        Boolean saved = transactionTemplate.execute(status -> {
+            if (enforceQuota) {
+                usageRepository.createIfAbsent(info.getOwnerId());
+                if (usageRepository.addWithinLimits(info.getOwnerId(), info.getSize(),
+                        config.getMaxFilesPerUser(), config.getMaxBytesPerUser()) == 0) {
+                    return false;
+                }
+            } else {
+                usageRepository.add(info.getOwnerId(), 1, info.getSize());
+            }
+
+            resourceInfoRepository.save(info);
+            return true;
+        });
+
+        return Boolean.TRUE.equals(saved);
+    }
+
+    /**
+     * Recount the usage of all users from their resources, one range of user IDs per transaction.
+     * Runs right after startup as well, creating the counters of resources stored before they have been introduced.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.res.usage-reconciliation-interval:PT6H}")
+    public void reconcile() {
+        if (!config.isUsageReconciliationEnabled()) {
+            return;
+        }
+
+        Long maxUserId = usageRepository.findMaxUserId();
+        if (maxUserId == null) {
+            return;
+        }
+
+        long corrected = 0;
+        for (long after = 0; after < maxUserId; after += config.getUsageReconciliationBatchSize()) {
+            long from = after;
+            long until = after + config.getUsageReconciliationBatchSize();
+
+            Integer recounted = transactionTemplate.execute(status -> {
+                usageRepository.createMissing(from, until);
+                usageRepository.lock(from, until); // Uploads and removals of these users wait for the recount
+                return usageRepository.recount(from, until);
+            });
+            corrected += recounted != null ? recounted : 0;
+        }
+
+        if (corrected > 0) {
+            LOGGER.info("Corrected the resource usage of {} users", corrected);
+        }
+    }
+
+}
@@ -44,7 +44,7 @@ public class UserService implements UserDetailsService {
         }
 
         User user = userRepository.findByEmail(email);
-        if (user == null) {
+        if (user == null || user.isDeleted()) {
             throw new UsernameNotFoundException(String.format("User with email %s does not exist", email));
         }
 
@@ -0,0 +1,335 @@
+package edu.hm.chat.service.archive;
+
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable archive segment consisting of a data file with deflate-compressed blocks of messages
+ * and a small index file describing the blocks.
+ * <p>
+ * Data file layout: magic, then per block {@code [compressed length][raw length][deflate bytes]}.
+ * Index file layout: magic, block count, then per block
+ * {@code [first timestamp][last timestamp][first ordinal][message count][offset][compressed length]}.
+ */
+public class ArchiveSegment {
+
+    /**
+     * Magic number at the start of segment data files.
+     */
+    private static final int DATA_MAGIC = 0x43415344; // "CASD"
+
+    /**
+     * Magic number at the start of segment index files.
+     */
+    private static final int INDEX_MAGIC = 0x43415349; // "CASI"
+
+    /**
+     * Extension of segment data files.
+     */
+    static final String DATA_EXTENSION = ".seg";
+
+    /**
+     * Extension of segment index files.
+     */
+    static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Memory-mapped data file.
+     */
+    private final MappedByteBuffer data;
+
+    /**
+     * Blocks of the segment in ascending timestamp order.
+     */
+    private final List<Block> blocks;
+
+    /**
+     * Amount of messages in the segment.
+     */
+    private final long messageCount;
+
+    private ArchiveSegment(MappedByteBuffer data, List<Block> blocks) {
+        this.data = data;
+        this.blocks = blocks;
+
+        Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        this.messageCount = last == null ? 0 : last.firstOrdinal + last.count;
+    }
+
+    /**
+     * Write the passed messages (in ascending timestamp order) as a new segment.
+     *
+     * @param dataFile  to write the compressed blocks to
+     * @param indexFile to write the block index to
+     * @param messages  to write
+     * @param blockSize amount of messages per compressed block
+     */
+    public static void write(Path dataFile, Path indexFile, List<Message> messages, int blockSize) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(DATA_MAGIC);
+            long offset = Integer.BYTES;
+
+            for (int start = 0; start < messages.size(); start += blockSize) {
+                List<Message> slice = messages.subList(start, Math.min(start + blockSize, messages.size()));
+
+                byte[] raw = encode(slice);
+                byte[] compressed = deflate(deflater, raw);
+
+                out.writeInt(compressed.length);
+                out.writeInt(raw.length);
+                out.write(compressed);
+
+                blocks.add(new Block(
+                        slice.get(0).getTimestamp(),
+                        slice.get(slice.size() - 1).getTimestamp(),
+                        start,
+                        slice.size(),
+                        offset,
+                        compressed.length
+                ));
+                offset += 2 * Integer.BYTES + compressed.length;
+            }
+
+            out.flush();
+            channel.force(true);
+        } finally {
+            deflater.end();
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                out.writeLong(block.firstTimestamp);
+                out.writeLong(block.lastTimestamp);
+                out.writeLong(block.firstOrdinal);
+                out.writeInt(block.count);
+                out.writeLong(block.offset);
+                out.writeInt(block.compressedLength);
+            }
+
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Open an existing segment.
+     *
+     * @param dataFile  of the segment
+     * @param indexFile of the segment
+     * @return the opened segment
+     */
+    public static ArchiveSegment open(Path dataFile, Path indexFile) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                throw new IOException("Not an archive segment index: " + indexFile);
+            }
+
+            int blockCount = in.readInt();
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new Block(in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readLong(), in.readInt()));
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.getInt(0) != DATA_MAGIC) {
+                throw new IOException("Not an archive segment: " + dataFile);
+            }
+
+            return new ArchiveSegment(data, blocks);
+        }
+    }
+
+    /**
+     * Get the amount of messages in the segment.
+     *
+     * @return message count
+     */
+    public long getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Get the timestamp of the newest message in the segment.
+     *
+     * @return newest timestamp or {@link Long#MIN_VALUE} if the segment is empty
+     */
+    public long getLastTimestamp() {
+        return blocks.isEmpty() ? Long.MIN_VALUE : blocks.get(blocks.size() - 1).lastTimestamp;
+    }
+
+    /**
+     * Count the messages older than the passed timestamp, decompressing the block containing the timestamp only.
+     *
+     * @param timestamp to count older messages of
+     * @return amount of older messages
+     */
+    public long countBefore(long timestamp) throws IOException {
+        long count = 0;
+        for (Block block : blocks) {
+            if (block.lastTimestamp < timestamp) {
+                count += block.count;
+            } else if (block.firstTimestamp < timestamp) {
+                long[] older = {0};
+                readBlock(block, message -> {
+                    if (message.getTimestamp() < timestamp) {
+                        older[0]++;
+                    }
+                });
+                count += older[0];
+            } else {
+                break;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Read the messages in the passed ordinal range (ascending order).
+     *
+     * @param from     first ordinal (inclusive)
+     * @param to       last ordinal (exclusive)
+     * @param consumer to pass the read messages to
+     */
+    public void read(long from, long to, Consumer<ArchivedMessage> consumer) throws IOException {
+        for (Block block : blocks) {
+            long blockEnd = block.firstOrdinal + block.count;
+            if (blockEnd <= from || block.firstOrdinal >= to) {
+                continue;
+            }
+
+            long[] ordinal = {block.firstOrdinal};
+            readBlock(block, message -> {
+                if (ordinal[0] >= from && ordinal[0] < to) {
+                    consumer.accept(message);
+                }
+                ordinal[0]++;
+            });
+        }
+    }
+
+    /**
+     * Decompress and decode a single block straight from the mapped file.
+     */
+    private void readBlock(Block block, Consumer<ArchivedMessage> consumer) throws IOException {
+        ByteBuffer compressed = data.duplicate();
+        compressed.position((int) block.offset + Integer.BYTES);
+        int rawLength = compressed.getInt();
+        compressed.limit(compressed.position() + block.compressedLength);
+
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                read += inflater.inflate(raw, read, rawLength - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive segment block", e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        for (int i = 0; i < block.count; i++) {
+            long id = in.getLong();
+            long authorId = in.getLong();
+            long timestamp = in.getLong();
+            MessageType type = MessageType.valueOf(readString(in));
+            String content = readString(in);
+
+            consumer.accept(new ArchivedMessage(id, authorId, timestamp, type, content));
+        }
+    }
+
+    private static byte[] encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Message message : messages) {
+            out.writeLong(message.getId());
+            out.writeLong(message.getAuthor().getId());
+            out.writeLong(message.getTimestamp());
+            writeString(out, message.getType().name());
+            writeString(out, message.getContent());
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            out.write(buffer, 0, length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Index entry of a compressed block.
+     */
+    private static class Block {
+
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final long firstOrdinal;
+        private final int count;
+        private final long offset;
+        private final int compressedLength;
+
+        private Block(long firstTimestamp, long lastTimestamp, long firstOrdinal, int count, long offset, int compressedLength) {
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.firstOrdinal = firstOrdinal;
+            this.count = count;
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package edu.hm.chat.service.archive;
+
+import edu.hm.chat.persistence.model.MessageType;
+
+/**
+ * Message read back from an archive segment file.
+ */
+public class ArchivedMessage {
+
+    /**
+     * ID the message had in the database.
+     */
+    private final long id;
+
+    /**
+     * ID of the author of the message.
+     */
+    private final long authorId;
+
+    /**
+     * Timestamp of the message.
+     */
+    private final long timestamp;
+
+    /**
+     * Type of the message.
+     */
+    private final MessageType type;
+
+    /**
+     * Content of the message.
+     */
+    private final String content;
+
+    public ArchivedMessage(long id, long authorId, long timestamp, MessageType type, String content) {
+        this.id = id;
+        this.authorId = authorId;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.content = content;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getAuthorId() {
+        return authorId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+}
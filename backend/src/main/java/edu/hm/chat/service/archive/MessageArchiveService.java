@@ -0,0 +1,382 @@
+package edu.hm.chat.service.archive;
+
+import edu.hm.chat.config.ArchiveConfig;
+import edu.hm.chat.persistence.dao.ArchiveWatermarkRepository;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.model.ArchiveWatermark;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service moving old messages of a chat out of the database into compressed, immutable segment files
+ * and reading them back transparently.
+ * <p>
+ * Segments of a chat are numbered in the order they have been written, thus newer segments contain newer messages.
+ * The {@link ArchiveWatermark} of a chat is the source of truth for which segments are valid: a segment is
+ * written to a temporary file first and only becomes part of the archive once the transaction removing
+ * the archived rows and advancing the watermark has been committed.
+ * The archive is part of the database message store, the log message store keeps its own segments.
+ */
+@Service
+@ConditionalOnProperty(prefix = "edu.hm.chat.message-store", name = "type", havingValue = "jpa", matchIfMissing = true)
+public class MessageArchiveService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageArchiveService.class);
+
+    /**
+     * Suffix of segment files which have not yet been committed.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Configuration for the archive.
+     */
+    private final ArchiveConfig config;
+
+    /**
+     * Repository dealing with messages.
+     */
+    private final MessageRepository messageRepository;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Repository dealing with archive watermarks.
+     */
+    private final ArchiveWatermarkRepository watermarkRepository;
+
+    /**
+     * Template used to remove archived rows and advance the watermark atomically.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Opened segments per chat ID, the least recently read chats are closed once more than the configured
+     * amount of chats are open. Guarded by itself.
+     */
+    private final LinkedHashMap<Long, List<ArchiveSegment>> openSegments;
+
+    /**
+     * Amount of times open segments have been discarded, segments opened concurrently to that are not cached.
+     * Guarded by {@link #openSegments}.
+     */
+    private long invalidations;
+
+    public MessageArchiveService(
+            ArchiveConfig config,
+            MessageRepository messageRepository,
+            ChatRepository chatRepository,
+            ArchiveWatermarkRepository watermarkRepository,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.messageRepository = messageRepository;
+        this.chatRepository = chatRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.openSegments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, List<ArchiveSegment>> eldest) {
+                // The mappings of closed segments are released once they are garbage collected
+                return size() > config.getMaxOpenChats();
+            }
+        };
+    }
+
+    /**
+     * Archive all messages older than the configured maximum age.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.archive.interval:PT1H}")
+    public void archive() {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - config.getMaxAge().toMillis();
+        for (Long chatId : messageRepository.findChatIdsWithMessagesBefore(cutoff)) {
+            try {
+                archiveChat(chatId, cutoff);
+            } catch (IOException e) {
+                LOGGER.error("Could not archive messages of chat {}", chatId, e);
+            }
+        }
+    }
+
+    /**
+     * Archive the messages of the passed chat older than the passed cutoff.
+     *
+     * @param chatId of the chat to archive messages for
+     * @param cutoff timestamp before which messages are archived
+     */
+    private void archiveChat(long chatId, long cutoff) throws IOException {
+        Optional<Chat> chat = chatRepository.findById(chatId);
+        if (chat.isEmpty() || chat.get().getRetention() != null) {
+            return; // Messages of chats with a retention expire instead of being archived
+        }
+
+        Path chatDirectory = getChatDirectory(chatId);
+        Files.createDirectories(chatDirectory);
+
+        PageRequest batch = PageRequest.of(0, config.getSegmentSize(), Sort.by("timestamp", "id"));
+        while (true) {
+            List<Message> messages = messageRepository.findByChatAndTimestampLessThan(chat.get(), cutoff, batch);
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            ArchiveWatermark watermark = watermarkRepository.findById(chatId).orElseGet(() -> new ArchiveWatermark(chatId));
+            int segmentNumber = watermark.getSegmentCount() + 1;
+
+            Path dataFile = getTempFile(getDataFile(chatId, segmentNumber));
+            Path indexFile = getTempFile(getIndexFile(chatId, segmentNumber));
+            Files.deleteIfExists(dataFile); // Left over from an uncommitted earlier attempt
+            Files.deleteIfExists(indexFile);
+
+            ArchiveSegment.write(dataFile, indexFile, messages, config.getBlockSize());
+
+            List<Long> ids = messages.stream().map(Message::getId).collect(Collectors.toList());
+            transactionTemplate.execute(status -> {
+                messageRepository.deleteByIds(ids);
+
+                watermark.setArchivedUntil(messages.get(messages.size() - 1).getTimestamp());
+                watermark.setMessageCount(watermark.getMessageCount() + messages.size());
+                watermark.setSegmentCount(segmentNumber);
+                return watermarkRepository.save(watermark);
+            });
+
+            commitSegment(chatId, segmentNumber);
+            closeSegments(chatId);
+
+            LOGGER.info("Archived {} messages of chat {} into segment {}", messages.size(), chatId, segmentNumber);
+
+            if (messages.size() < config.getSegmentSize()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read archived messages of a chat, counted from the newest archived message.
+     *
+     * @param chatId to read messages of
+     * @param offset amount of newest archived messages to skip
+     * @param limit  maximum amount of messages to read
+     * @return the read messages in ascending timestamp order
+     */
+    public List<ArchivedMessage> read(long chatId, long offset, int limit) {
+        List<ArchiveSegment> segments = getSegments(chatId);
+        long total = segments.stream().mapToLong(ArchiveSegment::getMessageCount).sum();
+
+        long to = total - offset;
+        long from = Math.max(0, to - limit);
+        if (to <= 0) {
+            return List.of();
+        }
+
+        List<ArchivedMessage> result = new ArrayList<>(limit);
+        long base = 0;
+        try {
+            for (ArchiveSegment segment : segments) {
+                long segmentEnd = base + segment.getMessageCount();
+                if (segmentEnd > from && base < to) {
+                    segment.read(from - base, to - base, result::add);
+                }
+                base = segmentEnd;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Count the archived messages of a chat at or after the passed timestamp,
+     * which is the offset of the newest older archived message for {@link #read(long, long, int)}.
+     *
+     * @param chatId    to count messages of
+     * @param timestamp from which on messages are counted
+     * @return amount of archived messages at or after the timestamp
+     */
+    public long countSince(long chatId, long timestamp) {
+        long count = 0;
+        try {
+            for (ArchiveSegment segment : getSegments(chatId)) {
+                count += segment.getMessageCount() - segment.countBefore(timestamp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return count;
+    }
+
+    /**
+     * Remove the archive of the passed chat in case all archived messages are older than the passed timestamp.
+     * Archive segments are immutable, thus archives expire as a whole.
+     *
+     * @param chatId of the chat to expire archive for
+     * @param before timestamp before which messages are expired
+     * @return amount of expired messages
+     */
+    public long expire(long chatId, long before) {
+        List<ArchiveSegment> segments = getSegments(chatId);
+        if (segments.isEmpty() || segments.get(segments.size() - 1).getLastTimestamp() >= before) {
+            return 0;
+        }
+
+        long count = segments.stream().mapToLong(ArchiveSegment::getMessageCount).sum();
+        removeArchive(chatId);
+
+        return count;
+    }
+
+    /**
+     * Remove the whole archive of the passed chat.
+     *
+     * @param chatId to remove archive for
+     */
+    public void removeArchive(long chatId) {
+        closeSegments(chatId);
+        if (watermarkRepository.existsById(chatId)) {
+            watermarkRepository.deleteById(chatId);
+        }
+
+        Path chatDirectory = getChatDirectory(chatId);
+        if (!Files.exists(chatDirectory)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(chatDirectory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(chatDirectory);
+        } catch (IOException e) {
+            LOGGER.error("Could not remove archive of chat {}", chatId, e);
+        }
+    }
+
+    /**
+     * Get the opened segments of the passed chat in ascending order.
+     */
+    private List<ArchiveSegment> getSegments(long chatId) {
+        long generation;
+        synchronized (openSegments) {
+            List<ArchiveSegment> segments = openSegments.get(chatId);
+            if (segments != null) {
+                return segments;
+            }
+            generation = invalidations;
+        }
+
+        List<ArchiveSegment> segments = openSegments(chatId);
+        synchronized (openSegments) {
+            if (generation == invalidations) {
+                openSegments.put(chatId, segments);
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Open the segments of the passed chat listed by its watermark.
+     */
+    private List<ArchiveSegment> openSegments(long chatId) {
+        Optional<ArchiveWatermark> watermark = watermarkRepository.findById(chatId);
+        if (watermark.isEmpty()) {
+            return List.of();
+        }
+
+        List<ArchiveSegment> segments = new ArrayList<>();
+        try {
+            for (int number = 1; number <= watermark.get().getSegmentCount(); number++) {
+                commitSegment(chatId, number); // Recover segments committed right before a crash
+                segments.add(ArchiveSegment.open(getDataFile(chatId, number), getIndexFile(chatId, number)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Discard the opened segments of the passed chat after its archive changed.
+     */
+    private void closeSegments(long chatId) {
+        synchronized (openSegments) {
+            openSegments.remove(chatId);
+            invalidations++;
+        }
+    }
+
+    /**
+     * Move the temporary files of a segment to their final location, unless already done.
+     */
+    private void commitSegment(long chatId, int segmentNumber) throws IOException {
+        for (Path file : List.of(getIndexFile(chatId, segmentNumber), getDataFile(chatId, segmentNumber))) {
+            if (Files.exists(file)) {
+                continue;
+            }
+
+            try {
+                Files.move(getTempFile(file), file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                if (!Files.exists(file)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the archive target path.
+     *
+     * @return archive target path
+     */
+    private Path getArchiveTarget() {
+        return Paths.get(config.getTarget()).toAbsolutePath().normalize();
+    }
+
+    private Path getChatDirectory(long chatId) {
+        return getArchiveTarget().resolve(Long.toString(chatId));
+    }
+
+    private Path getDataFile(long chatId, int segmentNumber) {
+        return getChatDirectory(chatId).resolve(String.format("%08d%s", segmentNumber, ArchiveSegment.DATA_EXTENSION));
+    }
+
+    private Path getIndexFile(long chatId, int segmentNumber) {
+        return getChatDirectory(chatId).resolve(String.format("%08d%s", segmentNumber, ArchiveSegment.INDEX_EXTENSION));
+    }
+
+    private static Path getTempFile(Path file) {
+        return file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+    }
+
+}
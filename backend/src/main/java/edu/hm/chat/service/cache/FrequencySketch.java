@@ -0,0 +1,117 @@
+package edu.hm.chat.service.cache;
+
+/**
+ * Count-min sketch estimating how often keys have been accessed recently, using four 4-bit counters per key.
+ * All counters are halved once enough accesses have been recorded, so the estimates favor recent popularity.
+ * Not thread-safe.
+ */
+final class FrequencySketch {
+
+    /**
+     * Seeds of the hash functions selecting a counter per row.
+     */
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * Mask clearing the bit shifted into every counter when halving them.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Maximum value of a counter.
+     */
+    private static final int MAX_COUNT = 15;
+
+    /**
+     * Counters, every long holds 16 of them.
+     */
+    private final long[] table;
+
+    /**
+     * Mask selecting a slot of the table.
+     */
+    private final int tableMask;
+
+    /**
+     * Amount of recorded accesses after which the counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * Accesses recorded since the counters have been halved last.
+     */
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(2, expectedEntries) - 1) << 1;
+        this.table = new long[size];
+        this.tableMask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * Estimate how often the passed key has been accessed.
+     *
+     * @param key to estimate frequency of
+     * @return the estimate between 0 and 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, (int) ((table[indexOf(hash, row)] >>> offsetOf(hash, row)) & MAX_COUNT));
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Record an access to the passed key.
+     *
+     * @param key accessed
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = indexOf(hash, row);
+            int offset = offsetOf(hash, row);
+            if (((table[index] >>> offset) & MAX_COUNT) < MAX_COUNT) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+
+    /**
+     * Get the bit offset of the counter of the passed row within its slot.
+     */
+    private static int offsetOf(int hash, int row) {
+        return ((hash >>> (row << 3)) & 15) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
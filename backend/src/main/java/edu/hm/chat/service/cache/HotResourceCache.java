@@ -0,0 +1,459 @@
+package edu.hm.chat.service.cache;
+
+import edu.hm.chat.config.HotResourceCacheConfig;
+import edu.hm.chat.service.model.CachedResource;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Byte-budgeted cache holding the content of small, frequently downloaded resources in direct buffers.
+ * <p>
+ * Admission follows W-TinyLFU: new entries enter a small LRU window, entries leaving the window only replace
+ * an entry of the main segment if they have been accessed more often recently, as estimated by a {@link FrequencySketch}.
+ * The main segment is split into a probation and a protected LRU, so entries accessed only once
+ * are evicted before entries accessed repeatedly. Thus a burst of one-off downloads does not flush avatars.
+ * Once the cache is full, content is only loaded for resources {@link #admits admitted} by the sketch, so a miss of
+ * a resource requested less often than the entry it would replace is served from its file without allocating.
+ * <p>
+ * Lookups only touch a concurrent map. Accesses are recorded in the policy if its lock is free, otherwise they are
+ * dropped, which only makes the frequency estimates a little less precise under contention.
+ */
+@Service
+public class HotResourceCache {
+
+    /**
+     * Assumed average size of a cached resource, used to size the frequency sketch.
+     */
+    private static final int AVERAGE_ENTRY_SIZE = 16 * 1024;
+
+    /**
+     * Share of the capacity reserved for the admission window.
+     */
+    private static final double WINDOW_SHARE = 0.01;
+
+    /**
+     * Share of the main segment reserved for entries accessed repeatedly.
+     */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Configuration for the cache.
+     */
+    private final HotResourceCacheConfig config;
+
+    /**
+     * Cached entries for lookups.
+     */
+    private final Map<Key, Entry> data = new ConcurrentHashMap<>();
+
+    /**
+     * Lock guarding the policy state below.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Estimated access frequencies of cached and recently requested resources.
+     */
+    private final FrequencySketch sketch;
+
+    /**
+     * Entries which have been added recently, in LRU order.
+     */
+    private final Segment window;
+
+    /**
+     * Entries admitted to the main segment and accessed only once since, in LRU order.
+     */
+    private final Segment probation = new Segment(Long.MAX_VALUE);
+
+    /**
+     * Entries of the main segment accessed repeatedly, in LRU order.
+     */
+    private final Segment protectedSegment;
+
+    /**
+     * Maximum amount of bytes in the main segment.
+     */
+    private final long mainCapacity;
+
+    /**
+     * Amount of invalidations so far, entries loaded before an invalidation are not added.
+     */
+    private volatile long invalidations;
+
+    public HotResourceCache(HotResourceCacheConfig config) {
+        this.config = config;
+
+        long windowCapacity = Math.max(config.getMaxEntrySize(), (long) (config.getCapacity() * WINDOW_SHARE));
+        this.window = new Segment(windowCapacity);
+        this.mainCapacity = Math.max(0, config.getCapacity() - windowCapacity);
+        this.protectedSegment = new Segment((long) (mainCapacity * PROTECTED_SHARE));
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(16, config.getCapacity() / AVERAGE_ENTRY_SIZE)));
+    }
+
+    /**
+     * Get a stamp to pass to {@link #put} for content loaded after calling this method.
+     * Must be taken before reading the state the content is loaded from.
+     *
+     * @return the current stamp
+     */
+    public long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Check whether content of the passed size may be cached.
+     *
+     * @param size of the content in bytes
+     * @return whether it may be cached
+     */
+    public boolean isCacheable(long size) {
+        return config.isEnabled() && size > 0 && size <= config.getMaxEntrySize() && size <= config.getCapacity();
+    }
+
+    /**
+     * Check whether content of the passed resource should be loaded into the cache, which is the case if there is
+     * room left or the resource has been requested more often recently than the entry it would replace.
+     *
+     * @param resourceId of the resource
+     * @param size       maximum edge length of the variant or {@code null} for the original content
+     * @param length     of the content in bytes
+     * @return whether to {@link #put} the content
+     */
+    public boolean admits(String resourceId, Integer size, long length) {
+        if (!isCacheable(length)) {
+            return false;
+        }
+
+        Key key = new Key(resourceId, size);
+        lock.lock();
+        try {
+            if (window.bytes + probation.bytes + protectedSegment.bytes + length <= config.getCapacity()) {
+                return true;
+            }
+
+            Entry victim = !probation.isEmpty() ? probation.first() : protectedSegment.first();
+            return victim == null || sketch.frequency(key) > sketch.frequency(victim.key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get a cached resource.
+     *
+     * @param resourceId of the resource
+     * @param size       maximum edge length of the variant or {@code null} for the original content
+     * @return the cached resource or nothing if not cached
+     */
+    public Optional<CachedResource> get(String resourceId, Integer size) {
+        if (!config.isEnabled()) {
+            return Optional.empty();
+        }
+
+        Key key = new Key(resourceId, size);
+        Entry entry = data.get(key);
+        if (entry != null && System.nanoTime() - entry.loadedAt > config.getTimeToLive().toNanos()) {
+            remove(key);
+            entry = null;
+        }
+
+        if (lock.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (entry != null) {
+                    onHit(entry);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        return entry != null ? Optional.of(entry.resource) : Optional.empty();
+    }
+
+    /**
+     * Load the passed file into a direct buffer and offer it to the cache, which should be checked to {@link #admits admit} it first.
+     * Nothing is cached if the cache has been invalidated since the passed stamp has been taken.
+     *
+     * @param resourceId      of the resource
+     * @param size            maximum edge length of the variant or {@code null} for the original content
+     * @param file            holding the content, at most {@link HotResourceCacheConfig#getMaxEntrySize()} bytes large
+     * @param eTag            of the content
+     * @param lastModified    timestamp of the last modification of the content
+     * @param contentType     of the content
+     * @param publicResource  whether the resource may be downloaded by every user
+     * @param contentEncoding the file is stored in, {@code null} if stored as is
+     * @param stamp           taken before the resource has been looked up
+     * @return the loaded resource, which may be served whether it has been admitted or not
+     */
+    public CachedResource put(
+            String resourceId,
+            Integer size,
+            Path file,
+            String eTag,
+            long lastModified,
+            String contentType,
+            boolean publicResource,
+            String contentEncoding,
+            long stamp
+    ) throws IOException {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (!isCacheable(length)) {
+                throw new IllegalArgumentException("Content of " + length + " bytes cannot be cached");
+            }
+
+            // Read by the kernel straight into native memory
+            content = ByteBuffer.allocateDirect((int) length);
+            while (content.hasRemaining()) {
+                if (channel.read(content) == -1) {
+                    throw new EOFException("File " + file + " has been truncated while loading it");
+                }
+            }
+            content.flip();
+        }
+
+        Key key = new Key(resourceId, size);
+        Entry entry = new Entry(key, new CachedResource(content, eTag, lastModified, contentType, publicResource, contentEncoding));
+
+        lock.lock();
+        try {
+            if (stamp == invalidations && !data.containsKey(key)) {
+                data.put(key, entry);
+                window.addLast(entry);
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return entry.resource;
+    }
+
+    /**
+     * Remove the original content and all variants of the passed resource.
+     * Must be called after the change has been committed, so the resource cannot be loaded again in its old state.
+     *
+     * @param resourceId of the resource to invalidate
+     */
+    public void invalidate(String resourceId) {
+        lock.lock();
+        try {
+            invalidations++;
+            for (Key key : data.keySet()) {
+                if (key.resourceId.equals(resourceId)) {
+                    removeInLock(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the amount of bytes currently cached.
+     *
+     * @return cached bytes
+     */
+    public long getWeightedSize() {
+        lock.lock();
+        try {
+            return window.bytes + probation.bytes + protectedSegment.bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Key key) {
+        lock.lock();
+        try {
+            removeInLock(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeInLock(Key key) {
+        Entry entry = data.remove(key);
+        if (entry != null) {
+            entry.segment.remove(entry);
+        }
+    }
+
+    private void onHit(Entry entry) {
+        if (entry.segment == null) {
+            return; // Removed concurrently
+        }
+
+        if (entry.segment == probation) {
+            // Accessed repeatedly, make room by demoting the least recently used protected entries
+            probation.remove(entry);
+            protectedSegment.addLast(entry);
+            while (protectedSegment.bytes > protectedSegment.capacity) {
+                Entry demoted = protectedSegment.first();
+                protectedSegment.remove(demoted);
+                probation.addLast(demoted);
+            }
+        } else {
+            entry.segment.moveToLast(entry);
+        }
+    }
+
+    /**
+     * Move entries exceeding the window into the main segment if they are accessed more often than
+     * the entries they would replace.
+     */
+    private void evict() {
+        while (window.bytes > window.capacity) {
+            Entry candidate = window.first();
+            window.remove(candidate);
+
+            int candidateFrequency = sketch.frequency(candidate.key);
+            boolean admitted = true;
+            while (probation.bytes + protectedSegment.bytes + candidate.weight() > mainCapacity) {
+                Entry victim = !probation.isEmpty() ? probation.first() : protectedSegment.first();
+                if (victim == null || candidateFrequency <= sketch.frequency(victim.key)) {
+                    admitted = false;
+                    break;
+                }
+
+                data.remove(victim.key);
+                victim.segment.remove(victim);
+            }
+
+            if (admitted) {
+                probation.addLast(candidate);
+            } else {
+                data.remove(candidate.key);
+            }
+        }
+    }
+
+    /**
+     * LRU ordered part of the cache, least recently used entries first.
+     */
+    private static final class Segment {
+
+        /**
+         * Entries in access order.
+         */
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>();
+
+        /**
+         * Maximum amount of bytes of the segment.
+         */
+        private final long capacity;
+
+        /**
+         * Amount of bytes of the entries in the segment.
+         */
+        private long bytes;
+
+        Segment(long capacity) {
+            this.capacity = capacity;
+        }
+
+        void addLast(Entry entry) {
+            entries.put(entry.key, entry);
+            entry.segment = this;
+            bytes += entry.weight();
+        }
+
+        void moveToLast(Entry entry) {
+            entries.remove(entry.key);
+            entries.put(entry.key, entry);
+        }
+
+        void remove(Entry entry) {
+            if (entries.remove(entry.key) != null) {
+                entry.segment = null;
+                bytes -= entry.weight();
+            }
+        }
+
+        Entry first() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+    }
+
+    /**
+     * A cached resource together with its position in the policy.
+     */
+    private static final class Entry {
+
+        final Key key;
+
+        final CachedResource resource;
+
+        /**
+         * Time the content has been loaded in nanoseconds.
+         */
+        final long loadedAt = System.nanoTime();
+
+        /**
+         * Segment holding the entry, guarded by the lock.
+         */
+        Segment segment;
+
+        Entry(Key key, CachedResource resource) {
+            this.key = key;
+            this.resource = resource;
+        }
+
+        long weight() {
+            return resource.getSize();
+        }
+
+    }
+
+    /**
+     * Key of a cached resource, its original content or one of its variants.
+     */
+    private static final class Key {
+
+        final String resourceId;
+
+        final Integer size;
+
+        Key(String resourceId, Integer size) {
+            this.resourceId = resourceId;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return resourceId.equals(key.resourceId) && Objects.equals(size, key.size);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resourceId, size);
+        }
+
+    }
+
+}
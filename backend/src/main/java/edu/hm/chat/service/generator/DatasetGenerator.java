@@ -0,0 +1,451 @@
+package edu.hm.chat.service.generator;
+
+import edu.hm.chat.config.DatasetGeneratorConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.copy.CopyRowWriter;
+import edu.hm.chat.persistence.id.SnowflakeIds;
+import edu.hm.chat.persistence.model.ChatActivity;
+import edu.hm.chat.persistence.model.MessageType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Generator of a synthetic dataset for performance testing, enabled with the {@code generator} profile.
+ * <p>
+ * Generates users, chats with a Pareto distributed amount of members, messages spread across the configured
+ * time span following a daily activity cycle, and resource metadata. Larger chats receive proportionally more
+ * messages. All values are drawn from a single seeded random source in a fixed order, so the same seed generates
+ * the same dataset on an empty database. Rows are written through {@code COPY} in a single transaction,
+ * thus the dataset is either generated completely or not at all.
+ */
+@Component
+@Profile("generator")
+public class DatasetGenerator implements ApplicationRunner {
+
+    /**
+     * Logger for the generator.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    /**
+     * Format of the emails of generated users.
+     */
+    private static final String EMAIL_FORMAT = "user%06d@generated.test";
+
+    /**
+     * Relative message activity per hour of the day (UTC).
+     */
+    private static final double[] HOUR_WEIGHTS = {
+            0.2, 0.1, 0.05, 0.05, 0.05, 0.1, 0.3, 0.6, 0.9, 1.1, 1.2, 1.3,
+            1.4, 1.3, 1.2, 1.2, 1.2, 1.3, 1.5, 1.7, 1.8, 1.6, 1.0, 0.5
+    };
+
+    /**
+     * Maximum length of generated message contents.
+     */
+    private static final int MAX_CONTENT_LENGTH = 4000;
+
+    /**
+     * Maximum size of generated resources, matching the upload limit.
+     */
+    private static final long MAX_RESOURCE_SIZE = 5 * 1024 * 1024;
+
+    private static final String[] FIRST_NAMES = {
+            "Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta", "Hannah", "Jonas", "Lena",
+            "Leon", "Marie", "Max", "Mia", "Noah", "Paul", "Sophie", "Tim", "Lukas", "Julia"
+    };
+
+    private static final String[] LAST_NAMES = {
+            "Mueller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker", "Schulz", "Hoffmann",
+            "Koch", "Richter", "Klein", "Wolf", "Neumann", "Schwarz", "Braun", "Zimmermann", "Krueger", "Hartmann"
+    };
+
+    private static final String[] CHAT_TOPICS = {
+            "Project", "Team", "Study group", "Family", "Friends", "Lunch", "Sports", "Book club", "Travel", "Gaming"
+    };
+
+    private static final String[] WORDS = {
+            "the", "a", "to", "and", "is", "we", "you", "it", "that", "for", "on", "meeting", "tomorrow", "today",
+            "lecture", "exam", "code", "review", "lunch", "later", "yes", "no", "maybe", "thanks", "see", "great",
+            "idea", "please", "send", "file", "deadline", "slides", "coffee", "train", "late", "home", "weekend",
+            "question", "answer", "done", "works", "broken", "again", "ok", "sure", "why", "when", "where"
+    };
+
+    private static final String[] CONTENT_TYPES = {"image/jpeg", "image/png", "image/gif", "application/pdf"};
+
+    private static final String[] EXTENSIONS = {"jpg", "png", "gif", "pdf"};
+
+    /**
+     * Configuration of the dataset.
+     */
+    private final DatasetGeneratorConfig config;
+
+    /**
+     * Template used to write the dataset.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Encoder for the password of the generated users.
+     */
+    private final PasswordEncoder passwordEncoder;
+
+    public DatasetGenerator(
+            DatasetGeneratorConfig config,
+            MessageStoreConfig messageStoreConfig,
+            JdbcTemplate jdbcTemplate,
+            PasswordEncoder passwordEncoder
+    ) {
+        messageStoreConfig.requireDatabase("The dataset generator");
+
+        this.config = config;
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Long existing = jdbcTemplate.queryForObject("select count(*) from user_account where email = ?", Long.class, email(0));
+        if (existing != null && existing > 0) {
+            LOGGER.info("Synthetic dataset has already been generated");
+            return;
+        }
+
+        long end = config.getEnd().toEpochMilli();
+        long begin = end - config.getTimeSpan().toMillis();
+        if (begin < SnowflakeIds.EPOCH) {
+            throw new IllegalStateException("Generated messages must not be older than the epoch of the message IDs");
+        }
+
+        long start = System.currentTimeMillis();
+        LOGGER.info("Generating synthetic dataset with seed {}", config.getSeed());
+
+        Long roleId = jdbcTemplate.queryForObject("select id from role where name = 'ROLE_USER'", Long.class);
+        long[] userIds = reserveIds(config.getUsers());
+        long[] chatIds = reserveIds(config.getChats());
+        String password = passwordEncoder.encode(config.getPassword());
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try {
+                Random random = new Random(config.getSeed());
+
+                generateUsers(connection, random, userIds, roleId, password);
+                int[][] members = generateChats(connection, random, userIds, chatIds);
+                generateMessages(connection, random, userIds, chatIds, members, begin);
+                generateResources(connection, random, userIds, begin, end);
+
+                connection.commit();
+                return null;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+
+        LOGGER.info("Generated synthetic dataset in {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void generateUsers(Connection connection, Random random, long[] userIds, long roleId, String password) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        CopyRowWriter users = CopyRowWriter.open(connection, "copy user_account (id, email, first_name, last_name, password, deleted) from stdin");
+        try {
+            for (int i = 0; i < userIds.length; i++) {
+                users.field(userIds[i])
+                        .field(email(i))
+                        .field(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+                        .field(LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+                        .field(password)
+                        .field(false);
+                users.endRow();
+            }
+            users.finish();
+        } finally {
+            users.cancel();
+        }
+
+        CopyRowWriter roles = CopyRowWriter.open(connection, "copy users_roles (user_id, role_id) from stdin");
+        try {
+            for (long userId : userIds) {
+                roles.field(userId).field(roleId);
+                roles.endRow();
+            }
+            roles.finish();
+        } finally {
+            roles.cancel();
+        }
+
+        logRate("users", userIds.length, start);
+    }
+
+    /**
+     * Generate the chats and their members.
+     *
+     * @return indices of the members of every chat, the owner first
+     */
+    private int[][] generateChats(Connection connection, Random random, long[] userIds, long[] chatIds) throws SQLException {
+        long start = System.currentTimeMillis();
+        int maxSize = Math.min(config.getMaxChatSize(), userIds.length);
+
+        int[][] members = new int[chatIds.length][];
+        for (int c = 0; c < chatIds.length; c++) {
+            // Pareto distributed, most chats are small while a few are very large
+            double pareto = Math.pow(1 - random.nextDouble(), -1 / config.getChatSizeShape());
+            int size = (int) Math.min(maxSize, 1 + Math.floor(pareto));
+
+            Set<Integer> chosen = new HashSet<>();
+            members[c] = new int[size];
+            for (int m = 0; m < size; m++) {
+                int user;
+                do {
+                    user = random.nextInt(userIds.length);
+                } while (!chosen.add(user));
+                members[c][m] = user;
+            }
+        }
+
+        CopyRowWriter chats = CopyRowWriter.open(connection, "copy chat (id, name, owner_id, version, deleted) from stdin");
+        try {
+            for (int c = 0; c < chatIds.length; c++) {
+                chats.field(chatIds[c])
+                        .field(String.format("%s %d", CHAT_TOPICS[random.nextInt(CHAT_TOPICS.length)], c))
+                        .field(userIds[members[c][0]])
+                        .field(0)
+                        .field(false);
+                chats.endRow();
+            }
+            chats.finish();
+        } finally {
+            chats.cancel();
+        }
+
+        long memberships = 0;
+        CopyRowWriter chatMembers = CopyRowWriter.open(connection, "copy chat_members (chat_id, members_id) from stdin");
+        try {
+            for (int c = 0; c < chatIds.length; c++) {
+                for (int member : members[c]) {
+                    chatMembers.field(chatIds[c]).field(userIds[member]);
+                    chatMembers.endRow();
+                    memberships++;
+                }
+            }
+            chatMembers.finish();
+        } finally {
+            chatMembers.cancel();
+        }
+
+        logRate("chats", chatIds.length, start);
+        LOGGER.info("Generated {} memberships, largest chat has {} members",
+                memberships, Arrays.stream(members).mapToInt(m -> m.length).max().orElse(0));
+
+        return members;
+    }
+
+    private void generateMessages(Connection connection, Random random, long[] userIds, long[] chatIds, int[][] members, long begin) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        // Larger chats receive proportionally more messages
+        double[] cumulativeWeights = new double[chatIds.length];
+        double totalWeight = 0;
+        for (int c = 0; c < chatIds.length; c++) {
+            totalWeight += members[c].length;
+            cumulativeWeights[c] = totalWeight;
+        }
+
+        double meanHourWeight = Arrays.stream(HOUR_WEIGHTS).average().orElse(1);
+        double meanGap = (double) config.getTimeSpan().toMillis() / Math.max(1, config.getMessages());
+
+        long[] lastTimestamps = new long[chatIds.length];
+        long[] lastIds = new long[chatIds.length];
+        long[] lastAuthors = new long[chatIds.length];
+        String[] previews = new String[chatIds.length];
+
+        double time = begin;
+        long lastTimestamp = -1;
+        long sequence = 0;
+
+        CopyRowWriter messages = CopyRowWriter.open(connection,
+                "copy message (id, author_id, chat_id, timestamp, content, content_compressed, type) from stdin");
+        try {
+            for (int i = 0; i < config.getMessages(); i++) {
+                // Poisson process whose rate follows the daily activity cycle
+                int hour = (int) ((long) time / 3600000 % 24);
+                time += -Math.log(1 - random.nextDouble()) * meanGap * meanHourWeight / HOUR_WEIGHTS[hour];
+
+                long timestamp = Math.max((long) time, lastTimestamp);
+                if (timestamp == lastTimestamp) {
+                    if (++sequence > SnowflakeIds.maxSequence()) {
+                        timestamp++;
+                        sequence = 0;
+                    }
+                } else {
+                    sequence = 0;
+                }
+                lastTimestamp = timestamp;
+                time = Math.max(time, timestamp);
+
+                int chat = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * totalWeight);
+                chat = chat < 0 ? -chat - 1 : chat;
+                long authorId = userIds[members[chat][random.nextInt(members[chat].length)]];
+                long id = SnowflakeIds.compose(timestamp, config.getNodeId(), sequence);
+
+                String content = generateContent(random);
+                byte[] compressed = MessageContentCodec.encode(content);
+
+                messages.field(id)
+                        .field(authorId)
+                        .field(chatIds[chat])
+                        .field(timestamp)
+                        .field(compressed == null ? content : null)
+                        .field(compressed)
+                        .field(MessageType.TEXT.name());
+                messages.endRow();
+
+                lastTimestamps[chat] = timestamp;
+                lastIds[chat] = id;
+                lastAuthors[chat] = authorId;
+                previews[chat] = content.length() > ChatActivity.PREVIEW_LENGTH ? content.substring(0, ChatActivity.PREVIEW_LENGTH) : content;
+            }
+            messages.finish();
+        } finally {
+            messages.cancel();
+        }
+
+        logRate("messages", config.getMessages(), start);
+
+        CopyRowWriter activities = CopyRowWriter.open(connection,
+                "copy chat_activity (chat_id, last_activity, last_message_id, last_author_id, last_message_type, preview) from stdin");
+        try {
+            for (int c = 0; c < chatIds.length; c++) {
+                boolean hasMessages = previews[c] != null;
+                activities.field(chatIds[c]).field(hasMessages ? lastTimestamps[c] : begin);
+                if (hasMessages) {
+                    activities.field(lastIds[c]).field(lastAuthors[c]).field(MessageType.TEXT.name()).field(previews[c]);
+                } else {
+                    activities.field((String) null).field((String) null).field((String) null).field((String) null);
+                }
+                activities.endRow();
+            }
+            activities.finish();
+        } finally {
+            activities.cancel();
+        }
+
+        CopyRowWriter recency = CopyRowWriter.open(connection, "copy chat_recency (user_id, chat_id, last_activity) from stdin");
+        try {
+            for (int c = 0; c < chatIds.length; c++) {
+                for (int member : members[c]) {
+                    recency.field(userIds[member]).field(chatIds[c]).field(previews[c] != null ? lastTimestamps[c] : begin);
+                    recency.endRow();
+                }
+            }
+            recency.finish();
+        } finally {
+            recency.cancel();
+        }
+    }
+
+    private void generateResources(Connection connection, Random random, long[] userIds, long begin, long end) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        String[] resourceIds = new String[config.getResources()];
+        long[] owners = new long[config.getResources()];
+
+        CopyRowWriter resources = CopyRowWriter.open(connection,
+                "copy resource_info (resource_id, owner_id, is_public, original_name, size, content_type, timestamp) from stdin");
+        try {
+            for (int i = 0; i < resourceIds.length; i++) {
+                int type = random.nextInt(CONTENT_TYPES.length);
+                long size = (long) Math.min(MAX_RESOURCE_SIZE, Math.exp(11 + 1.5 * random.nextGaussian()));
+
+                resourceIds[i] = new UUID(random.nextLong(), random.nextLong()).toString();
+                owners[i] = userIds[random.nextInt(userIds.length)];
+
+                resources.field(resourceIds[i])
+                        .field(owners[i])
+                        .field(random.nextInt(10) == 0)
+                        .field(String.format("file_%05d.%s", i, EXTENSIONS[type]))
+                        .field(Math.max(1, size))
+                        .field(CONTENT_TYPES[type])
+                        .field(begin + (long) (random.nextDouble() * (end - begin)));
+                resources.endRow();
+            }
+            resources.finish();
+        } finally {
+            resources.cancel();
+        }
+
+        CopyRowWriter visibility = CopyRowWriter.open(connection,
+                "copy resource_info_visible_for (resource_info_resource_id, visible_for_id) from stdin");
+        try {
+            for (int i = 0; i < resourceIds.length; i++) {
+                visibility.field(resourceIds[i]).field(owners[i]);
+                visibility.endRow();
+            }
+            visibility.finish();
+        } finally {
+            visibility.cancel();
+        }
+
+        logRate("resources", resourceIds.length, start);
+    }
+
+    /**
+     * Generate a message content of log-normal distributed length, mostly short with a few long messages.
+     */
+    private static String generateContent(Random random) {
+        int words = (int) Math.max(1, Math.exp(1.8 + 1.1 * random.nextGaussian()));
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < words && content.length() < MAX_CONTENT_LENGTH; i++) {
+            if (i > 0) {
+                content.append(' ');
+            }
+            content.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return content.toString();
+    }
+
+    /**
+     * Reserve the passed amount of IDs from the sequence shared by users and chats.
+     */
+    private long[] reserveIds(int count) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "select nextval('hibernate_sequence') from generate_series(1, ?)", Long.class, count);
+
+        return ids.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static String email(int index) {
+        return String.format(EMAIL_FORMAT, index);
+    }
+
+    private static void logRate(String what, long count, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        LOGGER.info("Generated {} {} ({} rows/s)", count, what, count * 1000 / elapsed);
+    }
+
+}
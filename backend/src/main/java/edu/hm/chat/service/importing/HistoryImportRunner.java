@@ -0,0 +1,75 @@
+package edu.hm.chat.service.importing;
+
+import edu.hm.chat.config.HistoryImportConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runner importing a chat history file from the command line and exiting afterwards.
+ * <p>
+ * Usage: {@code java -jar chat.jar --edu.hm.chat.import.file=history.ndjson [--edu.hm.chat.import.name=legacy]
+ * --spring.main.web-application-type=none}. Running the same command again resumes an interrupted import.
+ */
+@Component
+@ConditionalOnProperty(prefix = "edu.hm.chat.import", name = "file")
+public class HistoryImportRunner implements ApplicationRunner {
+
+    /**
+     * Logger for the runner.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryImportRunner.class);
+
+    /**
+     * Configuration for imports.
+     */
+    private final HistoryImportConfig config;
+
+    /**
+     * Service importing the history.
+     */
+    private final HistoryImportService historyImportService;
+
+    /**
+     * Context to close once the import finished.
+     */
+    private final ConfigurableApplicationContext context;
+
+    public HistoryImportRunner(
+            HistoryImportConfig config,
+            HistoryImportService historyImportService,
+            ConfigurableApplicationContext context
+    ) {
+        this.config = config;
+        this.historyImportService = historyImportService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Path file = Paths.get(config.getFile()).toAbsolutePath().normalize();
+        String name = config.getName() != null ? config.getName() : file.getFileName().toString();
+
+        int exitCode = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            historyImportService.importHistory(name, input);
+        } catch (Exception e) {
+            LOGGER.error("Import {} of {} failed, run again to resume it", name, file, e);
+            exitCode = 1;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(context, () -> code));
+    }
+
+}
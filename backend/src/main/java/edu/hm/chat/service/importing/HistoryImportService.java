@@ -0,0 +1,491 @@
+package edu.hm.chat.service.importing;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.hm.chat.config.HistoryImportConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.MessageTableUnavailableException;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.copy.CopyRowWriter;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.ImportProgressRepository;
+import edu.hm.chat.persistence.id.SnowflakeIds;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.ChatActivity;
+import edu.hm.chat.persistence.model.ImportProgress;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.service.CacheEvictionService;
+import edu.hm.chat.service.ChatActivityService;
+import edu.hm.chat.service.model.ImportReport;
+import edu.hm.chat.service.retention.RetentionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service importing chat histories from newline delimited JSON in bulk.
+ * <p>
+ * Every input line describes a message:
+ * {@code {"chat": "<chat name>", "author": "<email>", "authorFirstName": "...", "authorLastName": "...",
+ * "timestamp": <ms>, "type": "TEXT", "content": "..."}}.
+ * Lines are streamed through {@code COPY} into a staging table in batches, each committed together with the
+ * amount of processed lines, so an interrupted import is resumed by sending the same input under the same name.
+ * Afterwards authors are resolved by email set-wise, creating missing users, every chat name of the import gets
+ * a chat of its own, and the staged rows are moved into the message table in batches.
+ * <p>
+ * Users created for unknown authors get an unusable password and need to have one set by an administrator.
+ */
+@Service
+public class HistoryImportService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistoryImportService.class);
+
+    /**
+     * Maximum length of chat names, author emails and names.
+     */
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /**
+     * Maximum length of uncompressed message contents.
+     */
+    private static final int MAX_CONTENT_LENGTH = 5000;
+
+    /**
+     * Password of imported users, which is no valid hash and thus never matches.
+     */
+    private static final String UNUSABLE_PASSWORD = "!imported";
+
+    private static final String CREATE_STAGING_TABLE = "create table if not exists import_message_staging (" +
+            "import_name varchar(255) not null, " +
+            "line bigint not null, " +
+            "id bigint not null, " +
+            "chat_name varchar(255) not null, " +
+            "author_email varchar(255) not null, " +
+            "author_first_name varchar(255), " +
+            "author_last_name varchar(255), " +
+            "timestamp bigint not null, " +
+            "type varchar(255) not null, " +
+            "content varchar(5000), " +
+            "content_compressed bytea, " +
+            "primary key (import_name, line))";
+
+    private static final String COPY_STAGING = "copy import_message_staging (import_name, line, id, chat_name, author_email, " +
+            "author_first_name, author_last_name, timestamp, type, content, content_compressed) from stdin";
+
+    private static final String UPDATE_STAGED_LINES = "update import_progress set staged_lines = ?, skipped_lines = skipped_lines + ? where name = ?";
+
+    private static final String CREATE_USERS = "with created as (" +
+            "insert into user_account (id, email, first_name, last_name, password, deleted) " +
+            "select nextval('hibernate_sequence'), s.author_email, coalesce(max(s.author_first_name), s.author_email), " +
+            "coalesce(max(s.author_last_name), ''), ?, false " +
+            "from import_message_staging s where s.import_name = ? " +
+            "and not exists (select 1 from user_account u where u.email = s.author_email and u.deleted = false) " +
+            "group by s.author_email returning id) " +
+            "insert into users_roles (user_id, role_id) select c.id, r.id from created c join role r on r.name = 'ROLE_USER'";
+
+    /**
+     * Chats created by an import by the chat name used in its input, so messages are never merged into
+     * another chat that happens to have the same name.
+     */
+    private static final String CREATE_CHAT_MAPPING_TABLE = "create table if not exists import_chat (" +
+            "import_name varchar(255) not null, " +
+            "chat_name varchar(255) not null, " +
+            "chat_id bigint not null, " +
+            "primary key (import_name, chat_name))";
+
+    /**
+     * Create a chat for every chat name of the import that has no chat yet, owned by the first author in it.
+     */
+    private static final String CREATE_CHATS = "with pending as (" +
+            "select s.chat_name, (array_agg(s.author_email order by s.line))[1] as owner_email " +
+            "from import_message_staging s where s.import_name = ? " +
+            "and not exists (select 1 from import_chat i where i.import_name = s.import_name and i.chat_name = s.chat_name) " +
+            "group by s.chat_name), " +
+            "created as (insert into chat (id, name, owner_id, version, deleted) " +
+            "select nextval('hibernate_sequence'), p.chat_name, u.id, 0, false from pending p " +
+            "left join user_account u on u.email = p.owner_email and u.deleted = false " +
+            "returning id, name) " +
+            "insert into import_chat (import_name, chat_name, chat_id) select ?, name, id from created";
+
+    /**
+     * Chats are resolved by name among the chats created by the import only.
+     */
+    private static final String RESOLVED_CHATS = "resolved_chat as (select i.chat_name as name, c.id from import_chat i " +
+            "join chat c on c.id = i.chat_id and c.deleted = false where i.import_name = ?)";
+
+    private static final String ADD_MEMBERS = "with staged as (select distinct chat_name, author_email from import_message_staging where import_name = ?), " +
+            RESOLVED_CHATS + ", " +
+            "added as (insert into chat_members (chat_id, members_id) " +
+            "select distinct c.id, u.id from staged s join resolved_chat c on c.name = s.chat_name " +
+            "join user_account u on u.email = s.author_email and u.deleted = false " +
+            "where not exists (select 1 from chat_members m where m.chat_id = c.id and m.members_id = u.id) " +
+            "returning chat_id) " +
+            "update chat set version = version + 1 where id in (select chat_id from added)";
+
+    private static final String MERGE_MESSAGES = "with merged as (" +
+            "delete from import_message_staging where import_name = ? and line >= ? and line < ? " +
+            "returning id, chat_name, author_email, timestamp, type, content, content_compressed), " +
+            RESOLVED_CHATS + ", " +
+            "inserted as (insert into message (id, author_id, chat_id, timestamp, content, content_compressed, type) " +
+            "select m.id, u.id, c.id, m.timestamp, m.content, m.content_compressed, m.type from merged m " +
+            "join resolved_chat c on c.name = m.chat_name " +
+            "join user_account u on u.email = m.author_email and u.deleted = false " +
+            "on conflict (id) do nothing returning chat_id) " +
+            "select chat_id, count(*) from inserted group by chat_id";
+
+    /**
+     * Previews of compressed messages cannot be cut in SQL, they are filled in by the {@link ChatActivityService} afterwards.
+     */
+    private static final String UPDATE_ACTIVITY = "insert into chat_activity (chat_id, last_activity, last_message_id, last_author_id, last_message_type, preview) " +
+            "select m.chat_id, m.timestamp, m.id, m.author_id, m.type, case when m.type = 'TEXT' then left(m.content, " + ChatActivity.PREVIEW_LENGTH + ") end " +
+            "from unnest(?) as t(chat_id) cross join lateral (select * from message where chat_id = t.chat_id " +
+            "order by timestamp desc, id desc limit 1) m " +
+            "on conflict (chat_id) do update set last_activity = excluded.last_activity, last_message_id = excluded.last_message_id, " +
+            "last_author_id = excluded.last_author_id, last_message_type = excluded.last_message_type, preview = excluded.preview " +
+            "where chat_activity.last_activity < excluded.last_activity";
+
+    private static final String UPDATE_RECENCY = "insert into chat_recency (user_id, chat_id, last_activity) " +
+            "select m.members_id, a.chat_id, a.last_activity from chat_activity a join chat_members m on m.chat_id = a.chat_id " +
+            "where a.chat_id = any(?) " +
+            "on conflict (user_id, chat_id) do update set last_activity = excluded.last_activity " +
+            "where chat_recency.last_activity < excluded.last_activity";
+
+    /**
+     * Configuration for imports.
+     */
+    private final HistoryImportConfig config;
+
+    /**
+     * Configuration for the message store.
+     */
+    private final MessageStoreConfig messageStoreConfig;
+
+    /**
+     * Source of the IDs of imported messages.
+     */
+    private final SnowflakeIds ids;
+
+    /**
+     * Repository dealing with import progress.
+     */
+    private final ImportProgressRepository progressRepository;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Service scheduling the expiry of messages.
+     */
+    private final RetentionService retentionService;
+
+    /**
+     * Service filling in the previews of compressed messages merged last.
+     */
+    private final ChatActivityService chatActivityService;
+
+    /**
+     * Service evicting cached chats after they have been changed in bulk.
+     */
+    private final CacheEvictionService cacheEvictionService;
+
+    /**
+     * Template used to stage and merge.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Template used to merge every batch in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Mapper used to parse the input lines.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Names of the imports currently running.
+     */
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public HistoryImportService(
+            HistoryImportConfig config,
+            MessageStoreConfig messageStoreConfig,
+            ImportProgressRepository progressRepository,
+            ChatRepository chatRepository,
+            RetentionService retentionService,
+            ChatActivityService chatActivityService,
+            CacheEvictionService cacheEvictionService,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper
+    ) {
+        this.config = config;
+        this.messageStoreConfig = messageStoreConfig;
+        this.ids = SnowflakeIds.forNode(messageStoreConfig.getNodeId());
+        this.progressRepository = progressRepository;
+        this.chatRepository = chatRepository;
+        this.retentionService = retentionService;
+        this.chatActivityService = chatActivityService;
+        this.cacheEvictionService = cacheEvictionService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        jdbcTemplate.execute(CREATE_STAGING_TABLE);
+        jdbcTemplate.execute(CREATE_CHAT_MAPPING_TABLE);
+    }
+
+    /**
+     * Import the passed input, resuming an earlier import of the same name.
+     *
+     * @param name  of the import
+     * @param input newline delimited JSON to import
+     * @return report of the import
+     * @throws ImportRunningException           in case an import with the same name is already running
+     * @throws MessageTableUnavailableException in case the messages are not kept in the database
+     */
+    public ImportReport importHistory(String name, InputStream input) throws IOException {
+        messageStoreConfig.requireDatabase("Importing chat histories");
+
+        if (!running.add(name)) {
+            throw new ImportRunningException(name);
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+
+            ImportProgress progress = progressRepository.findById(name).orElseGet(() -> progressRepository.save(new ImportProgress(name)));
+            long resumedAt = progress.getStagedLines();
+            if (resumedAt > 0) {
+                LOGGER.info("Resuming import {} after {} lines", name, resumedAt);
+            }
+
+            long stagedLines = stage(name, input, resumedAt, start);
+
+            long createdUsers = jdbcTemplate.update(CREATE_USERS, UNUSABLE_PASSWORD, name);
+            long createdChats = jdbcTemplate.update(CREATE_CHATS, name, name);
+            jdbcTemplate.update(ADD_MEMBERS, name, name);
+
+            Set<Long> chatIds = merge(name);
+
+            cacheEvictionService.evictChats();
+            for (Chat chat : chatRepository.findAllById(chatIds)) {
+                retentionService.schedule(chat);
+            }
+
+            progress = progressRepository.findById(name).orElseThrow();
+            long duration = System.currentTimeMillis() - start;
+            ImportReport report = new ImportReport(
+                    name,
+                    progress.getStagedLines(),
+                    progress.getSkippedLines(),
+                    progress.getMergedMessages(),
+                    createdUsers,
+                    createdChats,
+                    duration,
+                    (stagedLines - resumedAt) * 1000.0 / Math.max(1, duration)
+            );
+
+            LOGGER.info("{}", report);
+            return report;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            running.remove(name);
+        }
+    }
+
+    /**
+     * Copy the input lines after the passed amount of already staged lines into the staging table.
+     *
+     * @return the amount of processed input lines
+     */
+    private long stage(String name, InputStream input, long resumedAt, long start) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        long line = 0;
+        while (line < resumedAt && reader.readLine() != null) {
+            line++;
+        }
+
+        long first = line;
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement updateProgress = connection.prepareStatement(UPDATE_STAGED_LINES)) {
+                long position = first;
+                boolean endOfInput = false;
+                while (!endOfInput) {
+                    long skippedInBatch = 0;
+
+                    CopyRowWriter writer = CopyRowWriter.open(connection, COPY_STAGING);
+                    try {
+                        for (int i = 0; i < config.getStagingBatchSize(); i++) {
+                            String text = reader.readLine();
+                            if (text == null) {
+                                endOfInput = true;
+                                break;
+                            }
+
+                            position++;
+                            if (!text.isBlank() && !writeRow(writer, name, position, text)) {
+                                skippedInBatch++;
+                            }
+                        }
+
+                        writer.finish();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        writer.cancel();
+                    }
+
+                    updateProgress.setLong(1, position);
+                    updateProgress.setLong(2, skippedInBatch);
+                    updateProgress.setString(3, name);
+                    updateProgress.executeUpdate();
+                    connection.commit();
+
+                    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+                    LOGGER.info("Staged {} lines of import {} ({} lines/s)", position, name, (position - first) * 1000 / elapsed);
+                }
+
+                return position;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+    }
+
+    /**
+     * Move the staged rows into the message table in batches.
+     *
+     * @return IDs of the chats messages have been merged into
+     */
+    private Set<Long> merge(String name) {
+        Set<Long> chatIds = new HashSet<>();
+
+        while (true) {
+            Long firstLine = jdbcTemplate.queryForObject(
+                    "select min(line) from import_message_staging where import_name = ?", Long.class, name);
+            if (firstLine == null) {
+                return chatIds;
+            }
+
+            long lastLine = firstLine + config.getMergeBatchSize();
+            transactionTemplate.execute(status -> {
+                Map<Long, Long> merged = new HashMap<>();
+                jdbcTemplate.query(MERGE_MESSAGES, (RowCallbackHandler) rs -> merged.put(rs.getLong(1), rs.getLong(2)),
+                        name, firstLine, lastLine, name);
+                if (merged.isEmpty()) {
+                    return null;
+                }
+
+                Long[] mergedChatIds = merged.keySet().toArray(Long[]::new);
+                jdbcTemplate.update(UPDATE_ACTIVITY, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", mergedChatIds)));
+                chatActivityService.fillCompressedPreviews();
+                jdbcTemplate.update(UPDATE_RECENCY, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", mergedChatIds)));
+                jdbcTemplate.update("update import_progress set merged_messages = merged_messages + ? where name = ?",
+                        merged.values().stream().mapToLong(Long::longValue).sum(), name);
+
+                chatIds.addAll(merged.keySet());
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Write the passed input line as staging row.
+     *
+     * @return whether the line was valid
+     */
+    private boolean writeRow(CopyRowWriter writer, String name, long line, String text) throws SQLException {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(text);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Skipping line {} of import {}: not valid JSON", line, name);
+            return false;
+        }
+
+        String chatName = node.path("chat").asText(null);
+        String authorEmail = node.path("author").asText(null);
+        String content = node.path("content").asText(null);
+        JsonNode timestamp = node.path("timestamp");
+        MessageType type;
+        try {
+            type = MessageType.valueOf(node.path("type").asText(MessageType.TEXT.name()));
+        } catch (IllegalArgumentException e) {
+            type = null;
+        }
+
+        if (isInvalidName(chatName) || isInvalidName(authorEmail) || content == null || !timestamp.canConvertToLong() || type == null) {
+            LOGGER.warn("Skipping line {} of import {}: missing or invalid fields", line, name);
+            return false;
+        }
+
+        byte[] compressed = MessageContentCodec.encode(content);
+        if (compressed == null && content.length() > MAX_CONTENT_LENGTH) {
+            LOGGER.warn("Skipping line {} of import {}: content too long", line, name);
+            return false;
+        }
+
+        writer.field(name)
+                .field(line)
+                .field(ids.next())
+                .field(chatName)
+                .field(authorEmail)
+                .field(truncate(node.path("authorFirstName").asText(null)))
+                .field(truncate(node.path("authorLastName").asText(null)))
+                .field(timestamp.asLong())
+                .field(type.name())
+                .field(compressed == null ? content : null)
+                .field(compressed);
+        writer.endRow();
+
+        return true;
+    }
+
+    private static boolean isInvalidName(String value) {
+        return value == null || value.isBlank() || value.length() > MAX_NAME_LENGTH;
+    }
+
+    private static String truncate(String value) {
+        return value != null && value.length() > MAX_NAME_LENGTH ? value.substring(0, MAX_NAME_LENGTH) : value;
+    }
+
+}
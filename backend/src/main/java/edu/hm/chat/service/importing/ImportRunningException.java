@@ -0,0 +1,12 @@
+package edu.hm.chat.service.importing;
+
+/**
+ * Thrown when starting an import while another import of the same name is still running.
+ */
+public class ImportRunningException extends IllegalStateException {
+
+    public ImportRunningException(String name) {
+        super(String.format("Import %s is already running", name));
+    }
+
+}
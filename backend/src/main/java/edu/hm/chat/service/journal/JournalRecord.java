@@ -0,0 +1,103 @@
+package edu.hm.chat.service.journal;
+
+import edu.hm.chat.persistence.model.MessageType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message accepted into the journal but possibly not yet written to the database.
+ */
+public class JournalRecord {
+
+    private final long id;
+    private final long chatId;
+    private final long authorId;
+    private final long timestamp;
+    private final MessageType type;
+    private final String content;
+
+    public JournalRecord(long id, long chatId, long authorId, long timestamp, MessageType type, String content) {
+        this.id = id;
+        this.chatId = chatId;
+        this.authorId = authorId;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.content = content;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public long getAuthorId() {
+        return authorId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public MessageType getType() {
+        return type;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * Encode the record to its payload representation.
+     *
+     * @return the encoded payload
+     */
+    byte[] encode() {
+        byte[] typeBytes = type.name().getBytes(StandardCharsets.UTF_8);
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * Long.BYTES + 2 * Integer.BYTES + typeBytes.length + contentBytes.length);
+        buffer.putLong(id);
+        buffer.putLong(chatId);
+        buffer.putLong(authorId);
+        buffer.putLong(timestamp);
+        buffer.putInt(typeBytes.length);
+        buffer.put(typeBytes);
+        buffer.putInt(contentBytes.length);
+        buffer.put(contentBytes);
+
+        return buffer.array();
+    }
+
+    /**
+     * Decode a record from the passed payload.
+     *
+     * @param payload positioned at the start of the payload
+     * @return the decoded record
+     */
+    static JournalRecord decode(ByteBuffer payload) {
+        long id = payload.getLong();
+        long chatId = payload.getLong();
+        long authorId = payload.getLong();
+        long timestamp = payload.getLong();
+
+        byte[] typeBytes = new byte[payload.getInt()];
+        payload.get(typeBytes);
+
+        byte[] contentBytes = new byte[payload.getInt()];
+        payload.get(contentBytes);
+
+        return new JournalRecord(
+                id,
+                chatId,
+                authorId,
+                timestamp,
+                MessageType.valueOf(new String(typeBytes, StandardCharsets.UTF_8)),
+                new String(contentBytes, StandardCharsets.UTF_8)
+        );
+    }
+
+}
@@ -0,0 +1,280 @@
+package edu.hm.chat.service.journal;
+
+import edu.hm.chat.config.JournalConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.JournalCheckpointRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.JournalCheckpoint;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.service.MessageEffectsService;
+import edu.hm.chat.service.PendingImageGrants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service writing journaled messages to the database in batches, on its own thread.
+ * <p>
+ * Records are inserted idempotently together with advancing the checkpoint of this node, so replaying a batch again
+ * after a crash between the commit and releasing the journal files is harmless. Messages of chats or authors
+ * deleted in the meantime are dropped. The effects of the inserted messages, like the activity of their chats,
+ * are applied in the same transaction.
+ */
+@Service
+@ConditionalOnProperty(prefix = "edu.hm.chat.journal", name = "enabled", havingValue = "true")
+public class JournalReplayer {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalReplayer.class);
+
+    /**
+     * Prefix of the name of the checkpoint of the message journal, followed by the ID of the node.
+     */
+    private static final String CHECKPOINT_PREFIX = "messages-";
+
+    /**
+     * Statement inserting a journaled message unless it has been written before.
+     */
+    private static final String INSERT_MESSAGE = "insert into message (id, author_id, chat_id, timestamp, content, content_compressed, type) " +
+            "select ?, ?, ?, ?, ?, ?, ? where exists (select 1 from chat where id = ? and deleted = false) " +
+            "and exists (select 1 from user_account where id = ? and deleted = false) " +
+            "on conflict (id) do nothing";
+
+    /**
+     * Configuration for the journal.
+     */
+    private final JournalConfig config;
+
+    /**
+     * Journal to replay.
+     */
+    private final MessageJournal journal;
+
+    /**
+     * Repository dealing with journal checkpoints.
+     */
+    private final JournalCheckpointRepository checkpointRepository;
+
+    /**
+     * Template used to insert the batches.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Template used to insert a batch and advance the checkpoint atomically.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Repository dealing with users.
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Service applying the effects of the inserted messages.
+     */
+    private final MessageEffectsService messageEffectsService;
+
+    /**
+     * Permissions to view images of journaled messages, dropped once the messages have been replayed.
+     */
+    private final PendingImageGrants pendingImageGrants;
+
+    /**
+     * Name of the checkpoint of the journal of this node.
+     */
+    private final String checkpointName;
+
+    /**
+     * Executor replaying the journal, kept apart from the scheduled jobs so they cannot delay each other.
+     */
+    private final ScheduledExecutorService replayExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-journal-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Journal position up to which all records have been written to the database.
+     */
+    private volatile long replayedPosition;
+
+    /**
+     * Amount of records written to the database since startup.
+     */
+    private volatile long replayedCount;
+
+    public JournalReplayer(
+            JournalConfig config,
+            MessageJournal journal,
+            MessageStoreConfig messageStoreConfig,
+            JournalCheckpointRepository checkpointRepository,
+            ChatRepository chatRepository,
+            UserRepository userRepository,
+            MessageEffectsService messageEffectsService,
+            PendingImageGrants pendingImageGrants,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.journal = journal;
+        this.checkpointRepository = checkpointRepository;
+        this.chatRepository = chatRepository;
+        this.userRepository = userRepository;
+        this.messageEffectsService = messageEffectsService;
+        this.pendingImageGrants = pendingImageGrants;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkpointName = CHECKPOINT_PREFIX + messageStoreConfig.getNodeId();
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Optional<Long> checkpoint = checkpointRepository.findById(checkpointName).map(JournalCheckpoint::getPosition);
+        if (checkpoint.isPresent() && checkpoint.get() > journal.getWritePosition()) {
+            if (journal.isEmpty()) {
+                // The journal files have been lost, continue behind the checkpoint so new records are replayed
+                LOGGER.warn("Message journal at position {} is behind its checkpoint {}, the journal files have been lost",
+                        journal.getWritePosition(), checkpoint.get());
+                journal.restartAt(checkpoint.get());
+            } else {
+                LOGGER.error("Message journal at position {} is behind its checkpoint {} but contains records, " +
+                                "resetting the checkpoint and replaying all of them",
+                        journal.getWritePosition(), checkpoint.get());
+                checkpoint = Optional.of(journal.getFirstPosition());
+                checkpointRepository.save(new JournalCheckpoint(checkpointName, checkpoint.get()));
+            }
+        }
+
+        replayedPosition = Math.max(checkpoint.orElse(0L), journal.getFirstPosition());
+        LOGGER.info("Replaying message journal from position {}", replayedPosition);
+
+        long interval = config.getReplayInterval().toNanos();
+        replayExecutor.scheduleWithFixedDelay(this::replay, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        replayExecutor.shutdown();
+        replayExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write all durable journal records to the database.
+     */
+    void replay() {
+        try {
+            while (true) {
+                MessageJournal.Batch batch = journal.read(replayedPosition, config.getReplayBatchSize());
+                if (batch.getEnd() == replayedPosition) {
+                    return;
+                }
+
+                transactionTemplate.execute(status -> {
+                    insert(batch.getRecords());
+                    return checkpointRepository.save(new JournalCheckpoint(checkpointName, batch.getEnd()));
+                });
+
+                // The visibility of images has been committed along with the batch
+                batch.getRecords().stream()
+                        .filter(record -> record.getType() == MessageType.IMAGE)
+                        .forEach(record -> pendingImageGrants.remove(record.getId()));
+
+                replayedPosition = batch.getEnd();
+                replayedCount += batch.getRecords().size();
+                journal.release(replayedPosition);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not replay message journal at position {}", replayedPosition, e);
+        }
+    }
+
+    private void insert(List<JournalRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> arguments = new ArrayList<>(records.size());
+        for (JournalRecord record : records) {
+            byte[] compressed = MessageContentCodec.encode(record.getContent());
+
+            arguments.add(new Object[]{
+                    record.getId(),
+                    record.getAuthorId(),
+                    record.getChatId(),
+                    record.getTimestamp(),
+                    compressed == null ? record.getContent() : null,
+                    compressed,
+                    record.getType().name(),
+                    record.getChatId(),
+                    record.getAuthorId()
+            });
+        }
+
+        int[] counts = jdbcTemplate.batchUpdate(INSERT_MESSAGE, arguments);
+
+        // Records replayed before or dropped for a deleted chat or author have not been inserted
+        Map<Long, Optional<Chat>> chats = new HashMap<>();
+        Map<Long, Optional<User>> authors = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+
+            JournalRecord record = records.get(i);
+            Optional<Chat> chat = chats.computeIfAbsent(record.getChatId(), chatRepository::findById);
+            Optional<User> author = authors.computeIfAbsent(record.getAuthorId(), userRepository::findById);
+            if (chat.isPresent() && author.isPresent()) {
+                messageEffectsService.apply(toMessage(record, chat.get(), author.get()));
+            }
+        }
+    }
+
+    private Message toMessage(JournalRecord record, Chat chat, User author) {
+        Message message = new Message();
+        message.setId(record.getId());
+        message.setChat(chat);
+        message.setAuthor(author);
+        message.setTimestamp(record.getTimestamp());
+        message.setType(record.getType());
+        message.setContent(record.getContent());
+        return message;
+    }
+
+    public long getReplayedPosition() {
+        return replayedPosition;
+    }
+
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+}
@@ -0,0 +1,620 @@
+package edu.hm.chat.service.journal;
+
+import edu.hm.chat.config.JournalConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.id.SnowflakeIds;
+import edu.hm.chat.persistence.model.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Local write-ahead journal of sent messages.
+ * <p>
+ * Messages are appended to preallocated, memory-mapped journal files and acknowledged once the next batched
+ * fsync covered them, which is issued by a single background thread for all writers in the meantime.
+ * Records are laid out as {@code [payload length][CRC32 of payload][payload]}, a length of -1 marks that the
+ * journal continues in the next file. Files are named after the journal position of their first byte,
+ * so positions are unique across files and can be used as replay checkpoints.
+ */
+@Component
+@ConditionalOnProperty(prefix = "edu.hm.chat.journal", name = "enabled", havingValue = "true")
+public class MessageJournal implements DisposableBean {
+
+    /**
+     * Logger for the journal.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MessageJournal.class);
+
+    /**
+     * Extension of journal files.
+     */
+    private static final String EXTENSION = ".journal";
+
+    /**
+     * Size of the header in front of every record payload.
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    /**
+     * Length marking that the journal continues in the next file.
+     */
+    private static final int NEXT_FILE_MARKER = -1;
+
+    /**
+     * Upper bound for a single record payload, larger lengths indicate a torn write.
+     */
+    private static final int MAX_PAYLOAD_SIZE = 1024 * 1024;
+
+    /**
+     * Size of the buffer used to preallocate journal files.
+     */
+    private static final int PREALLOCATION_CHUNK = 1024 * 1024;
+
+    /**
+     * Size every journal file is preallocated with.
+     */
+    private final int fileSize;
+
+    /**
+     * Directory containing the journal files.
+     */
+    private final Path directory;
+
+    /**
+     * Source of the message IDs.
+     */
+    private final SnowflakeIds ids;
+
+    /**
+     * Journal files by the position of their first byte.
+     */
+    private final TreeMap<Long, JournalFile> files = new TreeMap<>();
+
+    /**
+     * File currently appended to.
+     */
+    private JournalFile active;
+
+    /**
+     * File preallocated ahead of time to continue with once the active file is full.
+     */
+    private JournalFile spare;
+
+    /**
+     * Position of the first byte of the file being preallocated by the sync thread, -1 if none is.
+     * Rolling over to it waits for the preallocation, so the file is never created twice.
+     */
+    private long preallocating = -1;
+
+    /**
+     * Position the next record is appended at.
+     */
+    private long writePosition;
+
+    /**
+     * Position up to which all records have been forced to disk.
+     */
+    private long durablePosition;
+
+    /**
+     * Amount of records appended since startup.
+     */
+    private long appendedCount;
+
+    /**
+     * Executor issuing the batched fsyncs and preallocating files.
+     */
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "message-journal-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MessageJournal(JournalConfig config, MessageStoreConfig messageStoreConfig) throws IOException {
+        messageStoreConfig.requireDatabase("The message journal (edu.hm.chat.journal.enabled)");
+
+        this.fileSize = config.getFileSize();
+        this.directory = Paths.get(config.getTarget()).toAbsolutePath().normalize();
+        this.ids = SnowflakeIds.forNode(messageStoreConfig.getNodeId());
+
+        recover();
+
+        long interval = config.getSyncInterval().toNanos();
+        syncExecutor.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reserve an ID for a message which is appended later on.
+     *
+     * @return ID to assign to the message
+     */
+    public long nextId() {
+        return ids.next();
+    }
+
+    /**
+     * Append the passed message and wait until it has been forced to disk.
+     *
+     * @param message to append, keeps its ID if one has been reserved with {@link #nextId()}
+     * @return ID assigned to the message
+     */
+    public long append(Message message) {
+        long id = message.getId() != null ? message.getId() : ids.next();
+        byte[] payload = new JournalRecord(
+                id,
+                message.getChat().getId(),
+                message.getAuthor().getId(),
+                message.getTimestamp(),
+                message.getType(),
+                message.getContent()
+        ).encode();
+
+        if (HEADER_SIZE + payload.length > fileSize) {
+            throw new IllegalArgumentException("Message of " + payload.length + " bytes does not fit into a journal file");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        long target;
+        try {
+            synchronized (this) {
+                int offset = (int) (writePosition - active.base);
+                while (offset + HEADER_SIZE + payload.length > fileSize) {
+                    if (preallocating == active.base + fileSize) {
+                        awaitPreallocation();
+                    } else {
+                        roll(offset);
+                    }
+                    offset = (int) (writePosition - active.base);
+                }
+
+                ByteBuffer buffer = active.buffer.duplicate();
+                buffer.position(offset);
+                buffer.putInt(payload.length);
+                buffer.putInt((int) crc.getValue());
+                buffer.put(payload);
+
+                writePosition += HEADER_SIZE + payload.length;
+                appendedCount++;
+                target = writePosition;
+            }
+
+            awaitDurable(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return id;
+    }
+
+    /**
+     * Read durable records starting at the passed position.
+     *
+     * @param from       position to start reading at
+     * @param maxRecords maximum amount of records to read
+     * @return the read records and the position after them
+     */
+    public Batch read(long from, int maxRecords) {
+        long limit;
+        synchronized (this) {
+            limit = durablePosition;
+        }
+
+        List<JournalRecord> records = new ArrayList<>();
+        long position = from;
+        while (records.size() < maxRecords && position < limit) {
+            JournalFile file = fileAt(position);
+            if (file == null) {
+                break;
+            }
+
+            int offset = (int) (position - file.base);
+            ByteBuffer buffer = file.buffer.duplicate();
+            int length = offset + HEADER_SIZE <= fileSize ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                position = file.base + fileSize; // Continued in the next file
+                continue;
+            }
+
+            buffer.limit(offset + HEADER_SIZE + length).position(offset + HEADER_SIZE);
+            records.add(JournalRecord.decode(buffer));
+            position += HEADER_SIZE + length;
+        }
+
+        return new Batch(records, position);
+    }
+
+    /**
+     * Remove the journal files whose records have all been applied.
+     *
+     * @param appliedPosition position up to which all records have been applied
+     */
+    public synchronized void release(long appliedPosition) {
+        while (files.size() > 1) {
+            JournalFile oldest = files.firstEntry().getValue();
+            if (oldest == active || oldest.base + fileSize > appliedPosition) {
+                return;
+            }
+
+            files.remove(oldest.base);
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                LOGGER.error("Could not remove journal file {}", oldest.path, e);
+            }
+        }
+    }
+
+    /**
+     * Continue the journal at the passed position, for example when its files have been lost while the
+     * replay checkpoint survived, so new records are not taken for already replayed ones.
+     *
+     * @param position to append the next record at
+     * @throws IllegalStateException in case the journal still contains records
+     */
+    public synchronized void restartAt(long position) throws IOException {
+        if (!isEmpty()) {
+            throw new IllegalStateException("Only an empty message journal can be restarted");
+        }
+
+        if (spare != null) {
+            Files.deleteIfExists(spare.path);
+            spare = null;
+        }
+        for (JournalFile file : files.values()) {
+            Files.deleteIfExists(file.path);
+        }
+        files.clear();
+
+        active = JournalFile.create(path(position), position, fileSize);
+        files.put(position, active);
+        writePosition = position;
+        durablePosition = position;
+
+        LOGGER.info("Restarted message journal at position {}", position);
+    }
+
+    /**
+     * Check whether no record has been appended to the journal files yet.
+     *
+     * @return whether the journal is empty
+     */
+    public synchronized boolean isEmpty() {
+        return writePosition == files.firstKey();
+    }
+
+    /**
+     * Get the position of the oldest record still in the journal.
+     *
+     * @return position of the oldest record
+     */
+    public synchronized long getFirstPosition() {
+        return files.firstKey();
+    }
+
+    public synchronized long getWritePosition() {
+        return writePosition;
+    }
+
+    public synchronized long getDurablePosition() {
+        return durablePosition;
+    }
+
+    public synchronized long getAppendedCount() {
+        return appendedCount;
+    }
+
+    /**
+     * Get the amount of bytes the journal files occupy on disk.
+     *
+     * @return size of the journal on disk
+     */
+    public synchronized long getSizeOnDisk() {
+        return (long) (files.size() + (spare != null ? 1 : 0)) * fileSize;
+    }
+
+    @Override
+    public void destroy() {
+        syncExecutor.shutdown();
+
+        synchronized (this) {
+            active.buffer.force();
+            durablePosition = writePosition;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Continue appending in the next file, forcing the current one to disk.
+     */
+    private void roll(int offset) throws IOException {
+        if (offset + Integer.BYTES <= fileSize) {
+            active.buffer.putInt(offset, NEXT_FILE_MARKER);
+        }
+        active.buffer.force();
+
+        long base = active.base + fileSize;
+        JournalFile next = spare != null && spare.base == base ? spare : JournalFile.create(path(base), base, fileSize);
+        spare = null;
+
+        files.put(base, next);
+        active = next;
+        writePosition = base;
+        durablePosition = base;
+        notifyAll();
+    }
+
+    /**
+     * Force all appended records to disk and wake up writers waiting for them.
+     */
+    private void sync() {
+        try {
+            JournalFile file;
+            long from;
+            long target;
+            synchronized (this) {
+                file = active;
+                from = Math.max(durablePosition, file.base);
+                target = writePosition;
+            }
+
+            if (target > from) {
+                file.buffer.force((int) (from - file.base), (int) (target - from));
+
+                synchronized (this) {
+                    if (target > durablePosition) {
+                        durablePosition = target;
+                        notifyAll();
+                    }
+                }
+            }
+
+            preallocate(file, target);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not sync message journal", e);
+        }
+    }
+
+    /**
+     * Preallocate the next file once the active one is half full, so rolling over does not stall writers.
+     */
+    private void preallocate(JournalFile file, long position) throws IOException {
+        long base = file.base + fileSize;
+        synchronized (this) {
+            if (active != file || spare != null || position - file.base < fileSize / 2 || files.containsKey(base)) {
+                return;
+            }
+            preallocating = base;
+        }
+
+        JournalFile next = null;
+        try {
+            next = JournalFile.create(path(base), base, fileSize);
+        } finally {
+            synchronized (this) {
+                preallocating = -1;
+                if (next != null && active == file) {
+                    spare = next;
+                    next = null;
+                }
+                notifyAll();
+            }
+
+            if (next != null) {
+                // The journal has been restarted meanwhile, the file would block rolling over at its position
+                Files.deleteIfExists(next.path);
+            }
+        }
+    }
+
+    /**
+     * Wait until the sync thread finished preallocating a file, releasing the lock meanwhile.
+     */
+    private void awaitPreallocation() throws IOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the next journal file to be preallocated");
+        }
+    }
+
+    private synchronized void awaitDurable(long position) throws IOException {
+        try {
+            while (durablePosition < position) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal to be synced");
+        }
+    }
+
+    private synchronized JournalFile fileAt(long position) {
+        Map.Entry<Long, JournalFile> entry = files.floorEntry(position);
+        if (entry == null || position >= entry.getKey() + fileSize) {
+            Map.Entry<Long, JournalFile> next = files.ceilingEntry(position);
+            return next != null ? next.getValue() : null;
+        }
+
+        return entry.getValue();
+    }
+
+    /**
+     * Open the journal files, dropping preallocated but unused ones and truncating a torn tail.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> paths;
+        try (Stream<Path> list = Files.list(directory)) {
+            paths = list.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            String name = path.getFileName().toString();
+            long base = Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+            files.put(base, JournalFile.open(path, base, fileSize));
+        }
+
+        while (files.size() > 1 && files.lastEntry().getValue().buffer.getInt(0) == 0) {
+            JournalFile unused = files.pollLastEntry().getValue();
+            Files.deleteIfExists(unused.path);
+        }
+
+        if (files.isEmpty()) {
+            files.put(0L, JournalFile.create(path(0), 0, fileSize));
+        }
+
+        active = files.lastEntry().getValue();
+        int offset = scan(active);
+
+        writePosition = active.base + offset;
+        durablePosition = writePosition;
+
+        LOGGER.info("Opened message journal with {} files at position {}", files.size(), writePosition);
+    }
+
+    /**
+     * Find the end of the valid records of the passed file, clearing everything behind it.
+     */
+    private int scan(JournalFile file) {
+        ByteBuffer buffer = file.buffer.duplicate();
+
+        int offset = 0;
+        while (offset + HEADER_SIZE <= fileSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                return offset;
+            }
+            if (length == NEXT_FILE_MARKER) {
+                return fileSize; // Rolled over, but the next file has not been created
+            }
+
+            boolean valid = length > 0 && length <= MAX_PAYLOAD_SIZE && offset + HEADER_SIZE + length <= fileSize;
+            if (valid) {
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER_SIZE, payload);
+
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                valid = (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+            }
+
+            if (!valid) {
+                LOGGER.warn("Truncating torn journal record at position {}", file.base + offset);
+                for (int i = offset; i < fileSize; i++) {
+                    file.buffer.put(i, (byte) 0);
+                }
+                file.buffer.force();
+                return offset;
+            }
+
+            offset += HEADER_SIZE + length;
+        }
+
+        return offset;
+    }
+
+    private Path path(long base) {
+        return directory.resolve(String.format("%020d%s", base, EXTENSION));
+    }
+
+    /**
+     * Records read from the journal.
+     */
+    public static class Batch {
+
+        private final List<JournalRecord> records;
+
+        private final long end;
+
+        Batch(List<JournalRecord> records, long end) {
+            this.records = records;
+            this.end = end;
+        }
+
+        public List<JournalRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * Get the position after the read records.
+         *
+         * @return position to continue reading at
+         */
+        public long getEnd() {
+            return end;
+        }
+
+    }
+
+    /**
+     * A preallocated, memory-mapped journal file.
+     */
+    private static class JournalFile {
+
+        private final long base;
+
+        private final Path path;
+
+        private final MappedByteBuffer buffer;
+
+        private JournalFile(long base, Path path, MappedByteBuffer buffer) {
+            this.base = base;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        static JournalFile create(Path path, long base, int size) throws IOException {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer zeros = ByteBuffer.allocate(PREALLOCATION_CHUNK);
+                long position = 0;
+                while (position < size) {
+                    zeros.clear().limit((int) Math.min(PREALLOCATION_CHUNK, size - position));
+                    position += channel.write(zeros, position);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path);
+
+            return open(path, base, size);
+        }
+
+        static JournalFile open(Path path, long base, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return new JournalFile(base, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+    }
+
+}
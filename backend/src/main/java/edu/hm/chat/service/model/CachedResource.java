@@ -0,0 +1,89 @@
+package edu.hm.chat.service.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Content of a resource held outside of the heap together with everything needed to serve it.
+ */
+public class CachedResource {
+
+    /**
+     * Read-only direct buffer holding the content.
+     */
+    private final ByteBuffer content;
+
+    /**
+     * Strong entity tag of the content, without quotes.
+     */
+    private final String eTag;
+
+    /**
+     * Timestamp of the last modification of the content.
+     */
+    private final long lastModified;
+
+    /**
+     * Content type of the content.
+     */
+    private final String contentType;
+
+    /**
+     * Whether the resource may be downloaded by every user.
+     */
+    private final boolean publicResource;
+
+    /**
+     * Encoding the content is held in, {@code null} if held as is.
+     */
+    private final String contentEncoding;
+
+    public CachedResource(
+            ByteBuffer content,
+            String eTag,
+            long lastModified,
+            String contentType,
+            boolean publicResource,
+            String contentEncoding
+    ) {
+        this.content = content.asReadOnlyBuffer();
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.publicResource = publicResource;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Get the content, the returned buffer may be consumed by the caller.
+     *
+     * @return a view of the content
+     */
+    public ByteBuffer getContent() {
+        return content.duplicate();
+    }
+
+    public int getSize() {
+        return content.capacity();
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public boolean isPublicResource() {
+        return publicResource;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+}
@@ -0,0 +1,53 @@
+package edu.hm.chat.service.model;
+
+import java.util.List;
+
+/**
+ * Lightweight representation of a chat streamed in chat listings.
+ */
+public class ChatSummary {
+
+    /**
+     * ID of the chat.
+     */
+    private final Long id;
+
+    /**
+     * Name of the chat.
+     */
+    private final String name;
+
+    /**
+     * ID of the owner of the chat.
+     */
+    private final Long ownerId;
+
+    /**
+     * IDs of the members of the chat.
+     */
+    private final List<Long> memberIds;
+
+    public ChatSummary(Long id, String name, Long ownerId, List<Long> memberIds) {
+        this.id = id;
+        this.name = name;
+        this.ownerId = ownerId;
+        this.memberIds = memberIds;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Long getOwnerId() {
+        return ownerId;
+    }
+
+    public List<Long> getMemberIds() {
+        return memberIds;
+    }
+
+}
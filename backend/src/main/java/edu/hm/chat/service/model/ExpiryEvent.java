@@ -0,0 +1,50 @@
+package edu.hm.chat.service.model;
+
+/**
+ * Tombstone event telling clients that messages of a chat have expired.
+ */
+public class ExpiryEvent {
+
+    /**
+     * Type of the event.
+     */
+    private final String type = "EXPIRED";
+
+    /**
+     * ID of the chat whose messages expired.
+     */
+    private final Long chatId;
+
+    /**
+     * All messages of the chat older than this timestamp have expired.
+     */
+    private final Long expiredBefore;
+
+    /**
+     * Amount of expired messages.
+     */
+    private final Long count;
+
+    public ExpiryEvent(Long chatId, Long expiredBefore, Long count) {
+        this.chatId = chatId;
+        this.expiredBefore = expiredBefore;
+        this.count = count;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public Long getExpiredBefore() {
+        return expiredBefore;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+}
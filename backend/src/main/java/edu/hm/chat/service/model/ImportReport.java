@@ -0,0 +1,106 @@
+package edu.hm.chat.service.model;
+
+/**
+ * Result of a bulk history import.
+ */
+public class ImportReport {
+
+    /**
+     * Name of the import.
+     */
+    private final String name;
+
+    /**
+     * Amount of input lines processed in total, including earlier attempts.
+     */
+    private final long lines;
+
+    /**
+     * Amount of input lines skipped because they could not be parsed.
+     */
+    private final long skippedLines;
+
+    /**
+     * Amount of messages merged into the message table in total.
+     */
+    private final long mergedMessages;
+
+    /**
+     * Amount of users created for unknown authors by this attempt.
+     */
+    private final long createdUsers;
+
+    /**
+     * Amount of chats created for unknown chat names by this attempt.
+     */
+    private final long createdChats;
+
+    /**
+     * Duration of this attempt in milliseconds.
+     */
+    private final long durationMillis;
+
+    /**
+     * Input lines processed per second by this attempt.
+     */
+    private final double linesPerSecond;
+
+    public ImportReport(
+            String name,
+            long lines,
+            long skippedLines,
+            long mergedMessages,
+            long createdUsers,
+            long createdChats,
+            long durationMillis,
+            double linesPerSecond
+    ) {
+        this.name = name;
+        this.lines = lines;
+        this.skippedLines = skippedLines;
+        this.mergedMessages = mergedMessages;
+        this.createdUsers = createdUsers;
+        this.createdChats = createdChats;
+        this.durationMillis = durationMillis;
+        this.linesPerSecond = linesPerSecond;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getSkippedLines() {
+        return skippedLines;
+    }
+
+    public long getMergedMessages() {
+        return mergedMessages;
+    }
+
+    public long getCreatedUsers() {
+        return createdUsers;
+    }
+
+    public long getCreatedChats() {
+        return createdChats;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public double getLinesPerSecond() {
+        return linesPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Import %s: %d lines (%d skipped), %d messages merged, %d users and %d chats created in %d ms (%.0f lines/s)",
+                name, lines, skippedLines, mergedMessages, createdUsers, createdChats, durationMillis, linesPerSecond);
+    }
+
+}
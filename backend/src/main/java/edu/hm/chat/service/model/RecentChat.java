@@ -0,0 +1,34 @@
+package edu.hm.chat.service.model;
+
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.ChatActivity;
+
+/**
+ * A chat together with its last activity, as listed in the recent chats of a user.
+ */
+public class RecentChat {
+
+    /**
+     * The chat.
+     */
+    private final Chat chat;
+
+    /**
+     * Last activity of the chat.
+     */
+    private final ChatActivity activity;
+
+    public RecentChat(Chat chat, ChatActivity activity) {
+        this.chat = chat;
+        this.activity = activity;
+    }
+
+    public Chat getChat() {
+        return chat;
+    }
+
+    public ChatActivity getActivity() {
+        return activity;
+    }
+
+}
@@ -1,5 +1,7 @@
 package edu.hm.chat.service.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
 import edu.hm.chat.persistence.model.MessageType;
 
 import java.util.Comparator;
@@ -9,6 +11,13 @@ import java.util.Comparator;
  */
 public class StompMessage {
 
+    /**
+     * ID of the stored message, null for messages sent by clients.
+     * Serialized as string since it exceeds the integer precision of JavaScript numbers.
+     */
+    @JsonSerialize(using = ToStringSerializer.class)
+    private Long id;
+
     /**
      * Author ID of the message.
      */
@@ -51,6 +60,14 @@ public class StompMessage {
     // Auto-Generated Methods
 
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public Integer getAuthorId() {
         return authorId;
     }
@@ -82,7 +99,8 @@ public class StompMessage {
     @Override
     public String toString() {
         return "StompMessage{" +
-                "authorId=" + authorId +
+                "id=" + id +
+                ", authorId=" + authorId +
                 ", timestamp=" + timestamp +
                 ", chatId=" + chatId +
                 ", userId=" + userId +
@@ -94,7 +112,13 @@ public class StompMessage {
     public static class StompMessageSortingComparator implements Comparator<StompMessage> {
         @Override
         public int compare(StompMessage message1, StompMessage message2) {
-            return message1.getTimestamp().compareTo(message2.getTimestamp());
+            int result = message1.getTimestamp().compareTo(message2.getTimestamp());
+            if (result != 0) {
+                return result;
+            }
+
+            // Message IDs are time-ordered and break ties of messages sent in the same millisecond
+            return Comparator.nullsLast(Long::compareTo).compare(message1.getId(), message2.getId());
         }
     }
 
@@ -0,0 +1,51 @@
+package edu.hm.chat.service.model;
+
+/**
+ * Result of storing the content of an upload.
+ */
+public class StoredBlob {
+
+    /**
+     * Hash of the blob holding the content.
+     */
+    private final String hash;
+
+    /**
+     * Size of the content in bytes.
+     */
+    private final long size;
+
+    /**
+     * Content type detected from the leading bytes of the content, {@code null} if unknown.
+     */
+    private final String detectedContentType;
+
+    /**
+     * Encoding the blob is stored in, {@code null} if stored as is.
+     */
+    private final String contentEncoding;
+
+    public StoredBlob(String hash, long size, String detectedContentType, String contentEncoding) {
+        this.hash = hash;
+        this.size = size;
+        this.detectedContentType = detectedContentType;
+        this.contentEncoding = contentEncoding;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getDetectedContentType() {
+        return detectedContentType;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+}
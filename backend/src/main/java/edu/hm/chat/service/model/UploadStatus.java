@@ -0,0 +1,73 @@
+package edu.hm.chat.service.model;
+
+import java.util.List;
+
+/**
+ * State of an upload sent in chunks, telling the client which chunks are still missing.
+ */
+public class UploadStatus {
+
+    /**
+     * ID of the upload.
+     */
+    private final String id;
+
+    /**
+     * Size of the file in bytes.
+     */
+    private final long size;
+
+    /**
+     * Size of every chunk but the last one in bytes.
+     */
+    private final int chunkSize;
+
+    /**
+     * Amount of chunks the file is split into.
+     */
+    private final int chunkCount;
+
+    /**
+     * Indices of the chunks which have not been received yet, in ascending order.
+     */
+    private final List<Integer> missingChunks;
+
+    /**
+     * Timestamp after which the upload is discarded if no further chunk is received.
+     */
+    private final long expiresAt;
+
+    public UploadStatus(String id, long size, int chunkSize, int chunkCount, List<Integer> missingChunks, long expiresAt) {
+        this.id = id;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.chunkCount = chunkCount;
+        this.missingChunks = missingChunks;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public List<Integer> getMissingChunks() {
+        return missingChunks;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+}
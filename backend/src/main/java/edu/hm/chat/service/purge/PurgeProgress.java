@@ -0,0 +1,56 @@
+package edu.hm.chat.service.purge;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of purging a deleted chat or user.
+ */
+public class PurgeProgress {
+
+    /**
+     * Type of the purged entity, either "chat" or "user".
+     */
+    private final String type;
+
+    /**
+     * ID of the purged entity.
+     */
+    private final long id;
+
+    /**
+     * Timestamp of when purging started.
+     */
+    private final long startedAt;
+
+    /**
+     * Amount of messages deleted so far.
+     */
+    private final AtomicLong deletedMessages = new AtomicLong();
+
+    public PurgeProgress(String type, long id) {
+        this.type = type;
+        this.id = id;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDeletedMessages() {
+        return deletedMessages.get();
+    }
+
+    void addDeletedMessages(long count) {
+        deletedMessages.addAndGet(count);
+    }
+
+}
@@ -0,0 +1,220 @@
+package edu.hm.chat.service.purge;
+
+import edu.hm.chat.config.PurgeConfig;
+import edu.hm.chat.persistence.MessageStore;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.CacheEvictionService;
+import edu.hm.chat.service.ChatActivityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Service deleting chats and users.
+ * <p>
+ * Deletion is split in two steps: a soft-delete marker hides the chat or user immediately,
+ * while a background job removes the messages in chunks afterwards and finally the rows themselves.
+ * Messages are deleted with plain SQL statements, so they are never loaded into memory.
+ */
+@Service
+public class PurgeService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PurgeService.class);
+
+    /**
+     * Configuration for purging.
+     */
+    private final PurgeConfig config;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Repository dealing with messages.
+     */
+    private final MessageRepository messageRepository;
+
+    /**
+     * Repository dealing with users.
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Store of the messages outside of the database.
+     */
+    private final MessageStore messageStore;
+
+    /**
+     * Service evicting purged entities from the cache.
+     */
+    private final CacheEvictionService cacheEvictionService;
+
+    /**
+     * Service maintaining the activity of chats.
+     */
+    private final ChatActivityService chatActivityService;
+
+    /**
+     * Template used to run every chunk in its own transaction.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Progress of the currently running purges.
+     */
+    private final Map<String, PurgeProgress> running = new ConcurrentHashMap<>();
+
+    /**
+     * Amount of chats and users purged since startup.
+     */
+    private final AtomicLong completed = new AtomicLong();
+
+    public PurgeService(
+            PurgeConfig config,
+            ChatRepository chatRepository,
+            MessageRepository messageRepository,
+            UserRepository userRepository,
+            MessageStore messageStore,
+            CacheEvictionService cacheEvictionService,
+            ChatActivityService chatActivityService,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.chatRepository = chatRepository;
+        this.messageRepository = messageRepository;
+        this.userRepository = userRepository;
+        this.messageStore = messageStore;
+        this.cacheEvictionService = cacheEvictionService;
+        this.chatActivityService = chatActivityService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Mark the passed chat as deleted, its messages are purged in the background.
+     *
+     * @param chat to delete
+     */
+    @Transactional
+    public void deleteChat(Chat chat) {
+        chatRepository.markDeleted(chat.getId());
+        cacheEvictionService.evictChat(chat.getId());
+    }
+
+    /**
+     * Mark the passed user as deleted, its messages are purged in the background.
+     * The user is removed from all chats, chats the user has been the only member of are deleted as well.
+     *
+     * @param user to delete
+     */
+    @Transactional
+    public void deleteUser(User user) {
+        chatRepository.markDeletedWhereOnlyMember(user.getId());
+        chatRepository.reassignOwner(user.getId());
+        chatRepository.incrementVersionWhereMember(user.getId()); // Concurrent updates of the chats have to retry
+        chatRepository.removeMember(user.getId());
+        userRepository.markDeleted(user.getId());
+
+        cacheEvictionService.evictChats();
+        cacheEvictionService.evictUser(user.getId());
+    }
+
+    /**
+     * Get the progress of the currently running purges.
+     *
+     * @return progress of running purges
+     */
+    public List<PurgeProgress> getRunning() {
+        return new ArrayList<>(running.values());
+    }
+
+    /**
+     * Get the amount of chats and users purged since startup.
+     *
+     * @return amount of completed purges
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * Purge all chats and users marked as deleted.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.purge.interval:PT10S}")
+    public void purge() {
+        for (Long chatId : chatRepository.findDeletedIds()) {
+            purgeChat(chatId);
+        }
+
+        for (Long userId : userRepository.findDeletedIds()) {
+            purgeUser(userId);
+        }
+    }
+
+    private void purgeChat(long chatId) {
+        PurgeProgress progress = running.computeIfAbsent("chat-" + chatId, (key) -> new PurgeProgress("chat", chatId));
+
+        deleteInChunks(progress, () -> messageRepository.deleteChunkByChat(chatId, config.getChunkSize()));
+        messageStore.deleteByChat(chatId);
+
+        transactionTemplate.execute(status -> {
+            chatActivityService.deleteChat(chatId);
+            chatRepository.deleteMembers(chatId);
+            return chatRepository.deleteRow(chatId);
+        });
+
+        finish(progress);
+    }
+
+    private void purgeUser(long userId) {
+        PurgeProgress progress = running.computeIfAbsent("user-" + userId, (key) -> new PurgeProgress("user", userId));
+
+        deleteInChunks(progress, () -> messageRepository.deleteChunkByAuthor(userId, config.getChunkSize()));
+
+        transactionTemplate.execute(status -> {
+            chatActivityService.deleteUser(userId);
+            userRepository.deleteRoles(userId);
+            userRepository.deleteResourceVisibility(userId);
+            return userRepository.deleteRow(userId);
+        });
+
+        finish(progress);
+    }
+
+    private void deleteInChunks(PurgeProgress progress, IntSupplier deleteChunk) {
+        int deleted;
+        do {
+            Integer result = transactionTemplate.execute(status -> deleteChunk.getAsInt());
+            deleted = result != null ? result : 0;
+            progress.addDeletedMessages(deleted);
+        } while (deleted >= config.getChunkSize());
+    }
+
+    private void finish(PurgeProgress progress) {
+        running.remove(progress.getType() + "-" + progress.getId());
+        completed.incrementAndGet();
+
+        LOGGER.info("Purged {} {} with {} messages in {} ms", progress.getType(), progress.getId(),
+                progress.getDeletedMessages(), System.currentTimeMillis() - progress.getStartedAt());
+    }
+
+}
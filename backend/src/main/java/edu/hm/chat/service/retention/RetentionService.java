@@ -0,0 +1,187 @@
+package edu.hm.chat.service.retention;
+
+import edu.hm.chat.config.RetentionConfig;
+import edu.hm.chat.config.WebSocketConfiguration;
+import edu.hm.chat.persistence.MessageStore;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.service.StompUserService;
+import edu.hm.chat.service.model.ExpiryEvent;
+import edu.hm.chat.service.model.StompPrincipal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+
+/**
+ * Service expiring the messages of chats with a retention.
+ * <p>
+ * Instead of polling the messages, the time the oldest message of every chat expires is tracked
+ * in a {@link TimingWheel}. A sweep only visits the chats which became due, removes their expired
+ * messages oldest first and schedules the chat again for its new oldest message.
+ */
+@Service
+public class RetentionService {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetentionService.class);
+
+    /**
+     * Delay before retrying chats whose store kept expired messages, as stores may expire whole segments only.
+     */
+    private static final long RETRY_DELAY = Duration.ofMinutes(1).toMillis();
+
+    /**
+     * Configuration for the retention.
+     */
+    private final RetentionConfig config;
+
+    /**
+     * Repository dealing with chats.
+     */
+    private final ChatRepository chatRepository;
+
+    /**
+     * Store of the messages.
+     */
+    private final MessageStore messageStore;
+
+    /**
+     * Service looking up the STOMP sessions of users.
+     */
+    private final StompUserService stompUserService;
+
+    /**
+     * Template used to send the tombstone events.
+     */
+    private final SimpMessagingTemplate webSocket;
+
+    /**
+     * Wheel holding the next expiry of every chat with a retention.
+     */
+    private final TimingWheel<Long> wheel;
+
+    public RetentionService(
+            RetentionConfig config,
+            ChatRepository chatRepository,
+            MessageStore messageStore,
+            StompUserService stompUserService,
+            SimpMessagingTemplate webSocket
+    ) {
+        this.config = config;
+        this.chatRepository = chatRepository;
+        this.messageStore = messageStore;
+        this.stompUserService = stompUserService;
+        this.webSocket = webSocket;
+        this.wheel = new TimingWheel<>(config.getTick().toMillis(), System.currentTimeMillis());
+    }
+
+    /**
+     * Schedule all chats with a retention once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        List<Chat> chats = chatRepository.findByRetentionIsNotNull();
+        for (Chat chat : chats) {
+            schedule(chat);
+        }
+
+        LOGGER.info("Tracking message expiry of {} chats", chats.size());
+    }
+
+    /**
+     * Track the passed message, which has just been stored.
+     *
+     * @param message that has been stored
+     */
+    public void track(Message message) {
+        Chat chat = message.getChat();
+        if (chat.getRetention() != null && !wheel.isScheduled(chat.getId())) {
+            wheel.schedule(chat.getId(), message.getTimestamp() + chat.getRetention());
+        }
+    }
+
+    /**
+     * Schedule the passed chat for its oldest message, for example after its retention changed.
+     *
+     * @param chat to schedule
+     */
+    public void schedule(Chat chat) {
+        if (chat.getRetention() == null) {
+            wheel.cancel(chat.getId());
+            return;
+        }
+
+        OptionalLong oldest = messageStore.findOldestTimestamp(chat.getId());
+        if (oldest.isPresent()) {
+            wheel.schedule(chat.getId(), oldest.getAsLong() + chat.getRetention());
+        } else {
+            wheel.cancel(chat.getId());
+        }
+    }
+
+    /**
+     * Expire the messages of all chats which became due.
+     */
+    @Scheduled(fixedDelayString = "${edu.hm.chat.retention.tick:PT1S}")
+    public void sweep() {
+        if (!config.isEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Long chatId : wheel.advance(now)) {
+            try {
+                chatRepository.findById(chatId).ifPresent(chat -> expire(chat, now));
+            } catch (RuntimeException e) {
+                LOGGER.error("Could not expire messages of chat {}", chatId, e);
+                wheel.schedule(chatId, now + config.getTick().toMillis()); // Retry with the next sweep
+            }
+        }
+    }
+
+    private void expire(Chat chat, long now) {
+        if (chat.getRetention() == null) {
+            return;
+        }
+
+        long before = now - chat.getRetention();
+        long expired = messageStore.expire(chat.getId(), before, config.getBatchSize());
+        if (expired > 0) {
+            LOGGER.info("Expired {} messages of chat {}", expired, chat.getId());
+            publish(chat, new ExpiryEvent(chat.getId(), before, expired));
+        }
+
+        OptionalLong oldest = messageStore.findOldestTimestamp(chat.getId());
+        if (oldest.isPresent()) {
+            wheel.schedule(chat.getId(), Math.max(oldest.getAsLong() + chat.getRetention(), now + RETRY_DELAY));
+        }
+    }
+
+    /**
+     * Send a single tombstone event to all connected members of the chat.
+     */
+    private void publish(Chat chat, ExpiryEvent event) {
+        Set<StompPrincipal> mappings = stompUserService.getMappingsByUsernames(chatRepository.findMemberEmails(chat.getId()));
+
+        for (StompPrincipal destination : mappings) {
+            webSocket.convertAndSendToUser(destination.getName(), WebSocketConfiguration.USER_EVENT_DESTINATION, event);
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package edu.hm.chat.service.retention;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel tracking the deadlines of keys.
+ * <p>
+ * Every level has {@value #SLOTS} slots, a slot of level {@code n} spans {@code SLOTS^n} ticks.
+ * Keys are put into the lowest level whose range covers their deadline and move down a level
+ * whenever the wheel reaches the slot they are in. Scheduling, cancelling and expiring a key are
+ * thus constant time operations, independent of the amount of tracked keys.
+ * Deadlines beyond the range of the top level are cascaded repeatedly until they are in range.
+ *
+ * @param <K> type of the keys
+ */
+public class TimingWheel<K> {
+
+    /**
+     * Amount of slots per level.
+     */
+    private static final int SLOTS = 64;
+
+    /**
+     * Amount of levels.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Duration of a tick in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * Slots of all levels holding the scheduled entries.
+     */
+    private final List<List<Entry<K>>>[] levels;
+
+    /**
+     * Current deadline tick by key, entries not matching it have been cancelled or rescheduled.
+     */
+    private final Map<K, Long> deadlines = new HashMap<>();
+
+    /**
+     * The last processed tick.
+     */
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+
+        levels = new List[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            levels[level] = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                levels[level].add(new ArrayList<>());
+            }
+        }
+    }
+
+    /**
+     * Schedule the passed key, replacing an earlier deadline of the key.
+     *
+     * @param key      to schedule
+     * @param deadline timestamp in milliseconds at which the key is due
+     */
+    public synchronized void schedule(K key, long deadline) {
+        long deadlineTick = Math.max(Math.floorDiv(deadline + tickMillis - 1, tickMillis), currentTick + 1);
+
+        deadlines.put(key, deadlineTick);
+        place(new Entry<>(key, deadlineTick));
+    }
+
+    /**
+     * Cancel the deadline of the passed key.
+     *
+     * @param key to cancel
+     */
+    public synchronized void cancel(K key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * Check whether the passed key is scheduled.
+     *
+     * @param key to check
+     * @return whether the key has a deadline
+     */
+    public synchronized boolean isScheduled(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    /**
+     * Get the amount of scheduled keys.
+     *
+     * @return amount of scheduled keys
+     */
+    public synchronized int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Advance the wheel to the passed time.
+     *
+     * @param now timestamp in milliseconds to advance to
+     * @return keys which became due, they are no longer scheduled
+     */
+    public synchronized List<K> advance(long now) {
+        long targetTick = now / tickMillis;
+
+        List<K> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            for (int level = LEVELS - 1; level > 0; level--) {
+                long span = span(level);
+                if (currentTick % span == 0) {
+                    drain(levels[level].get((int) ((currentTick / span) % SLOTS)), due);
+                }
+            }
+            drain(levels[0].get((int) (currentTick % SLOTS)), due);
+        }
+
+        return due;
+    }
+
+    /**
+     * Move the entries of the passed slot down the wheel or out of it, if due.
+     */
+    private void drain(List<Entry<K>> slot, List<K> due) {
+        if (slot.isEmpty()) {
+            return;
+        }
+
+        List<Entry<K>> entries = new ArrayList<>(slot);
+        slot.clear();
+
+        for (Entry<K> entry : entries) {
+            Long deadlineTick = deadlines.get(entry.key);
+            if (deadlineTick == null || deadlineTick != entry.deadlineTick) {
+                continue; // Cancelled or rescheduled
+            }
+
+            if (entry.deadlineTick <= currentTick) {
+                deadlines.remove(entry.key);
+                due.add(entry.key);
+            } else {
+                place(entry);
+            }
+        }
+    }
+
+    private void place(Entry<K> entry) {
+        long delta = entry.deadlineTick - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= span(level + 1)) {
+            level++;
+        }
+
+        long slot = (entry.deadlineTick / span(level)) % SLOTS;
+        levels[level].get((int) slot).add(entry);
+    }
+
+    private static long span(int level) {
+        return 1L << (6 * level); // SLOTS^level
+    }
+
+    /**
+     * A scheduled key.
+     */
+    private static class Entry<K> {
+
+        private final K key;
+
+        private final long deadlineTick;
+
+        private Entry(K key, long deadlineTick) {
+            this.key = key;
+            this.deadlineTick = deadlineTick;
+        }
+
+    }
+
+}
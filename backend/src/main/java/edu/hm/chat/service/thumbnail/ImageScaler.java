@@ -0,0 +1,166 @@
+package edu.hm.chat.service.thumbnail;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Decodes, downscales and encodes images using the Java image I/O API only.
+ */
+final class ImageScaler {
+
+    private ImageScaler() {
+        // Utility class
+    }
+
+    /**
+     * Decode the first image of the passed file.
+     * Images with more pixels than needed for the largest requested edge length or than allowed are subsampled
+     * while decoding, so the full resolution never has to be held in memory.
+     *
+     * @param file             to decode
+     * @param largestEdge      largest edge length needed from the decoded image
+     * @param maxDecodedPixels maximum amount of pixels of the decoded image
+     * @return the decoded image together with the original dimensions or {@code null} if no reader supports the format
+     */
+    static DecodedImage decode(Path file, int largestEdge, long maxDecodedPixels) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // Keep at least twice the needed resolution for the final smooth downscaling step
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * largestEdge));
+                while ((long) (width / subsampling) * (height / subsampling) > maxDecodedPixels) {
+                    subsampling++;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+
+                return new DecodedImage(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Downscale the passed image so its longer edge has the passed length.
+     * Halves the image repeatedly before the last bilinear step, which keeps details from aliasing.
+     *
+     * @param image to scale
+     * @param edge  length of the longer edge of the result
+     * @return the scaled image
+     */
+    static BufferedImage scale(BufferedImage image, int edge) {
+        double factor = (double) edge / Math.max(image.getWidth(), image.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width > targetWidth || height > targetHeight);
+
+        return current;
+    }
+
+    /**
+     * Encode the passed image, as PNG if it has transparency and as JPEG otherwise.
+     *
+     * @param image       to encode
+     * @param jpegQuality quality of JPEG encoded images between 0 and 1
+     * @return the encoded image
+     */
+    static EncodedImage encode(BufferedImage image, float jpegQuality) throws IOException {
+        boolean png = image.getColorModel().hasAlpha();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(png ? "png" : "jpeg").next();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!png) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        return new EncodedImage(out.toByteArray(), png ? "image/png" : "image/jpeg");
+    }
+
+    /**
+     * An image decoded at a possibly reduced resolution.
+     */
+    static final class DecodedImage {
+
+        final BufferedImage image;
+
+        final int width;
+
+        final int height;
+
+        DecodedImage(BufferedImage image, int width, int height) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+
+    }
+
+    /**
+     * Encoded image data together with its content type.
+     */
+    static final class EncodedImage {
+
+        final byte[] data;
+
+        final String contentType;
+
+        EncodedImage(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+        }
+
+    }
+
+}
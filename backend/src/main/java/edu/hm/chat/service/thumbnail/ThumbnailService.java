@@ -0,0 +1,284 @@
+package edu.hm.chat.service.thumbnail;
+
+import edu.hm.chat.config.ThumbnailConfig;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.ResourceVariantRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.ResourceVariant;
+import edu.hm.chat.service.ResourceStorageService;
+import edu.hm.chat.service.model.StoredBlob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Service producing downscaled variants of image resources.
+ * <p>
+ * Variants are produced on a bounded executor right after an upload, decoding every image only once.
+ * Images uploaded while the executor is saturated or before variants have been introduced get their variants
+ * lazily when they are requested first. Every variant is stored as its own blob and removed together with its resource.
+ */
+@Service
+public class ThumbnailService implements DisposableBean {
+
+    /**
+     * Logger for the service.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailService.class);
+
+    /**
+     * Configuration for the variants.
+     */
+    private final ThumbnailConfig config;
+
+    /**
+     * Repository dealing with resource info.
+     */
+    private final ResourceInfoRepository resourceInfoRepository;
+
+    /**
+     * Repository dealing with variants of image resources.
+     */
+    private final ResourceVariantRepository variantRepository;
+
+    /**
+     * Service storing the variants.
+     */
+    private final ResourceStorageService resourceStorageService;
+
+    /**
+     * Template used to store the dimensions of images and their variants.
+     */
+    private final TransactionTemplate transactionTemplate;
+
+    /**
+     * Executor decoding and scaling the images.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Variants currently being produced per resource ID.
+     */
+    private final Map<String, CompletableFuture<Void>> inProgress = new ConcurrentHashMap<>();
+
+    public ThumbnailService(
+            ThumbnailConfig config,
+            ResourceInfoRepository resourceInfoRepository,
+            ResourceVariantRepository variantRepository,
+            ResourceStorageService resourceStorageService,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.config = config;
+        this.resourceInfoRepository = resourceInfoRepository;
+        this.variantRepository = variantRepository;
+        this.resourceStorageService = resourceStorageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                config.getPoolSize(),
+                config.getPoolSize(),
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Produce the variants of a freshly uploaded image in the background.
+     * Nothing is done for other resources or when the executor is saturated.
+     *
+     * @param info of the uploaded resource
+     */
+    public void schedule(ResourceInfo info) {
+        if (!config.isEnabled() || !isImage(info)) {
+            return;
+        }
+
+        try {
+            produce(info.getResourceId());
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Variants of resource {} are produced lazily, the executor is saturated", info.getResourceId());
+        }
+    }
+
+    /**
+     * Check whether variants with the passed maximum edge length are produced.
+     *
+     * @param size maximum edge length in pixels
+     * @return whether the size is supported
+     */
+    public boolean isSupported(int size) {
+        return config.getSizes().contains(size);
+    }
+
+    /**
+     * Get the supported maximum edge lengths of variants.
+     *
+     * @return supported sizes in pixels
+     */
+    public List<Integer> getSupportedSizes() {
+        return config.getSizes();
+    }
+
+    /**
+     * Get the variant of the passed resource with the passed maximum edge length, producing it if necessary.
+     *
+     * @param info of the resource to get variant for
+     * @param size maximum edge length in pixels
+     * @return the variant or nothing if the original should be used instead
+     */
+    public Optional<ResourceVariant> getVariant(ResourceInfo info, int size) {
+        if (!isImage(info) || !isLargerThan(info, size)) {
+            return Optional.empty();
+        }
+
+        Optional<ResourceVariant> variant = variantRepository.findByResourceIdAndDimension(info.getResourceId(), size);
+        if (variant.isPresent()) {
+            return variant;
+        }
+
+        try {
+            produce(info.getResourceId()).get(config.getLazyTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return Optional.empty(); // Serve the original for now
+        } catch (ExecutionException e) {
+            LOGGER.error("Could not produce variants of resource {}", info.getResourceId(), e.getCause());
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+
+        return variantRepository.findByResourceIdAndDimension(info.getResourceId(), size);
+    }
+
+    /**
+     * Produce the missing variants of a resource, joining a production already in progress.
+     */
+    private CompletableFuture<Void> produce(String resourceId) {
+        CompletableFuture<Void> production = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inProgress.putIfAbsent(resourceId, production);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    createVariants(resourceId);
+                    inProgress.remove(resourceId, production);
+                    production.complete(null);
+                } catch (Throwable e) {
+                    inProgress.remove(resourceId, production);
+                    production.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.remove(resourceId, production);
+            throw e;
+        }
+
+        return production;
+    }
+
+    private void createVariants(String resourceId) throws IOException {
+        Optional<ResourceInfo> found = resourceInfoRepository.findById(resourceId);
+        if (found.isEmpty()) {
+            return; // Removed in the meantime
+        }
+        ResourceInfo info = found.get();
+
+        Set<Integer> existing = variantRepository.findByResourceId(resourceId).stream()
+                .map(ResourceVariant::getDimension)
+                .collect(Collectors.toSet());
+        List<Integer> sizes = config.getSizes().stream()
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+
+        Path file = resourceStorageService.locate(info);
+        ImageScaler.DecodedImage decoded;
+        try {
+            decoded = ImageScaler.decode(file, sizes.get(0), config.getMaxDecodedPixels());
+        } catch (IOException e) {
+            LOGGER.warn("Could not decode image resource {}", resourceId, e);
+            decoded = null;
+        }
+
+        if (decoded == null) {
+            // Not decodable, the original is served for every size
+            transactionTemplate.executeWithoutResult(status -> resourceInfoRepository.updateDimensions(resourceId, 0, 0));
+            return;
+        }
+
+        int width = decoded.width;
+        int height = decoded.height;
+        transactionTemplate.executeWithoutResult(status -> resourceInfoRepository.updateDimensions(resourceId, width, height));
+
+        // Every variant is scaled from the next larger one, which is cheaper and just as smooth
+        BufferedImage source = decoded.image;
+        for (int size : sizes) {
+            if (size >= Math.max(width, height)) {
+                continue; // The original is small enough
+            }
+
+            source = ImageScaler.scale(source, size);
+            if (!existing.contains(size)) {
+                saveVariant(info, size, ImageScaler.encode(source, config.getJpegQuality()));
+            }
+        }
+    }
+
+    private void saveVariant(ResourceInfo info, int size, ImageScaler.EncodedImage image) throws IOException {
+        StoredBlob blob = resourceStorageService.store(new ByteArrayInputStream(image.data));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ResourceVariant variant = new ResourceVariant(info, size);
+                variant.setBlobHash(blob.getHash());
+                variant.setContentType(image.contentType);
+                variant.setSize(blob.getSize());
+
+                variantRepository.save(variant);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // The resource has been removed or the variant has been produced by another node in the meantime
+            resourceStorageService.release(blob.getHash());
+        }
+    }
+
+    private static boolean isImage(ResourceInfo info) {
+        return info.getContentType() != null && info.getContentType().startsWith("image/");
+    }
+
+    /**
+     * Check whether the passed image is larger than the passed edge length, assuming so if not yet decoded.
+     */
+    private static boolean isLargerThan(ResourceInfo info, int size) {
+        return info.getWidth() == null || info.getHeight() == null || Math.max(info.getWidth(), info.getHeight()) > size;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+}
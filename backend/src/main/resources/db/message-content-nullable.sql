@@ -0,0 +1,4 @@
+-- One-off migration for databases created before message contents were compressed at rest.
+-- Compressed messages keep their content in content_compressed and leave content null, but schema
+-- updates do not drop the not-null constraint the column has been created with.
+alter table message alter column content drop not null;
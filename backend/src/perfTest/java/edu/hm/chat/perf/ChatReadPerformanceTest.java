@@ -0,0 +1,273 @@
+package edu.hm.chat.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.hm.chat.constants.SecurityConstants;
+import edu.hm.chat.controller.StreamingChatController;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark of chat history and chat listing reads under a reconnect storm.
+ * <p>
+ * Boots the application on a random port and lets thousands of readers request the same chat history and chat
+ * listing at once, through the blocking JSON endpoints of the {@code ChatController} and through the streamed
+ * {@value StreamingChatController#APPLICATION_NDJSON} endpoints. Readers rejected by the bounded streaming path
+ * retry after the advertised delay, which counts towards their latency, like clients backing off would.
+ * Throughput, latency percentiles and rejections are written to {@code build/reports/perf/chat-reads.json}.
+ * They depend too much on the machine to be compared against a baseline, thus only the responses are verified.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("perf")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ChatReadPerformanceTest {
+
+    /**
+     * Readers issuing their request at once per burst.
+     */
+    private static final int CONCURRENT_READERS = Integer.getInteger("perf.readers", 5000);
+
+    /**
+     * Sequential reads per endpoint before measuring, so the JIT is warm.
+     */
+    private static final int WARMUP_READS = 200;
+
+    /**
+     * Messages of the read chat.
+     */
+    private static final int MESSAGES = 200;
+
+    /**
+     * Messages read per request, the page size of the blocking endpoint.
+     */
+    private static final int PAGE_SIZE = 20;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static EmbeddedPostgres postgres;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatRepository chatRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMinutes(1))
+            .build();
+
+    private final Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+
+    private final Path reportDirectory = Paths.get(System.getProperty("perf.reportDir", "build/reports/perf"));
+
+    private String token;
+
+    private long chatId;
+
+    private int chatCount;
+
+    @DynamicPropertySource
+    static void environment(DynamicPropertyRegistry registry) throws IOException {
+        if (postgres == null) {
+            postgres = EmbeddedPostgres.builder().start();
+        }
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("edu.hm.chat.streaming-read.enabled", () -> "true");
+    }
+
+    @BeforeAll
+    void setUp() throws Exception {
+        HttpResponse<Void> login = client.send(HttpRequest.newBuilder(uri(SecurityConstants.AUTH_LOGIN_URL
+                        + "?username=" + SecurityConstants.DEFAULT_USERNAME + "&password=" + SecurityConstants.DEFAULT_PASSWORD))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.discarding());
+        token = login.headers().firstValue(SecurityConstants.TOKEN_HEADER).orElseThrow();
+
+        User reader = userRepository.findByEmail(SecurityConstants.DEFAULT_USERNAME);
+        Chat chat = new Chat();
+        chat.setName("benchmark");
+        chat.setOwner(reader);
+        chat.setMembers(Set.of(reader));
+        chat = chatRepository.save(chat);
+        chatId = chat.getId();
+
+        List<Message> messages = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            Message message = new Message();
+            message.setChat(chat);
+            message.setAuthor(reader);
+            message.setTimestamp(1_600_000_000_000L + i);
+            message.setType(MessageType.TEXT);
+            message.setContent("benchmark message " + i);
+            messages.add(message);
+        }
+        messageRepository.saveAll(messages);
+
+        chatCount = MAPPER.readTree(client.send(request(uri("/api/chats"), MediaType.APPLICATION_JSON_VALUE),
+                HttpResponse.BodyHandlers.ofString()).body()).size();
+
+        // Warm up both paths, so the first burst does not measure the JIT
+        for (int i = 0; i < WARMUP_READS; i++) {
+            for (String accept : List.of(MediaType.APPLICATION_JSON_VALUE, StreamingChatController.APPLICATION_NDJSON)) {
+                client.send(request(uri("/api/chats"), accept), HttpResponse.BodyHandlers.discarding());
+                client.send(request(uri("/api/chats/" + chatId + "/messages?page=0&limit=" + PAGE_SIZE), accept),
+                        HttpResponse.BodyHandlers.discarding());
+            }
+        }
+
+        Files.createDirectories(reportDirectory);
+    }
+
+    @AfterAll
+    void tearDown() throws IOException {
+        MAPPER.writeValue(reportDirectory.resolve("chat-reads.json").toFile(), results);
+    }
+
+    @Test
+    void readHistoryBlocking() {
+        burst("historyBlocking", PAGE_SIZE, false, uri("/api/chats/" + chatId + "/messages?page=0"));
+    }
+
+    @Test
+    void readHistoryStreamed() {
+        burst("historyStreamed", PAGE_SIZE, true, uri("/api/chats/" + chatId + "/messages?limit=" + PAGE_SIZE));
+    }
+
+    @Test
+    void listChatsBlocking() {
+        burst("chatsBlocking", chatCount, false, uri("/api/chats"));
+    }
+
+    @Test
+    void listChatsStreamed() {
+        burst("chatsStreamed", chatCount, true, uri("/api/chats"));
+    }
+
+    /**
+     * Let all readers request the passed URI at once, verify the amount of returned rows and record throughput and latency.
+     */
+    private void burst(String name, int expectedRows, boolean streamed, URI uri) {
+        String accept = streamed ? StreamingChatController.APPLICATION_NDJSON : MediaType.APPLICATION_JSON_VALUE;
+        AtomicInteger rejections = new AtomicInteger();
+
+        List<CompletableFuture<long[]>> reads = new ArrayList<>(CONCURRENT_READERS);
+        long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENT_READERS; i++) {
+            long sent = System.nanoTime();
+            reads.add(read(request(uri, accept), rejections)
+                    .thenApply(response -> new long[]{response.statusCode(), rows(response.body(), streamed), System.nanoTime() - sent}));
+        }
+
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[CONCURRENT_READERS];
+        for (int i = 0; i < CONCURRENT_READERS; i++) {
+            long[] read = reads.get(i).join();
+            assertEquals(HttpStatus.OK.value(), read[0], name + " read " + i);
+            assertEquals(expectedRows, read[1], name + " read " + i);
+            latencies[i] = read[2];
+        }
+        Arrays.sort(latencies);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("readers", CONCURRENT_READERS);
+        result.put("rowsPerRead", expectedRows);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        result.put("readsPerSecond", Math.round(CONCURRENT_READERS / (elapsed / 1e9)));
+        result.put("rejections", rejections.get());
+        result.put("p50Millis", TimeUnit.NANOSECONDS.toMillis(latencies[CONCURRENT_READERS / 2]));
+        result.put("p95Millis", TimeUnit.NANOSECONDS.toMillis(latencies[(int) (CONCURRENT_READERS * 0.95)]));
+        result.put("p99Millis", TimeUnit.NANOSECONDS.toMillis(latencies[(int) (CONCURRENT_READERS * 0.99)]));
+        results.put(name, result);
+    }
+
+    /**
+     * Send the passed request, retrying after the advertised delay as long as it is rejected as unavailable.
+     */
+    private CompletableFuture<HttpResponse<String>> read(HttpRequest request, AtomicInteger rejections) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenCompose(response -> {
+            if (response.statusCode() != HttpStatus.SERVICE_UNAVAILABLE.value()) {
+                return CompletableFuture.completedFuture(response);
+            }
+
+            rejections.incrementAndGet();
+            long retryAfter = response.headers().firstValueAsLong(HttpHeaders.RETRY_AFTER).orElse(1);
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(retryAfter, TimeUnit.SECONDS))
+                    .thenCompose(ignored -> read(request, rejections));
+        });
+    }
+
+    private HttpRequest request(URI uri, String accept) {
+        return HttpRequest.newBuilder(uri)
+                .header(SecurityConstants.TOKEN_HEADER, token)
+                .header(HttpHeaders.ACCEPT, accept)
+                .timeout(Duration.ofMinutes(5))
+                .build();
+    }
+
+    private static long rows(String body, boolean streamed) {
+        if (streamed) {
+            return body.lines().filter(line -> !line.isBlank()).count();
+        }
+
+        try {
+            return MAPPER.readTree(body).size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+}
@@ -0,0 +1,274 @@
+package edu.hm.chat.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Benchmark of the storage savings of message content compression on a realistic corpus.
+ * <p>
+ * Generates a reproducible corpus shaped like chat traffic: mostly short lines, with pasted logs, code blocks and
+ * stack traces in between. The corpus is stored twice, once with plain contents and once encoded by the
+ * {@link MessageContentCodec} like the message table stores it. For both, the size of the table, its heap and its
+ * TOAST relation on disk are reported, as well as the shared buffers touched and the time taken to read back
+ * every content, which is what has to fit into the buffer cache when histories are read.
+ * Results are written to {@code build/reports/perf/message-compression.json}.
+ */
+@SpringBootTest
+@ActiveProfiles("perf")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MessageCompressionPerformanceTest {
+
+    /**
+     * Messages in the corpus.
+     */
+    private static final int MESSAGES = 50_000;
+
+    /**
+     * Maximum length of a message content, the length of the content column.
+     */
+    private static final int MAX_LENGTH = 5000;
+
+    /**
+     * Rows inserted per batch.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] WORDS = ("the a to and is it that you for on this with have are be not was but we can " +
+            "deploy build test merge review fix bug issue branch release server client database query cache index " +
+            "meeting today tomorrow later thanks ok sure please check look works broken again why how what when").split(" ");
+
+    private static final String[] LOG_LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+
+    private static final String[] LOGGERS = {"o.s.web.servlet.DispatcherServlet", "com.zaxxer.hikari.HikariPool",
+            "edu.hm.chat.service.MessagingService", "o.h.engine.jdbc.spi.SqlExceptionHelper", "o.a.catalina.core.StandardService"};
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Object> results = new LinkedHashMap<>();
+
+    private final Path reportDirectory = Paths.get(System.getProperty("perf.reportDir", "build/reports/perf"));
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        if (postgres == null) {
+            postgres = EmbeddedPostgres.builder().start();
+        }
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+    }
+
+    @BeforeAll
+    void setUp() throws IOException {
+        Files.createDirectories(reportDirectory);
+    }
+
+    @AfterAll
+    void tearDown() throws IOException {
+        jdbcTemplate.execute("drop table if exists corpus_plain");
+        jdbcTemplate.execute("drop table if exists corpus_compressed");
+        MAPPER.writeValue(reportDirectory.resolve("message-compression.json").toFile(), results);
+    }
+
+    @Test
+    void compareStorageOfCorpus() throws IOException {
+        List<String> corpus = corpus(new Random(42));
+
+        long compressed = 0;
+        long rawBytes = 0;
+        List<Object[]> plainRows = new ArrayList<>(MESSAGES);
+        List<Object[]> compressedRows = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < corpus.size(); i++) {
+            String content = corpus.get(i);
+            byte[] encoded = MessageContentCodec.encode(content);
+            if (encoded != null) {
+                compressed++;
+            }
+            rawBytes += content.getBytes(StandardCharsets.UTF_8).length;
+
+            plainRows.add(new Object[]{(long) i, content, null});
+            compressedRows.add(new Object[]{(long) i, encoded == null ? content : null, encoded});
+        }
+
+        results.put("messages", corpus.size());
+        results.put("compressedMessages", compressed);
+        results.put("contentBytes", rawBytes);
+
+        Map<String, Object> plain = store("corpus_plain", plainRows);
+        Map<String, Object> encoded = store("corpus_compressed", compressedRows);
+        results.put("plain", plain);
+        results.put("compressed", encoded);
+        results.put("tableSavings", savings(plain, encoded, "tableBytes"));
+        results.put("bufferSavings", savings(plain, encoded, "readBuffers"));
+
+        assertEquals(corpus, readAll("corpus_compressed"));
+    }
+
+    /**
+     * Store the passed rows in a new table and measure it.
+     */
+    private Map<String, Object> store(String table, List<Object[]> rows) throws IOException {
+        jdbcTemplate.execute("drop table if exists " + table);
+        jdbcTemplate.execute("create table " + table + " (id bigint primary key, content varchar(" + MAX_LENGTH + "), " +
+                "content_compressed bytea)");
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate("insert into " + table + " (id, content, content_compressed) values (?, ?, ?)",
+                    rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+        jdbcTemplate.execute("vacuum analyze " + table);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("tableBytes", jdbcTemplate.queryForObject("select pg_total_relation_size(?::regclass)", Long.class, table));
+        result.put("heapBytes", jdbcTemplate.queryForObject("select pg_relation_size(?::regclass)", Long.class, table));
+        result.put("toastBytes", jdbcTemplate.queryForObject("select coalesce(pg_total_relation_size(nullif(reltoastrelid, 0)), 0) " +
+                "from pg_class where oid = ?::regclass", Long.class, table));
+
+        // Hashing forces every value to be read from the TOAST relation as well, which merely selecting it does not
+        String plan = jdbcTemplate.queryForObject("explain (analyze, buffers, format json) select md5(content), " +
+                "md5(content_compressed) from " + table, String.class);
+        JsonNode root = MAPPER.readTree(plan).get(0).get("Plan");
+        result.put("readBuffers", root.get("Shared Hit Blocks").asLong() + root.get("Shared Read Blocks").asLong());
+
+        readAll(table); // Warm up
+        long start = System.nanoTime();
+        readAll(table);
+        result.put("readMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return result;
+    }
+
+    /**
+     * Read all contents of the passed table in ID order, decoding compressed ones.
+     */
+    private List<String> readAll(String table) {
+        return jdbcTemplate.query("select content, content_compressed from " + table + " order by id",
+                (rs, rowNum) -> rs.getString(1) != null ? rs.getString(1) : MessageContentCodec.decode(rs.getBytes(2)));
+    }
+
+    private static double savings(Map<String, Object> plain, Map<String, Object> compressed, String key) {
+        double before = ((Number) plain.get(key)).doubleValue();
+        double after = ((Number) compressed.get(key)).doubleValue();
+        return Math.round((1 - after / before) * 1000) / 1000.0;
+    }
+
+    /**
+     * Generate the corpus: mostly chat lines, with every tenth message a paste.
+     */
+    private static List<String> corpus(Random random) {
+        List<String> corpus = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            String content;
+            int kind = random.nextInt(100);
+            if (kind < 90) {
+                content = sentence(random, 3 + random.nextInt(25));
+            } else if (kind < 95) {
+                content = log(random, 10 + random.nextInt(40));
+            } else if (kind < 98) {
+                content = code(random, 10 + random.nextInt(50));
+            } else {
+                content = stackTrace(random, 10 + random.nextInt(40));
+            }
+
+            corpus.add(content.length() > MAX_LENGTH ? content.substring(0, MAX_LENGTH) : content);
+        }
+
+        return corpus;
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return sentence.toString();
+    }
+
+    private static String log(Random random, int lines) {
+        StringBuilder log = new StringBuilder();
+        long timestamp = 1_600_000_000_000L + random.nextInt(1_000_000);
+        for (int i = 0; i < lines; i++) {
+            timestamp += random.nextInt(500);
+            log.append(String.format("2020-09-13 %02d:%02d:%02d.%03d %5s %d --- [nio-8080-exec-%d] %-40s : %s%n",
+                    timestamp / 3_600_000 % 24, timestamp / 60_000 % 60, timestamp / 1000 % 60, timestamp % 1000,
+                    LOG_LEVELS[random.nextInt(LOG_LEVELS.length)], 4711, 1 + random.nextInt(10),
+                    LOGGERS[random.nextInt(LOGGERS.length)], sentence(random, 4 + random.nextInt(10))));
+        }
+
+        return log.toString();
+    }
+
+    private static String code(Random random, int lines) {
+        StringBuilder code = new StringBuilder("```java\n");
+        int indent = 1;
+        for (int i = 0; i < lines; i++) {
+            code.append("    ".repeat(indent));
+            switch (random.nextInt(5)) {
+                case 0:
+                    code.append("if (").append(WORDS[random.nextInt(WORDS.length)]).append(" != null) {\n");
+                    indent++;
+                    break;
+                case 1:
+                    if (indent > 1) {
+                        indent--;
+                    }
+                    code.append("}\n");
+                    break;
+                default:
+                    code.append("var ").append(WORDS[random.nextInt(WORDS.length)]).append(i).append(" = ")
+                            .append(WORDS[random.nextInt(WORDS.length)]).append("Service.get(")
+                            .append(random.nextInt(1000)).append(");\n");
+            }
+        }
+
+        return code.append("```").toString();
+    }
+
+    private static String stackTrace(Random random, int frames) {
+        StringBuilder trace = new StringBuilder("java.lang.IllegalStateException: ")
+                .append(sentence(random, 5)).append('\n');
+        for (int i = 0; i < frames; i++) {
+            String logger = LOGGERS[random.nextInt(LOGGERS.length)];
+            trace.append("\tat ").append(logger).append('.').append(WORDS[random.nextInt(WORDS.length)])
+                    .append('(').append(logger.substring(logger.lastIndexOf('.') + 1)).append(".java:")
+                    .append(1 + random.nextInt(900)).append(")\n");
+        }
+
+        return trace.toString();
+    }
+
+}
@@ -0,0 +1,189 @@
+package edu.hm.chat.perf;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Recorded latencies or plans of the repository methods, which measurements are compared against.
+ */
+class PerformanceBaseline {
+
+    /**
+     * Absolute slack in microseconds added to the tolerance, so jitter of very fast queries is no regression.
+     */
+    private static final long SLACK_MICROS = 500;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Recorded measurements per case name.
+     */
+    private final Map<String, Measurement> cases;
+
+    private PerformanceBaseline(Map<String, Measurement> cases) {
+        this.cases = cases;
+    }
+
+    /**
+     * Create a baseline without recorded measurements.
+     */
+    static PerformanceBaseline empty() {
+        return new PerformanceBaseline(new TreeMap<>());
+    }
+
+    /**
+     * Load the baseline from the passed file, which may not exist yet.
+     */
+    static PerformanceBaseline load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return empty();
+        }
+
+        return new PerformanceBaseline(MAPPER.readValue(file.toFile(), new TypeReference<TreeMap<String, Measurement>>() {
+        }));
+    }
+
+    /**
+     * Compare the plans of the passed measurement with the baseline.
+     *
+     * @param name     of the case
+     * @param measured measurement of the case
+     * @return descriptions of the regressions, empty if there are none or the baseline has no entry for the case
+     */
+    List<String> comparePlans(String name, Measurement measured) {
+        List<String> regressions = new ArrayList<>();
+
+        Measurement recorded = cases.get(name);
+        if (recorded == null) {
+            return regressions;
+        }
+
+        for (String table : measured.getSeqScans()) {
+            if (!recorded.getSeqScans().contains(table)) {
+                regressions.add(String.format("plan switched to a sequential scan on %s", table));
+            }
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Compare the latencies of the passed measurement with the baseline.
+     *
+     * @param name      of the case
+     * @param measured  measurement of the case
+     * @param tolerance allowed relative slowdown
+     * @return descriptions of the regressions, empty if there are none or the baseline has no entry for the case
+     */
+    List<String> compareLatencies(String name, Measurement measured, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+
+        Measurement recorded = cases.get(name);
+        if (recorded == null) {
+            return regressions;
+        }
+
+        checkLatency(regressions, "p50", measured.getP50Micros(), recorded.getP50Micros(), tolerance);
+        checkLatency(regressions, "p95", measured.getP95Micros(), recorded.getP95Micros(), tolerance);
+
+        return regressions;
+    }
+
+    /**
+     * Check whether the baseline has an entry for the passed case.
+     */
+    boolean contains(String name) {
+        return cases.containsKey(name);
+    }
+
+    /**
+     * Replace the recorded measurement of the passed case.
+     */
+    void record(String name, Measurement measured) {
+        cases.put(name, measured);
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        MAPPER.writeValue(file.toFile(), cases);
+    }
+
+    private static void checkLatency(List<String> regressions, String percentile, long measured, long recorded, double tolerance) {
+        long allowed = (long) (recorded * (1 + tolerance)) + SLACK_MICROS;
+        if (measured > allowed) {
+            regressions.add(String.format("%s of %d us exceeds %d us (baseline %d us)", percentile, measured, allowed, recorded));
+        }
+    }
+
+    /**
+     * Latency percentiles and plan summary of a repository method.
+     * Percentiles are left out of the plan baseline, which is shared across machines.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    static class Measurement {
+
+        private long p50Micros;
+
+        private long p95Micros;
+
+        private long p99Micros;
+
+        /**
+         * Tables scanned sequentially by the plans of the issued statements.
+         */
+        private List<String> seqScans = new ArrayList<>();
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public void setP50Micros(long p50Micros) {
+            this.p50Micros = p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public void setP95Micros(long p95Micros) {
+            this.p95Micros = p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public void setP99Micros(long p99Micros) {
+            this.p99Micros = p99Micros;
+        }
+
+        public List<String> getSeqScans() {
+            return seqScans;
+        }
+
+        public void setSeqScans(List<String> seqScans) {
+            this.seqScans = seqScans;
+        }
+
+        /**
+         * Get a copy of the measurement without the latencies.
+         */
+        Measurement plansOnly() {
+            Measurement plans = new Measurement();
+            plans.setSeqScans(seqScans);
+            return plans;
+        }
+
+    }
+
+}
@@ -0,0 +1,291 @@
+package edu.hm.chat.perf;
+
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.RoleRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Role;
+import edu.hm.chat.persistence.model.User;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Performance regression suite of the repository methods on the hot paths.
+ * <p>
+ * Boots an embedded PostgreSQL, seeds the scaled dataset of the generator profile and measures latency
+ * percentiles of every repository method. The generic plans of the issued statements are written to
+ * {@code build/reports/perf} next to the measurements. Plans are compared against {@code src/perfTest/perf-baseline.json},
+ * latencies against a baseline of the machine running the suite, which is recorded by the first run on it.
+ * Both are rewritten when running with {@code -Pperf.updateBaseline}.
+ */
+@SpringBootTest
+@ActiveProfiles({"generator", "perf"})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RepositoryPerformanceTest {
+
+    /**
+     * Invocations before measuring, so caches and JIT are warm.
+     */
+    private static final int WARMUP_ITERATIONS = 50;
+
+    /**
+     * Measured invocations per repository method.
+     */
+    private static final int ITERATIONS = 300;
+
+    private static final Pattern SEQ_SCAN = Pattern.compile("Seq Scan on (\\w+)");
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private ChatRepository chatRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private ResourceInfoRepository resourceInfoRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    private PerformanceBaseline baseline;
+
+    private PerformanceBaseline latencyBaseline;
+
+    private final Map<String, PerformanceBaseline.Measurement> measurements = new LinkedHashMap<>();
+
+    private final double tolerance = Double.parseDouble(System.getProperty("perf.tolerance", "0.5"));
+
+    private final boolean updateBaseline = Boolean.parseBoolean(System.getProperty("perf.updateBaseline", "false"));
+
+    private final Path baselineFile = Paths.get(System.getProperty("perf.baselineFile", "src/perfTest/perf-baseline.json"));
+
+    private final Path latencyBaselineFile = Paths.get(System.getProperty("perf.latencyBaselineFile", "build/perf-latency-baseline.json"));
+
+    private final Path reportDirectory = Paths.get(System.getProperty("perf.reportDir", "build/reports/perf"));
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) throws IOException {
+        if (postgres == null) {
+            postgres = EmbeddedPostgres.builder().start();
+        }
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+    }
+
+    @BeforeAll
+    void setUp() throws IOException {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+
+        baseline = PerformanceBaseline.load(baselineFile);
+        latencyBaseline = PerformanceBaseline.load(latencyBaselineFile);
+        Files.createDirectories(reportDirectory);
+
+        jdbcTemplate.execute("analyze");
+    }
+
+    @AfterAll
+    void tearDown() throws IOException {
+        PerformanceBaseline report = PerformanceBaseline.empty();
+        measurements.forEach(report::record);
+        report.write(reportDirectory.resolve("measurements.json"));
+
+        if (updateBaseline) {
+            measurements.forEach((name, measurement) -> baseline.record(name, measurement.plansOnly()));
+            baseline.write(baselineFile);
+        }
+
+        boolean recorded = false;
+        for (Map.Entry<String, PerformanceBaseline.Measurement> entry : measurements.entrySet()) {
+            if (updateBaseline || !latencyBaseline.contains(entry.getKey())) {
+                latencyBaseline.record(entry.getKey(), entry.getValue());
+                recorded = true;
+            }
+        }
+        if (recorded) {
+            latencyBaseline.write(latencyBaselineFile);
+        }
+    }
+
+    @Test
+    void findChatsByMember() {
+        User member = userRepository.findById(jdbcTemplate.queryForObject(
+                "select members_id from chat_members group by members_id order by count(*) desc, members_id limit 1", Long.class)).orElseThrow();
+
+        measure("ChatRepository.findByMembersContaining", () -> chatRepository.findByMembersContaining(member).size());
+    }
+
+    @Test
+    void findMessagesByChat() {
+        Chat chat = chatRepository.findById(jdbcTemplate.queryForObject(
+                "select chat_id from message group by chat_id order by count(*) desc, chat_id limit 1", Long.class)).orElseThrow();
+        PageRequest page = PageRequest.of(0, 20, Sort.by(Sort.Direction.DESC, "timestamp", "id"));
+
+        measure("MessageRepository.findByChat", () -> messageRepository.findByChat(chat, page).getNumberOfElements());
+    }
+
+    @Test
+    void findUsersByRole() {
+        Role role = roleRepository.findByName("ROLE_USER");
+
+        measure("UserRepository.findByRolesContaining", () -> userRepository.findByRolesContaining(role).size());
+    }
+
+    @Test
+    void findResourcesByOwner() {
+        Long ownerId = jdbcTemplate.queryForObject(
+                "select owner_id from resource_info group by owner_id order by count(*) desc, owner_id limit 1", Long.class);
+
+        measure("ResourceInfoRepository.findByOwnerId", () -> resourceInfoRepository.findByOwnerId(ownerId).size());
+    }
+
+    /**
+     * Measure the passed repository invocation, write its plans and compare it against the baseline.
+     */
+    private void measure(String name, Runnable invocation) {
+        StatementRecorder.start();
+        transactionTemplate.execute(status -> {
+            invocation.run();
+            return null;
+        });
+        List<String> plans = new ArrayList<>();
+        for (String sql : StatementRecorder.stop()) {
+            plans.add(explain(sql));
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            transactionTemplate.execute(status -> {
+                invocation.run();
+                return null;
+            });
+        }
+
+        long[] nanos = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            transactionTemplate.execute(status -> {
+                invocation.run();
+                return null;
+            });
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+
+        PerformanceBaseline.Measurement measurement = new PerformanceBaseline.Measurement();
+        measurement.setP50Micros(percentile(nanos, 0.5) / 1000);
+        measurement.setP95Micros(percentile(nanos, 0.95) / 1000);
+        measurement.setP99Micros(percentile(nanos, 0.99) / 1000);
+
+        TreeSet<String> seqScans = new TreeSet<>();
+        for (String plan : plans) {
+            Matcher matcher = SEQ_SCAN.matcher(plan);
+            while (matcher.find()) {
+                seqScans.add(matcher.group(1));
+            }
+        }
+        measurement.setSeqScans(new ArrayList<>(seqScans));
+        measurements.put(name, measurement);
+
+        try {
+            Files.writeString(reportDirectory.resolve(name + ".plan.txt"), String.join("\n\n", plans));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        List<String> regressions = new ArrayList<>();
+        if (!updateBaseline) {
+            regressions.addAll(baseline.comparePlans(name, measurement));
+            regressions.addAll(latencyBaseline.compareLatencies(name, measurement, tolerance));
+        }
+        assertTrue(regressions.isEmpty(), () -> name + " regressed: " + String.join(", ", regressions));
+    }
+
+    /**
+     * Explain the generic plan of the passed statement, which does not depend on the parameter values.
+     */
+    private String explain(String sql) {
+        StringBuilder prepared = new StringBuilder();
+        int parameters = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                prepared.append('$').append(++parameters);
+            } else {
+                prepared.append(c);
+            }
+        }
+
+        String arguments = parameters == 0 ? "" : "(" + String.join(", ", Collections.nCopies(parameters, "null")) + ")";
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("set plan_cache_mode = force_generic_plan");
+                statement.execute("prepare perf_statement as " + prepared);
+
+                StringBuilder plan = new StringBuilder(sql).append('\n');
+                try (ResultSet rows = statement.executeQuery("explain execute perf_statement" + arguments)) {
+                    while (rows.next()) {
+                        plan.append(rows.getString(1)).append('\n');
+                    }
+                } finally {
+                    statement.execute("deallocate perf_statement");
+                    statement.execute("reset plan_cache_mode");
+                }
+
+                return plan.toString();
+            }
+        });
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+}
@@ -0,0 +1,237 @@
+package edu.hm.chat.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import edu.hm.chat.constants.SecurityConstants;
+import edu.hm.chat.persistence.dao.ResourceInfoRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.ResourceInfo;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.ResourceStorageService;
+import edu.hm.chat.service.model.StoredBlob;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Throughput benchmark of resource downloads over HTTP.
+ * <p>
+ * Boots the application on a random port and issues bursts of concurrent downloads against it: whole large files
+ * (transferred through sendfile), small files (served from the hot resource cache), single ranges and conditional requests.
+ * Throughput and latency percentiles of every burst are written to {@code build/reports/perf/downloads.json}.
+ * They depend too much on the machine to be compared against a baseline, thus only the responses are verified.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("perf")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ResourceDownloadPerformanceTest {
+
+    /**
+     * Downloads issued at once per burst.
+     */
+    private static final int CONCURRENT_DOWNLOADS = 1000;
+
+    /**
+     * Size of the large resource, sent through sendfile.
+     */
+    private static final int LARGE_SIZE = 1024 * 1024;
+
+    /**
+     * Size of the small resource, about the size of an avatar and thus cached.
+     */
+    private static final int SMALL_SIZE = 16 * 1024;
+
+    /**
+     * Size of the range requested from the large resource.
+     */
+    private static final int RANGE_SIZE = 64 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static EmbeddedPostgres postgres;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ResourceStorageService resourceStorageService;
+
+    @Autowired
+    private ResourceInfoRepository resourceInfoRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final Map<String, Map<String, Object>> results = new LinkedHashMap<>();
+
+    private final Path reportDirectory = Paths.get(System.getProperty("perf.reportDir", "build/reports/perf"));
+
+    private String token;
+
+    private String largeResourceId;
+
+    private String smallResourceId;
+
+    @DynamicPropertySource
+    static void environment(DynamicPropertyRegistry registry) throws IOException {
+        if (postgres == null) {
+            postgres = EmbeddedPostgres.builder().start();
+        }
+
+        Path uploadTarget = Files.createTempDirectory("res-uploads");
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("edu.hm.chat.res.upload-target", uploadTarget::toString);
+    }
+
+    @BeforeAll
+    void setUp() throws Exception {
+        HttpResponse<Void> login = client.send(HttpRequest.newBuilder(uri(SecurityConstants.AUTH_LOGIN_URL
+                        + "?username=" + SecurityConstants.DEFAULT_USERNAME + "&password=" + SecurityConstants.DEFAULT_PASSWORD))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build(), HttpResponse.BodyHandlers.discarding());
+        token = login.headers().firstValue(SecurityConstants.TOKEN_HEADER).orElseThrow();
+
+        User owner = userRepository.findByEmail(SecurityConstants.DEFAULT_USERNAME);
+        Random random = new Random(42);
+        largeResourceId = storeResource(owner, random, LARGE_SIZE);
+        smallResourceId = storeResource(owner, random, SMALL_SIZE);
+
+        Files.createDirectories(reportDirectory);
+    }
+
+    @AfterAll
+    void tearDown() throws IOException {
+        MAPPER.writeValue(reportDirectory.resolve("downloads.json").toFile(), results);
+    }
+
+    @Test
+    void downloadLargeResources() {
+        burst("large", 200, LARGE_SIZE, builder -> builder.uri(uri("/api/resource/" + largeResourceId)));
+    }
+
+    @Test
+    void downloadSmallResources() {
+        burst("small", 200, SMALL_SIZE, builder -> builder.uri(uri("/api/resource/" + smallResourceId)));
+    }
+
+    @Test
+    void downloadRanges() {
+        burst("range", 206, RANGE_SIZE, builder -> builder.uri(uri("/api/resource/" + largeResourceId))
+                .header(HttpHeaders.RANGE, "bytes=" + RANGE_SIZE + "-" + (2 * RANGE_SIZE - 1)));
+    }
+
+    @Test
+    void revalidateResources() throws Exception {
+        String eTag = client.send(HttpRequest.newBuilder(uri("/api/resource/" + smallResourceId))
+                .header(SecurityConstants.TOKEN_HEADER, token)
+                .build(), HttpResponse.BodyHandlers.discarding()).headers().firstValue(HttpHeaders.ETAG).orElseThrow();
+
+        burst("notModified", 304, 0, builder -> builder.uri(uri("/api/resource/" + smallResourceId))
+                .header(HttpHeaders.IF_NONE_MATCH, eTag));
+    }
+
+    /**
+     * Issue concurrent downloads, verify their responses and record throughput and latency.
+     */
+    private void burst(String name, int expectedStatus, long expectedSize, Consumer<HttpRequest.Builder> request) {
+        List<CompletableFuture<long[]>> downloads = new ArrayList<>(CONCURRENT_DOWNLOADS);
+        long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENT_DOWNLOADS; i++) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder()
+                    .header(SecurityConstants.TOKEN_HEADER, token)
+                    .timeout(Duration.ofMinutes(2));
+            request.accept(builder);
+
+            long sent = System.nanoTime();
+            AtomicLong received = new AtomicLong();
+            downloads.add(client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofByteArrayConsumer(
+                    chunk -> chunk.ifPresent(bytes -> received.addAndGet(bytes.length))
+            )).thenApply(response -> new long[]{response.statusCode(), received.get(), System.nanoTime() - sent}));
+        }
+
+        CompletableFuture.allOf(downloads.toArray(new CompletableFuture[0])).join();
+        long elapsed = System.nanoTime() - start;
+
+        long[] latencies = new long[CONCURRENT_DOWNLOADS];
+        long bytes = 0;
+        for (int i = 0; i < CONCURRENT_DOWNLOADS; i++) {
+            long[] download = downloads.get(i).join();
+            assertEquals(expectedStatus, download[0], name + " download " + i);
+            assertEquals(expectedSize, download[1], name + " download " + i);
+
+            bytes += download[1];
+            latencies[i] = download[2];
+        }
+        Arrays.sort(latencies);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("downloads", CONCURRENT_DOWNLOADS);
+        result.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        result.put("downloadsPerSecond", Math.round(CONCURRENT_DOWNLOADS / (elapsed / 1e9)));
+        result.put("megabytesPerSecond", Math.round(bytes / (1024.0 * 1024.0) / (elapsed / 1e9)));
+        result.put("p50Millis", TimeUnit.NANOSECONDS.toMillis(latencies[CONCURRENT_DOWNLOADS / 2]));
+        result.put("p95Millis", TimeUnit.NANOSECONDS.toMillis(latencies[(int) (CONCURRENT_DOWNLOADS * 0.95)]));
+        result.put("p99Millis", TimeUnit.NANOSECONDS.toMillis(latencies[(int) (CONCURRENT_DOWNLOADS * 0.99)]));
+        results.put(name, result);
+    }
+
+    private String storeResource(User owner, Random random, int size) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        StoredBlob blob = resourceStorageService.store(new ByteArrayInputStream(content));
+
+        ResourceInfo info = new ResourceInfo(UUID.randomUUID().toString(), owner);
+        info.setVisibleFor(Set.of(owner));
+        info.setBlobHash(blob.getHash());
+        info.setContentType("application/octet-stream");
+        info.setOriginalName("benchmark.bin");
+        info.setSize(blob.getSize());
+        info.setPublic(false);
+
+        return resourceInfoRepository.save(info).getResourceId();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+}
@@ -0,0 +1,47 @@
+package edu.hm.chat.perf;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statement inspector recording the SQL Hibernate issues on the current thread while recording,
+ * so the statements behind a repository method can be explained.
+ */
+public class StatementRecorder implements StatementInspector {
+
+    /**
+     * Statements recorded on the current thread, null while not recording.
+     */
+    private static final ThreadLocal<List<String>> RECORDED = new ThreadLocal<>();
+
+    /**
+     * Start recording the statements of the current thread.
+     */
+    static void start() {
+        RECORDED.set(new ArrayList<>());
+    }
+
+    /**
+     * Stop recording the statements of the current thread.
+     *
+     * @return the recorded statements
+     */
+    static List<String> stop() {
+        List<String> recorded = RECORDED.get();
+        RECORDED.remove();
+        return recorded != null ? recorded : List.of();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> recorded = RECORDED.get();
+        if (recorded != null) {
+            recorded.add(sql);
+        }
+
+        return sql;
+    }
+
+}
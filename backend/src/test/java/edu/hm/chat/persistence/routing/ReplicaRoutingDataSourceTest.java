@@ -0,0 +1,77 @@
+package edu.hm.chat.persistence.routing;
+
+import edu.hm.chat.config.DataSourceRoutingConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final Connection primaryConnection = mock(Connection.class);
+
+    private final Connection replicaConnection = mock(Connection.class);
+
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource primary = mock(DataSource.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        DataSource replica = mock(DataSource.class);
+        when(replica.getConnection()).thenReturn(replicaConnection);
+
+        DataSourceRoutingConfig config = new DataSourceRoutingConfig();
+        config.setRoutingEnabled(true);
+
+        dataSource = new ReplicaRoutingDataSource(primary, List.of(replica), new ReadYourWritesGuard(config), Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        RequestContextHolder.resetRequestAttributes();
+        dataSource.close();
+    }
+
+    @Test
+    void routesReadOnlyTransactionsToReplica() throws Exception {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertSame(replicaConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void routesWritesToPrimary() throws Exception {
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void routesReadsOfModifyingRequestsToPrimary() throws Exception {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("PUT", "/api/user/1")));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertSame(primaryConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void routesReadsOfSafeRequestsToReplica() throws Exception {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest("GET", "/api/user/1")));
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        assertSame(replicaConnection, dataSource.getConnection());
+    }
+
+}
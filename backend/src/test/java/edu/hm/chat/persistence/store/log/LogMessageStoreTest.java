@@ -0,0 +1,122 @@
+package edu.hm.chat.persistence.store.log;
+
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogMessageStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private MessageStoreConfig config;
+
+    private LogMessageStore store;
+
+    private final Chat chat = new Chat();
+
+    private final User author = new User();
+
+    @BeforeEach
+    void setUp() {
+        config = new MessageStoreConfig();
+        config.setTarget(directory.toString());
+        config.setSegmentSize(4096);
+        config.setIndexInterval(8);
+        config.setSyncInterval(Duration.ofMillis(2));
+
+        chat.setId(3L);
+        author.setId(9L);
+
+        store = new LogMessageStore(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.destroy();
+    }
+
+    @Test
+    void pagesConcurrentAppendsNewestFirst() {
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int i = 0; i < 125; i++) {
+                store.save(message("message " + thread + "/" + i));
+            }
+        });
+
+        List<Message> first = store.findPage(chat, 0, 20);
+        assertEquals(20, first.size());
+        assertTrue(first.get(0).getId() > first.get(1).getId());
+
+        List<Message> last = store.findPage(chat, 49, 20);
+        assertEquals(20, last.size());
+        assertTrue(last.get(0).getId() > last.get(19).getId());
+
+        assertEquals(0, store.findPage(chat, 50, 20).size());
+    }
+
+    @Test
+    void recoversFromTornTail() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            store.save(message("message " + i));
+        }
+        List<Message> before = store.findPage(chat, 0, 2);
+        store.destroy();
+
+        Path chatDirectory = directory.resolve("3");
+        Path last;
+        try (Stream<Path> segments = Files.list(chatDirectory)) {
+            List<Path> sorted = segments.sorted().collect(Collectors.toList());
+            last = sorted.get(sorted.size() - 1);
+        }
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        store = new LogMessageStore(config);
+        assertEquals(before.get(1).getId(), store.findPage(chat, 0, 1).get(0).getId());
+
+        Message appended = store.save(message("after"));
+        assertTrue(appended.getId() > before.get(0).getId());
+        assertEquals("after", store.findPage(chat, 0, 1).get(0).getContent());
+    }
+
+    @Test
+    void deletesChat() {
+        store.save(message("hello"));
+
+        store.deleteByChat(3L);
+
+        assertFalse(Files.exists(directory.resolve("3")));
+        assertEquals(0, store.findPage(chat, 0, 20).size());
+    }
+
+    private Message message(String content) {
+        Message message = new Message();
+        message.setAuthor(author);
+        message.setChat(chat);
+        message.setTimestamp(System.currentTimeMillis());
+        message.setType(MessageType.TEXT);
+        message.setContent(content);
+        return message;
+    }
+
+}
@@ -0,0 +1,57 @@
+package edu.hm.chat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ContentSnifferTest {
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0};
+
+    private static final byte[] ISO_MEDIA = {0, 0, 0, 0x18, 'f', 't', 'y', 'p', 'h', 'e', 'i', 'c'};
+
+    @Test
+    void detectsFormatsFromLeadingBytes() {
+        assertEquals("image/png", ContentSniffer.detect(PNG, PNG.length));
+        assertEquals("video/mp4", ContentSniffer.detect(ISO_MEDIA, ISO_MEDIA.length));
+        assertEquals("application/zip", ContentSniffer.detect(ascii("PK\3\4"), 4));
+        assertNull(ContentSniffer.detect(PNG, 4));
+        assertNull(ContentSniffer.detect(ascii("plain text"), 10));
+    }
+
+    @Test
+    void keepsDeclaredTypeSharingTheDetectedContainer() {
+        String docx = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+
+        assertEquals(docx, ContentSniffer.resolveContentType(docx, "application/zip"));
+        assertEquals("application/epub+zip", ContentSniffer.resolveContentType("application/epub+zip", "application/zip"));
+        assertEquals("audio/mp4", ContentSniffer.resolveContentType("audio/mp4", "video/mp4"));
+        assertEquals("video/quicktime", ContentSniffer.resolveContentType("video/quicktime", "video/mp4"));
+        assertEquals("audio/ogg", ContentSniffer.resolveContentType("audio/ogg", "application/ogg"));
+        assertEquals("image/heic", ContentSniffer.resolveContentType("image/heic", "video/mp4"));
+        assertEquals("text/plain; charset=utf-8", ContentSniffer.resolveContentType("text/plain; charset=utf-8", null));
+    }
+
+    @Test
+    void fillsMissingDeclaredType() {
+        assertEquals("image/png", ContentSniffer.resolveContentType(null, "image/png"));
+        assertEquals("image/png", ContentSniffer.resolveContentType("application/octet-stream", "image/png"));
+        assertEquals("application/octet-stream", ContentSniffer.resolveContentType("", null));
+    }
+
+    @Test
+    void rejectsFalseImageClaims() {
+        assertEquals("application/zip", ContentSniffer.resolveContentType("image/png", "application/zip"));
+        assertEquals("application/octet-stream", ContentSniffer.resolveContentType("image/svg+xml", null));
+        assertEquals("application/octet-stream", ContentSniffer.resolveContentType("image/heic", null));
+        assertEquals("image/jpeg", ContentSniffer.resolveContentType("image/png", "image/jpeg"));
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
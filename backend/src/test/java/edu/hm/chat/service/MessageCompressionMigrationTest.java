@@ -0,0 +1,67 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.config.MessageCompressionConfig;
+import edu.hm.chat.persistence.codec.MessageContentCodec;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class MessageCompressionMigrationTest {
+
+    private MessageRepository messageRepository;
+
+    private PlatformTransactionManager transactionManager;
+
+    private MessageCompressionMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        MessageCompressionConfig config = new MessageCompressionConfig();
+        config.setBatchSize(2);
+
+        messageRepository = mock(MessageRepository.class);
+        when(messageRepository.findUncompressedIds(anyLong(), eq(MessageContentCodec.THRESHOLD), eq(2)))
+                .thenReturn(List.of());
+        when(messageRepository.findAllById(any())).thenReturn(List.of());
+
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+
+        migration = new MessageCompressionMigration(config, messageRepository, mock(JdbcTemplate.class), transactionManager);
+    }
+
+    @Test
+    void continuesAfterCommittedBatches() {
+        when(messageRepository.findUncompressedIds(0, MessageContentCodec.THRESHOLD, 2)).thenReturn(List.of(3L, 7L));
+        when(messageRepository.findUncompressedIds(7, MessageContentCodec.THRESHOLD, 2)).thenReturn(List.of(9L));
+
+        migration.migrate();
+
+        verify(messageRepository).findUncompressedIds(7, MessageContentCodec.THRESHOLD, 2);
+        verify(messageRepository, never()).findUncompressedIds(9, MessageContentCodec.THRESHOLD, 2);
+    }
+
+    @Test
+    void migratesRolledBackBatchAgain() {
+        when(messageRepository.findUncompressedIds(0, MessageContentCodec.THRESHOLD, 2)).thenReturn(List.of(3L, 7L));
+        doThrow(new TransactionSystemException("commit failed")).doNothing().when(transactionManager).commit(any());
+
+        assertThrows(TransactionSystemException.class, () -> migration.migrate());
+        migration.migrate();
+
+        verify(messageRepository, times(2)).findUncompressedIds(0, MessageContentCodec.THRESHOLD, 2);
+        verify(messageRepository).findUncompressedIds(7, MessageContentCodec.THRESHOLD, 2);
+    }
+
+}
@@ -0,0 +1,61 @@
+package edu.hm.chat.service;
+
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingImageGrantsTest {
+
+    private final PendingImageGrants grants = new PendingImageGrants();
+
+    @Test
+    void grantsImageToChatMembersUntilRemoved() {
+        grants.add(message(1L, MessageType.IMAGE, "{\"id\":\"image\"}"));
+
+        assertTrue(grants.isVisibleFor("image", 2L));
+        assertTrue(grants.isVisibleFor("image", 3L));
+        assertFalse(grants.isVisibleFor("image", 4L));
+        assertFalse(grants.isVisibleFor("other", 2L));
+
+        grants.remove(1L);
+
+        assertFalse(grants.isVisibleFor("image", 2L));
+    }
+
+    @Test
+    void ignoresOtherMessages() {
+        grants.add(message(1L, MessageType.TEXT, "{\"id\":\"image\"}"));
+        grants.add(message(2L, MessageType.IMAGE, "not json"));
+
+        assertFalse(grants.isVisibleFor("image", 2L));
+    }
+
+    private static Message message(long id, MessageType type, String content) {
+        Chat chat = new Chat();
+        chat.setId(1L);
+        chat.setMembers(Set.of(user(2L), user(3L)));
+
+        Message message = new Message();
+        message.setId(id);
+        message.setChat(chat);
+        message.setAuthor(user(2L));
+        message.setType(type);
+        message.setContent(content);
+        return message;
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        return user;
+    }
+
+}
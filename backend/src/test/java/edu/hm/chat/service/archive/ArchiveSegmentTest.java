@@ -0,0 +1,86 @@
+package edu.hm.chat.service.archive;
+
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArchiveSegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsRangesAcrossBlocks() throws Exception {
+        ArchiveSegment segment = write(1000, 64);
+
+        assertEquals(1000, segment.getMessageCount());
+        assertEquals(1000 + 999 * 2, segment.getLastTimestamp());
+
+        List<ArchivedMessage> messages = new ArrayList<>();
+        segment.read(60, 70, messages::add);
+        assertEquals(10, messages.size());
+        assertEquals(60, messages.get(0).getId());
+        assertEquals("hello 69", messages.get(9).getContent());
+        assertEquals(7, messages.get(0).getAuthorId());
+        assertEquals(MessageType.TEXT, messages.get(0).getType());
+    }
+
+    @Test
+    void readsUpToTheEnd() throws Exception {
+        ArchiveSegment segment = write(100, 64);
+
+        List<ArchivedMessage> messages = new ArrayList<>();
+        segment.read(90, 200, messages::add);
+        assertEquals(10, messages.size());
+        assertEquals(99, messages.get(9).getId());
+    }
+
+    @Test
+    void countsMessagesBeforeTimestamp() throws Exception {
+        ArchiveSegment segment = write(1000, 64);
+
+        assertEquals(0, segment.countBefore(1000));
+        assertEquals(70, segment.countBefore(1000 + 70 * 2));
+        assertEquals(71, segment.countBefore(1000 + 70 * 2 + 1));
+        assertEquals(1000, segment.countBefore(Long.MAX_VALUE));
+    }
+
+    @Test
+    void emptySegment() throws Exception {
+        ArchiveSegment segment = write(0, 64);
+
+        assertEquals(0, segment.getMessageCount());
+        assertEquals(Long.MIN_VALUE, segment.getLastTimestamp());
+    }
+
+    private ArchiveSegment write(int count, int blockSize) throws Exception {
+        User author = new User();
+        author.setId(7L);
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = new Message();
+            message.setId((long) i);
+            message.setAuthor(author);
+            message.setTimestamp(1000L + i * 2);
+            message.setType(MessageType.TEXT);
+            message.setContent("hello " + i);
+            messages.add(message);
+        }
+
+        Path dataFile = directory.resolve("segment" + ArchiveSegment.DATA_EXTENSION);
+        Path indexFile = directory.resolve("segment" + ArchiveSegment.INDEX_EXTENSION);
+        ArchiveSegment.write(dataFile, indexFile, messages, blockSize);
+
+        return ArchiveSegment.open(dataFile, indexFile);
+    }
+
+}
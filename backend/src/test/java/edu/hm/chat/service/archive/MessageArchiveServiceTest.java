@@ -0,0 +1,106 @@
+package edu.hm.chat.service.archive;
+
+import edu.hm.chat.config.ArchiveConfig;
+import edu.hm.chat.persistence.dao.ArchiveWatermarkRepository;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.MessageRepository;
+import edu.hm.chat.persistence.model.ArchiveWatermark;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class MessageArchiveServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private ArchiveWatermarkRepository watermarkRepository;
+
+    private MessageArchiveService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ArchiveConfig config = new ArchiveConfig();
+        config.setTarget(directory.toString());
+        config.setMaxOpenChats(2);
+
+        watermarkRepository = mock(ArchiveWatermarkRepository.class);
+        service = new MessageArchiveService(config, mock(MessageRepository.class), mock(ChatRepository.class),
+                watermarkRepository, mock(PlatformTransactionManager.class));
+
+        for (long chatId = 1; chatId <= 3; chatId++) {
+            writeSegment(chatId, 100);
+        }
+    }
+
+    @Test
+    void readsNewestArchivedMessagesFirst() {
+        List<ArchivedMessage> messages = service.read(1, 10, 20);
+
+        assertEquals(20, messages.size());
+        assertEquals(70, messages.get(0).getId());
+        assertEquals(89, messages.get(19).getId());
+        assertEquals(List.of(), service.read(1, 100, 20));
+    }
+
+    @Test
+    void countsArchivedMessagesSinceTimestamp() {
+        assertEquals(0, service.countSince(1, Long.MAX_VALUE));
+        assertEquals(30, service.countSince(1, 70));
+        assertEquals(100, service.countSince(1, 0));
+        assertEquals(70, service.read(1, service.countSince(1, 70), 10).get(9).getId() + 1);
+    }
+
+    @Test
+    void closesLeastRecentlyReadChats() {
+        service.read(1, 0, 1);
+        service.read(2, 0, 1);
+        service.read(1, 0, 1);
+        service.read(3, 0, 1); // Closes chat 2
+
+        service.read(1, 0, 1);
+        verify(watermarkRepository, times(1)).findById(1L);
+
+        service.read(2, 0, 1);
+        verify(watermarkRepository, times(2)).findById(2L);
+    }
+
+    private void writeSegment(long chatId, int count) throws Exception {
+        User author = new User();
+        author.setId(7L);
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Message message = new Message();
+            message.setId((long) i);
+            message.setAuthor(author);
+            message.setTimestamp((long) i);
+            message.setType(MessageType.TEXT);
+            message.setContent("hello " + i);
+            messages.add(message);
+        }
+
+        Path chatDirectory = Files.createDirectories(directory.resolve(Long.toString(chatId)));
+        ArchiveSegment.write(chatDirectory.resolve("00000001" + ArchiveSegment.DATA_EXTENSION),
+                chatDirectory.resolve("00000001" + ArchiveSegment.INDEX_EXTENSION), messages, 16);
+
+        ArchiveWatermark watermark = new ArchiveWatermark(chatId);
+        watermark.setMessageCount((long) count);
+        watermark.setSegmentCount(1);
+        when(watermarkRepository.findById(chatId)).thenReturn(Optional.of(watermark));
+    }
+
+}
@@ -0,0 +1,81 @@
+package edu.hm.chat.service.cache;
+
+import edu.hm.chat.config.HotResourceCacheConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotResourceCacheTest {
+
+    private static final int ENTRY_SIZE = 1000;
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+
+    private HotResourceCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        HotResourceCacheConfig config = new HotResourceCacheConfig();
+        config.setCapacity(4 * ENTRY_SIZE);
+        config.setMaxEntrySize(ENTRY_SIZE);
+        cache = new HotResourceCache(config);
+
+        file = Files.write(directory.resolve("content"), new byte[ENTRY_SIZE]);
+    }
+
+    @Test
+    void admitsWhileThereIsRoom() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(cache.admits("resource-" + i, null, ENTRY_SIZE));
+            load("resource-" + i);
+        }
+
+        assertEquals(4 * ENTRY_SIZE, cache.getWeightedSize());
+        assertFalse(cache.admits("too-large", null, ENTRY_SIZE + 1));
+    }
+
+    @Test
+    void admitsOnlyResourcesRequestedMoreOftenThanTheEntryToReplace() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            for (int access = 0; access < 3; access++) {
+                cache.get("hot-" + i, null);
+            }
+            load("hot-" + i);
+        }
+
+        // A one-off download of a full cache is not loaded
+        assertTrue(cache.get("cold", null).isEmpty());
+        assertFalse(cache.admits("cold", null, ENTRY_SIZE));
+
+        for (int access = 0; access < 4; access++) {
+            cache.get("cold", null);
+        }
+        assertTrue(cache.admits("cold", null, ENTRY_SIZE));
+    }
+
+    @Test
+    void servesAdmittedContent() throws IOException {
+        cache.get("resource", null);
+        assertTrue(cache.admits("resource", null, ENTRY_SIZE));
+        load("resource");
+
+        assertEquals(ENTRY_SIZE, cache.get("resource", null).orElseThrow().getSize());
+
+        cache.invalidate("resource");
+        assertTrue(cache.get("resource", null).isEmpty());
+    }
+
+    private void load(String resourceId) throws IOException {
+        cache.put(resourceId, null, file, resourceId, 0, "application/octet-stream", true, null, cache.stamp());
+    }
+
+}
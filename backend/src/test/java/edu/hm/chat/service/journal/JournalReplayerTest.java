@@ -0,0 +1,225 @@
+package edu.hm.chat.service.journal;
+
+import edu.hm.chat.config.JournalConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.dao.ChatRepository;
+import edu.hm.chat.persistence.dao.JournalCheckpointRepository;
+import edu.hm.chat.persistence.dao.UserRepository;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.JournalCheckpoint;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import edu.hm.chat.service.MessageEffectsService;
+import edu.hm.chat.service.PendingImageGrants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class JournalReplayerTest {
+
+    private static final int NODE_ID = 3;
+
+    @TempDir
+    Path directory;
+
+    private JournalConfig config;
+
+    private MessageStoreConfig messageStoreConfig;
+
+    private MessageJournal journal;
+
+    private JournalCheckpointRepository checkpointRepository;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private MessageEffectsService messageEffectsService;
+
+    private PendingImageGrants pendingImageGrants;
+
+    private JournalReplayer replayer;
+
+    /**
+     * IDs of the messages passed to the insert statement, in order.
+     */
+    private final List<Long> inserted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new JournalConfig();
+        config.setTarget(directory.toString());
+        config.setFileSize(4096);
+        config.setSyncInterval(Duration.ofMillis(1));
+        config.setReplayInterval(Duration.ofHours(1)); // Replayed by the tests themselves
+
+        messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setNodeId(NODE_ID);
+
+        journal = new MessageJournal(config, messageStoreConfig);
+        checkpointRepository = mock(JournalCheckpointRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        messageEffectsService = mock(MessageEffectsService.class);
+        pendingImageGrants = new PendingImageGrants();
+
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> arguments = invocation.getArgument(1);
+            arguments.forEach(row -> inserted.add((Long) row[0]));
+
+            int[] counts = new int[arguments.size()];
+            Arrays.fill(counts, 1);
+            return counts;
+        });
+
+        ChatRepository chatRepository = mock(ChatRepository.class);
+        when(chatRepository.findById(anyLong())).thenAnswer(invocation -> {
+            Chat chat = new Chat();
+            chat.setId(invocation.getArgument(0));
+            return Optional.of(chat);
+        });
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findById(anyLong())).thenAnswer(invocation -> {
+            User user = new User();
+            user.setId(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+
+        replayer = new JournalReplayer(config, journal, messageStoreConfig, checkpointRepository, chatRepository,
+                userRepository, messageEffectsService, pendingImageGrants, jdbcTemplate, mock(PlatformTransactionManager.class));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        replayer.destroy();
+        journal.destroy();
+    }
+
+    @Test
+    void resumesFromCheckpointOfNode() throws IOException {
+        append("replayed before");
+        long checkpoint = journal.getWritePosition();
+        long second = append("second");
+        long third = append("third");
+        when(checkpointRepository.findById("messages-" + NODE_ID))
+                .thenReturn(Optional.of(new JournalCheckpoint("messages-" + NODE_ID, checkpoint)));
+
+        replayer.init();
+        replayer.replay();
+
+        assertEquals(List.of(second, third), inserted);
+        assertEquals(journal.getWritePosition(), replayer.getReplayedPosition());
+        assertEquals(journal.getWritePosition(), (long) savedCheckpoint().getPosition());
+        assertEquals("messages-" + NODE_ID, savedCheckpoint().getName());
+        verify(messageEffectsService, times(2)).apply(any(Message.class));
+    }
+
+    @Test
+    void appliesEffectsOfInsertedRecordsOnly() throws IOException {
+        append("replayed before");
+        long fresh = append("fresh");
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0, 1});
+
+        replayer.init();
+        replayer.replay();
+
+        ArgumentCaptor<Message> applied = ArgumentCaptor.forClass(Message.class);
+        verify(messageEffectsService).apply(applied.capture());
+        assertEquals(fresh, (long) applied.getValue().getId());
+        assertEquals("fresh", applied.getValue().getContent());
+    }
+
+    @Test
+    void restartsLostJournalBehindCheckpoint() throws IOException {
+        when(checkpointRepository.findById("messages-" + NODE_ID))
+                .thenReturn(Optional.of(new JournalCheckpoint("messages-" + NODE_ID, 10_000L)));
+
+        replayer.init();
+        long id = append("after loss");
+        replayer.replay();
+
+        assertEquals(10_000, journal.getFirstPosition());
+        assertEquals(List.of(id), inserted);
+        assertEquals(journal.getWritePosition(), (long) savedCheckpoint().getPosition());
+    }
+
+    @Test
+    void resetsCheckpointAheadOfJournalWithRecords() throws IOException {
+        long id = append("not replayed");
+        when(checkpointRepository.findById("messages-" + NODE_ID))
+                .thenReturn(Optional.of(new JournalCheckpoint("messages-" + NODE_ID, 10_000L)));
+
+        replayer.init();
+
+        ArgumentCaptor<JournalCheckpoint> reset = ArgumentCaptor.forClass(JournalCheckpoint.class);
+        verify(checkpointRepository).save(reset.capture());
+        assertEquals(0, (long) reset.getValue().getPosition());
+
+        replayer.replay();
+
+        assertEquals(List.of(id), inserted);
+    }
+
+    @Test
+    void dropsImageGrantsOnceReplayed() throws IOException {
+        Message message = message(MessageType.IMAGE, "{\"id\":\"image\"}");
+        message.setId(journal.nextId());
+        pendingImageGrants.add(message);
+        journal.append(message);
+
+        assertTrue(pendingImageGrants.isVisibleFor("image", 2L));
+
+        replayer.init();
+        replayer.replay();
+
+        assertFalse(pendingImageGrants.isVisibleFor("image", 2L));
+    }
+
+    private long append(String content) {
+        return journal.append(message(MessageType.TEXT, content));
+    }
+
+    private static Message message(MessageType type, String content) {
+        User author = new User();
+        author.setId(2L);
+        Chat chat = new Chat();
+        chat.setId(1L);
+        chat.setMembers(Set.of(author));
+
+        Message message = new Message();
+        message.setChat(chat);
+        message.setAuthor(author);
+        message.setTimestamp(System.currentTimeMillis());
+        message.setType(type);
+        message.setContent(content);
+        return message;
+    }
+
+    private JournalCheckpoint savedCheckpoint() {
+        ArgumentCaptor<JournalCheckpoint> checkpoint = ArgumentCaptor.forClass(JournalCheckpoint.class);
+        verify(checkpointRepository, atLeastOnce()).save(checkpoint.capture());
+        List<JournalCheckpoint> saved = checkpoint.getAllValues();
+        return saved.get(saved.size() - 1);
+    }
+
+}
@@ -0,0 +1,235 @@
+package edu.hm.chat.service.journal;
+
+import edu.hm.chat.config.JournalConfig;
+import edu.hm.chat.config.MessageStoreConfig;
+import edu.hm.chat.persistence.model.Chat;
+import edu.hm.chat.persistence.model.Message;
+import edu.hm.chat.persistence.model.MessageType;
+import edu.hm.chat.persistence.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageJournalTest {
+
+    private static final int FILE_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private JournalConfig config;
+
+    private MessageJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        config = new JournalConfig();
+        config.setTarget(directory.toString());
+        config.setFileSize(FILE_SIZE);
+        config.setSyncInterval(Duration.ofMillis(1));
+
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.destroy();
+    }
+
+    @Test
+    void readsAppendedRecords() {
+        long first = append("first");
+        long second = append("second");
+
+        List<JournalRecord> records = readAll(journal.getFirstPosition());
+
+        assertEquals(List.of(first, second), records.stream().map(JournalRecord::getId).collect(Collectors.toList()));
+        assertEquals("second", records.get(1).getContent());
+        assertEquals(journal.getWritePosition(), journal.getDurablePosition());
+    }
+
+    @Test
+    void truncatesTornTailOnRecovery() throws IOException {
+        append("kept");
+        long torn = journal.getWritePosition();
+        append("torn");
+        long end = journal.getWritePosition();
+        journal.destroy();
+
+        // Corrupt the last byte of the payload, so its checksum does not match anymore
+        try (FileChannel channel = FileChannel.open(files().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), end - 1);
+        }
+
+        journal = open();
+
+        assertEquals(torn, journal.getWritePosition());
+        assertEquals(List.of("kept"), contents(readAll(journal.getFirstPosition())));
+
+        append("after");
+        assertEquals(List.of("kept", "after"), contents(readAll(journal.getFirstPosition())));
+    }
+
+    @Test
+    void preallocatesSpareFileAndRollsOverIntoIt() throws Exception {
+        while (journal.getWritePosition() < FILE_SIZE / 2) {
+            append("message");
+        }
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (journal.getSizeOnDisk() < 2L * FILE_SIZE && System.nanoTime() < deadline) {
+            Thread.sleep(1); // The spare file is preallocated by the sync in the background
+        }
+
+        assertEquals(2L * FILE_SIZE, journal.getSizeOnDisk());
+        assertEquals(2, files().size());
+
+        int count = 0;
+        long start = journal.getFirstPosition();
+        for (; journal.getWritePosition() < FILE_SIZE + FILE_SIZE / 4; count++) {
+            append("message " + count);
+        }
+
+        assertEquals(List.of(0L, (long) FILE_SIZE), fileBases());
+        assertEquals(count, readAll(start).stream().filter(r -> r.getContent().startsWith("message ")).count());
+    }
+
+    @Test
+    void keepsRecordsWhileRollingOverConcurrently() throws Exception {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int writer = 0; writer < 8; writer++) {
+                int number = writer;
+                futures.add(writers.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        ids.add(append("message " + number + "/" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            writers.shutdown();
+        }
+
+        assertEquals(1600, ids.size());
+        assertEquals(ids, readAll(journal.getFirstPosition()).stream().map(JournalRecord::getId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void releasesFilesWhoseRecordsHaveBeenApplied() throws IOException {
+        while (journal.getWritePosition() < 3 * FILE_SIZE) {
+            append("message");
+        }
+
+        journal.release(2 * FILE_SIZE);
+
+        assertEquals(2L * FILE_SIZE, journal.getFirstPosition());
+        assertEquals(2L * FILE_SIZE, (long) fileBases().get(0));
+
+        journal.release(Long.MAX_VALUE);
+
+        assertEquals(3L * FILE_SIZE, journal.getFirstPosition());
+        assertEquals(3L * FILE_SIZE, (long) fileBases().get(0));
+    }
+
+    @Test
+    void keepsReleasedPositionOnRecovery() throws IOException {
+        while (journal.getWritePosition() < 2 * FILE_SIZE) {
+            append("message");
+        }
+        journal.release(FILE_SIZE);
+        long end = journal.getWritePosition();
+        journal.destroy();
+
+        journal = open();
+
+        assertEquals(FILE_SIZE, journal.getFirstPosition());
+        assertEquals(end, journal.getWritePosition());
+    }
+
+    @Test
+    void restartsEmptyJournalAtPosition() throws IOException {
+        assertTrue(journal.isEmpty());
+
+        journal.restartAt(10_000);
+        long id = append("message");
+
+        assertEquals(10_000, journal.getFirstPosition());
+        assertEquals(List.of(10_000L), fileBases());
+        assertEquals(id, readAll(10_000).get(0).getId());
+        assertThrows(IllegalStateException.class, () -> journal.restartAt(0));
+    }
+
+    private MessageJournal open() throws IOException {
+        return new MessageJournal(config, new MessageStoreConfig());
+    }
+
+    private long append(String content) {
+        Chat chat = new Chat();
+        chat.setId(1L);
+        User author = new User();
+        author.setId(2L);
+
+        Message message = new Message();
+        message.setChat(chat);
+        message.setAuthor(author);
+        message.setTimestamp(System.currentTimeMillis());
+        message.setType(MessageType.TEXT);
+        message.setContent(content);
+        return journal.append(message);
+    }
+
+    private List<JournalRecord> readAll(long from) {
+        List<JournalRecord> records = new ArrayList<>();
+        long position = from;
+        while (true) {
+            MessageJournal.Batch batch = journal.read(position, 16);
+            if (batch.getEnd() == position) {
+                return records;
+            }
+            records.addAll(batch.getRecords());
+            position = batch.getEnd();
+        }
+    }
+
+    private static List<String> contents(List<JournalRecord> records) {
+        return records.stream().map(JournalRecord::getContent).collect(Collectors.toList());
+    }
+
+    private List<Path> files() throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.filter(p -> p.toString().endsWith(".journal")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private List<Long> fileBases() throws IOException {
+        return files().stream()
+                .map(p -> p.getFileName().toString())
+                .map(name -> Long.parseLong(name.substring(0, name.indexOf('.'))))
+                .collect(Collectors.toList());
+    }
+
+}